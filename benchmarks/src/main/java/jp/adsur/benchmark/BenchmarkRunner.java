@@ -0,0 +1,25 @@
+package jp.adsur.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试入口：在JMH命令行参数的基础上默认启用GC Profiler（输出每次操作的分配量 gc.alloc.rate.norm）
+ * <p>
+ * 例：java -jar target/benchmarks.jar                      （全部）
+ *     java -jar target/benchmarks.jar UserInfoQuery -t 8    （指定基准、8线程）
+ *     java -jar target/benchmarks.jar -rf json -rff result.json （输出JSON以便对比回归）
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,177 @@
+package jp.adsur.benchmark;
+
+import com.microsoft.graph.logger.DefaultLogger;
+import com.microsoft.graph.models.User;
+import com.microsoft.graph.serializer.DefaultSerializer;
+import jp.adsur.service.CompactEntitySerializer;
+import jp.adsur.service.EntraUserDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ディレクトリ投影のユーザー10万件の格納形式の比較（値のサイズとシリアライズ/復元のスループット）
+ * <ul>
+ *     <li>graphJson：Graph SDKのUserをSDKのシリアライザでJSON化（4属性のみ設定）</li>
+ *     <li>json：DirectoryUserをJackson2JsonRedisSerializerでJSON化</li>
+ *     <li>hash：現在のハッシュ形式（属性名 + 値をそれぞれ格納）</li>
+ *     <li>compact：CompactEntitySerializer（非圧縮）</li>
+ *     <li>compactLz4：CompactEntitySerializer（すべての値でLZ4を試行、小さくならない値は非圧縮）</li>
+ * </ul>
+ * 値のサイズはSetup時に標準出力へ出力する（キーとRedisのキーごとのオーバーヘッドは形式によらず同じため含めない。
+ * hashはlistpackの要素ごとのヘッダー分だけ実際の使用量がさらに大きい）。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DirectoryCodecBenchmark {
+
+    private static final int ENTRIES = 100_000;
+    private static final String[] FAMILY_NAMES = {"山田", "佐藤", "鈴木", "高橋", "田中", "伊藤", "渡辺", "中村"};
+    private static final String[] FAMILY_ROMAJI = {"yamada", "sato", "suzuki", "takahashi", "tanaka", "ito", "watanabe", "nakamura"};
+    private static final String[] GIVEN_NAMES = {"太郎", "花子", "健一", "美咲", "翔太", "陽菜", "大輔", "彩"};
+    private static final String[] GIVEN_ROMAJI = {"taro", "hanako", "kenichi", "misaki", "shota", "hina", "daisuke", "aya"};
+
+    @Param({"graphJson", "json", "hash", "compact", "compactLz4"})
+    public String format;
+
+    private final DefaultSerializer graphSerializer = new DefaultSerializer(new DefaultLogger());
+    private RedisSerializer<EntraUserDirectory.DirectoryUser> serializer;
+    private List<EntraUserDirectory.DirectoryUser> users;
+    private List<Object> encoded;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        serializer = switch (format) {
+            case "json" -> new Jackson2JsonRedisSerializer<>(EntraUserDirectory.DirectoryUser.class);
+            case "compact" -> CompactEntitySerializer.directoryUsers(0);
+            case "compactLz4" -> CompactEntitySerializer.directoryUsers(1);
+            default -> null;
+        };
+        users = generateUsers();
+        encoded = new ArrayList<>(ENTRIES);
+        long totalBytes = 0;
+        for (EntraUserDirectory.DirectoryUser user : users) {
+            Object value = encode(user);
+            encoded.add(value);
+            totalBytes += size(value);
+        }
+        System.out.printf("%n[%s] %,d件：値の合計 %,d バイト（平均 %.1f バイト/件）%n",
+                format, ENTRIES, totalBytes, (double) totalBytes / ENTRIES);
+    }
+
+    @Benchmark
+    public Object serialize() {
+        return encode(users.get(next()));
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        Object value = encoded.get(next());
+        return switch (format) {
+            case "graphJson" -> graphSerializer.deserializeObject((String) value, User.class);
+            case "hash" -> {
+                byte[][] fields = (byte[][]) value;
+                String[] values = new String[4];
+                for (int i = 0; i < fields.length; i += 2) {
+                    values[(i / 2)] = new String(fields[i + 1], StandardCharsets.UTF_8);
+                }
+                yield new EntraUserDirectory.DirectoryUser(values[0], values[1], values[2], values[3]);
+            }
+            default -> serializer.deserialize((byte[]) value);
+        };
+    }
+
+    private int next() {
+        int i = index++;
+        if (index == ENTRIES) {
+            index = 0;
+        }
+        return i;
+    }
+
+    private Object encode(EntraUserDirectory.DirectoryUser user) {
+        return switch (format) {
+            case "graphJson" -> {
+                User graphUser = new User();
+                graphUser.id = user.id();
+                graphUser.displayName = user.displayName();
+                graphUser.userPrincipalName = user.userPrincipalName();
+                graphUser.mail = user.mail();
+                yield graphSerializer.serializeObject(graphUser);
+            }
+            case "hash" -> hashFields(user);
+            default -> serializer.serialize(user);
+        };
+    }
+
+    // HSETで送信する属性名・値のバイト列（EntraUserDirectoryと同じくnullの属性は格納しない）
+    private static byte[][] hashFields(EntraUserDirectory.DirectoryUser user) {
+        List<byte[]> fields = new ArrayList<>(8);
+        addField(fields, "id", user.id());
+        addField(fields, "displayName", user.displayName());
+        addField(fields, "userPrincipalName", user.userPrincipalName());
+        addField(fields, "mail", user.mail());
+        return fields.toArray(new byte[0][]);
+    }
+
+    private static void addField(List<byte[]> fields, String name, String value) {
+        if (value != null) {
+            fields.add(name.getBytes(StandardCharsets.UTF_8));
+            fields.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static long size(Object value) {
+        if (value instanceof String json) {
+            return json.getBytes(StandardCharsets.UTF_8).length;
+        }
+        if (value instanceof byte[][] fields) {
+            long total = 0;
+            for (byte[] field : fields) {
+                total += field.length;
+            }
+            return total;
+        }
+        return ((byte[]) value).length;
+    }
+
+    // 実データに近い分布：日本語の表示名、ローマ字のUPN、1割はmail未設定
+    private static List<EntraUserDirectory.DirectoryUser> generateUsers() {
+        Random random = new Random(42);
+        List<EntraUserDirectory.DirectoryUser> result = new ArrayList<>(ENTRIES);
+        for (int i = 0; i < ENTRIES; i++) {
+            int family = random.nextInt(FAMILY_NAMES.length);
+            int given = random.nextInt(GIVEN_NAMES.length);
+            String upn = GIVEN_ROMAJI[given] + "." + FAMILY_ROMAJI[family] + i + "@adsur.jp";
+            result.add(new EntraUserDirectory.DirectoryUser(
+                    new UUID(random.nextLong(), random.nextLong()).toString(),
+                    FAMILY_NAMES[family] + " " + GIVEN_NAMES[given],
+                    upn,
+                    random.nextInt(10) == 0 ? null : upn));
+        }
+        return result;
+    }
+}
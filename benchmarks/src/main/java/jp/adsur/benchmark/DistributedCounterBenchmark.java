@@ -0,0 +1,88 @@
+package jp.adsur.benchmark;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jp.adsur.service.DistributedCounterService;
+import jp.adsur.testsupport.InProcessRedis;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * /greeting・/hello の採番方式の比較（32スレッドで同時に採番）
+ * <ul>
+ *     <li>atomicLong：変更前のAtomicLong（インスタンスごとの連番、インスタンス間で重複する）</li>
+ *     <li>redisIncr：リクエストごとにRedisのINCR（一意だが毎回1往復）</li>
+ *     <li>blockId：DistributedCounterService.nextId（INCRBYで予約した範囲をストライプごとに払い出し）</li>
+ *     <li>adderIncrement：DistributedCounterService.increment（LongAdderで集計、1秒ごとにINCRBY）</li>
+ * </ul>
+ * RedisはInProcessRedis（ローカルループバック）のため、redisIncrの実環境での往復時間はさらに長い。
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class DistributedCounterBenchmark {
+
+    private static final String NAME = "greeting";
+
+    private final AtomicLong atomicLong = new AtomicLong();
+    private InProcessRedis redis;
+    private StringRedisTemplate stringRedisTemplate;
+    private DistributedCounterService counterService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        redis = new InProcessRedis();
+        stringRedisTemplate = redis.stringRedisTemplate();
+        ObjectProvider<MeterRegistry> noMetrics = new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class);
+        // application.ymlの既定値（ストライプ数はCPU数）
+        counterService = new DistributedCounterService(stringRedisTemplate, noMetrics, "counter:", 1000, 0,
+                Duration.ofSeconds(1), Duration.ofSeconds(2));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        counterService.shutdown();
+        redis.close();
+    }
+
+    @Benchmark
+    public long atomicLong() {
+        return atomicLong.incrementAndGet();
+    }
+
+    @Benchmark
+    public Long redisIncr() {
+        return stringRedisTemplate.opsForValue().increment("counter:naive:" + NAME);
+    }
+
+    @Benchmark
+    public long blockId() {
+        return counterService.nextId(NAME);
+    }
+
+    @Benchmark
+    public void adderIncrement() {
+        counterService.increment(NAME);
+    }
+}
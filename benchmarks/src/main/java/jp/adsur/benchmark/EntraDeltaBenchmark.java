@@ -0,0 +1,96 @@
+package jp.adsur.benchmark;
+
+import com.microsoft.graph.requests.GraphServiceClient;
+import jp.adsur.service.EntraDeltaQueryService;
+import jp.adsur.testsupport.GraphMockServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ユーザーデルタ同期（EntraDeltaQueryService.streamUserDelta）のループ全体の所要時間（GraphMockServerに対して実行）
+ * <ul>
+ *     <li>latencyMillis：1リクエストあたりの往復遅延（0：SDKのシリアライズ・ページングのみ、20：graph.microsoft.com相当）</li>
+ *     <li>throttleEvery：N件に1件を429で返却（0：スロットリングなし）。Retry-Afterは0秒とし、
+ *         待機時間ではなく再試行による追加の往復・デシリアライズのコストを測定する</li>
+ * </ul>
+ * 初回同期（5,000ユーザー、1ページ200件 = 25ページ）と、デルタリンクによる増分同期（50件の変更）を比較する。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntraDeltaBenchmark {
+
+    private static final int USER_COUNT = 5_000;
+    private static final int PAGE_SIZE = 200;
+    private static final int INCREMENTAL_CHANGES = 50;
+
+    @Param({"0", "20"})
+    public int latencyMillis;
+
+    @Param({"0", "4"})
+    public int throttleEvery;
+
+    private GraphMockServer graphMockServer;
+    private AnnotationConfigApplicationContext context;
+    private EntraDeltaQueryService entraDeltaQueryService;
+    private String deltaLink;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graphMockServer = new GraphMockServer()
+                .users(USER_COUNT)
+                .pageSize(PAGE_SIZE)
+                .incrementalChanges(INCREMENTAL_CHANGES)
+                .latency(Duration.ofMillis(latencyMillis))
+                .throttleEvery(throttleEvery, 0);
+
+        // アプリケーションと同じ@Value（Duration等）の変換でサービスを生成
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark",
+                Map.of("azure.entra.tenant-id", "benchmark", "app.entra.delta.log-sample-size", "0")));
+        context.registerBean(GraphServiceClient.class, graphMockServer::graphClient);
+        context.register(EntraDeltaQueryService.class);
+        context.refresh();
+        entraDeltaQueryService = context.getBean(EntraDeltaQueryService.class);
+
+        deltaLink = entraDeltaQueryService.streamUserDelta(null, page -> { }).newDeltaLink();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        graphMockServer.close();
+    }
+
+    @Benchmark
+    public EntraDeltaQueryService.DeltaStreamResult fullSync() {
+        return entraDeltaQueryService.streamUserDelta(null, page -> { });
+    }
+
+    @Benchmark
+    public EntraDeltaQueryService.DeltaStreamResult incrementalSync() {
+        return entraDeltaQueryService.streamUserDelta(deltaLink, page -> { });
+    }
+}
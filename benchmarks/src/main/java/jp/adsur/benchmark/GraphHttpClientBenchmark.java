@@ -0,0 +1,108 @@
+package jp.adsur.benchmark;
+
+import jp.adsur.benchmark.support.LocalGraphServer;
+import jp.adsur.config.GraphCallGate;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.OkHttp3ClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import javax.net.ssl.HttpsURLConnection;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * グループメンバー追加（POST /groups/{id}/members/$ref）のRestTemplate呼び出しの比較（HTTPS、16スレッド）
+ * <ul>
+ *     <li>simple：変更前のnew RestTemplate()（SimpleClientHttpRequestFactory / HttpsURLConnection）</li>
+ *     <li>pooled：EntraGraphClientConfig.graphHttpClientと同じ設定のOkHttp（接続プール + 送信ゲート、共有レートなし）</li>
+ * </ul>
+ * SampleTimeのp0.99で、接続の確立（TLSハンドシェイク）がテールレイテンシに与える影響を確認する。
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class GraphHttpClientBenchmark {
+
+    @Param({"simple", "pooled"})
+    public String client;
+
+    private LocalGraphServer server;
+    private OkHttpClient okHttpClient;
+    private RestTemplate restTemplate;
+    private String url;
+    private HttpEntity<Map<String, String>> requestEntity;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new LocalGraphServer();
+        url = server.baseUrl() + "/v1.0/groups/00000000-0000-0000-0000-000000000001/members/$ref";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth("benchmark-token");
+        requestEntity = new HttpEntity<>(
+                Map.of("@odata.id", "https://graph.microsoft.com/v1.0/directoryObjects/00000000-0000-0000-0000-000000000002"),
+                headers);
+
+        if ("simple".equals(client)) {
+            restTemplate = new RestTemplate(new SimpleClientHttpRequestFactory() {
+                @Override
+                protected void prepareConnection(HttpURLConnection connection, String httpMethod) throws IOException {
+                    super.prepareConnection(connection, httpMethod);
+                    HttpsURLConnection https = (HttpsURLConnection) connection;
+                    https.setSSLSocketFactory(server.sslContext().getSocketFactory());
+                }
+            });
+        } else {
+            okHttpClient = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(10, 5, TimeUnit.MINUTES))
+                    .sslSocketFactory(server.sslContext().getSocketFactory(), server.trustManager())
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .readTimeout(Duration.ofSeconds(60))
+                    .addInterceptor(new GraphCallGate(8, 1, 16, 0.5, Duration.ofSeconds(60),
+                            Duration.ofSeconds(2), Duration.ofSeconds(30), null))
+                    .build();
+            restTemplate = new RestTemplate(new OkHttp3ClientHttpRequestFactory(okHttpClient));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (okHttpClient != null) {
+            okHttpClient.connectionPool().evictAll();
+            okHttpClient.dispatcher().executorService().shutdown();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    public int addMember() {
+        return restTemplate.exchange(url, HttpMethod.POST, requestEntity, Void.class).getStatusCodeValue();
+    }
+}
@@ -0,0 +1,49 @@
+package jp.adsur.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.adsur.controller.pojo.Greeting;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /hello の Greeting JSONシリアライズ（Spring Bootと同じJackson2ObjectMapperBuilderの既定設定）
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GreetingSerializationBenchmark {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final Greeting greeting = new Greeting(123_456L, "Hello, 山田太郎!");
+    private long counter;
+
+    @Benchmark
+    public String toJsonString() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(greeting);
+    }
+
+    @Benchmark
+    public byte[] toJsonBytes() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(greeting);
+    }
+
+    // リクエストごとに新しいGreetingを生成する実際の経路（counter.incrementAndGet() + String.format）
+    @Benchmark
+    public byte[] buildAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(new Greeting(++counter, String.format("Hello, %s!", "山田太郎")));
+    }
+}
@@ -0,0 +1,140 @@
+package jp.adsur.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.adsur.controller.pojo.Greeting;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 日志输出对请求延迟的影响（与logback.xml相同的格式，独立的LoggerContext）
+ * <ul>
+ *     <li>appender=SYNC：请求线程直接写出（logback.xml中 LOG_APPENDER=CONSOLE 的行为）</li>
+ *     <li>appender=ASYNC：有界队列 + 后台线程写出，队列将满时丢弃DEBUG/INFO（不阻塞），WARN/ERROR不丢弃（默认行为）</li>
+ * </ul>
+ * 输出目标为临时文件且每条立即flush（与ConsoleAppender相同），避免JMH子进程的标准输出干扰测量。
+ * <ul>
+ *     <li>request：/hello 相当的处理（Greeting序列化）+ 2条INFO日志</li>
+ *     <li>deltaPagePerItem：增量同步1页（200件）逐件输出INFO（修改前的queryUserDelta）</li>
+ *     <li>deltaPageSummary：增量同步1页只输出1条摘要（修改后）</li>
+ * </ul>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    private static final String LOG_PATTERN = "%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{50} - %msg%n";
+    private static final int DELTA_PAGE_SIZE = 200;
+
+    @Param({"SYNC", "ASYNC"})
+    private String appender;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final AtomicLong counter = new AtomicLong();
+    private LoggerContext loggerContext;
+    private Logger logger;
+    private Path logFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        logFile = Files.createTempFile("logging-benchmark", ".log");
+        loggerContext = new LoggerContext();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setCharset(StandardCharsets.UTF_8);
+        encoder.setPattern(LOG_PATTERN);
+        encoder.start();
+
+        FileAppender<ILoggingEvent> fileAppender = new FileAppender<>();
+        fileAppender.setContext(loggerContext);
+        fileAppender.setName("FILE");
+        fileAppender.setFile(logFile.toString());
+        fileAppender.setEncoder(encoder);
+        fileAppender.setImmediateFlush(true);
+        fileAppender.start();
+
+        Appender<ILoggingEvent> target = fileAppender;
+        if ("ASYNC".equals(appender)) {
+            // 与logback.xml的ASYNC相同的设置
+            AsyncAppender asyncAppender = new AsyncAppender();
+            asyncAppender.setContext(loggerContext);
+            asyncAppender.setName("ASYNC");
+            asyncAppender.setQueueSize(8192);
+            asyncAppender.setDiscardingThreshold(1638);
+            asyncAppender.setNeverBlock(false);
+            asyncAppender.setIncludeCallerData(false);
+            asyncAppender.addAppender(fileAppender);
+            asyncAppender.start();
+            target = asyncAppender;
+        }
+
+        logger = loggerContext.getLogger("jp.adsur.controller.DBTestController");
+        logger.setLevel(ch.qos.logback.classic.Level.INFO);
+        logger.setAdditive(false);
+        logger.addAppender(target);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        loggerContext.stop();
+        Files.deleteIfExists(logFile);
+    }
+
+    @Benchmark
+    public byte[] request() throws JsonProcessingException {
+        long id = counter.incrementAndGet();
+        logger.info("リクエスト受信：id={}, name={}", id, "山田太郎");
+        byte[] body = objectMapper.writeValueAsBytes(new Greeting(id, "Hello, 山田太郎!"));
+        logger.info("レスポンス返却：id={}, size={}", id, body.length);
+        return body;
+    }
+
+    @Benchmark
+    public long deltaPagePerItem() {
+        long page = counter.incrementAndGet();
+        for (int i = 0; i < DELTA_PAGE_SIZE; i++) {
+            logger.info("増分ユーザー：ID={}, 名前={}, UPN={}", i, "山田太郎", "taro.yamada@example.com");
+        }
+        return page;
+    }
+
+    @Benchmark
+    public long deltaPageSummary() {
+        long page = counter.incrementAndGet();
+        logger.info("ユーザーデルタページ{}：件数={}, 累計={}, 次ページ={}", page, DELTA_PAGE_SIZE, page * DELTA_PAGE_SIZE, true);
+        return page;
+    }
+}
@@ -0,0 +1,95 @@
+package jp.adsur.benchmark;
+
+import jp.adsur.service.RedisBulkService;
+import jp.adsur.testsupport.InProcessRedis;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection.PipeliningFlushPolicy;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisTestController.testRedisBulk と同じ一括書き込み・読み込みの比較（1操作 = keyCount件）
+ * <ul>
+ *     <li>sequentialSet / sequentialGet：1コマンド1往復（パイプライン導入前）</li>
+ *     <li>pipelinedMset / pipelinedSetEx / pipelinedMget：RedisBulkService（flushBatchSize件ごとにフラッシュ）</li>
+ * </ul>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedisBulkBenchmark {
+
+    @Param({"1000"})
+    public int keyCount;
+
+    @Param({"1000"})
+    public int flushBatchSize;
+
+    private InProcessRedis redis;
+    private RedisBulkService bulkService;
+    private Map<String, String> entries;
+    private List<String> keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        redis = new InProcessRedis();
+        // RedisPipeliningConfigと同じフラッシュ方針
+        redis.connectionFactory().setPipeliningFlushPolicy(PipeliningFlushPolicy.buffered(flushBatchSize));
+        bulkService = new RedisBulkService(redis.stringRedisTemplate(), 500);
+        entries = new LinkedHashMap<>();
+        for (int i = 0; i < keyCount; i++) {
+            entries.put("bench:bulk:" + i, "value-" + i);
+        }
+        keys = List.copyOf(entries.keySet());
+        bulkService.multiSet(entries, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redis.close();
+    }
+
+    @Benchmark
+    public int sequentialSet() {
+        return bulkService.sequentialSet(entries, null);
+    }
+
+    @Benchmark
+    public int pipelinedMset() {
+        return bulkService.multiSet(entries, null);
+    }
+
+    @Benchmark
+    public int pipelinedSetEx() {
+        return bulkService.multiSet(entries, Duration.ofMinutes(5));
+    }
+
+    @Benchmark
+    public Map<String, String> sequentialGet() {
+        return bulkService.sequentialGet(keys);
+    }
+
+    @Benchmark
+    public Map<String, String> pipelinedMget() {
+        return bulkService.multiGet(keys);
+    }
+}
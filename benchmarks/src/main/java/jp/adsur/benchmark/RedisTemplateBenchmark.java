@@ -0,0 +1,65 @@
+package jp.adsur.benchmark;
+
+import jp.adsur.testsupport.InProcessRedis;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisTestController.testRedis 的 StringRedisTemplate get/set 路径
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedisTemplateBenchmark {
+
+    private static final String KEY = "bench:test-key";
+    private static final String VALUE = "test-value-2026年01月01日00時00分00秒000毫秒";
+
+    private InProcessRedis redis;
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        redis = new InProcessRedis();
+        stringRedisTemplate = redis.stringRedisTemplate();
+        stringRedisTemplate.opsForValue().set(KEY, VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redis.close();
+    }
+
+    @Benchmark
+    public String get() {
+        return stringRedisTemplate.opsForValue().get(KEY);
+    }
+
+    @Benchmark
+    public void set() {
+        stringRedisTemplate.opsForValue().set(KEY, VALUE);
+    }
+
+    // testRedisと同じ：set → get の2往復
+    @Benchmark
+    public String setThenGet() {
+        stringRedisTemplate.opsForValue().set(KEY, VALUE);
+        return stringRedisTemplate.opsForValue().get(KEY);
+    }
+}
@@ -0,0 +1,89 @@
+package jp.adsur.benchmark;
+
+import jp.adsur.benchmark.support.H2UserInfoDatabase;
+import jp.adsur.db.UserInfoBatchLoader;
+import jp.adsur.db.UserInfoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 高并发下user_info按ID查询：逐条查询 与 请求合并（WHERE id = ANY(?)）的比较
+ * <ul>
+ *     <li>direct：每次查询借用一次连接（合并前的行为）</li>
+ *     <li>batched：窗口期内的查询合并为一条SQL</li>
+ * </ul>
+ * 每次迭代结束时输出平均批次大小（batched的连接借用次数 = 操作数 / 平均批次）。
+ * 注意：H2内存库没有网络往返，吞吐量的差距小于实际PostgreSQL；应重点观察连接借用次数的减少。
+ * windowMicros=0 时不额外等待，只合并调度时已在队列中的请求。
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class UserInfoBatchBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    @Param({"0", "500"})
+    public long windowMicros;
+
+    private H2UserInfoDatabase database;
+    private UserInfoRepository repository;
+    private UserInfoBatchLoader batchLoader;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new H2UserInfoDatabase(ROWS);
+        repository = new UserInfoRepository(database.jdbcTemplate());
+        batchLoader = new UserInfoBatchLoader(repository, true, Duration.ofNanos(windowMicros * 1_000), 100, 4,
+                Duration.ofSeconds(35));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        batchLoader.shutdown();
+        database.close();
+    }
+
+    @Benchmark
+    public Optional<String> direct() {
+        return repository.findUserNameById(randomId());
+    }
+
+    @Benchmark
+    public Optional<String> batched() {
+        return batchLoader.load(randomId());
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportBatches() {
+        UserInfoBatchLoader.Stats stats = batchLoader.stats();
+        if (stats.batches() > 0) {
+            System.out.printf("%n  [batched] avgBatchSize=%.1f, largestBatch=%d%n", stats.avgBatchSize(), stats.largestBatch());
+        }
+    }
+
+    private static long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, ROWS + 1);
+    }
+}
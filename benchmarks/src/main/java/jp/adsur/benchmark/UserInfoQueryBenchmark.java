@@ -0,0 +1,91 @@
+package jp.adsur.benchmark;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jp.adsur.benchmark.support.H2UserInfoDatabase;
+import jp.adsur.db.UserInfoBatchLoader;
+import jp.adsur.db.UserInfoRepository;
+import jp.adsur.service.UserInfoCacheService;
+import jp.adsur.testsupport.InProcessRedis;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DBTestController.queryUserName 的数据访问路径
+ * <ul>
+ *     <li>jdbcDirect：每次直接查询（缓存引入前的行为）</li>
+ *     <li>cacheLocalHit：命中Caffeine本地缓存</li>
+ *     <li>cacheRedisHit：本地缓存立即过期（TTL=0），每次经由Redis二级缓存</li>
+ * </ul>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserInfoQueryBenchmark {
+
+    private H2UserInfoDatabase database;
+    private InProcessRedis redis;
+    private UserInfoRepository repository;
+    private UserInfoBatchLoader directLoader;
+    private UserInfoCacheService localTierCache;
+    private UserInfoCacheService redisTierCache;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new H2UserInfoDatabase(1_000);
+        redis = new InProcessRedis();
+        repository = new UserInfoRepository(database.jdbcTemplate());
+        // 缓存层的比较不涉及请求合并，使用逐条查询
+        directLoader = new UserInfoBatchLoader(repository, false, Duration.ZERO, 1, 1, Duration.ofSeconds(35));
+        // 基准测试不注册Micrometer指标
+        ObjectProvider<MeterRegistry> noMetrics = new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class);
+        localTierCache = new UserInfoCacheService(directLoader, redis.stringRedisTemplate(), noMetrics,
+                10_000, Duration.ofMinutes(10), Duration.ofMinutes(10), Duration.ofSeconds(30),
+                "bench:user_info:local:", true);
+        redisTierCache = new UserInfoCacheService(directLoader, redis.stringRedisTemplate(), noMetrics,
+                10_000, Duration.ZERO, Duration.ofMinutes(10), Duration.ofSeconds(30),
+                "bench:user_info:redis:", true);
+        // 预热缓存
+        localTierCache.findUserName(1L);
+        redisTierCache.findUserName(1L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redis.close();
+        database.close();
+    }
+
+    @Benchmark
+    public Optional<String> jdbcDirect() {
+        return repository.findUserNameById(1L);
+    }
+
+    @Benchmark
+    public Optional<String> cacheLocalHit() {
+        return localTierCache.findUserName(1L);
+    }
+
+    @Benchmark
+    public Optional<String> cacheRedisHit() {
+        return redisTierCache.findUserName(1L);
+    }
+}
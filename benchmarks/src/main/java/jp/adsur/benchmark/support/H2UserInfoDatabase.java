@@ -0,0 +1,52 @@
+package jp.adsur.benchmark.support;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * PostgreSQL的本地替身：H2内存库（PostgreSQL兼容模式） + HikariCP（与application.yml相同的连接池上限）
+ */
+public final class H2UserInfoDatabase implements AutoCloseable {
+
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param rows 预先插入的user_info行数（id = 1..rows）
+     */
+    public H2UserInfoDatabase(int rows) {
+        HikariConfig config = new HikariConfig();
+        // 每个实例使用独立的内存库，避免Fork内多个State之间相互影响
+        config.setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        config.setUsername("sa");
+        config.setPassword("");
+        config.setMaximumPoolSize(10);
+        config.setMinimumIdle(5);
+        config.setPoolName("H2-Benchmark-Pool");
+        this.dataSource = new HikariDataSource(config);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+
+        jdbcTemplate.execute("CREATE TABLE user_info (id BIGINT PRIMARY KEY, username VARCHAR(64) NOT NULL)");
+        jdbcTemplate.batchUpdate("INSERT INTO user_info (id, username) VALUES (?, ?)",
+                IntStream.rangeClosed(1, rows)
+                        .mapToObj(id -> new Object[]{(long) id, "user-" + id})
+                        .toList());
+    }
+
+    public HikariDataSource dataSource() {
+        return dataSource;
+    }
+
+    public JdbcTemplate jdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+}
@@ -0,0 +1,117 @@
+package jp.adsur.benchmark.support;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Graph的/members/$ref端点的本地HTTPS替身（JDK HttpsServer + keytool生成的自签名证书）
+ * <p>
+ * 所有请求返回204。测得的是客户端的连接建立（TCP + TLS握手）与连接复用的差异，
+ * 不包含到graph.microsoft.com的实际网络延迟（跨区域时握手的代价更大）。
+ * JDK HttpsServer只支持HTTP/1.1，HTTP/2多路复用的效果不在此测量范围内。
+ */
+public final class LocalGraphServer implements AutoCloseable {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    private final HttpsServer server;
+    private final ExecutorService executor;
+    private final SSLContext sslContext;
+    private final X509TrustManager trustManager;
+
+    public LocalGraphServer() {
+        try {
+            KeyStore keyStore = generateKeyStore();
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore, PASSWORD);
+            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(keyStore);
+            this.trustManager = (X509TrustManager) trustManagerFactory.getTrustManagers()[0];
+            this.sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+
+            this.server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+            server.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+            server.createContext("/", exchange -> {
+                try (InputStream body = exchange.getRequestBody()) {
+                    body.readAllBytes();
+                }
+                exchange.sendResponseHeaders(204, -1);
+                exchange.close();
+            });
+            this.executor = Executors.newFixedThreadPool(32);
+            server.setExecutor(executor);
+            server.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Graph替身启动失败", e);
+        } catch (GeneralSecurityException | InterruptedException e) {
+            throw new IllegalStateException("Graph替身的证书生成失败", e);
+        }
+    }
+
+    /**
+     * 替身的基础URL（例：https://localhost:12345）
+     */
+    public String baseUrl() {
+        return "https://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * 信任自签名证书的SSLContext（客户端用）
+     */
+    public SSLContext sslContext() {
+        return sslContext;
+    }
+
+    public X509TrustManager trustManager() {
+        return trustManager;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // 使用JDK自带的keytool生成localhost的自签名证书（避免引入BouncyCastle）
+    private static KeyStore generateKeyStore() throws IOException, GeneralSecurityException, InterruptedException {
+        Path dir = Files.createTempDirectory("graph-bench-");
+        Path file = dir.resolve("server.p12");
+        Process process = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair", "-alias", "graph", "-keyalg", "EC", "-groupname", "secp256r1",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "2",
+                "-storetype", "PKCS12", "-keystore", file.toString(),
+                "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+                .redirectErrorStream(true)
+                .start();
+        process.getInputStream().readAllBytes();
+        if (!process.waitFor(30, TimeUnit.SECONDS) || process.exitValue() != 0) {
+            throw new IOException("keytool执行失败");
+        }
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(file)) {
+            keyStore.load(in, PASSWORD);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+        return keyStore;
+    }
+}
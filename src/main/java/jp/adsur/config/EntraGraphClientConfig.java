@@ -1,62 +1,234 @@
-//package jp.adsur.config;
-//
-//import com.azure.identity.ClientSecretCredential;
-//import com.azure.identity.ClientSecretCredentialBuilder;
-//import com.microsoft.graph.authentication.TokenCredentialAuthProvider;
-//import com.microsoft.graph.requests.GraphServiceClient;
-//import org.springframework.beans.factory.annotation.Value;
-//import org.springframework.context.annotation.Bean;
-//import org.springframework.context.annotation.Configuration;
-//import org.springframework.web.client.RestTemplate;
-//
-//import java.util.Collections;
-//
-//@Configuration
-//public class EntraGraphClientConfig {
-//
-//    @Value("${azure.entra.tenant-id}")
-//    private String tenantId;
-//
-//    @Value("${azure.entra.client-id}")
-//    private String clientId;
-//
-//    @Value("${azure.entra.client-secret}")
-//    private String clientSecret;
-//
-//    /**
-//     * 单例ClientSecretCredential Bean（供graphClient和Token获取复用）
-//     * 核心：避免重复创建，解决Bean冲突
-//     */
-//    @Bean
-//    public ClientSecretCredential clientSecretCredential() {
-//        return new ClientSecretCredentialBuilder()
-//                .tenantId(tenantId)
-//                .clientId(clientId)
-//                .clientSecret(clientSecret)
-//                .build();
-//    }
-//
-//    /**
-//     * 保留GraphServiceClient Bean（用于查询用户、创建组）
-//     */
-//    @Bean
-//    public GraphServiceClient<?> graphServiceClient() {
-//        // 复用上面的ClientSecretCredential Bean，避免重复创建
-//        TokenCredentialAuthProvider authProvider = new TokenCredentialAuthProvider(
-//                Collections.singletonList("https://graph.microsoft.com/.default"),
-//                clientSecretCredential() // 注入上面的单例Bean
-//        );
-//
-//        return GraphServiceClient.builder()
-//                .authenticationProvider(authProvider)
-//                .buildClient();
-//    }
-//
-//    /**
-//     * 添加RestTemplate Bean（用于手动调用/$ref端点）
-//     */
-//    @Bean
-//    public RestTemplate restTemplate() {
-//        return new RestTemplate();
-//    }
-//}
\ No newline at end of file
+package jp.adsur.config;
+
+import com.azure.identity.ClientSecretCredential;
+import com.azure.identity.ClientSecretCredentialBuilder;
+import com.microsoft.graph.authentication.BaseAuthenticationProvider;
+import com.microsoft.graph.httpcore.AuthenticationHandler;
+import com.microsoft.graph.httpcore.RedirectHandler;
+import com.microsoft.graph.httpcore.RetryHandler;
+import com.microsoft.graph.httpcore.TelemetryHandler;
+import com.microsoft.graph.requests.GraphServiceClient;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.okhttp3.OkHttpConnectionPoolMetrics;
+import jp.adsur.service.AccessTokenManager;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.client.OkHttp3ClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// azure.entra.*未配置时不加载Entra相关Bean（本地开发时仅启动DB/Redis功能）
+@ConditionalOnProperty(prefix = "azure.entra", name = "tenant-id")
+@Configuration
+public class EntraGraphClientConfig {
+
+    public static final String GRAPH_SCOPE = "https://graph.microsoft.com/.default";
+
+    @Value("${azure.entra.tenant-id}")
+    private String tenantId;
+
+    @Value("${azure.entra.client-id}")
+    private String clientId;
+
+    @Value("${azure.entra.client-secret}")
+    private String clientSecret;
+
+    // Graph API的基础URL（SDK的服务根路径，指向本地Graph模拟服务器时修改）
+    @Value("${app.entra.graph-base-url:https://graph.microsoft.com/v1.0}")
+    private String graphBaseUrl;
+
+    // Graph调用共用的HTTP连接池配置（app.entra.http.*）
+    @Value("${app.entra.http.max-idle-connections:10}")
+    private int maxIdleConnections;
+
+    @Value("${app.entra.http.keep-alive:5m}")
+    private Duration keepAlive;
+
+    @Value("${app.entra.http.max-requests:64}")
+    private int maxRequests;
+
+    @Value("${app.entra.http.max-requests-per-host:16}")
+    private int maxRequestsPerHost;
+
+    @Value("${app.entra.http.http2-enabled:true}")
+    private boolean http2Enabled;
+
+    @Value("${app.entra.http.connect-timeout:10s}")
+    private Duration connectTimeout;
+
+    @Value("${app.entra.http.read-timeout:60s}")
+    private Duration readTimeout;
+
+    @Value("${app.entra.http.call-timeout:100s}")
+    private Duration callTimeout;
+
+    // Graph呼び出しの送信ゲート（app.entra.gate.*）：同時実行数の上限（AIMD）
+    @Value("${app.entra.gate.initial-limit:8}")
+    private int gateInitialLimit;
+
+    @Value("${app.entra.gate.min-limit:1}")
+    private int gateMinLimit;
+
+    @Value("${app.entra.gate.backoff-ratio:0.5}")
+    private double gateBackoffRatio;
+
+    @Value("${app.entra.gate.acquire-timeout:60s}")
+    private Duration gateAcquireTimeout;
+
+    // Retry-Afterが無い429/503での一時停止時間と、一時停止の上限
+    @Value("${app.entra.gate.default-pause:2s}")
+    private Duration gateDefaultPause;
+
+    @Value("${app.entra.gate.max-pause:30s}")
+    private Duration gateMaxPause;
+
+    // 全インスタンス共有のトークンバケット（rate-per-secondが0以下の場合は共有しない）
+    @Value("${app.entra.gate.shared.rate-per-second:50}")
+    private double gateRatePerSecond;
+
+    @Value("${app.entra.gate.shared.burst:100}")
+    private int gateBurst;
+
+    @Value("${app.entra.gate.shared.key-prefix:graph:gate:}")
+    private String gateKeyPrefix;
+
+    /**
+     * 单例ClientSecretCredential Bean（供graphClient和Token获取复用）
+     * 核心：避免重复创建，解决Bean冲突
+     */
+    @Bean
+    public ClientSecretCredential clientSecretCredential() {
+        return new ClientSecretCredentialBuilder()
+                .tenantId(tenantId)
+                .clientId(clientId)
+                .clientSecret(clientSecret)
+                .build();
+    }
+
+    /**
+     * Graph调用耗时的计测（SDK与RestTemplate共用，指标名：app.graph.requests）
+     */
+    @Bean
+    public GraphRequestMetrics graphRequestMetrics(MeterRegistry meterRegistry) {
+        return new GraphRequestMetrics(meterRegistry);
+    }
+
+    /**
+     * Graph调用的发送闸门（同时执行数的自适应上限 + 全实例共享的令牌桶 + Retry-After暂停），指标：app.graph.gate.*
+     * 同时执行数的上限不超过max-requests-per-host；闸门的等待计入call-timeout，因此acquire-timeout必须小于call-timeout
+     */
+    @Bean
+    public GraphCallGate graphCallGate(StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry) {
+        if (!callTimeout.isZero() && gateAcquireTimeout.compareTo(callTimeout) >= 0) {
+            throw new IllegalArgumentException("app.entra.gate.acquire-timeout（" + gateAcquireTimeout
+                    + "）はapp.entra.http.call-timeout（" + callTimeout + "）より短く設定してください");
+        }
+        RedisTokenBucket sharedBucket = gateRatePerSecond > 0
+                ? new RedisTokenBucket(stringRedisTemplate, gateKeyPrefix, gateRatePerSecond, gateBurst)
+                : null;
+        GraphCallGate gate = new GraphCallGate(gateInitialLimit, gateMinLimit, maxRequestsPerHost, gateBackoffRatio,
+                gateAcquireTimeout, gateDefaultPause, gateMaxPause, sharedBucket);
+        gate.bindMetrics(meterRegistry);
+        Gauge.builder("app.graph.http.in_flight", gate, GraphCallGate::inFlight)
+                .description("graph.microsoft.comへ送信中のリクエスト数").tags(Tags.of("client", "graph")).register(meterRegistry);
+        return gate;
+    }
+
+    /**
+     * Graph调用共用的OkHttp客户端（SDK与RestTemplate共用同一连接池和Dispatcher）
+     * <ul>
+     *     <li>连接池：保持TLS连接复用，/members/$ref等连续调用不再每次握手</li>
+     *     <li>HTTP/2：与graph.microsoft.com协商h2后，并发请求在同一连接上多路复用</li>
+     *     <li>gzip：OkHttp自动发送Accept-Encoding: gzip并透明解压响应</li>
+     *     <li>连接/读取/整体超时（发送闸门GraphCallGate由SDK与RestTemplate各自的派生客户端追加）</li>
+     * </ul>
+     * 连接池指标：okhttp.pool.connection.count（state=active/idle），Dispatcher与并发上限的指标：app.graph.http.*
+     */
+    @Bean
+    public OkHttpClient graphHttpClient(GraphRequestMetrics graphRequestMetrics, MeterRegistry meterRegistry) {
+        ConnectionPool connectionPool = new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS);
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        Tags tags = Tags.of("client", "graph");
+        new OkHttpConnectionPoolMetrics(connectionPool, "okhttp.pool", tags, maxIdleConnections).bindTo(meterRegistry);
+        Gauge.builder("app.graph.http.queued", dispatcher, Dispatcher::queuedCallsCount)
+                .description("Dispatcherで待機中の非同期呼び出し数").tags(tags).register(meterRegistry);
+
+        return new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .protocols(http2Enabled ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1))
+                .connectTimeout(connectTimeout)
+                .readTimeout(readTimeout)
+                .writeTimeout(readTimeout)
+                .callTimeout(callTimeout)
+                .addNetworkInterceptor(graphRequestMetrics.okHttpInterceptor())
+                .build();
+    }
+
+    /**
+     * 保留GraphServiceClient Bean（用于查询用户、创建组）
+     * Token由AccessTokenManager统一缓存并在过期前后台刷新，请求线程不再每次调用MSAL
+     */
+    @Bean
+    public GraphServiceClient<?> graphServiceClient(AccessTokenManager accessTokenManager, OkHttpClient graphHttpClient,
+                                                    GraphCallGate graphCallGate) {
+        // 复用上面的ClientSecretCredential Bean，避免重复创建
+        accessTokenManager.register(GRAPH_SCOPE, clientSecretCredential());
+        BaseAuthenticationProvider authProvider = new BaseAuthenticationProvider() {
+            @Override
+            public CompletableFuture<String> getAuthorizationTokenAsync(URL requestUrl) {
+                if (!shouldAuthenticateRequestWithUrl(requestUrl)) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return CompletableFuture.completedFuture(accessTokenManager.getToken(GRAPH_SCOPE));
+            }
+        };
+
+        // 共用连接池之上追加SDK默认的中间件（与HttpClients.createDefault相同：遥测/认证/重试/重定向）
+        // 闸门放在最内侧的应用拦截器：重试/重定向的每次发送都经过闸门，且在获取连接之前等待（等待期间不占用连接）
+        OkHttpClient httpClient = graphHttpClient.newBuilder()
+                .addInterceptor(new TelemetryHandler())
+                .addInterceptor(new AuthenticationHandler(authProvider))
+                .addInterceptor(new RetryHandler())
+                .addInterceptor(new RedirectHandler())
+                .addInterceptor(graphCallGate)
+                .followRedirects(false)
+                .followSslRedirects(false)
+                .build();
+        GraphServiceClient<Request> graphClient = GraphServiceClient.builder()
+                .httpClient(httpClient)
+                .buildClient();
+        graphClient.setServiceRoot(graphBaseUrl);
+        return graphClient;
+    }
+
+    /**
+     * 添加RestTemplate Bean（用于手动调用/$ref、$batch端点）
+     * 使用共用的OkHttp客户端（连接复用、HTTP/2、gzip，并支持PATCH），追加发送闸门
+     */
+    @Bean
+    public RestTemplate restTemplate(OkHttpClient graphHttpClient, GraphCallGate graphCallGate) {
+        OkHttpClient httpClient = graphHttpClient.newBuilder()
+                .addInterceptor(graphCallGate)
+                .build();
+        return new RestTemplate(new OkHttp3ClientHttpRequestFactory(httpClient));
+    }
+}
@@ -0,0 +1,279 @@
+package jp.adsur.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Graph呼び出しの送信ゲート（SDK・RestTemplateのOkHttpクライアントの最も内側のアプリケーションインターセプター）
+ * <p>
+ * 送信前に次の順で待機する。
+ * <ol>
+ *     <li>一時停止：429/503のRetry-After（無い場合はdefault-pause）の間、このインスタンスの送信を止める</li>
+ *     <li>同時実行数：インスタンスごとの適応的な上限（AIMD）。成功するたびに上限を1/上限ずつ増やし
+ *         （上限分の呼び出しが成功すると+1）、429/503を受けると上限にbackoff-ratioを掛けて減らす</li>
+ *     <li>共有レート：{@link RedisTokenBucket}（全インスタンス共有のトークンバケット、Retry-Afterの一時停止も共有）</li>
+ * </ol>
+ * $batchのように1回で複数のGraphリクエストになる呼び出しは、{@link #COST_HEADER}でトークン数を指定する（送信前に削除）。
+ * SDKの再試行は1回ずつこのゲートを通るため、再試行もRetry-Afterと上限に従う。
+ * 接続の取得より前に待機するため、待機中に接続を保持しない（待機時間はOkHttpのcall-timeoutには含まれる）。
+ */
+@Slf4j
+public final class GraphCallGate implements Interceptor {
+
+    /**
+     * 1回の呼び出しで消費するトークン数（$batchのサブリクエスト数）を指定するリクエストヘッダー
+     */
+    public static final String COST_HEADER = "X-Graph-Request-Cost";
+
+    // 上限を減らした後、次に減らすまでの最短間隔（同じスロットリングへの複数の429で何度も半減しない）
+    private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final Duration acquireTimeout;
+    private final Duration defaultPause;
+    private final Duration maxPause;
+    // nullの場合はインスタンス間でレートを共有しない
+    private final RedisTokenBucket sharedBucket;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private long lastDecreaseNanos;
+    private volatile long pausedUntilMillis;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder throttled = new LongAdder();
+    private volatile Timer waitTimer;
+
+    public GraphCallGate(int initialLimit, int minLimit, int maxLimit, double backoffRatio, Duration acquireTimeout,
+                         Duration defaultPause, Duration maxPause, RedisTokenBucket sharedBucket) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.backoffRatio = backoffRatio;
+        this.acquireTimeout = acquireTimeout;
+        this.defaultPause = defaultPause;
+        this.maxPause = maxPause;
+        this.sharedBucket = sharedBucket;
+        this.lastDecreaseNanos = System.nanoTime() - DECREASE_INTERVAL_NANOS;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        int cost = 1;
+        String costHeader = request.header(COST_HEADER);
+        if (costHeader != null) {
+            cost = parseCost(costHeader);
+            request = request.newBuilder().removeHeader(COST_HEADER).build();
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + acquireTimeout.toNanos();
+        int inFlightAtStart;
+        queued.incrementAndGet();
+        try {
+            awaitPause(deadline);
+            inFlightAtStart = acquire(deadline);
+            try {
+                awaitSharedBudget(cost, deadline);
+            } catch (IOException e) {
+                release(false, 0);
+                throw e;
+            }
+        } finally {
+            queued.decrementAndGet();
+        }
+        Timer timer = waitTimer;
+        if (timer != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            release(false, inFlightAtStart);
+            throw e;
+        }
+        if (response.code() == 429 || response.code() == 503) {
+            onThrottled(RetryAfter.parse(response.header("Retry-After"), Instant.now()));
+            release(false, inFlightAtStart);
+        } else {
+            release(true, inFlightAtStart);
+        }
+        return response;
+    }
+
+    /**
+     * スロットリングを通知する（レスポンスの外で検出した429/503：$batchのサブリクエストなど）
+     * @param retryAfter Retry-After（不明な場合はnull）
+     */
+    public void onThrottled(Duration retryAfter) {
+        throttled.increment();
+        Duration pause = retryAfter == null ? defaultPause
+                : retryAfter.compareTo(maxPause) > 0 ? maxPause : retryAfter;
+        long until = System.currentTimeMillis() + pause.toMillis();
+        if (until > pausedUntilMillis) {
+            pausedUntilMillis = until;
+        }
+        if (sharedBucket != null) {
+            sharedBucket.pause(pause);
+        }
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            if (now - lastDecreaseNanos >= DECREASE_INTERVAL_NANOS) {
+                double previous = limit;
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecreaseNanos = now;
+                log.warn("Graphのスロットリングを検出しました：同時実行数の上限 {} → {}、{}ms一時停止",
+                        (int) previous, (int) limit, pause.toMillis());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 現在の同時実行数の上限
+     */
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 送信中の呼び出し数（共有レートの待機中を含む）
+     */
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 送信待ちの呼び出し数（一時停止・同時実行数・共有レートの待機中）
+     */
+    public int queued() {
+        return queued.get();
+    }
+
+    /**
+     * 上限・待機数の指標（app.graph.gate.*）
+     * <p>
+     * MeterBinder Beanにすると、MeterRegistry → 本ゲート → 共有レートのRedis → MeterRegistry（Lettuce指標）の
+     * 循環依存になるため、Bean定義側で明示的に登録する。
+     */
+    public void bindMetrics(MeterRegistry registry) {
+        Gauge.builder("app.graph.gate.limit", this, GraphCallGate::limit)
+                .description("Graph呼び出しの同時実行数の上限（AIMDで調整）").register(registry);
+        Gauge.builder("app.graph.gate.in_flight", this, GraphCallGate::inFlight)
+                .description("送信中のGraph呼び出し数").register(registry);
+        Gauge.builder("app.graph.gate.queued", this, GraphCallGate::queued)
+                .description("送信待ちのGraph呼び出し数").register(registry);
+        FunctionCounter.builder("app.graph.gate.throttled", throttled, LongAdder::sum)
+                .description("Graphのスロットリング（429/503）の検出回数").register(registry);
+        waitTimer = Timer.builder("app.graph.gate.wait")
+                .description("Graph呼び出しの送信までの待機時間").register(registry);
+    }
+
+    private void awaitPause(long deadline) throws InterruptedIOException {
+        long waitMillis;
+        while ((waitMillis = pausedUntilMillis - System.currentTimeMillis()) > 0) {
+            sleep(waitMillis, deadline, "スロットリングの一時停止");
+        }
+    }
+
+    private int acquire(long deadline) throws InterruptedIOException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new InterruptedIOException("Graph呼び出しの同時実行数が上限（" + (int) limit + "）に達し、"
+                            + acquireTimeout.toMillis() + "ms待機しても送信できませんでした");
+                }
+                released.awaitNanos(remaining);
+            }
+            return inFlight++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Graph呼び出しの送信待ち中に中断されました");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitSharedBudget(int cost, long deadline) throws InterruptedIOException {
+        if (sharedBucket == null) {
+            return;
+        }
+        long waitMillis;
+        while ((waitMillis = sharedBucket.tryAcquire(cost)) > 0) {
+            sleep(waitMillis, deadline, "共有レートの待機");
+        }
+    }
+
+    // 上限近くまで使っていた呼び出しの成功のみで増やす（余裕がある間に上限だけが増え続けないように）
+    private void release(boolean success, int inFlightAtStart) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (success && inFlightAtStart + 1 >= limit / 2) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sleep(long waitMillis, long deadline, String reason) throws InterruptedIOException {
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (waitMillis > remainingMillis) {
+            throw new InterruptedIOException("Graph呼び出しの" + reason + "（" + waitMillis + "ms）が送信待ちの上限（"
+                    + acquireTimeout.toMillis() + "ms）を超えます");
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(waitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Graph呼び出しの" + reason + "中に中断されました");
+        }
+    }
+
+    private static int parseCost(String value) {
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package jp.adsur.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Microsoft Graph呼び出しのレイテンシ計測（タイマー：app.graph.requests）
+ * <p>
+ * Graph SDKとRestTemplateが共用するOkHttpクライアントのネットワークインターセプターとして計測し、
+ * URLをIDを含まない操作名に正規化してタグ付けする
+ * （例：/v1.0/groups/{id}/members/$ref、/v1.0/users/delta）。
+ * タグ：operation（正規化したパス）、method、status（HTTPステータス、通信エラー時はIO_ERROR）
+ */
+public final class GraphRequestMetrics {
+
+    static final String METRIC_NAME = "app.graph.requests";
+
+    // オブジェクトID（GUID）またはUPN（@を含む）のパスセグメント
+    private static final Pattern ID_SEGMENT = Pattern.compile(
+            "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$|.*@.*|.*%40.*");
+
+    private final MeterRegistry meterRegistry;
+
+    public GraphRequestMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 共用OkHttpクライアント用のインターセプター（SDKの再試行は1回ずつ計測される）
+     */
+    public Interceptor okHttpInterceptor() {
+        return chain -> {
+            Request request = chain.request();
+            long start = System.nanoTime();
+            String status = "IO_ERROR";
+            try {
+                Response response = chain.proceed(request);
+                status = String.valueOf(response.code());
+                return response;
+            } finally {
+                record(request.method(), request.url().encodedPath(), status, System.nanoTime() - start);
+            }
+        };
+    }
+
+    private void record(String method, String path, String status, long elapsedNanos) {
+        Timer.builder(METRIC_NAME)
+                .description("Microsoft Graph APIの呼び出し時間")
+                .tag("operation", normalize(path))
+                .tag("method", method.toUpperCase(Locale.ROOT))
+                .tag("status", status)
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * パスからIDを除去して操作名に正規化（タグのカーディナリティを抑える）
+     */
+    static String normalize(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        StringBuilder operation = new StringBuilder();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            operation.append('/');
+            if (ID_SEGMENT.matcher(segment).matches()) {
+                operation.append("{id}");
+            } else if (segment.startsWith("microsoft.graph.")) {
+                // SDKのnextLink/deltaLinkは関数名の完全修飾形式（microsoft.graph.delta()）になる
+                operation.append(segment.substring("microsoft.graph.".length()).replace("()", ""));
+            } else {
+                operation.append(segment);
+            }
+        }
+        return operation.length() == 0 ? "/" : operation.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package jp.adsur.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jp.adsur.db.ConcurrencyLimitedDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * JDBC并发保护：将DataSource包装为ConcurrencyLimitedDataSource，同时使用的连接数不超过Hikari连接池上限
+ * 虚拟线程模式（app.virtual-threads.enabled=true）下默认启用，也可单独通过app.jdbc.concurrency-guard.enabled控制
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "app.jdbc.concurrency-guard", name = "enabled",
+        havingValue = "true")
+public class JdbcConcurrencyGuardConfig {
+
+    @Bean
+    public static BeanPostProcessor jdbcConcurrencyGuardPostProcessor(Environment environment) {
+        Duration acquireTimeout = environment.getProperty("app.jdbc.concurrency-guard.acquire-timeout",
+                Duration.class, Duration.ofSeconds(5));
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof HikariDataSource hikariDataSource)) {
+                    return bean;
+                }
+                // 许可数 = 连接池最大连接数
+                int maxConcurrency = hikariDataSource.getMaximumPoolSize();
+                log.info("JDBC并发保护已启用：最大并发={}, 等待上限={}ms", maxConcurrency, acquireTimeout.toMillis());
+                return new ConcurrencyLimitedDataSource(hikariDataSource, maxConcurrency, acquireTimeout);
+            }
+        };
+    }
+
+    /**
+     * 许可的使用状况（app.jdbc.concurrency_guard.*），与Hikari的hikaricp.connections.pending一起确认等待情况
+     */
+    @Bean
+    public MeterBinder jdbcConcurrencyGuardMetrics(ObjectProvider<DataSource> dataSources) {
+        return registry -> dataSources.orderedStream()
+                .filter(ConcurrencyLimitedDataSource.class::isInstance)
+                .map(ConcurrencyLimitedDataSource.class::cast)
+                .findFirst()
+                .ifPresent(dataSource -> {
+                    Gauge.builder("app.jdbc.concurrency_guard.available", dataSource, ConcurrencyLimitedDataSource::availablePermits)
+                            .description("可用的许可数").register(registry);
+                    Gauge.builder("app.jdbc.concurrency_guard.waiting", dataSource, ConcurrencyLimitedDataSource::queueLength)
+                            .description("等待许可的线程数").register(registry);
+                });
+    }
+}
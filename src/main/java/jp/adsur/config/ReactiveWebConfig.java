@@ -0,0 +1,22 @@
+package jp.adsur.config;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * 非阻塞运行模式（spring.profiles.active=reactive）的Web服务器配置
+ * <p>
+ * classpath上同时存在Tomcat（Servlet模式）和Reactor Netty，
+ * Spring Boot默认会优先选择Tomcat作为响应式服务器，此处显式指定Netty，以事件循环线程处理请求。
+ */
+@Profile("reactive")
+@Configuration
+public class ReactiveWebConfig {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
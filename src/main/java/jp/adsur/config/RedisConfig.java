@@ -1,37 +1,150 @@
-//package jp.adsur.config;
-//
-//import com.azure.identity.DefaultAzureCredential;
-//import com.azure.identity.DefaultAzureCredentialBuilder;
-//import com.azure.core.credential.AccessToken;
-//import com.azure.core.credential.TokenRequestContext;
-//import io.lettuce.core.RedisClient;
-//import io.lettuce.core.RedisURI;
-//import org.springframework.context.annotation.Bean;
-//import org.springframework.context.annotation.Configuration;
-//
-//@Configuration
-//public class RedisConfig {
-//
-//    private static final String REDIS_SCOPE =
-//            "https://redis.azure.com/.default";
-//
-//    @Bean
-//    public RedisClient redisClient() {
-//
-//        DefaultAzureCredential credential =
-//                new DefaultAzureCredentialBuilder().build();
-//
-//        // ① 只在这里获取 token
-//        AccessToken token = credential.getToken(
-//                new TokenRequestContext().addScopes(REDIS_SCOPE)
-//        ).block();
-//
-//        RedisURI redisURI = RedisURI.builder()
-//                .withHost("bms-dev-cache-002.japanwest.redis.azure.net")
-//                .withPort(10000)
-//                .withPassword(token.getToken().toCharArray())
-//                .build();
-//
-//        return RedisClient.create(redisURI);
-//    }
-//}
+package jp.adsur.config;
+
+import com.azure.identity.DefaultAzureCredential;
+import com.azure.identity.DefaultAzureCredentialBuilder;
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.resource.ClientResources;
+import jp.adsur.service.AccessTokenManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Azure Cache for RedisのEntra ID認証（app.redis.entra-auth.enabled=trueの場合のみ有効）
+ * <p>
+ * トークンはAccessTokenManagerが有効期限前に更新し、更新のたびに
+ * 新規接続用のRedisURIのパスワードを差し替え、接続中の共有接続にはAUTHを再送する。
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "app.redis.entra-auth", name = "enabled", havingValue = "true")
+public class RedisConfig {
+
+    private static final String REDIS_SCOPE =
+            "https://redis.azure.com/.default";
+
+    @Value("${app.redis.entra-auth.host:bms-dev-cache-002.japanwest.redis.azure.net}")
+    private String host;
+
+    @Value("${app.redis.entra-auth.port:10000}")
+    private int port;
+
+    // Entra認証のユーザー名（マネージドIDまたはサービスプリンシパルのオブジェクトID）
+    @Value("${app.redis.entra-auth.username}")
+    private String username;
+
+    @Value("${app.redis.entra-auth.timeout:30s}")
+    private Duration timeout;
+
+    @Bean
+    public LettuceConnectionFactory redisConnectionFactory(AccessTokenManager accessTokenManager,
+                                                           ClientResources clientResources) {
+
+        DefaultAzureCredential credential =
+                new DefaultAzureCredentialBuilder().build();
+        accessTokenManager.register(REDIS_SCOPE, credential);
+
+        RedisURI redisURI = RedisURI.builder()
+                .withHost(host)
+                .withPort(port)
+                .withSsl(true)
+                .withAuthentication(username, accessTokenManager.getToken(REDIS_SCOPE))
+                .withTimeout(timeout)
+                .build();
+
+        RedisStandaloneConfiguration standaloneConfiguration = new RedisStandaloneConfiguration(host, port);
+        // Spring Boot管理のClientResourcesを使用（Micrometerのコマンドレイテンシ計測が有効になる）
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
+                .clientResources(clientResources)
+                .useSsl()
+                .and()
+                .commandTimeout(timeout)
+                .build();
+        TokenRotatingLettuceConnectionFactory connectionFactory =
+                new TokenRotatingLettuceConnectionFactory(standaloneConfiguration, clientConfiguration, redisURI);
+
+        // トークン更新時：新規接続用のパスワードを差し替え、共有接続は再認証
+        accessTokenManager.addRefreshListener(REDIS_SCOPE,
+                token -> connectionFactory.reauthenticate(username, token.getToken()));
+        return connectionFactory;
+    }
+
+    /**
+     * 可変のRedisURIでRedisClientを生成し、トークン更新時に再認証できるLettuceConnectionFactory
+     */
+    static class TokenRotatingLettuceConnectionFactory extends LettuceConnectionFactory {
+
+        private final RedisURI redisURI;
+        // 共有接続以外にトークン更新時に再認証する接続（ニアキャッシュの専用接続など）
+        private final Set<StatefulRedisConnection<?, ?>> reauthenticationTargets = ConcurrentHashMap.newKeySet();
+
+        TokenRotatingLettuceConnectionFactory(RedisStandaloneConfiguration standaloneConfiguration,
+                                              LettuceClientConfiguration clientConfiguration,
+                                              RedisURI redisURI) {
+            super(standaloneConfiguration, clientConfiguration);
+            this.redisURI = redisURI;
+        }
+
+        @Override
+        protected AbstractRedisClient createClient() {
+            RedisClient client = getClientResources() != null
+                    ? RedisClient.create(getClientResources(), redisURI)
+                    : RedisClient.create(redisURI);
+            getClientConfiguration().getClientOptions().ifPresent(client::setOptions);
+            return client;
+        }
+
+        /**
+         * 新規接続用のRedisURI（トークン更新時にパスワードが差し替わる）
+         */
+        RedisURI redisURI() {
+            return redisURI;
+        }
+
+        /**
+         * トークン更新時に再認証する接続を登録（閉じた接続は次回の更新時に除外）
+         */
+        void addReauthenticationTarget(StatefulRedisConnection<?, ?> connection) {
+            reauthenticationTargets.add(connection);
+        }
+
+        void reauthenticate(String username, String token) {
+            // 新規接続・再接続で使用する資格情報を更新
+            redisURI.setUsername(username);
+            redisURI.setPassword((CharSequence) token);
+            reauthenticationTargets.removeIf(connection -> !connection.isOpen());
+            reauthenticationTargets.forEach(connection -> connection.async().auth(username, token)
+                    .whenComplete((reply, e) -> {
+                        if (e != null) {
+                            log.warn("Redis接続の再認証に失敗しました（再接続時に新しいトークンを使用）：{}", e.getMessage());
+                        }
+                    }));
+            if (getNativeClient() == null || !getShareNativeConnection()) {
+                return;
+            }
+            try {
+                // AUTH成功時にLettuceが接続状態の資格情報も更新するため、以降の自動再接続も新しいトークンを使用する
+                StatefulRedisConnection<byte[], byte[]> sharedConnection = getSharedConnection();
+                if (sharedConnection != null) {
+                    sharedConnection.sync().auth(username, token);
+                    log.info("Redis共有接続を新しいトークンで再認証しました");
+                }
+            } catch (Exception e) {
+                log.error("Redis共有接続の再認証に失敗しました。接続をリセットします", e);
+                resetConnection();
+            }
+        }
+    }
+}
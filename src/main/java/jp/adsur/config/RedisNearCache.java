@@ -0,0 +1,249 @@
+package jp.adsur.config;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.lettuce.core.resource.ClientResources;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redisのクライアントサイドキャッシュ（RESP3のCLIENT TRACKINGによるニアキャッシュ、app.redis.near-cache.enabled=trueの場合のみ有効）
+ * <p>
+ * 専用のRESP3接続でGETした値をローカル（Caffeine、件数上限付き）に保持し、
+ * いずれかのインスタンスがそのキーを更新・削除・期限切れにするとRedisからinvalidateがプッシュされてローカルから削除する。
+ * ヒット時はRedisへの往復なしで、他のインスタンスの更新も（プッシュの到達後は）反映される。
+ * <ul>
+ *     <li>読み込み中に無効化が届いた場合は、読み込んだ値をキャッシュしない（古い値の固定化を防止）</li>
+ *     <li>切断中は無効化を受け取れないため、ローカルを全削除してRedisへ直接読み込み、再接続・TRACKING再有効化後に再開する</li>
+ *     <li>RESP3・CLIENT TRACKINGに未対応のサーバー（Redis 6未満）では無効化し、常にRedisへ直接読み込む</li>
+ * </ul>
+ * 無効化のプッシュが失われた場合に備え、ローカルの値はmax-ttl経過で破棄する。
+ * ローカル側の保持・無効化・一時停止は{@link TrackedLocalCache}が行う。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.redis.near-cache", name = "enabled", havingValue = "true")
+public class RedisNearCache {
+
+    private final LettuceConnectionFactory connectionFactory;
+    private final ClientResources clientResources;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long maxSize;
+    private final TrackedLocalCache local;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+
+    private RedisClient client;
+    private volatile StatefulRedisConnection<String, String> connection;
+
+    public RedisNearCache(LettuceConnectionFactory connectionFactory,
+                          ClientResources clientResources,
+                          StringRedisTemplate stringRedisTemplate,
+                          ObjectProvider<MeterRegistry> meterRegistry,
+                          @Value("${app.redis.near-cache.max-size:10000}") long maxSize,
+                          @Value("${app.redis.near-cache.max-ttl:10m}") Duration maxTtl) {
+        this.connectionFactory = connectionFactory;
+        this.clientResources = clientResources;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.maxSize = maxSize;
+        this.local = new TrackedLocalCache(maxSize, maxTtl);
+        // MeterBinderにするとMeterRegistry → Lettuce指標 → 接続ファクトリの循環依存になるため、構築時に登録
+        meterRegistry.ifAvailable(this::bindMetrics);
+    }
+
+    @PostConstruct
+    void start() {
+        client = RedisClient.create(clientResources, redisURI());
+        // プッシュ型の無効化通知はRESP3の接続でのみ受信できる
+        client.setOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP3).build());
+        client.addListener(new RedisConnectionStateListener() {
+            @Override
+            public void onRedisConnected(RedisChannelHandler<?, ?> channel, SocketAddress socketAddress) {
+                // 初回接続時はstart()でTRACKINGを有効化する
+                if (connection != null) {
+                    enableTracking();
+                }
+            }
+
+            @Override
+            public void onRedisDisconnected(RedisChannelHandler<?, ?> channel) {
+                suspend("接続が切断されました");
+            }
+
+            @Override
+            public void onRedisExceptionCaught(RedisChannelHandler<?, ?> channel, Throwable cause) {
+            }
+        });
+        try {
+            StatefulRedisConnection<String, String> trackingConnection = client.connect(StringCodec.UTF8);
+            trackingConnection.addListener(local::onPushMessage);
+            trackingConnection.sync().clientTracking(TrackingArgs.Builder.enabled());
+            connection = trackingConnection;
+            local.resume();
+            if (connectionFactory instanceof RedisConfig.TokenRotatingLettuceConnectionFactory tokenRotating) {
+                tokenRotating.addReauthenticationTarget(trackingConnection);
+            }
+            log.info("Redisニアキャッシュを有効化しました（CLIENT TRACKING）：最大件数={}", maxSize);
+        } catch (Exception e) {
+            log.warn("Redisニアキャッシュを無効化します（RESP3・CLIENT TRACKINGに未対応、または接続失敗）：{}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        local.suspend();
+        if (connection != null) {
+            connection.close();
+        }
+        client.shutdown();
+    }
+
+    /**
+     * キーの値を取得（ローカルにあればRedisへの往復なし）
+     * @return 値（存在しない場合はnull）
+     */
+    public String get(String key) {
+        StatefulRedisConnection<String, String> trackingConnection = connection;
+        if (!local.isActive() || trackingConnection == null) {
+            bypassed.increment();
+            return stringRedisTemplate.opsForValue().get(key);
+        }
+        Optional<String> cached = local.getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+            return cached.orElse(null);
+        }
+        misses.increment();
+        Object marker = local.beginLoad(key);
+        // TRACKINGを有効にした接続で読み込むことで、以降の更新がこの接続に通知される
+        String value = trackingConnection.sync().get(key);
+        // 読み込み中に無効化されていない場合のみ保持
+        local.completeLoad(key, marker, value);
+        return value;
+    }
+
+    /**
+     * 値を設定し、このインスタンスのローカルからも即時削除する（他のインスタンスには無効化がプッシュされる）
+     */
+    public void set(String key, String value, Duration ttl) {
+        if (ttl != null) {
+            stringRedisTemplate.opsForValue().set(key, value, ttl);
+        } else {
+            stringRedisTemplate.opsForValue().set(key, value);
+        }
+        local.invalidate(key);
+    }
+
+    /**
+     * キーを削除し、このインスタンスのローカルからも即時削除する
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        local.invalidate(key);
+    }
+
+    /**
+     * 現在の統計（ヒット率、無効化件数）
+     */
+    public Stats stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        return new Stats(local.isActive(), local.size(), hitCount, missCount, bypassed.sum(), local.invalidations(),
+                total > 0 ? (double) hitCount / total : 0);
+    }
+
+    // 再接続後はサーバー側の追跡が失われているため、TRACKINGを再度有効にしてから再開する
+    private void enableTracking() {
+        connection.async().clientTracking(TrackingArgs.Builder.enabled()).whenComplete((reply, e) -> {
+            if (e != null) {
+                log.warn("再接続後のCLIENT TRACKINGの有効化に失敗しました。Redisへ直接読み込みます：{}", e.getMessage());
+                return;
+            }
+            local.resume();
+            log.info("再接続後にRedisニアキャッシュを再開しました");
+        });
+    }
+
+    private void suspend(String reason) {
+        // 切断中の更新は通知されないため、保持中の値はすべて破棄
+        if (!local.suspend()) {
+            return;
+        }
+        log.warn("Redisニアキャッシュを一時停止しました（{}）。再接続までRedisへ直接読み込みます", reason);
+    }
+
+    // Entra認証の場合は共有接続と同じ（トークン更新で差し替わる）RedisURI、それ以外は接続ファクトリの設定から生成
+    private RedisURI redisURI() {
+        if (connectionFactory instanceof RedisConfig.TokenRotatingLettuceConnectionFactory tokenRotating) {
+            return tokenRotating.redisURI();
+        }
+        RedisStandaloneConfiguration standalone = connectionFactory.getStandaloneConfiguration();
+        RedisURI.Builder builder = RedisURI.builder()
+                .withHost(standalone.getHostName())
+                .withPort(standalone.getPort())
+                .withDatabase(standalone.getDatabase())
+                .withSsl(connectionFactory.isUseSsl())
+                .withTimeout(Duration.ofMillis(connectionFactory.getTimeout()));
+        standalone.getPassword().toOptional().ifPresent(password -> {
+            if (standalone.getUsername() != null) {
+                builder.withAuthentication(standalone.getUsername(), password);
+            } else {
+                builder.withPassword(password);
+            }
+        });
+        return builder.build();
+    }
+
+    private void bindMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("app.redis.near_cache.requests", hits, LongAdder::sum)
+                .description("ニアキャッシュの読み込み件数").tag("result", "hit").register(registry);
+        FunctionCounter.builder("app.redis.near_cache.requests", misses, LongAdder::sum)
+                .description("ニアキャッシュの読み込み件数").tag("result", "miss").register(registry);
+        FunctionCounter.builder("app.redis.near_cache.requests", bypassed, LongAdder::sum)
+                .description("ニアキャッシュの読み込み件数").tag("result", "bypass").register(registry);
+        FunctionCounter.builder("app.redis.near_cache.invalidations", local, TrackedLocalCache::invalidations)
+                .description("Redisからプッシュされた無効化の件数").register(registry);
+        Gauge.builder("app.redis.near_cache.size", local, TrackedLocalCache::size)
+                .description("ニアキャッシュの件数（推定値）").register(registry);
+    }
+
+    /**
+     * ニアキャッシュの統計
+     * @param tracking      無効化通知を受信中（falseの間はRedisへ直接読み込み）
+     * @param size          ローカルの件数（推定値）
+     * @param hits          ローカルのヒット件数
+     * @param misses        Redisから読み込んだ件数
+     * @param bypassed      無効化通知の停止中にRedisへ直接読み込んだ件数
+     * @param invalidations 無効化の件数
+     * @param hitRate       ヒット率（ヒット /（ヒット + ミス））
+     */
+    public record Stats(boolean tracking, long size, long hits, long misses, long bypassed, long invalidations,
+                        double hitRate) {
+    }
+}
@@ -0,0 +1,36 @@
+package jp.adsur.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection.PipeliningFlushPolicy;
+
+/**
+ * パイプライン実行時のLettuceコマンドキューのフラッシュ方針
+ * <p>
+ * デフォルト（flushEachCommand）はパイプライン中でもコマンドごとにソケットへ書き込むため、
+ * executePipelined内のコマンドを app.redis.bulk.flush-batch-size 件ずつまとめて書き込むように変更する。
+ * RedisConfig（Entra ID認証）のLettuceConnectionFactoryにも適用される。
+ */
+@Slf4j
+@Configuration
+public class RedisPipeliningConfig {
+
+    @Bean
+    public static BeanPostProcessor redisPipeliningFlushPolicyPostProcessor(Environment environment) {
+        int flushBatchSize = environment.getProperty("app.redis.bulk.flush-batch-size", Integer.class, 1000);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof LettuceConnectionFactory connectionFactory && flushBatchSize > 1) {
+                    connectionFactory.setPipeliningFlushPolicy(PipeliningFlushPolicy.buffered(flushBatchSize));
+                    log.info("Redisパイプラインのフラッシュ単位を設定しました：{}件", flushBatchSize);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,118 @@
+package jp.adsur.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 全インスタンスで共有するトークンバケット（Redis、Luaスクリプトで補充と取得を1往復で実行）
+ * <ul>
+ *     <li>{prefix}bucket：残りトークン数と最終補充時刻（ミリ秒）のハッシュ。rate-per-second/秒で補充、最大burst</li>
+ *     <li>{prefix}pause：一時停止（Retry-After）。存在する間はトークンを払い出さず、残り時間を待機時間として返す</li>
+ * </ul>
+ * 補充時刻は呼び出し元の時計を使う（インスタンス間の時計のずれは補充の遅れになるだけで、上限は超えない）。
+ * Redisに接続できない場合は制限せずに通過させる（各インスタンスの同時実行数の制限のみが効く）。
+ */
+@Slf4j
+public final class RedisTokenBucket {
+
+    // 取得できた場合は0、できない場合は次に取得できるまでの待機ミリ秒
+    private static final RedisScript<Long> ACQUIRE = new DefaultRedisScript<>("""
+            local pause = redis.call('PTTL', KEYS[2])
+            if pause > 0 then
+                return pause
+            end
+            local rate = tonumber(ARGV[1])
+            local capacity = tonumber(ARGV[2])
+            local now = tonumber(ARGV[3])
+            local cost = tonumber(ARGV[4])
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(state[1]) or capacity
+            local ts = tonumber(state[2]) or now
+            if now > ts then
+                tokens = math.min(capacity, tokens + (now - ts) * rate / 1000)
+                ts = now
+            end
+            local wait = 0
+            if tokens >= cost then
+                tokens = tokens - cost
+            else
+                wait = math.ceil((cost - tokens) * 1000 / rate)
+            end
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(ts))
+            redis.call('PEXPIRE', KEYS[1], math.ceil(capacity * 1000 / rate) + 1000)
+            return wait""", Long.class);
+
+    // 一時停止を設定（既存の一時停止の方が長い場合は変更しない）
+    private static final RedisScript<Long> PAUSE = new DefaultRedisScript<>("""
+            if redis.call('PTTL', KEYS[1]) < tonumber(ARGV[1]) then
+                redis.call('SET', KEYS[1], '1', 'PX', ARGV[1])
+                return 1
+            end
+            return 0""", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final List<String> keys;
+    private final String pauseKey;
+    private final double ratePerSecond;
+    private final int burst;
+
+    // Redis障害のログを状態が変わったときのみ出力する
+    private volatile boolean failing;
+
+    public RedisTokenBucket(StringRedisTemplate stringRedisTemplate, String keyPrefix, double ratePerSecond, int burst) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.keys = List.of(keyPrefix + "bucket", keyPrefix + "pause");
+        this.pauseKey = keyPrefix + "pause";
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+    }
+
+    /**
+     * トークンを取得する
+     * @param cost 取得するトークン数（burstを超える場合はburstとして扱う）
+     * @return 0：取得済み、正の値：取得できなかったため待機すべきミリ秒（一時停止中は残り時間）
+     */
+    public long tryAcquire(int cost) {
+        try {
+            Long wait = stringRedisTemplate.execute(ACQUIRE, keys, String.valueOf(ratePerSecond),
+                    String.valueOf(burst), String.valueOf(System.currentTimeMillis()),
+                    String.valueOf(Math.min(Math.max(cost, 1), burst)));
+            recovered();
+            return wait == null ? 0 : wait;
+        } catch (Exception e) {
+            failed(e);
+            return 0;
+        }
+    }
+
+    /**
+     * 全インスタンスのトークン払い出しを一時停止する（Retry-After）
+     */
+    public void pause(Duration duration) {
+        try {
+            stringRedisTemplate.execute(PAUSE, List.of(pauseKey), String.valueOf(duration.toMillis()));
+            recovered();
+        } catch (Exception e) {
+            failed(e);
+        }
+    }
+
+    private void failed(Exception e) {
+        if (!failing) {
+            failing = true;
+            log.warn("共有レート制限のRedisにアクセスできません。インスタンスごとの制限のみで送信します：{}", e.getMessage());
+        }
+    }
+
+    private void recovered() {
+        if (failing) {
+            failing = false;
+            log.info("共有レート制限のRedisへのアクセスが回復しました");
+        }
+    }
+}
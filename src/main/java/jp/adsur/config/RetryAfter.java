@@ -0,0 +1,47 @@
+package jp.adsur.config;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Retry-Afterヘッダーの解釈（{@link GraphCallGate}・デルタ同期・$batchの再試行で共通）
+ * <p>
+ * 同じ応答から同じ待機時間を求めるため、Retry-Afterの解釈はすべてここで行う。
+ */
+public final class RetryAfter {
+
+    private RetryAfter() {
+    }
+
+    /**
+     * Retry-Afterの値（秒数、またはHTTP日付）を待機時間に変換する
+     * @return 待機時間（過去の日付は0）、解釈できない場合はnull（呼び出し元の既定の待機時間を使う）
+     */
+    public static Duration parse(String value, Instant now) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        if (trimmed.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            try {
+                return Duration.ofSeconds(Long.parseLong(trimmed));
+            } catch (NumberFormatException e) {
+                // long に収まらない秒数は呼び出し元の上限で丸められる値として扱う
+                return ChronoUnit.FOREVER.getDuration();
+            }
+        }
+        try {
+            Instant until = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return until.isAfter(now) ? Duration.between(now, until) : Duration.ZERO;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
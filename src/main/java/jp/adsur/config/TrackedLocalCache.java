@@ -0,0 +1,139 @@
+package jp.adsur.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link RedisNearCache}のローカル側（値の保持、読み込み中の目印、無効化の適用、一時停止・再開）
+ * <p>
+ * Redisへの接続を持たないため、無効化のプッシュと読み込みの競合をRESP3のサーバーなしで検証できる。
+ * <ul>
+ *     <li>読み込みは{@link #beginLoad}で目印を登録し、{@link #completeLoad}で目印が残っている場合のみ値を保持する
+ *         （読み込み中に無効化・全削除・一時停止があった値は保持しない）</li>
+ *     <li>一時停止中（{@link #isActive()}がfalse）は値を保持せず、呼び出し側はRedisへ直接読み込む</li>
+ * </ul>
+ */
+final class TrackedLocalCache {
+
+    // 値が存在しないキーもOptional.empty()として保持（TRACKINGは存在しないキーの読み込みも追跡する）
+    private final Cache<String, Optional<String>> cache;
+    // 読み込み中のキー → 読み込みごとの目印（無効化されると削除され、その読み込み結果は保持しない）
+    private final Map<String, Object> loading = new ConcurrentHashMap<>();
+    private final LongAdder invalidations = new LongAdder();
+    private volatile boolean active;
+
+    TrackedLocalCache(long maxSize, Duration maxTtl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(maxTtl)
+                .build();
+    }
+
+    /**
+     * 無効化通知を受信中か（falseの間は値を保持しない）
+     */
+    boolean isActive() {
+        return active;
+    }
+
+    /**
+     * 保持中の値（未保持はnull、値が存在しないキーはOptional.empty()）
+     */
+    Optional<String> getIfPresent(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * 読み込みの開始：このキーの読み込みの目印を登録して返す
+     */
+    Object beginLoad(String key) {
+        Object marker = new Object();
+        loading.put(key, marker);
+        return marker;
+    }
+
+    /**
+     * 読み込みの完了：目印が残っている（読み込み中に無効化されていない）場合のみ値を保持する
+     * （無効化の処理とはキー単位で排他）
+     */
+    void completeLoad(String key, Object marker, String value) {
+        loading.computeIfPresent(key, (k, current) -> {
+            if (current != marker) {
+                return current;
+            }
+            if (active) {
+                cache.put(key, Optional.ofNullable(value));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * キーの値と読み込み中の目印を削除
+     */
+    void invalidate(String key) {
+        loading.remove(key);
+        cache.invalidate(key);
+    }
+
+    /**
+     * Redisからのinvalidateプッシュを適用：[invalidate, [キー...]]、キーがnullの場合はFLUSHALL等による全削除
+     */
+    void onPushMessage(PushMessage message) {
+        if (!"invalidate".equals(message.getType())) {
+            return;
+        }
+        List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+        Object keys = content.size() > 1 ? content.get(1) : null;
+        if (keys instanceof List<?> keyList) {
+            keyList.forEach(key -> invalidate((String) key));
+            invalidations.add(keyList.size());
+        } else {
+            clear();
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * 一時停止（切断中の更新は通知されないため、保持中の値と読み込み中の目印をすべて破棄）
+     * @return 受信中から一時停止に変わった場合はtrue
+     */
+    boolean suspend() {
+        if (!active) {
+            return false;
+        }
+        active = false;
+        clear();
+        return true;
+    }
+
+    /**
+     * 再開（TRACKINGの有効化後：停止前・停止中に読み込んだ値は保持しない）
+     */
+    void resume() {
+        clear();
+        active = true;
+    }
+
+    long size() {
+        return cache.estimatedSize();
+    }
+
+    long invalidations() {
+        return invalidations.sum();
+    }
+
+    private void clear() {
+        loading.clear();
+        cache.invalidateAll();
+    }
+}
@@ -1,65 +1,122 @@
 package jp.adsur.controller;
 
 import jp.adsur.controller.pojo.Greeting;
+import jp.adsur.db.UserInfoBatchLoader;
+import jp.adsur.service.DistributedCounterService;
+import jp.adsur.service.UserInfoCacheService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.OptionalLong;
 
+// Servlet（JDBC）模式的接口，reactive Profile由ReactiveDBTestController提供
+@Slf4j
+@Profile("!reactive")
 @RestController
 public class DBTestController {
 
     private final JdbcTemplate jdbcTemplate;
+    private final UserInfoCacheService userInfoCacheService;
+    private final UserInfoBatchLoader userInfoBatchLoader;
+    private final DistributedCounterService distributedCounterService;
 
     private static final String template = "Hello, %s!";
-    private final AtomicLong counter = new AtomicLong();
+    // 响应编号的序列名和请求数的计数器名（所有实例共享）
+    private static final String GREETING_COUNTER = "greeting";
 
     // 构造器注入JdbcTemplate（复用application.yml中的PostgreSQL配置）
-    public DBTestController(JdbcTemplate jdbcTemplate) {
+    public DBTestController(JdbcTemplate jdbcTemplate, UserInfoCacheService userInfoCacheService,
+                            UserInfoBatchLoader userInfoBatchLoader, DistributedCounterService distributedCounterService) {
         this.jdbcTemplate = jdbcTemplate;
+        this.userInfoCacheService = userInfoCacheService;
+        this.userInfoBatchLoader = userInfoBatchLoader;
+        this.distributedCounterService = distributedCounterService;
     }
 
     @GetMapping("/greeting")
-    public String greeting(@RequestParam(value = "name", defaultValue = "World") String name) {
+    public ResponseEntity<String> greeting(@RequestParam(value = "name", defaultValue = "World") String name) {
         name = queryUserName();
-        return "Hello again. It's time " + counter.incrementAndGet() + " for you, " + name;
+        OptionalLong id = nextGreetingId();
+        if (id.isEmpty()) {
+            return greetingIdUnavailable();
+        }
+        return ResponseEntity.ok("Hello again. It's time " + id.getAsLong() + " for you, " + name);
     }
 
     @GetMapping("/hello")
-    public Greeting hello(@RequestParam(value = "name", defaultValue = "World") String name) {
+    public ResponseEntity<Greeting> hello(@RequestParam(value = "name", defaultValue = "World") String name) {
         name = queryUserName();
-        return new Greeting(counter.incrementAndGet(), String.format(template, name));
+        OptionalLong id = nextGreetingId();
+        if (id.isEmpty()) {
+            return greetingIdUnavailable();
+        }
+        return ResponseEntity.ok(new Greeting(id.getAsLong(), String.format(template, name)));
     }
 
     /**
-     * 【核心修改】使用JdbcTemplate查询PostgreSQL的user_info表（替换原手动JDBC+MySQL逻辑）
-     * @return 姓名（字符串），若查询失败返回错误信息
+     * 响应编号（所有实例唯一，从Redis预约的ID区间中本地分配）+ 全实例请求数计数
+     * @return 编号，区间用尽且在allocate-timeout内无法从Redis获取新区间时为空
      */
-    private String queryUserName() {
-        // 初始化返回结果
-        String userName = "未查询到用户信息";
+    private OptionalLong nextGreetingId() {
+        distributedCounterService.increment(GREETING_COUNTER);
         try {
-            // PostgreSQL的SQL：注意表名/字段名小写（PostgreSQL默认区分大小写，建议统一小写）
-            String sql = "SELECT username FROM user_info WHERE id = ?";
+            return OptionalLong.of(distributedCounterService.nextId(GREETING_COUNTER));
+        } catch (RuntimeException e) {
+            log.warn("响应编号分配失败：{}", e.getMessage());
+            return OptionalLong.empty();
+        }
+    }
 
-            // 使用JdbcTemplate的queryForObject执行参数化查询（避免SQL注入，适配PostgreSQL）
-            // 参数1：SQL语句；参数2：返回值类型；参数3：SQL占位符参数
-            userName = jdbcTemplate.queryForObject(
-                    sql,
-                    String.class,
-                    1 // 查询id=1的用户，可根据需求修改
-            );
+    // 无法分配编号时返回503（不等待Redis超时，客户端按Retry-After重试）
+    private static <T> ResponseEntity<T> greetingIdUnavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .build();
+    }
 
-        } catch (org.springframework.dao.EmptyResultDataAccessException e) {
-            // 捕获「查询无结果」异常，保持原有提示
-            userName = "unknown";
+    /**
+     * 查询PostgreSQL的user_info表（经由本地缓存 + Redis的读穿透缓存，冷key并发时只查询一次DB）
+     * @return 姓名（字符串），若查询失败返回错误信息
+     */
+    private String queryUserName() {
+        try {
+            // 查询id=1的用户，可根据需求修改
+            return userInfoCacheService.findUserName(1L).orElse("unknown");
         } catch (Exception e) {
             // 捕获其他异常（如连接失败、表不存在等），返回错误信息
-            userName = "query failed: " + e.getMessage();
+            return "query failed: " + e.getMessage();
         }
-        return userName;
+    }
+
+    /**
+     * user_info缓存的命中/未命中/加载耗时统计
+     */
+    @GetMapping("/test-db/cache-stats")
+    public UserInfoCacheService.Stats cacheStats() {
+        return userInfoCacheService.stats();
+    }
+
+    /**
+     * user_info请求合并的批次统计（批量查询数 = 连接借用次数）
+     */
+    @GetMapping("/test-db/batch-stats")
+    public UserInfoBatchLoader.Stats batchStats() {
+        return userInfoBatchLoader.stats();
+    }
+
+    /**
+     * /greeting、/hello的全实例请求数（其他实例最多有flush-interval的未反映部分）
+     */
+    @GetMapping("/test-db/request-count")
+    public DistributedCounterService.CounterStats requestCount() {
+        return distributedCounterService.stats(GREETING_COUNTER);
     }
 
     @GetMapping("/test-db")
@@ -1,60 +1,309 @@
-//package jp.adsur.controller;
-//
-//import jp.adsur.service.EntraDeltaQueryService;
-//import jp.adsur.service.EntraGroupUserService;
-//import lombok.RequiredArgsConstructor;
-//import org.springframework.http.ResponseEntity;
-//import org.springframework.web.bind.annotation.*;
-//
-//@RestController
-//@RequestMapping("/api/entra")
-//@RequiredArgsConstructor
-//public class EntraController {
-//
-//    private final EntraGroupUserService entraService;
-//    private final EntraDeltaQueryService deltaQueryService;
-//
-//    /**
-//     * ユーザーデルタクエリを実行
-//     * @param deltaLink デルタリンク（任意パラメータ）
-//     * @return デルタクエリ結果
-//     */
-//    @GetMapping("/user-delta")
-//    public EntraDeltaQueryService.DeltaQueryResult getUserDelta(
-//            @RequestParam(required = false) String deltaLink) {
-//        return deltaQueryService.queryUserDelta(deltaLink);
-//    }
-//
-//    /**
-//     * API1：既存のグループにユーザーを追加
-//     * リクエスト例：POST /api/entra/add-user?groupId=既存のグループID&userEmail=li.cailing@adsur.jp
-//     */
-//    @PostMapping("/add-user")
-//    public String addUser(String groupId, String userEmail) {
-//        try {
-//            // メールアドレスを直接渡す：内部で$filterでObject IDを自動検索
-//            entraService.addUserToGroup(groupId, userEmail);
-//            return "✅ ユーザーの追加に成功しました";
-//        } catch (Exception e) {
-//            return "❌ ユーザーの追加に失敗しました：" + e.getMessage();
-//        }
-//    }
-//
-//    /**
-//     * API2：新規グループを作成してユーザーを追加
-//     * リクエスト例：POST /api/entra/create-group?userEmail={UPN}&groupName=テストグループ&groupDesc=テスト用グループ
-//     */
-//    @PostMapping("/create-group")
-//    public String createGroup(
-//            @RequestParam String userEmail,
-//            @RequestParam String groupName,
-//            @RequestParam String groupDesc
-//    ) {
-//        try {
-//            String groupId = entraService.createNewGroupAndAddUser(userEmail, groupName, groupDesc);
-//            return "✅ 操作に成功しました：新規グループID=" + groupId;
-//        } catch (Exception e) {
-//            return "❌ 操作に失敗しました：" + e.getMessage();
-//        }
-//    }
-//}
\ No newline at end of file
+package jp.adsur.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.graph.models.User;
+import jp.adsur.service.DeltaCheckpointStore;
+import jp.adsur.service.EntraDeltaQueryService;
+import jp.adsur.service.EntraDeltaSyncService;
+import jp.adsur.service.EntraGroupDirectory;
+import jp.adsur.service.EntraGroupUserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+@ConditionalOnProperty(prefix = "azure.entra", name = "tenant-id")
+@Profile("!reactive")
+@RestController
+@RequestMapping("/api/entra")
+@RequiredArgsConstructor
+public class EntraController {
+
+    private final EntraGroupUserService entraService;
+    private final EntraDeltaQueryService deltaQueryService;
+    private final EntraDeltaSyncService deltaSyncService;
+    private final EntraGroupDirectory groupDirectory;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * ユーザーデルタクエリを実行
+     * @param deltaLink デルタリンク（任意パラメータ）
+     * @return デルタクエリ結果
+     */
+    @GetMapping("/user-delta")
+    public EntraDeltaQueryService.DeltaQueryResult getUserDelta(
+            @RequestParam(required = false) String deltaLink) {
+        return deltaQueryService.queryUserDelta(deltaLink);
+    }
+
+    /**
+     * ユーザーデルタクエリをストリーミングで返却（NDJSON：1行1ユーザー、最終行に新しいデルタリンク）
+     * ページ取得ごとに書き出すため、大規模テナントの初回同期でもメモリ使用量はページサイズに収まる
+     * リクエスト例：GET /api/entra/user-delta/stream?deltaLink=...
+     */
+    @GetMapping(value = "/user-delta/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamUserDelta(
+            @RequestParam(required = false) String deltaLink) {
+        StreamingResponseBody body = out -> {
+            EntraDeltaQueryService.DeltaStreamResult result = deltaQueryService.streamUserDelta(deltaLink, page -> {
+                for (User user : page.users()) {
+                    Map<String, Object> line = new LinkedHashMap<>();
+                    line.put("id", user.id);
+                    line.put("displayName", user.displayName);
+                    line.put("userPrincipalName", user.userPrincipalName);
+                    line.put("mail", user.mail);
+                    line.put("removed", EntraDeltaQueryService.isRemoved(user));
+                    writeLine(out, line);
+                }
+                flush(out);
+            });
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("pageCount", result.pageCount());
+            summary.put("userCount", result.userCount());
+            summary.put("newDeltaLink", result.newDeltaLink());
+            writeLine(out, summary);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    /**
+     * バックグラウンド増分同期を即時実行（Redisのチェックポイントから再開）
+     * リクエスト例：POST /api/entra/user-delta/sync
+     */
+    @PostMapping("/user-delta/sync")
+    public EntraDeltaSyncService.SyncStatus syncUserDelta() {
+        return deltaSyncService.syncUsers();
+    }
+
+    /**
+     * 最後の同期結果と現在のチェックポイントを取得
+     */
+    @GetMapping("/user-delta/sync")
+    public Map<String, Object> getSyncStatus() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        DeltaCheckpointStore.Checkpoint checkpoint = deltaSyncService.checkpoint();
+        response.put("lastStatus", deltaSyncService.lastStatus());
+        response.put("hasDeltaLink", checkpoint.deltaLink() != null);
+        response.put("inProgress", checkpoint.nextLink() != null);
+        response.put("checkpointUpdatedAt", checkpoint.updatedAt());
+        return response;
+    }
+
+    /**
+     * チェックポイントを削除（次回の同期はフル同期）
+     */
+    @DeleteMapping("/user-delta/sync")
+    public String resetSyncCheckpoint() {
+        deltaSyncService.resetCheckpoint();
+        return "✅ チェックポイントを削除しました（次回はフル同期）";
+    }
+
+    /**
+     * メンバーがグループに直接所属しているか（テナント同期の投影を参照、Graph呼び出しなし）
+     * リクエスト例：GET /api/entra/groups/{groupId}/members/{memberId}
+     */
+    @GetMapping("/groups/{groupId}/members/{memberId}")
+    public EntraGroupDirectory.MembershipCheck checkMembership(@PathVariable String groupId, @PathVariable String memberId) {
+        return new EntraGroupDirectory.MembershipCheck(
+                groupId, memberId, groupDirectory.isMember(groupId, memberId));
+    }
+
+    /**
+     * メンバーが直接所属しているグループ（groupIdsを指定した場合はグループごとの所属有無）
+     * リクエスト例：GET /api/entra/members/{memberId}/groups?groupIds=A,B
+     */
+    @GetMapping("/members/{memberId}/groups")
+    public Object getMemberGroups(@PathVariable String memberId,
+                                  @RequestParam(required = false) List<String> groupIds) {
+        if (groupIds == null || groupIds.isEmpty()) {
+            return groupDirectory.groupsOf(memberId);
+        }
+        return groupDirectory.memberships(memberId, groupIds);
+    }
+
+    /**
+     * 指定したすべてのグループに所属しているメンバー（SINTER）
+     * リクエスト例：GET /api/entra/groups/members/intersection?groupIds=A,B
+     */
+    @GetMapping("/groups/members/intersection")
+    public Set<String> getCommonMembers(@RequestParam List<String> groupIds) {
+        return groupDirectory.commonMembers(groupIds);
+    }
+
+    /**
+     * 指定したいずれかのグループに所属しているメンバー（SUNION）
+     * リクエスト例：GET /api/entra/groups/members/union?groupIds=A,B
+     */
+    @GetMapping("/groups/members/union")
+    public Set<String> getAnyMembers(@RequestParam List<String> groupIds) {
+        return groupDirectory.anyMembers(groupIds);
+    }
+
+    /**
+     * 指定したすべてのメンバーが所属しているグループ（SINTER）
+     * リクエスト例：GET /api/entra/members/groups/intersection?memberIds=X,Y
+     */
+    @GetMapping("/members/groups/intersection")
+    public Set<String> getCommonGroups(@RequestParam List<String> memberIds) {
+        return groupDirectory.commonGroups(memberIds);
+    }
+
+    /**
+     * テナント同期（users/groups/membershipsを並行実行）を即時実行
+     * リクエスト例：POST /api/entra/tenant-sync
+     */
+    @PostMapping("/tenant-sync")
+    public EntraDeltaSyncService.TenantSyncStatus syncTenant() {
+        return deltaSyncService.syncTenant();
+    }
+
+    /**
+     * 最後のテナント同期結果とストリームごとのチェックポイントを取得
+     */
+    @GetMapping("/tenant-sync")
+    public Map<String, Object> getTenantSyncStatus() {
+        Map<String, Object> streams = new LinkedHashMap<>();
+        deltaSyncService.tenantCheckpoints().forEach((stream, checkpoint) -> {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("hasDeltaLink", checkpoint.deltaLink() != null);
+            state.put("inProgress", checkpoint.nextLink() != null);
+            state.put("checkpointUpdatedAt", checkpoint.updatedAt());
+            streams.put(stream, state);
+        });
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("lastStatus", deltaSyncService.lastTenantStatus());
+        response.put("streams", streams);
+        response.put("leases", deltaSyncService.leaseHolders());
+        return response;
+    }
+
+    /**
+     * 全ストリームのチェックポイントを削除（次回のテナント同期はフル同期）
+     */
+    @DeleteMapping("/tenant-sync")
+    public String resetTenantSyncCheckpoints() {
+        deltaSyncService.resetTenantCheckpoints();
+        return "✅ 全ストリームのチェックポイントを削除しました（次回はフル同期）";
+    }
+
+    /**
+     * API1：既存のグループにユーザーを追加
+     * リクエスト例：POST /api/entra/add-user?groupId=既存のグループID&userEmail=li.cailing@adsur.jp
+     */
+    @PostMapping("/add-user")
+    public String addUser(String groupId, String userEmail) {
+        try {
+            // メールアドレスを直接渡す：内部で$filterでObject IDを自動検索
+            entraService.addUserToGroup(groupId, userEmail);
+            return "✅ ユーザーの追加に成功しました";
+        } catch (Exception e) {
+            return "❌ ユーザーの追加に失敗しました：" + e.getMessage();
+        }
+    }
+
+    /**
+     * API1-2：既存のグループに複数ユーザーを一括追加（$batch / members@odata.bind で20件ずつ）
+     * リクエスト例：POST /api/entra/add-users  {"groupId": "既存のグループID", "userEmails": ["a@adsur.jp", "b@adsur.jp"]}
+     */
+    @PostMapping("/add-users")
+    public ResponseEntity<Map<String, Object>> addUsers(@RequestBody BulkAddRequest request) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        try {
+            List<EntraGroupUserService.MemberAddResult> results =
+                    entraService.addUsersToGroup(request.groupId(), request.userEmails());
+            Map<EntraGroupUserService.MemberAddStatus, Long> summary = results.stream()
+                    .collect(Collectors.groupingBy(EntraGroupUserService.MemberAddResult::status,
+                            () -> new EnumMap<>(EntraGroupUserService.MemberAddStatus.class), Collectors.counting()));
+            response.put("groupId", request.groupId());
+            response.put("summary", summary);
+            response.put("results", results);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("message", "❌ ユーザーの一括追加に失敗しました：" + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * API2：新規グループを作成してユーザーを追加
+     * Azure ADの同期待ちの間はリクエストスレッドを解放し、完了時に応答を返却する（Spring MVCの非同期処理）
+     * リクエスト例：POST /api/entra/create-group?userEmail={UPN}&groupName=テストグループ&groupDesc=テスト用グループ
+     */
+    @PostMapping("/create-group")
+    public CompletableFuture<String> createGroup(
+            @RequestParam String userEmail,
+            @RequestParam String groupName,
+            @RequestParam String groupDesc
+    ) {
+        return entraService.createNewGroupAndAddUser(userEmail, groupName, groupDesc)
+                .thenApply(groupId -> "✅ 操作に成功しました：新規グループID=" + groupId)
+                .exceptionally(e -> "❌ 操作に失敗しました：" + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+    }
+
+    /**
+     * API3：新規グループの作成とユーザー追加を非同期で開始し、操作IDを即時返却（HTTP 202）
+     * リクエスト例：POST /api/entra/create-group-async?userEmail={UPN}&groupName=テストグループ&groupDesc=テスト用グループ
+     */
+    @PostMapping("/create-group-async")
+    public ResponseEntity<EntraGroupUserService.GroupOperationStatus> createGroupAsync(
+            @RequestParam String userEmail,
+            @RequestParam String groupName,
+            @RequestParam String groupDesc
+    ) {
+        EntraGroupUserService.GroupOperationStatus status =
+                entraService.startCreateNewGroupAndAddUser(userEmail, groupName, groupDesc);
+        return ResponseEntity.accepted()
+                .header(HttpHeaders.LOCATION, "/api/entra/operations/" + status.operationId())
+                .body(status);
+    }
+
+    /**
+     * グループ作成操作の進捗を取得
+     * リクエスト例：GET /api/entra/operations/{operationId}
+     */
+    @GetMapping("/operations/{operationId}")
+    public ResponseEntity<EntraGroupUserService.GroupOperationStatus> getOperation(@PathVariable String operationId) {
+        return ResponseEntity.of(entraService.getGroupOperation(operationId));
+    }
+
+    private void writeLine(OutputStream out, Object value) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(value));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flush(OutputStream out) {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 一括追加のリクエストボディ
+     */
+    public record BulkAddRequest(String groupId, List<String> userEmails) {
+    }
+}
@@ -0,0 +1,61 @@
+package jp.adsur.controller;
+
+import jp.adsur.controller.pojo.Greeting;
+import jp.adsur.db.ReactiveUserInfoRepository;
+import jp.adsur.service.ReactiveUserInfoCacheService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// reactive Profile（WebFlux + R2DBC）的接口，与DBTestController的路径和返回内容相同
+@Profile("reactive")
+@RestController
+public class ReactiveDBTestController {
+
+    private final ReactiveUserInfoRepository userInfoRepository;
+    private final ReactiveUserInfoCacheService userInfoCacheService;
+
+    private static final String template = "Hello, %s!";
+    private final AtomicLong counter = new AtomicLong();
+
+    public ReactiveDBTestController(ReactiveUserInfoRepository userInfoRepository,
+                                    ReactiveUserInfoCacheService userInfoCacheService) {
+        this.userInfoRepository = userInfoRepository;
+        this.userInfoCacheService = userInfoCacheService;
+    }
+
+    @GetMapping("/greeting")
+    public Mono<String> greeting(@RequestParam(value = "name", defaultValue = "World") String name) {
+        return queryUserName()
+                .map(userName -> "Hello again. It's time " + counter.incrementAndGet() + " for you, " + userName);
+    }
+
+    @GetMapping("/hello")
+    public Mono<Greeting> hello(@RequestParam(value = "name", defaultValue = "World") String name) {
+        return queryUserName()
+                .map(userName -> new Greeting(counter.incrementAndGet(), String.format(template, userName)));
+    }
+
+    /**
+     * 查询PostgreSQL的user_info表（经由本地缓存 + Redis的读穿透缓存，全程非阻塞）
+     * @return 姓名（字符串），若查询失败返回错误信息
+     */
+    private Mono<String> queryUserName() {
+        // 查询id=1的用户，可根据需求修改
+        return userInfoCacheService.findUserName(1L)
+                .defaultIfEmpty("unknown")
+                // 捕获其他异常（如连接失败、表不存在等），返回错误信息
+                .onErrorResume(e -> Mono.just("query failed: " + e.getMessage()));
+    }
+
+    @GetMapping("/test-db")
+    public Mono<String> testDb() {
+        return userInfoRepository.selectOne()
+                .map(count -> "DB OK, result = " + count)
+                .onErrorResume(e -> Mono.just("DB ERROR: " + e.getMessage()));
+    }
+}
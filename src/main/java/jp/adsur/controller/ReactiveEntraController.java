@@ -0,0 +1,301 @@
+package jp.adsur.controller;
+
+import com.microsoft.graph.models.User;
+import jp.adsur.service.DeltaCheckpointStore;
+import jp.adsur.service.EntraDeltaQueryService;
+import jp.adsur.service.EntraDeltaSyncService;
+import jp.adsur.service.EntraGroupDirectory;
+import jp.adsur.service.EntraGroupUserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Entra API（reactive Profile）：EntraControllerと同じパス・同じ応答
+ * <p>
+ * Graph SDK（v5）とRestTemplateは同期APIのため、呼び出しはboundedElasticスケジューラ上で実行し、
+ * Nettyのイベントループスレッドはブロックしない。グループ作成はFutureをそのままMonoに変換する。
+ */
+@ConditionalOnProperty(prefix = "azure.entra", name = "tenant-id")
+@Profile("reactive")
+@RestController
+@RequestMapping("/api/entra")
+@RequiredArgsConstructor
+public class ReactiveEntraController {
+
+    private final EntraGroupUserService entraService;
+    private final EntraDeltaQueryService deltaQueryService;
+    private final EntraDeltaSyncService deltaSyncService;
+    private final EntraGroupDirectory groupDirectory;
+
+    /**
+     * ユーザーデルタクエリを実行
+     */
+    @GetMapping("/user-delta")
+    public Mono<EntraDeltaQueryService.DeltaQueryResult> getUserDelta(
+            @RequestParam(required = false) String deltaLink) {
+        return blocking(() -> deltaQueryService.queryUserDelta(deltaLink));
+    }
+
+    /**
+     * ユーザーデルタクエリをストリーミングで返却（NDJSON：1行1ユーザー、最終行に新しいデルタリンク）
+     * ページ単位でFluxに流すため、下流の書き込みが遅い場合は次ページの取得を待機する（バックプレッシャー）
+     */
+    @GetMapping(value = "/user-delta/stream", produces = "application/x-ndjson")
+    public Flux<Map<String, Object>> streamUserDelta(@RequestParam(required = false) String deltaLink) {
+        return Flux.defer(() -> {
+            AtomicInteger pageCount = new AtomicInteger();
+            AtomicLong userCount = new AtomicLong();
+            AtomicReference<String> newDeltaLink = new AtomicReference<>();
+            Flux<Map<String, Object>> users = deltaQueryService.userDeltaPages(deltaLink)
+                    .doOnNext(page -> {
+                        pageCount.incrementAndGet();
+                        userCount.addAndGet(page.users().size());
+                        if (page.deltaLink() != null) {
+                            newDeltaLink.set(page.deltaLink());
+                        }
+                    })
+                    .concatMapIterable(page -> page.users().stream().map(ReactiveEntraController::toLine).toList());
+            Mono<Map<String, Object>> summary = Mono.fromSupplier(() -> {
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("pageCount", pageCount.get());
+                line.put("userCount", userCount.get());
+                line.put("newDeltaLink", newDeltaLink.get());
+                return line;
+            });
+            return users.concatWith(summary);
+        });
+    }
+
+    /**
+     * バックグラウンド増分同期を即時実行（Redisのチェックポイントから再開）
+     */
+    @PostMapping("/user-delta/sync")
+    public Mono<EntraDeltaSyncService.SyncStatus> syncUserDelta() {
+        return blocking(deltaSyncService::syncUsers);
+    }
+
+    /**
+     * 最後の同期結果と現在のチェックポイントを取得
+     */
+    @GetMapping("/user-delta/sync")
+    public Mono<Map<String, Object>> getSyncStatus() {
+        return blocking(() -> {
+            Map<String, Object> response = new LinkedHashMap<>();
+            DeltaCheckpointStore.Checkpoint checkpoint = deltaSyncService.checkpoint();
+            response.put("lastStatus", deltaSyncService.lastStatus());
+            response.put("hasDeltaLink", checkpoint.deltaLink() != null);
+            response.put("inProgress", checkpoint.nextLink() != null);
+            response.put("checkpointUpdatedAt", checkpoint.updatedAt());
+            return response;
+        });
+    }
+
+    /**
+     * チェックポイントを削除（次回の同期はフル同期）
+     */
+    @DeleteMapping("/user-delta/sync")
+    public Mono<String> resetSyncCheckpoint() {
+        return blocking(() -> {
+            deltaSyncService.resetCheckpoint();
+            return "✅ チェックポイントを削除しました（次回はフル同期）";
+        });
+    }
+
+    /**
+     * メンバーがグループに直接所属しているか（テナント同期の投影を参照、Graph呼び出しなし）
+     */
+    @GetMapping("/groups/{groupId}/members/{memberId}")
+    public Mono<EntraGroupDirectory.MembershipCheck> checkMembership(@PathVariable String groupId,
+                                                                      @PathVariable String memberId) {
+        return blocking(() -> new EntraGroupDirectory.MembershipCheck(
+                groupId, memberId, groupDirectory.isMember(groupId, memberId)));
+    }
+
+    /**
+     * メンバーが直接所属しているグループ（groupIdsを指定した場合はグループごとの所属有無）
+     */
+    @GetMapping("/members/{memberId}/groups")
+    public Mono<Object> getMemberGroups(@PathVariable String memberId,
+                                        @RequestParam(required = false) List<String> groupIds) {
+        return blocking(() -> groupIds == null || groupIds.isEmpty()
+                ? groupDirectory.groupsOf(memberId)
+                : groupDirectory.memberships(memberId, groupIds));
+    }
+
+    /**
+     * 指定したすべてのグループに所属しているメンバー（SINTER）
+     */
+    @GetMapping("/groups/members/intersection")
+    public Mono<Set<String>> getCommonMembers(@RequestParam List<String> groupIds) {
+        return blocking(() -> groupDirectory.commonMembers(groupIds));
+    }
+
+    /**
+     * 指定したいずれかのグループに所属しているメンバー（SUNION）
+     */
+    @GetMapping("/groups/members/union")
+    public Mono<Set<String>> getAnyMembers(@RequestParam List<String> groupIds) {
+        return blocking(() -> groupDirectory.anyMembers(groupIds));
+    }
+
+    /**
+     * 指定したすべてのメンバーが所属しているグループ（SINTER）
+     */
+    @GetMapping("/members/groups/intersection")
+    public Mono<Set<String>> getCommonGroups(@RequestParam List<String> memberIds) {
+        return blocking(() -> groupDirectory.commonGroups(memberIds));
+    }
+
+    /**
+     * テナント同期（users/groups/membershipsを並行実行）を即時実行
+     */
+    @PostMapping("/tenant-sync")
+    public Mono<EntraDeltaSyncService.TenantSyncStatus> syncTenant() {
+        return blocking(deltaSyncService::syncTenant);
+    }
+
+    /**
+     * 最後のテナント同期結果とストリームごとのチェックポイントを取得
+     */
+    @GetMapping("/tenant-sync")
+    public Mono<Map<String, Object>> getTenantSyncStatus() {
+        return blocking(() -> {
+            Map<String, Object> streams = new LinkedHashMap<>();
+            deltaSyncService.tenantCheckpoints().forEach((stream, checkpoint) -> {
+                Map<String, Object> state = new LinkedHashMap<>();
+                state.put("hasDeltaLink", checkpoint.deltaLink() != null);
+                state.put("inProgress", checkpoint.nextLink() != null);
+                state.put("checkpointUpdatedAt", checkpoint.updatedAt());
+                streams.put(stream, state);
+            });
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("lastStatus", deltaSyncService.lastTenantStatus());
+            response.put("streams", streams);
+            response.put("leases", deltaSyncService.leaseHolders());
+            return response;
+        });
+    }
+
+    /**
+     * 全ストリームのチェックポイントを削除（次回のテナント同期はフル同期）
+     */
+    @DeleteMapping("/tenant-sync")
+    public Mono<String> resetTenantSyncCheckpoints() {
+        return blocking(() -> {
+            deltaSyncService.resetTenantCheckpoints();
+            return "✅ 全ストリームのチェックポイントを削除しました（次回はフル同期）";
+        });
+    }
+
+    /**
+     * API1：既存のグループにユーザーを追加
+     */
+    @PostMapping("/add-user")
+    public Mono<String> addUser(String groupId, String userEmail) {
+        return blocking(() -> {
+            entraService.addUserToGroup(groupId, userEmail);
+            return "✅ ユーザーの追加に成功しました";
+        }).onErrorResume(e -> Mono.just("❌ ユーザーの追加に失敗しました：" + e.getMessage()));
+    }
+
+    /**
+     * API1-2：既存のグループに複数ユーザーを一括追加（$batch / members@odata.bind で20件ずつ）
+     */
+    @PostMapping("/add-users")
+    public Mono<ResponseEntity<Map<String, Object>>> addUsers(@RequestBody BulkAddRequest request) {
+        return blocking(() -> entraService.addUsersToGroup(request.groupId(), request.userEmails()))
+                .map(results -> {
+                    Map<EntraGroupUserService.MemberAddStatus, Long> summary = results.stream()
+                            .collect(Collectors.groupingBy(EntraGroupUserService.MemberAddResult::status,
+                                    () -> new EnumMap<>(EntraGroupUserService.MemberAddStatus.class), Collectors.counting()));
+                    Map<String, Object> response = new LinkedHashMap<>();
+                    response.put("groupId", request.groupId());
+                    response.put("summary", summary);
+                    response.put("results", results);
+                    return ResponseEntity.ok(response);
+                })
+                .onErrorResume(e -> {
+                    Map<String, Object> response = new LinkedHashMap<>();
+                    response.put("message", "❌ ユーザーの一括追加に失敗しました：" + e.getMessage());
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response));
+                });
+    }
+
+    /**
+     * API2：新規グループを作成してユーザーを追加（同期待ちの間もスレッドを占有しない）
+     */
+    @PostMapping("/create-group")
+    public Mono<String> createGroup(
+            @RequestParam String userEmail,
+            @RequestParam String groupName,
+            @RequestParam String groupDesc
+    ) {
+        return Mono.fromFuture(() -> entraService.createNewGroupAndAddUser(userEmail, groupName, groupDesc))
+                .map(groupId -> "✅ 操作に成功しました：新規グループID=" + groupId)
+                .onErrorResume(e -> Mono.just("❌ 操作に失敗しました：" + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage())));
+    }
+
+    /**
+     * API3：新規グループの作成とユーザー追加を非同期で開始し、操作IDを即時返却（HTTP 202）
+     */
+    @PostMapping("/create-group-async")
+    public ResponseEntity<EntraGroupUserService.GroupOperationStatus> createGroupAsync(
+            @RequestParam String userEmail,
+            @RequestParam String groupName,
+            @RequestParam String groupDesc
+    ) {
+        EntraGroupUserService.GroupOperationStatus status =
+                entraService.startCreateNewGroupAndAddUser(userEmail, groupName, groupDesc);
+        return ResponseEntity.accepted()
+                .header(HttpHeaders.LOCATION, "/api/entra/operations/" + status.operationId())
+                .body(status);
+    }
+
+    /**
+     * グループ作成操作の進捗を取得
+     */
+    @GetMapping("/operations/{operationId}")
+    public ResponseEntity<EntraGroupUserService.GroupOperationStatus> getOperation(@PathVariable String operationId) {
+        return ResponseEntity.of(entraService.getGroupOperation(operationId));
+    }
+
+    // 同期API（Graph SDK / RestTemplate / RedisTemplate）の呼び出しをイベントループ外で実行
+    private static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static Map<String, Object> toLine(User user) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("id", user.id);
+        line.put("displayName", user.displayName);
+        line.put("userPrincipalName", user.userPrincipalName);
+        line.put("mail", user.mail);
+        line.put("removed", EntraDeltaQueryService.isRemoved(user));
+        return line;
+    }
+
+    /**
+     * 一括追加のリクエストボディ
+     */
+    public record BulkAddRequest(String groupId, List<String> userEmails) {
+    }
+}
@@ -0,0 +1,62 @@
+package jp.adsur.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Redisの接続性テスト（reactive Profile、ReactiveStringRedisTemplateによる非ブロッキングのset/get）
+ */
+@Slf4j
+@Profile("reactive")
+@RestController
+public class ReactiveRedisTestController {
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy年MM月dd日HH時mm分ss秒SSS毫秒");
+
+    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    public ReactiveRedisTestController(ReactiveStringRedisTemplate reactiveStringRedisTemplate) {
+        this.reactiveStringRedisTemplate = reactiveStringRedisTemplate;
+    }
+
+    /**
+     * Redisの接続性をテスト（set/getの基本操作）
+     */
+    @GetMapping("/test-redis")
+    public Mono<ResponseEntity<Map<String, Object>>> testRedis() {
+        // 東京タイムゾーンの現在時刻で一意のkey/valueを生成
+        String timeStr = LocalDateTime.now(ZoneId.of("Asia/Tokyo")).format(TIME_FORMATTER);
+        String key = "test-key-" + timeStr;
+        String value = "test-value-" + timeStr;
+
+        return reactiveStringRedisTemplate.opsForValue().set(key, value)
+                .then(reactiveStringRedisTemplate.opsForValue().get(key))
+                .map(result -> {
+                    log.info("Redisテスト成功：key={}, value={}", key, result);
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("status", "success");
+                    response.put("message", "Redisの接続性テストに成功しました");
+                    response.put("data", Map.of("key", key, "value", result));
+                    return ResponseEntity.ok(response);
+                })
+                .onErrorResume(e -> {
+                    log.error("Redisテストに失敗しました", e);
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("status", "error");
+                    response.put("message", "Redisの接続性テストに失敗しました：" + e.getMessage());
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response));
+                });
+    }
+}
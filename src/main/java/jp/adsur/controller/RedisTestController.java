@@ -1,71 +1,177 @@
-//package jp.adsur.controller;
-//
-//import org.springframework.http.HttpStatus;
-//import org.springframework.http.ResponseEntity;
-//import org.springframework.web.bind.annotation.GetMapping;
-//import org.springframework.web.bind.annotation.RestController;
-//import org.springframework.data.redis.core.StringRedisTemplate;
-//import lombok.extern.slf4j.Slf4j;
-//
-//import java.time.LocalDateTime;
-//import java.time.ZoneId;
-//import java.time.format.DateTimeFormatter;
-//import java.util.HashMap;
-//import java.util.Map;
-//
-//@RestController
-//@Slf4j
-//public class RedisTestController {
-//
-//    private final StringRedisTemplate stringRedisTemplate;
-//
-//    // 构造器注入（推荐的Spring依赖注入方式）
-//    public RedisTestController(StringRedisTemplate stringRedisTemplate) {
-//        this.stringRedisTemplate = stringRedisTemplate;
-//    }
-//
-//    /**
-//     * Redisの接続性をテスト（set/getの基本操作）
-//     * 現在のaccesskey認証、6379ポート、非SSLのRedis設定に対応
-//     */
-//    @GetMapping("/test-redis")
-//    public ResponseEntity<Map<String, Object>> testRedis() {
-//        Map<String, Object> response = new HashMap<>();
-//        try {
-//            // 1. 获取当前时间（东京时区，适配对日项目），格式化为「x年x月x日x时x分x秒x毫秒」
-//            String timeStr = getFormattedCurrentTime();
-//            // 2. 生成唯一key和value（避免重复，同时时间格式可读）
-//            String key = "test-key-" + timeStr;
-//            String value = "test-value-" + timeStr;
-//
-//            // Redis set操作を実行
-//            stringRedisTemplate.opsForValue().set(key, value);
-//            // Redis get操作を実行
-//            String result = stringRedisTemplate.opsForValue().get(key);
-//
-//            log.info("Redisテスト成功：key={}, value={}", key, result);
-//            response.put("status", "success");
-//            response.put("message", "Redisの接続性テストに成功しました");
-//            response.put("data", Map.of("key", key, "value", result));
-//            return ResponseEntity.ok(response);
-//        } catch (Exception e) {
-//            log.error("Redisテストに失敗しました", e); // 問題調査のため完全なログスタックを出力
-//            response.put("status", "error");
-//            response.put("message", "Redisの接続性テストに失敗しました：" + e.getMessage());
-//            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
-//        }
-//    }
-//
-//    /**
-//     * 現在の時刻を「yyyy年MM月dd日HH時mm分ss秒SSS毫秒」形式にフォーマット（東京タイムゾーン）
-//     * @return フォーマット済みの時間文字列
-//     */
-//    private String getFormattedCurrentTime() {
-//        // 1. 定义时间格式：年-月-日 时-分-秒-毫秒（日语习惯格式）
-//        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy年MM月dd日HH時mm分ss秒SSS毫秒");
-//        // 2. 获取东京时区的当前时间（对日项目核心适配点）
-//        LocalDateTime currentTime = LocalDateTime.now(ZoneId.of("Asia/Tokyo"));
-//        // 3. 格式化返回
-//        return currentTime.format(formatter);
-//    }
-//}
\ No newline at end of file
+package jp.adsur.controller;
+
+import jp.adsur.config.RedisNearCache;
+import jp.adsur.service.RedisBulkService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// Servlet模式的接口，reactive Profile由ReactiveRedisTestController提供
+@Profile("!reactive")
+@RestController
+@Slf4j
+public class RedisTestController {
+
+    // 一括ロードで指定できる最大キー数
+    private static final int MAX_BULK_COUNT = 100_000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisBulkService redisBulkService;
+    // app.redis.near-cache.enabled=trueの場合のみ存在
+    private final ObjectProvider<RedisNearCache> redisNearCache;
+
+    // 构造器注入（推荐的Spring依赖注入方式）
+    public RedisTestController(StringRedisTemplate stringRedisTemplate, RedisBulkService redisBulkService,
+                               ObjectProvider<RedisNearCache> redisNearCache) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisBulkService = redisBulkService;
+        this.redisNearCache = redisNearCache;
+    }
+
+    /**
+     * Redisの接続性をテスト（set/getの基本操作）
+     * 現在のaccesskey認証、6379ポート、非SSLのRedis設定に対応
+     */
+    @GetMapping("/test-redis")
+    public ResponseEntity<Map<String, Object>> testRedis() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            // 1. 获取当前时间（东京时区，适配对日项目），格式化为「x年x月x日x时x分x秒x毫秒」
+            String timeStr = getFormattedCurrentTime();
+            // 2. 生成唯一key和value（避免重复，同时时间格式可读）
+            String key = "test-key-" + timeStr;
+            String value = "test-value-" + timeStr;
+
+            // Redis set操作を実行
+            stringRedisTemplate.opsForValue().set(key, value);
+            // Redis get操作を実行
+            String result = stringRedisTemplate.opsForValue().get(key);
+
+            log.info("Redisテスト成功：key={}, value={}", key, result);
+            response.put("status", "success");
+            response.put("message", "Redisの接続性テストに成功しました");
+            response.put("data", Map.of("key", key, "value", result));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Redisテストに失敗しました", e); // 問題調査のため完全なログスタックを出力
+            response.put("status", "error");
+            response.put("message", "Redisの接続性テストに失敗しました：" + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * N件のキーを書き込み・読み戻してスループットを計測（パイプライン導入前後の比較用）
+     * リクエスト例：POST /test-redis/bulk?count=10000&mode=pipelined&ttlSeconds=300
+     * @param count      キー数
+     * @param mode       pipelined（MSET/MGET + パイプライン）、sequential（1コマンド1往復）
+     * @param ttlSeconds 有効期限（秒）。0の場合は無期限、終了時にキーを削除する
+     */
+    @PostMapping("/test-redis/bulk")
+    public ResponseEntity<Map<String, Object>> testRedisBulk(@RequestParam(defaultValue = "1000") int count,
+                                                             @RequestParam(defaultValue = "pipelined") String mode,
+                                                             @RequestParam(defaultValue = "300") long ttlSeconds) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        if (count <= 0 || count > MAX_BULK_COUNT) {
+            response.put("status", "error");
+            response.put("message", "countは1〜" + MAX_BULK_COUNT + "の範囲で指定してください");
+            return ResponseEntity.badRequest().body(response);
+        }
+        boolean pipelined = !"sequential".equalsIgnoreCase(mode);
+        Duration ttl = ttlSeconds > 0 ? Duration.ofSeconds(ttlSeconds) : null;
+        String prefix = "test-bulk:" + getFormattedCurrentTime() + ":";
+        Map<String, String> entries = new LinkedHashMap<>();
+        IntStream.range(0, count).forEach(i -> entries.put(prefix + i, "value-" + i));
+        List<String> keys = List.copyOf(entries.keySet());
+        try {
+            long writeStart = System.nanoTime();
+            int commands = pipelined ? redisBulkService.multiSet(entries, ttl) : redisBulkService.sequentialSet(entries, ttl);
+            long writeNanos = System.nanoTime() - writeStart;
+
+            long readStart = System.nanoTime();
+            Map<String, String> values = pipelined ? redisBulkService.multiGet(keys) : redisBulkService.sequentialGet(keys);
+            long readNanos = System.nanoTime() - readStart;
+
+            if (ttl == null) {
+                redisBulkService.delete(keys);
+            }
+            log.info("Redis一括ロード：mode={}, 件数={}, 書き込み={}ms, 読み込み={}ms",
+                    pipelined ? "pipelined" : "sequential", count, writeNanos / 1_000_000, readNanos / 1_000_000);
+            response.put("status", "success");
+            response.put("mode", pipelined ? "pipelined" : "sequential");
+            response.put("count", count);
+            response.put("writeCommands", commands);
+            response.put("writeMillis", writeNanos / 1_000_000.0);
+            response.put("writeOpsPerSecond", count * 1_000_000_000.0 / writeNanos);
+            response.put("readMillis", readNanos / 1_000_000.0);
+            response.put("readOpsPerSecond", count * 1_000_000_000.0 / readNanos);
+            response.put("readHits", values.size());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Redis一括ロードに失敗しました", e);
+            response.put("status", "error");
+            response.put("message", "Redisの一括ロードに失敗しました：" + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * ニアキャッシュ経由でキーを読み込み、統計と合わせて返却（同じキーの2回目以降はRedisへの往復なし）
+     * リクエスト例：GET /test-redis/near-cache?key=test-key
+     */
+    @GetMapping("/test-redis/near-cache")
+    public ResponseEntity<Map<String, Object>> testNearCache(@RequestParam String key) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        RedisNearCache nearCache = redisNearCache.getIfAvailable();
+        if (nearCache == null) {
+            response.put("status", "error");
+            response.put("message", "ニアキャッシュは無効です（app.redis.near-cache.enabled=false）");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        try {
+            long start = System.nanoTime();
+            String value = nearCache.get(key);
+            response.put("status", "success");
+            response.put("key", key);
+            response.put("value", value);
+            response.put("readMicros", (System.nanoTime() - start) / 1_000.0);
+            response.put("stats", nearCache.stats());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("ニアキャッシュの読み込みに失敗しました", e);
+            response.put("status", "error");
+            response.put("message", "ニアキャッシュの読み込みに失敗しました：" + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * 現在の時刻を「yyyy年MM月dd日HH時mm分ss秒SSS毫秒」形式にフォーマット（東京タイムゾーン）
+     * @return フォーマット済みの時間文字列
+     */
+    private String getFormattedCurrentTime() {
+        // 1. 定义时间格式：年-月-日 时-分-秒-毫秒（日语习惯格式）
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy年MM月dd日HH時mm分ss秒SSS毫秒");
+        // 2. 获取东京时区的当前时间（对日项目核心适配点）
+        LocalDateTime currentTime = LocalDateTime.now(ZoneId.of("Asia/Tokyo"));
+        // 3. 格式化返回
+        return currentTime.format(formatter);
+    }
+}
\ No newline at end of file
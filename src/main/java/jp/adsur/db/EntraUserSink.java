@@ -0,0 +1,289 @@
+package jp.adsur.db;
+
+import com.microsoft.graph.models.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jp.adsur.service.EntraDeltaQueryService;
+import jp.adsur.service.UserDeltaListener;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entra ID用户增量同步结果写入PostgreSQL（entra_user表）
+ * <p>
+ * 每页增量用COPY协议（CopyManager / PGCopyOutputStream，CSV格式）批量写入会话级临时表entra_user_stage，
+ * 再在同一事务内用一条 INSERT ... ON CONFLICT 合并新增/更新、一条 DELETE 处理@removed的用户。
+ * 每页只有一次COPY + 两条集合SQL，与行数无关，不再逐行执行JdbcTemplate.update。
+ * 增量页的NULL属性保留原值（Graph SDK无法区分"未变更"和"已清空"），全量同步页的NULL属性覆盖原值。
+ * 事务提交后才返回，同步引擎在所有监听器处理完毕后才保存检查点，失败时下次从同一页重新同步（合并是幂等的）。
+ * 全量同步开始时从序列entra_user_sync_run取新的同步批次号，合并时把收到的行的sync_run设为当前批次号，
+ * 全量同步结束时删除sync_run不是当前批次号的行（全量同步中未收到的用户 = 未同步期间被删除的用户）。
+ * 批次号保存在数据库中，其他实例从中途恢复全量同步时也能继续使用；开始时不改写现有行。
+ * app.jdbc.entra-user-sink.enabled=true 时启用。
+ */
+@Slf4j
+@Profile("!reactive")
+@ConditionalOnProperty(prefix = "app.jdbc.entra-user-sink", name = "enabled", havingValue = "true")
+@Repository
+public class EntraUserSink implements UserDeltaListener, MeterBinder {
+
+    private static final String CREATE_TABLE = """
+            CREATE TABLE IF NOT EXISTS entra_user (
+                id                  VARCHAR(36) PRIMARY KEY,
+                display_name        TEXT,
+                user_principal_name TEXT,
+                mail                TEXT,
+                synced_at           TIMESTAMPTZ NOT NULL DEFAULT now(),
+                sync_run            BIGINT
+            )""";
+
+    // 已有的entra_user表（添加sync_run列之前创建的）补充列
+    private static final String ADD_SYNC_RUN_COLUMN = "ALTER TABLE entra_user ADD COLUMN IF NOT EXISTS sync_run BIGINT";
+
+    // 全量同步的批次号（last_value为当前批次号，所有实例共享）
+    private static final String CREATE_SYNC_RUN_SEQUENCE = "CREATE SEQUENCE IF NOT EXISTS entra_user_sync_run";
+
+    // 会话级临时表：连接池中的连接重复使用同一张表，提交时清空（避免每页CREATE/DROP带来的系统表膨胀）
+    private static final String CREATE_STAGE = """
+            CREATE TEMP TABLE IF NOT EXISTS entra_user_stage (
+                seq                 INT,
+                id                  VARCHAR(36),
+                removed             BOOLEAN,
+                display_name        TEXT,
+                user_principal_name TEXT,
+                mail                TEXT
+            ) ON COMMIT DELETE ROWS""";
+
+    private static final String COPY_STAGE =
+            "COPY entra_user_stage (seq, id, removed, display_name, user_principal_name, mail) FROM STDIN (FORMAT csv)";
+
+    // 同一页内同一用户出现多次时以最后一条为准（DISTINCT ON + seq倒序）
+    private static final String MERGE_INSERT = """
+            INSERT INTO entra_user AS u (id, display_name, user_principal_name, mail, synced_at, sync_run)
+            SELECT s.id, s.display_name, s.user_principal_name, s.mail, now(), (SELECT last_value FROM entra_user_sync_run)
+            FROM (SELECT DISTINCT ON (id) * FROM entra_user_stage ORDER BY id, seq DESC) s
+            WHERE NOT s.removed
+            ON CONFLICT (id) DO UPDATE SET
+            """;
+
+    // 增量的更新事件只包含变更的属性，NULL属性保留原值
+    // （属性被清空时同样为NULL，无法区分，被清空的属性要到下次全量同步才会反映）
+    private static final String MERGE_UPSERT = MERGE_INSERT + """
+                display_name        = COALESCE(EXCLUDED.display_name, u.display_name),
+                user_principal_name = COALESCE(EXCLUDED.user_principal_name, u.user_principal_name),
+                mail                = COALESCE(EXCLUDED.mail, u.mail),
+                synced_at           = EXCLUDED.synced_at,
+                sync_run            = EXCLUDED.sync_run""";
+
+    // 全量同步的用户包含全部属性，NULL表示属性未设置（已被清空），直接覆盖
+    private static final String MERGE_OVERWRITE = MERGE_INSERT + """
+                display_name        = EXCLUDED.display_name,
+                user_principal_name = EXCLUDED.user_principal_name,
+                mail                = EXCLUDED.mail,
+                synced_at           = EXCLUDED.synced_at,
+                sync_run            = EXCLUDED.sync_run""";
+
+    private static final String MERGE_DELETE = """
+            DELETE FROM entra_user u
+            USING (SELECT DISTINCT ON (id) id, removed FROM entra_user_stage ORDER BY id, seq DESC) s
+            WHERE s.removed AND u.id = s.id""";
+
+    // 全量同步开始：取新的批次号（之后合并的行都带此批次号）
+    private static final String NEXT_SYNC_RUN = "SELECT nextval('entra_user_sync_run')";
+
+    // 全量同步结束：删除全量同步中未收到的行（添加sync_run列之前的行为NULL）
+    private static final String DELETE_UNSEEN = """
+            DELETE FROM entra_user
+            WHERE sync_run IS DISTINCT FROM (SELECT last_value FROM entra_user_sync_run)""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean createTable;
+    private final int copyBufferSize;
+
+    // MeterRegistry绑定前不计测
+    private volatile Timer mergeTimer;
+    private volatile Counter upsertedRows;
+    private volatile Counter deletedRows;
+    private volatile Counter prunedRows;
+
+    public EntraUserSink(JdbcTemplate jdbcTemplate,
+                         @Value("${app.jdbc.entra-user-sink.create-table:true}") boolean createTable,
+                         @Value("${app.jdbc.entra-user-sink.copy-buffer-size:65536}") int copyBufferSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.createTable = createTable;
+        this.copyBufferSize = copyBufferSize;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (createTable) {
+            jdbcTemplate.execute(CREATE_TABLE);
+            jdbcTemplate.execute(ADD_SYNC_RUN_COLUMN);
+            jdbcTemplate.execute(CREATE_SYNC_RUN_SEQUENCE);
+        }
+        log.info("Entra用户增量写入PostgreSQL已启用：表=entra_user, COPY缓冲={}字节", copyBufferSize);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.mergeTimer = Timer.builder("app.jdbc.queries")
+                .description("entra_user合并耗时（COPY + 合并 + 提交）")
+                .tag("query", "entra_user.merge")
+                .register(registry);
+        this.upsertedRows = Counter.builder("app.jdbc.entra_user_sink.rows")
+                .description("写入entra_user的行数")
+                .tag("operation", "upsert")
+                .register(registry);
+        this.deletedRows = Counter.builder("app.jdbc.entra_user_sink.rows")
+                .description("写入entra_user的行数")
+                .tag("operation", "delete")
+                .register(registry);
+        this.prunedRows = Counter.builder("app.jdbc.entra_user_sink.rows")
+                .description("写入entra_user的行数")
+                .tag("operation", "prune")
+                .register(registry);
+    }
+
+    /**
+     * 全量同步开始：取新的批次号
+     */
+    @Override
+    public void onFullSyncStart() {
+        Long syncRun = jdbcTemplate.queryForObject(NEXT_SYNC_RUN, Long.class);
+        log.info("entra_user全量同步开始：批次号={}", syncRun);
+    }
+
+    /**
+     * 全量同步结束：删除全量同步中未收到的行
+     */
+    @Override
+    public void onFullSyncComplete() {
+        int pruned = jdbcTemplate.update(DELETE_UNSEEN);
+        if (prunedRows != null) {
+            prunedRows.increment(pruned);
+        }
+        log.info("entra_user全量同步结束：删除未收到的用户{}行", pruned);
+    }
+
+    /**
+     * 一页增量写入entra_user（COPY → 合并 → 提交，NULL属性保留原值）
+     */
+    @Override
+    public void onPage(EntraDeltaQueryService.DeltaPage page) {
+        write(page, MERGE_UPSERT);
+    }
+
+    /**
+     * 全量同步的一页写入entra_user（NULL属性覆盖原值，反映被清空的属性）
+     */
+    @Override
+    public void onFullSyncPage(EntraDeltaQueryService.DeltaPage page) {
+        write(page, MERGE_OVERWRITE);
+    }
+
+    private void write(EntraDeltaQueryService.DeltaPage page, String upsertSql) {
+        List<User> users = page.users().stream().filter(user -> user.id != null).toList();
+        if (users.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        MergeResult result = jdbcTemplate.execute(
+                (ConnectionCallback<MergeResult>) connection -> merge(connection, users, upsertSql));
+        long elapsedNanos = System.nanoTime() - start;
+        if (mergeTimer != null) {
+            mergeTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            upsertedRows.increment(result.upserted());
+            deletedRows.increment(result.deleted());
+        }
+        log.debug("entra_user写入完成：页={}, 暂存={}, 新增/更新={}, 删除={}, 耗时={}ms",
+                page.pageIndex(), result.staged(), result.upserted(), result.deleted(), elapsedNanos / 1_000_000);
+    }
+
+    private MergeResult merge(Connection connection, List<User> users, String upsertSql) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_STAGE);
+            copyToStage(connection, users);
+            int upserted = statement.executeUpdate(upsertSql);
+            int deleted = statement.executeUpdate(MERGE_DELETE);
+            connection.commit();
+            return new MergeResult(users.size(), upserted, deleted);
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * 以CSV格式流式写入临时表（缓冲区满时才发送，1页只有1次COPY往返）
+     */
+    private void copyToStage(Connection connection, List<User> users) throws SQLException {
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        PGCopyOutputStream copyStream = new PGCopyOutputStream(pgConnection, COPY_STAGE, copyBufferSize);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(copyStream, StandardCharsets.UTF_8), copyBufferSize)) {
+            int seq = 0;
+            for (User user : users) {
+                writer.write(Integer.toString(seq++));
+                writer.write(',');
+                writeCsv(writer, user.id);
+                writer.write(',');
+                writer.write(EntraDeltaQueryService.isRemoved(user) ? "t" : "f");
+                writer.write(',');
+                writeCsv(writer, user.displayName);
+                writer.write(',');
+                writeCsv(writer, user.userPrincipalName);
+                writer.write(',');
+                writeCsv(writer, user.mail);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            if (copyStream.isActive()) {
+                copyStream.cancelCopy();
+            }
+            throw new SQLException("COPY写入entra_user_stage失败", e);
+        }
+    }
+
+    // CSV格式：NULL为未加引号的空值，字符串一律加双引号（内部的双引号重复两次）
+    private static void writeCsv(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    /**
+     * 一页的写入结果
+     * @param staged   写入临时表的行数
+     * @param upserted 新增/更新的行数
+     * @param deleted  删除的行数
+     */
+    private record MergeResult(int staged, int upserted, int deleted) {
+    }
+}
@@ -0,0 +1,44 @@
+package jp.adsur.db;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * user_info表的非阻塞数据访问（reactive Profile，R2DBC）
+ */
+@Profile("reactive")
+@Repository
+public class ReactiveUserInfoRepository {
+
+    private static final String SELECT_USERNAME_BY_ID = "SELECT username FROM user_info WHERE id = :id";
+
+    private final DatabaseClient databaseClient;
+
+    // 构造器注入DatabaseClient（复用application-reactive.yml中的R2DBC配置）
+    public ReactiveUserInfoRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * 按ID查询用户名
+     * @param id 用户ID
+     * @return 用户名，查询无结果时为空的Mono（连接失败等异常以error信号传递）
+     */
+    public Mono<String> findUserNameById(long id) {
+        return databaseClient.sql(SELECT_USERNAME_BY_ID)
+                .bind("id", id)
+                .map(row -> row.get("username", String.class))
+                .one();
+    }
+
+    /**
+     * 连接确认（SELECT 1）
+     */
+    public Mono<Integer> selectOne() {
+        return databaseClient.sql("SELECT 1")
+                .map(row -> row.get(0, Integer.class))
+                .one();
+    }
+}
@@ -0,0 +1,298 @@
+package jp.adsur.db;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * user_info按ID查询的请求合并器（micro-batching）
+ * <p>
+ * 并发到达的单条查询先进入队列，由调度线程在窗口期（window）内或凑满max-batch-size后
+ * 合并为一条 WHERE id = ANY(?) 查询，再把结果分发给各调用方。
+ * 同时执行的批量查询数不超过max-in-flight：DB变慢时队列中的请求会自然积累成更大的批次，
+ * 连接借用次数和往返次数随并发量增长而不是随请求数增长。
+ * app.jdbc.user-info-batch.enabled=false 时直接逐条查询（与合并前的行为相同）。
+ */
+@Slf4j
+@Profile("!reactive")
+@Component
+public class UserInfoBatchLoader implements MeterBinder {
+
+    // 调度线程等待新请求的轮询间隔（用于响应关闭）
+    private static final long IDLE_POLL_MILLIS = 100;
+    // 关闭时等待调度线程退出的最长时间
+    private static final long SHUTDOWN_JOIN_MILLIS = 1_000;
+
+    private final UserInfoRepository userInfoRepository;
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final int maxInFlight;
+    private final Duration loadTimeout;
+
+    private final BlockingQueue<PendingLookup> queue = new LinkedBlockingQueue<>();
+    private final Semaphore inFlight;
+    private final ExecutorService queryExecutor;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    // 合并效果统计
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedKeys = new LongAdder();
+    private final LongAccumulator largestBatch = new LongAccumulator(Math::max, 0L);
+
+    public UserInfoBatchLoader(UserInfoRepository userInfoRepository,
+                               @Value("${app.jdbc.user-info-batch.enabled:true}") boolean enabled,
+                               @Value("${app.jdbc.user-info-batch.window:2ms}") Duration window,
+                               @Value("${app.jdbc.user-info-batch.max-batch-size:100}") int maxBatchSize,
+                               @Value("${app.jdbc.user-info-batch.max-in-flight:4}") int maxInFlight,
+                               @Value("${app.jdbc.user-info-batch.load-timeout:35s}") Duration loadTimeout) {
+        this.userInfoRepository = userInfoRepository;
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.maxInFlight = maxInFlight;
+        this.loadTimeout = loadTimeout;
+        this.inFlight = new Semaphore(maxInFlight);
+        if (enabled) {
+            this.queryExecutor = Executors.newFixedThreadPool(maxInFlight, new CustomizableThreadFactory("user-info-batch-"));
+            this.dispatcher = new Thread(this::dispatchLoop, "user-info-batch-dispatcher");
+            this.dispatcher.setDaemon(true);
+            this.dispatcher.start();
+            log.info("user_info请求合并已启用：窗口={}µs, 批次上限={}, 并行批次上限={}",
+                    window.toNanos() / 1_000, maxBatchSize, maxInFlight);
+        } else {
+            this.queryExecutor = null;
+            this.dispatcher = null;
+        }
+    }
+
+    /**
+     * 按ID查询用户名（与其他并发请求合并执行，阻塞等待结果）
+     * @param id 用户ID
+     * @return 用户名，查询无结果时返回Optional.empty()（连接失败等异常直接抛出，超过load-timeout时抛出QueryTimeoutException）
+     */
+    public Optional<String> load(long id) {
+        if (!enabled) {
+            requests.increment();
+            return userInfoRepository.findUserNameById(id);
+        }
+        try {
+            return submit(id).orTimeout(loadTimeout.toMillis(), TimeUnit.MILLISECONDS).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof TimeoutException) {
+                throw new QueryTimeoutException("user_info查询超时（" + loadTimeout.toMillis() + "ms）：id=" + id, e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 按ID查询用户名（非阻塞，所在批次执行完成后完成）
+     */
+    public CompletableFuture<Optional<String>> submit(long id) {
+        requests.increment();
+        PendingLookup lookup = new PendingLookup(id, new CompletableFuture<>());
+        if (!enabled) {
+            try {
+                lookup.future().complete(userInfoRepository.findUserNameById(id));
+            } catch (RuntimeException e) {
+                lookup.future().completeExceptionally(e);
+            }
+            return lookup.future();
+        }
+        if (!running) {
+            lookup.future().completeExceptionally(new IllegalStateException("user_info请求合并器已关闭"));
+            return lookup.future();
+        }
+        queue.add(lookup);
+        // 检查running与入队之间可能已执行关闭时的清空：仍在队列中则由本线程结束（已被取出的由取出方结束）
+        if (!running && queue.remove(lookup)) {
+            lookup.future().completeExceptionally(new IllegalStateException("user_info请求合并器已关闭"));
+        }
+        return lookup.future();
+    }
+
+    /**
+     * 当前合并统计
+     */
+    public Stats stats() {
+        long batchCount = batches.sum();
+        long keyCount = batchedKeys.sum();
+        return new Stats(
+                enabled,
+                requests.sum(),
+                batchCount,
+                keyCount,
+                batchCount == 0 ? 0.0 : (double) keyCount / batchCount,
+                largestBatch.get(),
+                queue.size()
+        );
+    }
+
+    /**
+     * 合并统计以Micrometer指标公开（app.jdbc.user_info_batch.*）
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("app.jdbc.user_info_batch.requests", requests, LongAdder::sum)
+                .description("合并前的查询请求数").register(registry);
+        FunctionCounter.builder("app.jdbc.user_info_batch.batches", batches, LongAdder::sum)
+                .description("执行的批量查询数（连接借用次数）").register(registry);
+        FunctionCounter.builder("app.jdbc.user_info_batch.keys", batchedKeys, LongAdder::sum)
+                .description("批量查询的ID数（去重后）").register(registry);
+        Gauge.builder("app.jdbc.user_info_batch.queued", queue, BlockingQueue::size)
+                .description("等待合并的请求数").register(registry);
+        Gauge.builder("app.jdbc.user_info_batch.in_flight", inFlight, semaphore -> maxInFlight - semaphore.availablePermits())
+                .description("执行中的批量查询数").register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        dispatcher.interrupt();
+        try {
+            // 调度线程退出后再清空队列（退出前取出的请求由调度线程结束）
+            dispatcher.join(SHUTDOWN_JOIN_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queryExecutor.shutdown();
+        PendingLookup lookup;
+        while ((lookup = queue.poll()) != null) {
+            lookup.future().completeExceptionally(new IllegalStateException("user_info请求合并器已关闭"));
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            List<PendingLookup> batch = new ArrayList<>(Math.min(maxBatchSize, 64));
+            try {
+                PendingLookup first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collectBatch(batch);
+                // 并行批次已达上限时在此等待，期间新到的请求继续在队列中积累
+                inFlight.acquire();
+                try {
+                    queryExecutor.execute(() -> execute(batch));
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    fail(batch, e);
+                }
+            } catch (InterruptedException e) {
+                // 关闭时已取出但未提交的请求不能留在调用方的等待中
+                fail(batch, new IllegalStateException("user_info请求合并器已关闭"));
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("user_info请求合并调度异常", e);
+                fail(batch, e);
+            }
+        }
+    }
+
+    /**
+     * 以第一个请求为起点，在窗口期内收集请求，凑满批次上限则立即返回
+     */
+    private void collectBatch(List<PendingLookup> batch) throws InterruptedException {
+        queue.drainTo(batch, maxBatchSize - batch.size());
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            PendingLookup next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private void execute(List<PendingLookup> batch) {
+        try {
+            // 同一批次内的重复ID只查询一次
+            Set<Long> ids = new LinkedHashSet<>();
+            for (PendingLookup lookup : batch) {
+                ids.add(lookup.id());
+            }
+            Map<Long, String> userNames = userInfoRepository.findUserNamesByIds(ids);
+            batches.increment();
+            batchedKeys.add(ids.size());
+            largestBatch.accumulate(ids.size());
+            for (PendingLookup lookup : batch) {
+                lookup.future().complete(Optional.ofNullable(userNames.get(lookup.id())));
+            }
+        } catch (RuntimeException e) {
+            log.warn("user_info批量查询失败：件数={}, {}", batch.size(), e.getMessage());
+            fail(batch, e);
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private static void fail(List<PendingLookup> batch, RuntimeException e) {
+        for (PendingLookup lookup : batch) {
+            lookup.future().completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 等待合并执行的单条查询
+     */
+    private record PendingLookup(long id, CompletableFuture<Optional<String>> future) {
+    }
+
+    /**
+     * 合并统计快照
+     * @param enabled      是否启用请求合并
+     * @param requests     查询请求数
+     * @param batches      执行的批量查询数（= 连接借用次数）
+     * @param batchedKeys  批量查询的ID数（去重后）
+     * @param avgBatchSize 平均批次大小
+     * @param largestBatch 最大批次大小
+     * @param queued       当前等待合并的请求数
+     */
+    public record Stats(boolean enabled, long requests, long batches, long batchedKeys,
+                        double avgBatchSize, long largestBatch, int queued) {
+    }
+}
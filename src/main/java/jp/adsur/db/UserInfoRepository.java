@@ -0,0 +1,94 @@
+package jp.adsur.db;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * user_info表的数据访问（从DBTestController中抽出的JdbcTemplate查询）
+ */
+@Profile("!reactive")
+@Repository
+public class UserInfoRepository implements MeterBinder {
+
+    private static final String SELECT_USERNAME_BY_ID = "SELECT username FROM user_info WHERE id = ?";
+    // 以数组参数传入多个ID：无论ID个数多少都只有一条SQL（PreparedStatement可复用）
+    private static final String SELECT_USERNAMES_BY_IDS = "SELECT id, username FROM user_info WHERE id = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // SQL执行耗时（含连接借用等待，指标名：app.jdbc.queries），MeterRegistry绑定前不计测
+    private volatile Timer findByIdTimer;
+    private volatile Timer findByIdsTimer;
+
+    // 构造器注入JdbcTemplate（复用application.yml中的PostgreSQL配置）
+    public UserInfoRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.findByIdTimer = queryTimer(registry, "user_info.findUserNameById");
+        this.findByIdsTimer = queryTimer(registry, "user_info.findUserNamesByIds");
+    }
+
+    /**
+     * 按ID查询用户名
+     * @param id 用户ID
+     * @return 用户名，查询无结果时返回Optional.empty()（连接失败等异常直接抛出）
+     */
+    public Optional<String> findUserNameById(long id) {
+        return timed(findByIdTimer, () -> {
+            try {
+                return Optional.ofNullable(jdbcTemplate.queryForObject(SELECT_USERNAME_BY_ID, String.class, id));
+            } catch (EmptyResultDataAccessException e) {
+                return Optional.empty();
+            }
+        });
+    }
+
+    /**
+     * 按多个ID一次性查询用户名（WHERE id = ANY(?)，一次连接借用 + 一次往返）
+     * @param ids 用户ID
+     * @return ID → 用户名，不存在的ID不包含在结果中
+     */
+    public Map<Long, String> findUserNamesByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new HashMap<>();
+        }
+        return timed(findByIdsTimer, () -> {
+            Map<Long, String> result = new HashMap<>();
+            jdbcTemplate.query(connection -> {
+                Array idArray = connection.createArrayOf("bigint", ids.toArray());
+                PreparedStatement statement = connection.prepareStatement(SELECT_USERNAMES_BY_IDS);
+                statement.setArray(1, idArray);
+                return statement;
+            }, (RowCallbackHandler) rs -> result.put(rs.getLong(1), rs.getString(2)));
+            return result;
+        });
+    }
+
+    private static <T> T timed(Timer timer, Supplier<T> query) {
+        return timer != null ? timer.record(query) : query.get();
+    }
+
+    private static Timer queryTimer(MeterRegistry meterRegistry, String query) {
+        return Timer.builder("app.jdbc.queries")
+                .description("user_info查询耗时")
+                .tag("query", query)
+                .register(meterRegistry);
+    }
+}
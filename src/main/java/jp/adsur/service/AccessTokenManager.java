@@ -0,0 +1,165 @@
+package jp.adsur.service;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.credential.TokenRequestContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Entraアクセストークンの共有マネージャー（Graph / Redis などスコープ単位でキャッシュ）
+ * <p>
+ * 登録時に一度だけ同期取得し、以降は有効期限の少し前にバックグラウンドで更新する。
+ * リクエストスレッドはキャッシュ済みトークンを参照するだけで、MSALの呼び出しでブロックしない。
+ * 更新時は登録されたリスナー（Lettuce接続の再認証など）に新しいトークンを通知する。
+ */
+@Slf4j
+@Component
+public class AccessTokenManager {
+
+    private final Duration refreshAhead;
+    // 更新スケジュールの最短間隔（有効期限が極端に短いトークン対策）
+    private final Duration minRefreshDelay;
+    // 更新失敗時の再試行間隔
+    private final Duration retryDelay;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("token-refresh-"));
+    private final Map<String, ScopeToken> tokens = new ConcurrentHashMap<>();
+
+    public AccessTokenManager(@Value("${app.token.refresh-ahead:PT5M}") Duration refreshAhead,
+                              @Value("${app.token.min-refresh-delay:PT10S}") Duration minRefreshDelay,
+                              @Value("${app.token.retry-delay:PT30S}") Duration retryDelay) {
+        this.refreshAhead = refreshAhead;
+        this.minRefreshDelay = minRefreshDelay;
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * スコープを登録し、初回トークンを取得してバックグラウンド更新を開始する（同一スコープの再登録は無視）
+     * @param scope      スコープ（例：https://graph.microsoft.com/.default）
+     * @param credential トークン取得に使用する資格情報
+     */
+    public void register(String scope, TokenCredential credential) {
+        ScopeToken scopeToken = new ScopeToken(scope, credential);
+        if (tokens.putIfAbsent(scope, scopeToken) != null) {
+            return;
+        }
+        refresh(scopeToken);
+    }
+
+    /**
+     * キャッシュ済みのアクセストークンを取得（期限切れの場合のみ同期で再取得）
+     * @param scope 登録済みのスコープ
+     */
+    public String getToken(String scope) {
+        ScopeToken scopeToken = tokens.get(scope);
+        if (scopeToken == null) {
+            throw new IllegalStateException("スコープ " + scope + " は登録されていません");
+        }
+        AccessToken current = scopeToken.token;
+        if (current == null || current.isExpired()) {
+            // バックグラウンド更新が失敗し続けた場合の最終手段
+            synchronized (scopeToken) {
+                current = scopeToken.token;
+                if (current == null || current.isExpired()) {
+                    current = fetch(scopeToken);
+                }
+            }
+        }
+        return current.getToken();
+    }
+
+    /**
+     * トークン更新時のリスナーを登録（登録時点のトークンは通知しない）
+     */
+    public void addRefreshListener(String scope, Consumer<AccessToken> listener) {
+        ScopeToken scopeToken = tokens.get(scope);
+        if (scopeToken == null) {
+            throw new IllegalStateException("スコープ " + scope + " は登録されていません");
+        }
+        scopeToken.listeners.add(listener);
+    }
+
+    /**
+     * スコープごとの有効期限（監視用）
+     */
+    public Map<String, OffsetDateTime> expirations() {
+        Map<String, OffsetDateTime> result = new ConcurrentHashMap<>();
+        tokens.forEach((scope, scopeToken) -> {
+            AccessToken token = scopeToken.token;
+            if (token != null) {
+                result.put(scope, token.getExpiresAt());
+            }
+        });
+        return result;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void refresh(ScopeToken scopeToken) {
+        try {
+            AccessToken token = fetch(scopeToken);
+            scheduleRefresh(scopeToken, token);
+        } catch (Exception e) {
+            log.error("アクセストークンの更新に失敗しました（{}ms後に再試行）：scope={}", retryDelay.toMillis(), scopeToken.scope, e);
+            scheduler.schedule(() -> refresh(scopeToken), retryDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private AccessToken fetch(ScopeToken scopeToken) {
+        AccessToken token = scopeToken.credential
+                .getToken(new TokenRequestContext().addScopes(scopeToken.scope))
+                .block();
+        if (token == null) {
+            throw new IllegalStateException("アクセストークンを取得できませんでした：scope=" + scopeToken.scope);
+        }
+        scopeToken.token = token;
+        log.info("アクセストークンを取得しました：scope={}, 有効期限={}", scopeToken.scope, token.getExpiresAt());
+        for (Consumer<AccessToken> listener : scopeToken.listeners) {
+            try {
+                listener.accept(token);
+            } catch (Exception e) {
+                log.error("トークン更新リスナーの処理に失敗しました：scope={}", scopeToken.scope, e);
+            }
+        }
+        return token;
+    }
+
+    private void scheduleRefresh(ScopeToken scopeToken, AccessToken token) {
+        long delayMillis = Duration.between(OffsetDateTime.now(), token.getExpiresAt().minus(refreshAhead)).toMillis();
+        delayMillis = Math.max(delayMillis, minRefreshDelay.toMillis());
+        scheduler.schedule(() -> refresh(scopeToken), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * スコープごとのトークン状態
+     */
+    private static final class ScopeToken {
+        private final String scope;
+        private final TokenCredential credential;
+        private final List<Consumer<AccessToken>> listeners = new CopyOnWriteArrayList<>();
+        private volatile AccessToken token;
+
+        private ScopeToken(String scope, TokenCredential credential) {
+            this.scope = scope;
+            this.credential = credential;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package jp.adsur.service;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * キャッシュするディレクトリエンティティのコンパクトなバイナリ形式（RedisSerializer）
+ * <pre>
+ * [形式 1byte][本文]
+ *   形式 1：本文をそのまま格納
+ *   形式 2：[元の長さ varint][本文のLZ4ブロック]
+ * 本文：[null以外の属性のビットマップ 1byte]([長さ varint][UTF-8])*
+ * </pre>
+ * 属性名はスキーマ（属性の並び順）側で持つため値には含めず、選択した属性（デルタクエリの$selectと同じ）のみ格納する。
+ * 本文がcompression-thresholdバイト以上、かつLZ4で小さくなる場合のみ圧縮する（短い値は圧縮の効果が無い）。
+ * 属性の順序を変更すると既存の値を読めなくなるため、属性は末尾にのみ追加すること。
+ *
+ * @param <T> エンティティの型
+ */
+public class CompactEntitySerializer<T> implements RedisSerializer<T> {
+
+    private static final byte FORMAT_PLAIN = 1;
+    private static final byte FORMAT_LZ4 = 2;
+    private static final int MAX_FIELDS = 8;
+
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    private final List<Function<T, String>> fields;
+    private final Function<String[], T> factory;
+    private final int compressionThreshold;
+    private final LZ4Compressor compressor = LZ4.fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4.fastDecompressor();
+
+    /**
+     * @param fields               格納する属性の取得関数（この順序で書き込む、最大8個）
+     * @param factory              属性値の配列（fieldsと同じ順序、未設定はnull）からエンティティを生成
+     * @param compressionThreshold LZ4で圧縮する本文の最小バイト数（0以下は圧縮しない）
+     */
+    public CompactEntitySerializer(List<Function<T, String>> fields, Function<String[], T> factory,
+                                   int compressionThreshold) {
+        if (fields.isEmpty() || fields.size() > MAX_FIELDS) {
+            throw new IllegalArgumentException("属性数は1〜" + MAX_FIELDS + "個で指定してください：" + fields.size());
+        }
+        this.fields = List.copyOf(fields);
+        this.factory = factory;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * ディレクトリ投影のユーザー（id, displayName, userPrincipalName, mail）
+     */
+    public static CompactEntitySerializer<EntraUserDirectory.DirectoryUser> directoryUsers(int compressionThreshold) {
+        return new CompactEntitySerializer<>(
+                List.of(EntraUserDirectory.DirectoryUser::id,
+                        EntraUserDirectory.DirectoryUser::displayName,
+                        EntraUserDirectory.DirectoryUser::userPrincipalName,
+                        EntraUserDirectory.DirectoryUser::mail),
+                values -> new EntraUserDirectory.DirectoryUser(values[0], values[1], values[2], values[3]),
+                compressionThreshold);
+    }
+
+    @Override
+    public byte[] serialize(T entity) throws SerializationException {
+        if (entity == null) {
+            return null;
+        }
+        byte[] body = encodeBody(entity);
+        if (compressionThreshold > 0 && body.length >= compressionThreshold) {
+            byte[] compressed = compress(body);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        byte[] value = new byte[body.length + 1];
+        value[0] = FORMAT_PLAIN;
+        System.arraycopy(body, 0, value, 1, body.length);
+        return value;
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return switch (bytes[0]) {
+                case FORMAT_PLAIN -> decodeBody(bytes, 1, bytes.length);
+                case FORMAT_LZ4 -> {
+                    int[] position = {1};
+                    int length = readVarint(bytes, position);
+                    byte[] body = decompressor.decompress(bytes, position[0], length);
+                    yield decodeBody(body, 0, body.length);
+                }
+                default -> throw new SerializationException("未対応の形式です：" + bytes[0]);
+            };
+        } catch (SerializationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new SerializationException("エンティティの復元に失敗しました：" + e.getMessage(), e);
+        }
+    }
+
+    private byte[] encodeBody(T entity) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        out.write(0);
+        int present = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            String value = fields.get(i).apply(entity);
+            if (value == null) {
+                continue;
+            }
+            present |= 1 << i;
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, utf8.length);
+            out.write(utf8, 0, utf8.length);
+        }
+        byte[] body = out.toByteArray();
+        body[0] = (byte) present;
+        return body;
+    }
+
+    private T decodeBody(byte[] bytes, int offset, int end) {
+        int present = bytes[offset] & 0xFF;
+        int[] position = {offset + 1};
+        String[] values = new String[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            if ((present & (1 << i)) == 0) {
+                continue;
+            }
+            int length = readVarint(bytes, position);
+            if (position[0] + length > end) {
+                throw new SerializationException("値が途中で終わっています");
+            }
+            values[i] = new String(bytes, position[0], length, StandardCharsets.UTF_8);
+            position[0] += length;
+        }
+        return factory.apply(values);
+    }
+
+    // 圧縮後の方が大きい（または同じ）場合はnullを返し、非圧縮で格納する
+    private byte[] compress(byte[] body) {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(6);
+        header.write(FORMAT_LZ4);
+        writeVarint(header, body.length);
+        byte[] head = header.toByteArray();
+        byte[] value = new byte[head.length + compressor.maxCompressedLength(body.length)];
+        System.arraycopy(head, 0, value, 0, head.length);
+        int compressedLength = compressor.compress(body, 0, body.length, value, head.length);
+        int total = head.length + compressedLength;
+        if (total >= body.length + 1) {
+            return null;
+        }
+        return Arrays.copyOf(value, total);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] bytes, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("長さの形式が不正です");
+    }
+}
@@ -0,0 +1,221 @@
+package jp.adsur.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * デルタ同期のチェックポイントをRedisのハッシュに保存する
+ * <ul>
+ *     <li>deltaLink：最後に完了した同期のデルタリンク（次回の増分同期の起点）</li>
+ *     <li>nextLink：ページング途中の次ページURL（プロセス停止時はここから再開）</li>
+ *     <li>fence：最後に書き込んだリースのフェンシングトークン（{@link RedisLeaseManager}）</li>
+ * </ul>
+ * リース保持中の書き込み（fence &gt; 0）は、保存済みのトークンより小さいトークンの書き込みを拒否する。
+ * リースの失効後も処理を続けていた旧保持者が、新しい保持者のチェックポイントを巻き戻すことはない。
+ * チェックポイントのリセットでもfenceは削除しない（リセット後も旧保持者の書き込みを拒否する）。
+ */
+@Component
+public class DeltaCheckpointStore {
+
+    private static final String FIELD_DELTA_LINK = "deltaLink";
+    private static final String FIELD_NEXT_LINK = "nextLink";
+    private static final String FIELD_UPDATED_AT = "updatedAt";
+
+    // リースを使用しない場合のトークン（フェンシングなしで書き込む）
+    public static final long NO_FENCE = 0;
+
+    // ARGV[1]：トークン、ARGV[2]：更新日時、ARGV[3]：書き込むフィールド、ARGV[4]：値、ARGV[5]：削除するフィールド（任意）
+    // 保存済みのトークンより小さい場合は書き込まずに0を返す
+    private static final RedisScript<Long> FENCED_WRITE = new DefaultRedisScript<>("""
+            local fence = tonumber(redis.call('HGET', KEYS[1], 'fence') or '0')
+            if tonumber(ARGV[1]) < fence then
+                return 0
+            end
+            redis.call('HSET', KEYS[1], 'fence', ARGV[1], 'updatedAt', ARGV[2], ARGV[3], ARGV[4])
+            if ARGV[5] then
+                redis.call('HDEL', KEYS[1], ARGV[5])
+            end
+            return 1""", Long.class);
+
+    // ARGV[1]：トークン。保存済みのトークンより小さい場合はリセットせずに0を返す（fenceは残す）
+    private static final RedisScript<Long> FENCED_RESET = new DefaultRedisScript<>("""
+            local fence = tonumber(redis.call('HGET', KEYS[1], 'fence') or '0')
+            if tonumber(ARGV[1]) < fence then
+                return 0
+            end
+            redis.call('HSET', KEYS[1], 'fence', ARGV[1])
+            redis.call('HDEL', KEYS[1], 'deltaLink', 'nextLink', 'updatedAt')
+            return 1""", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String keyPrefix;
+
+    public DeltaCheckpointStore(StringRedisTemplate stringRedisTemplate,
+                                @Value("${app.entra.delta-sync.key-prefix:entra:delta:checkpoint:}") String keyPrefix) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.keyPrefix = keyPrefix;
+    }
+
+    /**
+     * チェックポイントを取得
+     * @param stream 同期対象（例：users）
+     */
+    public Checkpoint load(String stream) {
+        Map<String, String> fields = hash().entries(key(stream));
+        String updatedAt = fields.get(FIELD_UPDATED_AT);
+        return new Checkpoint(
+                fields.get(FIELD_DELTA_LINK),
+                fields.get(FIELD_NEXT_LINK),
+                updatedAt != null ? Instant.parse(updatedAt) : null
+        );
+    }
+
+    /**
+     * ページング途中の次ページURLを保存（直前に完了したデルタリンクは保持）
+     */
+    public void saveNextLink(String stream, String nextLink) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(FIELD_NEXT_LINK, nextLink);
+        fields.put(FIELD_UPDATED_AT, Instant.now().toString());
+        hash().putAll(key(stream), fields);
+    }
+
+    /**
+     * 同期完了：新しいデルタリンクを保存し、ページング途中のnextLinkを削除
+     */
+    public void saveDeltaLink(String stream, String deltaLink) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(FIELD_DELTA_LINK, deltaLink);
+        fields.put(FIELD_UPDATED_AT, Instant.now().toString());
+        hash().putAll(key(stream), fields);
+        hash().delete(key(stream), FIELD_NEXT_LINK);
+    }
+
+    /**
+     * ページング途中の次ページURLを保存（リース保持中：fenceより新しいトークンで書き込まれていれば拒否）
+     * @param fence リースのフェンシングトークン（{@link #NO_FENCE}の場合は{@link #saveNextLink(String, String)}と同じ）
+     */
+    public void saveNextLink(String stream, String nextLink, long fence) {
+        if (fence == NO_FENCE) {
+            saveNextLink(stream, nextLink);
+            return;
+        }
+        fencedWrite(stream, fence, FIELD_NEXT_LINK, nextLink, null);
+    }
+
+    /**
+     * 同期完了（リース保持中：fenceより新しいトークンで書き込まれていれば拒否）
+     * @param fence リースのフェンシングトークン（{@link #NO_FENCE}の場合は{@link #saveDeltaLink(String, String)}と同じ）
+     */
+    public void saveDeltaLink(String stream, String deltaLink, long fence) {
+        if (fence == NO_FENCE) {
+            saveDeltaLink(stream, deltaLink);
+            return;
+        }
+        fencedWrite(stream, fence, FIELD_DELTA_LINK, deltaLink, FIELD_NEXT_LINK);
+    }
+
+    /**
+     * 複数ストリームの同期完了：全ストリームのデルタリンクを1つのパイプラインでまとめて保存
+     * （テナント同期で全ストリームが成功した場合のみ呼び出し、デルタリンクが揃って進むようにする）
+     * @param deltaLinks ストリーム名 → 新しいデルタリンク
+     */
+    public void saveDeltaLinks(Map<String, String> deltaLinks) {
+        String updatedAt = Instant.now().toString();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            deltaLinks.forEach((stream, deltaLink) -> {
+                Map<String, String> fields = new HashMap<>();
+                fields.put(FIELD_DELTA_LINK, deltaLink);
+                fields.put(FIELD_UPDATED_AT, updatedAt);
+                conn.hMSet(key(stream), fields);
+                conn.hDel(key(stream), FIELD_NEXT_LINK);
+            });
+            return null;
+        });
+    }
+
+    /**
+     * 複数ストリームの同期完了（リース保持中：ストリームごとにトークンを確認して保存）
+     * いずれかのストリームで拒否された場合は例外をスローする（拒否されたストリームの新しい保持者が書き込み済み）
+     * @param fences ストリーム名 → フェンシングトークン
+     */
+    public void saveDeltaLinks(Map<String, String> deltaLinks, Map<String, Long> fences) {
+        if (fences.values().stream().allMatch(fence -> fence == NO_FENCE)) {
+            saveDeltaLinks(deltaLinks);
+            return;
+        }
+        deltaLinks.forEach((stream, deltaLink) ->
+                saveDeltaLink(stream, deltaLink, fences.getOrDefault(stream, NO_FENCE)));
+    }
+
+    /**
+     * チェックポイントを削除（次回はフル同期）。fenceは残す
+     */
+    public void reset(String stream) {
+        hash().delete(key(stream), FIELD_DELTA_LINK, FIELD_NEXT_LINK, FIELD_UPDATED_AT);
+    }
+
+    /**
+     * チェックポイントを削除（リース保持中：fenceより新しいトークンで書き込まれていれば拒否）
+     * @param fence リースのフェンシングトークン（{@link #NO_FENCE}の場合は{@link #reset(String)}と同じ）
+     */
+    public void reset(String stream, long fence) {
+        if (fence == NO_FENCE) {
+            reset(stream);
+            return;
+        }
+        Long written = stringRedisTemplate.execute(FENCED_RESET, List.of(key(stream)), String.valueOf(fence));
+        checkWritten(stream, fence, written);
+    }
+
+    private void fencedWrite(String stream, long fence, String field, String value, String deleteField) {
+        List<String> keys = List.of(key(stream));
+        Long written = deleteField == null
+                ? stringRedisTemplate.execute(FENCED_WRITE, keys, String.valueOf(fence), Instant.now().toString(), field, value)
+                : stringRedisTemplate.execute(FENCED_WRITE, keys, String.valueOf(fence), Instant.now().toString(), field, value, deleteField);
+        checkWritten(stream, fence, written);
+    }
+
+    private static void checkWritten(String stream, long fence, Long written) {
+        if (written == null || written == 0) {
+            throw new RuntimeException("チェックポイントの書き込みが拒否されました（他のインスタンスが新しいリースで同期中）："
+                    + "ストリーム=" + stream + ", トークン=" + fence);
+        }
+    }
+
+    private HashOperations<String, String, String> hash() {
+        return stringRedisTemplate.opsForHash();
+    }
+
+    private String key(String stream) {
+        return keyPrefix + stream;
+    }
+
+    /**
+     * デルタ同期のチェックポイント
+     * @param deltaLink 最後に完了した同期のデルタリンク（未同期ならnull）
+     * @param nextLink  ページング途中の次ページURL（途中でなければnull）
+     * @param updatedAt 最終更新日時
+     */
+    public record Checkpoint(String deltaLink, String nextLink, Instant updatedAt) {
+
+        /**
+         * 再開位置：ページング途中ならnextLink、そうでなければdeltaLink（いずれもなければフル同期）
+         */
+        public String resumeLink() {
+            return nextLink != null ? nextLink : deltaLink;
+        }
+    }
+}
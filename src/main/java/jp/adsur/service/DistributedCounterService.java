@@ -0,0 +1,338 @@
+package jp.adsur.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Redisによるクラスタ全体のカウンタ（リクエストごとのRedisアクセスなし）
+ * <ul>
+ *     <li>{@link #nextId}：全インスタンスで一意なID。{prefix}seq:{name} をINCRBYしてblock-size件の範囲を予約し、
+ *         範囲内はローカルで払い出す（CASのみ、ロックなし）。ストライプ（スレッドごとに分散）ごとに範囲を持つ。
+ *         残りが1/4を下回った時点で次の範囲を非同期に先読みする。INCRBYは常にバックグラウンドのスレッドで実行し、
+ *         範囲を使い切ったスレッドは先読みの完了をallocate-timeoutまで待つ（Redisに接続できない場合は例外をスローし、
+ *         リクエストスレッドをRedisのタイムアウトまで止めない）</li>
+ *     <li>{@link #increment}：全インスタンスの合計件数。ローカルのLongAdderで集計し、flush-intervalごとに差分を
+ *         {prefix}count:{name} へINCRBY（全カウンタを1回のパイプラインで送信）</li>
+ * </ul>
+ * IDは一意だが連番ではない（インスタンス・ストライプ間で範囲が交互になり、停止時に未使用の範囲は欠番になる）。
+ */
+@Slf4j
+@Service
+public class DistributedCounterService {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String keyPrefix;
+    private final int blockSize;
+    private final int prefetchThreshold;
+    private final int stripeCount;
+    private final Duration allocateTimeout;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Sequence> sequences = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    // MeterRegistryが無い場合は計測しない
+    private volatile Counter blockFetches;
+
+    public DistributedCounterService(StringRedisTemplate stringRedisTemplate,
+                                     ObjectProvider<MeterRegistry> meterRegistry,
+                                     @Value("${app.counter.key-prefix:counter:}") String keyPrefix,
+                                     @Value("${app.counter.block-size:1000}") int blockSize,
+                                     @Value("${app.counter.stripes:0}") int stripes,
+                                     @Value("${app.counter.flush-interval:1s}") Duration flushInterval,
+                                     @Value("${app.counter.allocate-timeout:2s}") Duration allocateTimeout) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.keyPrefix = keyPrefix;
+        this.blockSize = blockSize;
+        this.prefetchThreshold = Math.max(1, blockSize / 4);
+        this.stripeCount = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+        this.allocateTimeout = allocateTimeout;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("counter-flush-"));
+        scheduler.scheduleWithFixedDelay(this::flush,
+                flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        meterRegistry.ifAvailable(registry -> this.blockFetches = Counter.builder("app.counter.block.fetches")
+                .description("RedisからのIDブロック取得回数").register(registry));
+        log.info("分散カウンタを初期化しました：ブロック={}件, ストライプ={}, フラッシュ間隔={}ms",
+                blockSize, stripeCount, flushInterval.toMillis());
+    }
+
+    /**
+     * 全インスタンスで一意なIDを払い出す（Redisへのアクセスはストライプごとにblock-size件に1回、通常は先読み済み）
+     * @param name シーケンス名
+     * @throws RuntimeException 範囲を使い切り、allocate-timeout以内に次の範囲を取得できなかった場合（Redis障害時など）
+     */
+    public long nextId(String name) {
+        Sequence sequence = sequences.get(name);
+        if (sequence == null) {
+            sequence = sequences.computeIfAbsent(name, Sequence::new);
+        }
+        return sequence.next();
+    }
+
+    /**
+     * カウンタに1を加算（ローカルのみ、Redisへは定期的に差分を反映）
+     * @param name カウンタ名
+     */
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * カウンタに加算（ローカルのみ、Redisへは定期的に差分を反映）
+     */
+    public void add(String name, long delta) {
+        LongAdder adder = counts.get(name);
+        if (adder == null) {
+            adder = counts.computeIfAbsent(name, key -> new LongAdder());
+        }
+        adder.add(delta);
+    }
+
+    /**
+     * カウンタの値（Redisに反映済みの全インスタンスの合計 + このインスタンスの未反映分）
+     * 他のインスタンスの未反映分（最大flush-interval）は含まれない
+     */
+    public CounterStats stats(String name) {
+        String flushed = stringRedisTemplate.opsForValue().get(countKey(name));
+        LongAdder adder = counts.get(name);
+        long pending = adder != null ? adder.sum() : 0;
+        long clusterTotal = flushed != null ? Long.parseLong(flushed) : 0;
+        return new CounterStats(name, clusterTotal + pending, pending);
+    }
+
+    /**
+     * ローカルの差分をRedisへ反映（全カウンタのINCRBYを1回のパイプラインで送信、失敗時は差分を戻して次回再送）
+     */
+    public void flush() {
+        Map<String, Long> deltas = new HashMap<>();
+        counts.forEach((name, adder) -> {
+            long delta = adder.sumThenReset();
+            if (delta != 0) {
+                deltas.put(name, delta);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                deltas.forEach((name, delta) -> conn.incrBy(countKey(name), delta));
+                return null;
+            });
+        } catch (Exception e) {
+            deltas.forEach((name, delta) -> counts.get(name).add(delta));
+            log.warn("カウンタのRedisへの反映に失敗しました（次回再送）：件数={}, {}", deltas.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 停止時に未反映の差分を反映する
+     */
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        flush();
+    }
+
+    // INCRBYで範囲を予約し、範囲の末尾を返す（範囲は末尾-block-size+1 〜 末尾）
+    private long allocateBlock(String name) {
+        Long end;
+        try {
+            end = stringRedisTemplate.opsForValue().increment(sequenceKey(name), blockSize);
+        } catch (Exception e) {
+            throw new RuntimeException("IDブロックの取得に失敗しました：" + name + "（" + e.getMessage() + "）", e);
+        }
+        if (end == null) {
+            throw new RuntimeException("IDブロックの取得に失敗しました：" + name);
+        }
+        if (blockFetches != null) {
+            blockFetches.increment();
+        }
+        return end;
+    }
+
+    private String sequenceKey(String name) {
+        return keyPrefix + "seq:" + name;
+    }
+
+    private String countKey(String name) {
+        return keyPrefix + "count:" + name;
+    }
+
+    /**
+     * シーケンス（スレッドIDでストライプを選択）
+     */
+    private final class Sequence {
+
+        private final Stripe[] stripes;
+
+        private Sequence(String name) {
+            this.stripes = new Stripe[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                stripes[i] = new Stripe(name);
+            }
+        }
+
+        private long next() {
+            return stripes[(int) Math.floorMod(Thread.currentThread().getId(), (long) stripeCount)].next();
+        }
+    }
+
+    /**
+     * 予約済みの範囲（nextは範囲を超えても増え続け、超えた値は払い出さない）
+     */
+    private static final class Block {
+
+        static final Block EMPTY = new Block(1, 0);
+
+        final AtomicLong next;
+        final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+
+    /**
+     * ストライプごとの予約済み範囲
+     * <p>
+     * 払い出しは現在の範囲へのCASのみ。範囲の切り替えは同じストライプのスレッドのうち1つだけが行い（refillLock）、
+     * INCRBYはschedulerのスレッドで実行するため、ロック・モニターを保持したままRedisの応答を待つことはない。
+     */
+    private final class Stripe {
+
+        private final String name;
+        private final ReentrantLock refillLock = new ReentrantLock();
+        private final AtomicReference<CompletableFuture<Long>> prefetch = new AtomicReference<>();
+        private volatile Block block = Block.EMPTY;
+
+        private Stripe(String name) {
+            this.name = name;
+        }
+
+        private long next() {
+            while (true) {
+                Block current = block;
+                long id = current.next.getAndIncrement();
+                if (id <= current.end) {
+                    if (current.end - id < prefetchThreshold) {
+                        prefetch();
+                    }
+                    return id;
+                }
+                refill(current);
+            }
+        }
+
+        // 先読みを開始（実行中・完了済みの先読みがあればそれを返す）
+        private CompletableFuture<Long> prefetch() {
+            CompletableFuture<Long> pending = prefetch.get();
+            if (pending != null) {
+                return pending;
+            }
+            CompletableFuture<Long> started = new CompletableFuture<>();
+            if (!prefetch.compareAndSet(null, started)) {
+                return prefetch.get();
+            }
+            try {
+                scheduler.execute(() -> {
+                    try {
+                        started.complete(allocateBlock(name));
+                    } catch (RuntimeException e) {
+                        started.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                started.completeExceptionally(e);
+            }
+            return started;
+        }
+
+        // 使い切った範囲を先読みの範囲に切り替える（他のスレッドが切り替え済みなら何もしない）
+        private void refill(Block exhausted) {
+            long deadline = System.nanoTime() + allocateTimeout.toNanos();
+            boolean locked;
+            try {
+                locked = refillLock.tryLock(allocateTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("IDブロックの取得待ち中に中断されました：" + name, e);
+            }
+            if (!locked) {
+                throw unavailable(null);
+            }
+            try {
+                if (block != exhausted) {
+                    return;
+                }
+                CompletableFuture<Long> pending = prefetch.get();
+                if (pending != null && pending.isCompletedExceptionally()) {
+                    // 以前の先読みの失敗は再取得する（一時的な障害で払い出しを失敗させない）
+                    prefetch.compareAndSet(pending, null);
+                    pending = null;
+                }
+                if (pending == null) {
+                    pending = prefetch();
+                }
+                long blockEnd;
+                try {
+                    blockEnd = pending.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    // 先読みは継続し、次の呼び出しで完了していれば使用する
+                    throw unavailable(null);
+                } catch (ExecutionException e) {
+                    prefetch.compareAndSet(pending, null);
+                    throw unavailable(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("IDブロックの取得待ち中に中断されました：" + name, e);
+                }
+                prefetch.compareAndSet(pending, null);
+                block = new Block(blockEnd - blockSize + 1, blockEnd);
+            } finally {
+                refillLock.unlock();
+            }
+        }
+
+        private RuntimeException unavailable(Throwable cause) {
+            String reason = cause != null ? cause.getMessage() : allocateTimeout.toMillis() + "ms以内に応答がありません";
+            return new RuntimeException("IDブロックを取得できません（Redisに接続できない可能性があります）："
+                    + name + "（" + reason + "）", cause);
+        }
+    }
+
+    /**
+     * カウンタの値
+     * @param name         カウンタ名
+     * @param clusterTotal 全インスタンスの合計（他のインスタンスの未反映分を除く）
+     * @param pendingLocal このインスタンスの未反映分
+     */
+    public record CounterStats(String name, long clusterTotal, long pendingLocal) {
+    }
+}
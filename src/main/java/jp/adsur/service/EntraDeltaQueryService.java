@@ -1,109 +1,451 @@
-//package jp.adsur.service;
-//
-//import com.microsoft.graph.models.User;
-//import com.microsoft.graph.requests.GraphServiceClient;
-//import com.microsoft.graph.requests.UserDeltaCollectionPage;
-//import com.microsoft.graph.requests.UserDeltaCollectionRequestBuilder;
-//import lombok.extern.slf4j.Slf4j;
-//import org.springframework.stereotype.Service;
-//
-//import javax.annotation.Resource;
-//import java.net.MalformedURLException;
-//import java.net.URL;
-//import java.util.ArrayList;
-//import java.util.List;
-//
-//@Service
-//@Slf4j
-//public class EntraDeltaQueryService {
-//
-//    @Resource
-//    private GraphServiceClient<?> graphClient;
-//
-//    /**
-//     * デルタクエリ：Entra IDユーザーの増分変更を取得（SDK 5.x対応：デルタリンクの取得問題を解決）
-//     * @param deltaLink 前回のクエリで返却されたデルタリンク（初回クエリはnull/空文字を渡す）
-//     * @return カプセル化された増分クエリ結果（ユーザーリスト + 新しいデルタリンク）
-//     */
-//    public DeltaQueryResult queryUserDelta(String deltaLink) {
-//        // 全ての増分ユーザーデータを格納
-//        List<User> allDeltaUsers = new ArrayList<>();
-//        // 最終的に返却する新しいデルタリンク
-//        String newDeltaLink = null;
-//        UserDeltaCollectionPage deltaPage = null;
-//
-//        try {
-//            if (deltaLink == null || deltaLink.isEmpty()) {
-//                // 初回クエリ：デルタクエリを初期化
-//                deltaPage = graphClient.users()
-//                        .delta()
-//                        .buildRequest()
-//                        .select("id,displayName,userPrincipalName,mail")
-//                        .get();
-//            } else {
-//                // 後続クエリ：5.xバージョンの正しいデルタリンク継続方式
-//                URL deltaUrl = new URL(deltaLink);
-//                UserDeltaCollectionRequestBuilder deltaRequestBuilder =
-//                        new UserDeltaCollectionRequestBuilder(
-//                                deltaUrl.toString(),
-//                                graphClient,
-//                                null
-//                        );
-//                deltaPage = deltaRequestBuilder.buildRequest().get();
-//            }
-//
-//            // ページング処理：全ページを走査して増分データを収集し、最終的なデルタリンクを取得
-//            while (deltaPage != null) {
-//                // 現在のページの増分ユーザーデータを収集
-//                allDeltaUsers.addAll(deltaPage.getCurrentPage());
-//                // 現在のページのデルタリンクを取得（優先：ページングシナリオで最終ページのデルタリンクのみ有効）
-//                newDeltaLink = deltaPage.deltaLink();
-//
-//                // 次のページを処理：次のページが存在する場合は続けて取得
-//                UserDeltaCollectionRequestBuilder nextPageBuilder = deltaPage.getNextPage();
-//                if (nextPageBuilder != null) {
-//                    deltaPage = nextPageBuilder.buildRequest().get();
-//                } else {
-//                    // 次のページがない場合、ループを終了
-//                    deltaPage = null;
-//                }
-//            }
-//
-//            // 増分データのサンプル出力
-//            for (User user : allDeltaUsers) {
-//                log.info("増分ユーザー：ID=%s, 名前=%s, メール=%s%n",
-//                        user.id, user.displayName, user.userPrincipalName);
-//            }
-//
-//            return new DeltaQueryResult(allDeltaUsers, newDeltaLink);
-//
-//        } catch (MalformedURLException e) {
-//            throw new RuntimeException("デルタリンクの形式が不正です：" + deltaLink, e);
-//        } catch (Exception e) {
-//            throw new RuntimeException("デルタクエリの実行に失敗しました：" + e.getMessage(), e);
-//        }
-//    }
-//
-//    /**
-//     * デルタクエリの結果をカプセル化（ユーザーリスト + 新しいデルタリンク）
-//     * （Lombokを使用する場合は@Dataアノテーションでgetter/setterを簡略化可）
-//     */
-//    public static class DeltaQueryResult {
-//        private List<User> deltaUsers; // 全ての増分ユーザーデータ
-//        private String newDeltaLink;   // 次回クエリに使用するデルタリンク
-//
-//        public DeltaQueryResult(List<User> deltaUsers, String newDeltaLink) {
-//            this.deltaUsers = deltaUsers;
-//            this.newDeltaLink = newDeltaLink;
-//        }
-//
-//        // Getter（必須：上位層で結果を取得するため）
-//        public List<User> getDeltaUsers() {
-//            return deltaUsers;
-//        }
-//
-//        public String getNewDeltaLink() {
-//            return newDeltaLink;
-//        }
-//    }
-//}
\ No newline at end of file
+package jp.adsur.service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.graph.http.BaseRequestBuilder;
+import com.microsoft.graph.http.DeltaCollectionPage;
+import com.microsoft.graph.http.GraphServiceException;
+import com.microsoft.graph.models.Entity;
+import com.microsoft.graph.models.Group;
+import com.microsoft.graph.models.User;
+import com.microsoft.graph.requests.GraphServiceClient;
+import com.microsoft.graph.requests.GroupDeltaCollectionPage;
+import com.microsoft.graph.requests.GroupDeltaCollectionRequestBuilder;
+import com.microsoft.graph.requests.UserDeltaCollectionPage;
+import com.microsoft.graph.requests.UserDeltaCollectionRequestBuilder;
+import jp.adsur.config.RetryAfter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.Resource;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+@ConditionalOnProperty(prefix = "azure.entra", name = "tenant-id")
+@Service
+@Slf4j
+public class EntraDeltaQueryService {
+
+    // デルタクエリで取得するユーザー属性
+    static final String USER_SELECT = "id,displayName,userPrincipalName,mail";
+    // グループ属性のデルタ（membersを含めないため、メンバー変更は返却されない）
+    static final String GROUP_SELECT = "id,displayName,description,mailNickname";
+    // メンバーシップのデルタ（members@deltaのみ、グループ属性とは別のデルタトークンで追跡）
+    static final String MEMBERSHIP_SELECT = "id,members";
+
+    // Graphのスロットリング応答（429 Too Many Requests / 503 Service Unavailable）
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+    @Resource
+    private GraphServiceClient<?> graphClient;
+
+    // SDKのRetryHandler（既定3回）で解消しなかったスロットリングを、ページ単位で追加再試行する回数
+    @Value("${app.entra.throttle.max-retries:5}")
+    private int throttleMaxRetries;
+
+    // Retry-Afterが返却されなかった場合の待機時間（再試行回数に比例して延長）
+    @Value("${app.entra.throttle.default-retry-after:10s}")
+    private Duration defaultRetryAfter;
+
+    // Retry-Afterの上限（異常に長い値で同期が停止しないように）
+    @Value("${app.entra.throttle.max-retry-after:120s}")
+    private Duration maxRetryAfter;
+
+    // queryUserDeltaでページごとにDEBUG出力する増分ユーザーの件数（0で出力しない）
+    @Value("${app.entra.delta.log-sample-size:3}")
+    private int logSampleSize;
+
+    /**
+     * デルタクエリ：Entra IDユーザーの増分変更を取得（SDK 5.x対応：デルタリンクの取得問題を解決）
+     * 全ページをメモリに保持するため、大規模テナントの初回同期には{@link #streamUserDelta}を使用すること
+     * @param deltaLink 前回のクエリで返却されたデルタリンク（初回クエリはnull/空文字を渡す）
+     * @return カプセル化された増分クエリ結果（ユーザーリスト + 新しいデルタリンク）
+     */
+    public DeltaQueryResult queryUserDelta(String deltaLink) {
+        // 全ての増分ユーザーデータを格納
+        List<User> allDeltaUsers = new ArrayList<>();
+        DeltaStreamResult streamResult = streamUserDelta(deltaLink, page -> {
+            allDeltaUsers.addAll(page.users());
+            logUserSample(page);
+        });
+
+        return new DeltaQueryResult(allDeltaUsers, streamResult.newDeltaLink());
+    }
+
+    /**
+     * ページ先頭の数件のみ増分ユーザーをサンプル出力（全件を1件ずつ出力しない）
+     */
+    private void logUserSample(DeltaPage page) {
+        if (!log.isDebugEnabled() || logSampleSize <= 0) {
+            return;
+        }
+        List<User> users = page.users();
+        for (int i = 0; i < Math.min(logSampleSize, users.size()); i++) {
+            User user = users.get(i);
+            log.debug("増分ユーザー（ページ{}のサンプル{}/{}）：ID={}, 名前={}, UPN={}",
+                    page.pageIndex(), i + 1, users.size(), user.id, user.displayName, user.userPrincipalName);
+        }
+    }
+
+    /**
+     * ストリーミング方式のデルタクエリ：ページ単位でハンドラに渡し、処理後に参照を解放する
+     * ヒープ使用量はページサイズに比例し、下流への書き込みは最初のページ取得直後から開始できる
+     * @param deltaLink   前回のデルタリンク、またはページング途中のnextLink（初回クエリはnull/空文字を渡す）
+     * @param pageHandler ページごとの処理（呼び出し元スレッドで同期実行、例外発生時は同期を中断）
+     * @return 処理したページ数・ユーザー数と新しいデルタリンク
+     */
+    public DeltaStreamResult streamUserDelta(String deltaLink, Consumer<DeltaPage> pageHandler) {
+        return streamDelta("ユーザー", deltaLink,
+                () -> fetchFirstPage(deltaLink),
+                builder -> builder.buildRequest().get(),
+                page -> {
+                    pageHandler.accept(new DeltaPage(page.pageIndex(), page.items(), page.nextLink(), page.deltaLink()));
+                    return page.items().size();
+                });
+    }
+
+    /**
+     * グループ属性のデルタクエリ（ストリーミング方式、ページ処理は{@link #streamUserDelta}と同じ）
+     * @param deltaLink   前回のデルタリンク、またはnextLink（初回クエリはnull/空文字を渡す）
+     * @param pageHandler ページごとの処理（呼び出し元スレッドで同期実行）
+     * @return 処理したページ数・グループ数と新しいデルタリンク
+     */
+    public DeltaStreamResult streamGroupDelta(String deltaLink, Consumer<GroupDeltaPage> pageHandler) {
+        return streamDelta("グループ", deltaLink,
+                () -> fetchFirstGroupPage(deltaLink, GROUP_SELECT),
+                builder -> builder.buildRequest().get(),
+                page -> {
+                    pageHandler.accept(new GroupDeltaPage(page.pageIndex(), page.items(), page.nextLink(), page.deltaLink()));
+                    return page.items().size();
+                });
+    }
+
+    /**
+     * グループメンバーシップのデルタクエリ（members@deltaをメンバー追加/削除の一覧に展開）
+     * 初回（フル同期）は各グループの全メンバーが追加として返却される
+     * @param deltaLink   前回のデルタリンク、またはnextLink（初回クエリはnull/空文字を渡す）
+     * @param pageHandler ページごとの処理（呼び出し元スレッドで同期実行）
+     * @return 処理したページ数・メンバー変更数と新しいデルタリンク
+     */
+    public DeltaStreamResult streamMembershipDelta(String deltaLink, Consumer<MembershipDeltaPage> pageHandler) {
+        return streamDelta("メンバーシップ", deltaLink,
+                () -> fetchFirstGroupPage(deltaLink, MEMBERSHIP_SELECT),
+                builder -> builder.buildRequest().get(),
+                page -> {
+                    List<MembershipChange> changes = new ArrayList<>();
+                    for (Group group : page.items()) {
+                        // 削除されたグループはグループ属性のストリームで処理する
+                        if (group.id != null && !isRemoved(group)) {
+                            collectMemberChanges(group, changes);
+                        }
+                    }
+                    pageHandler.accept(new MembershipDeltaPage(page.pageIndex(), changes, page.nextLink(), page.deltaLink()));
+                    return changes.size();
+                });
+    }
+
+    /**
+     * デルタクエリのページング処理（ユーザー/グループ共通）
+     * 次ページのビルダーのみ保持し、現在のページはハンドラ処理後に解放する。各ページの取得はスロットリング時に再試行する
+     * @param resource    ログ出力用の対象名
+     * @param firstPage   最初のページの取得処理
+     * @param nextPage    次ページのビルダーからページを取得する処理
+     * @param pageHandler ページごとの処理（戻り値は件数）
+     */
+    private <T, B extends BaseRequestBuilder<T>, P extends DeltaCollectionPage<T, B>> DeltaStreamResult streamDelta(
+            String resource, String deltaLink, PageRequest<P> firstPage, Function<B, P> nextPage,
+            ToLongFunction<RawPage<T>> pageHandler) {
+        try {
+            P deltaPage = withThrottleRetry(firstPage);
+            int pageCount = 0;
+            long itemCount = 0;
+            String newDeltaLink = null;
+
+            while (deltaPage != null) {
+                B nextPageBuilder = deltaPage.getNextPage();
+                RawPage<T> page = new RawPage<>(pageCount, deltaPage.getCurrentPage(),
+                        nextPageBuilder != null ? nextPageBuilder.getRequestUrl() : null, deltaPage.deltaLink());
+                deltaPage = null;
+
+                long pageItems = pageHandler.applyAsLong(page);
+                itemCount += pageItems;
+                pageCount++;
+                // 件数ごとではなくページごとの要約のみ出力
+                log.debug("{}デルタページ{}：件数={}, 累計={}, 次ページ={}",
+                        resource, page.pageIndex(), pageItems, itemCount, page.nextLink() != null);
+                if (page.deltaLink() != null) {
+                    newDeltaLink = page.deltaLink();
+                }
+
+                if (nextPageBuilder != null) {
+                    deltaPage = withThrottleRetry(() -> nextPage.apply(nextPageBuilder));
+                }
+            }
+
+            log.info("{}デルタクエリ完了：ページ数={}, 件数={}", resource, pageCount, itemCount);
+            return new DeltaStreamResult(pageCount, itemCount, newDeltaLink);
+
+        } catch (MalformedURLException e) {
+            throw new RuntimeException("デルタリンクの形式が不正です：" + deltaLink, e);
+        } catch (Exception e) {
+            throw new RuntimeException(resource + "デルタクエリの実行に失敗しました：" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Graphのスロットリング（429/503）時はRetry-Afterの秒数だけ待機して同じページを再取得する
+     */
+    private <P> P withThrottleRetry(PageRequest<P> request) throws MalformedURLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return request.get();
+            } catch (GraphServiceException e) {
+                int responseCode = e.getResponseCode();
+                if ((responseCode != HTTP_TOO_MANY_REQUESTS && responseCode != HTTP_SERVICE_UNAVAILABLE)
+                        || attempt > throttleMaxRetries) {
+                    throw e;
+                }
+                Duration wait = retryAfter(e, attempt);
+                log.warn("⚠️ デルタクエリがスロットリングされました（HTTP {}）。{}秒後に再試行します（{}/{}回目）",
+                        responseCode, wait.toSeconds(), attempt, throttleMaxRetries);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(wait.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("スロットリングの再試行待機中に中断されました", ie);
+                }
+            }
+        }
+    }
+
+    // 例外の応答ヘッダー（"Retry-After : 10" 形式）から待機時間を取得
+    private Duration retryAfter(GraphServiceException e, int attempt) {
+        Duration wait = defaultRetryAfter.multipliedBy(attempt);
+        for (String header : e.getResponseHeaders()) {
+            int separator = header.indexOf(':');
+            if (separator > 0 && header.substring(0, separator).trim().toLowerCase(Locale.ROOT).equals("retry-after")) {
+                Duration parsed = RetryAfter.parse(header.substring(separator + 1), Instant.now());
+                if (parsed != null) {
+                    wait = parsed;
+                }
+                break;
+            }
+        }
+        return wait.compareTo(maxRetryAfter) > 0 ? maxRetryAfter : wait;
+    }
+
+    /**
+     * リアクティブ版のデルタクエリ：下流の要求（backpressure）に応じて次ページを取得する
+     * Graph SDKはブロッキングのため、ページ取得はboundedElasticスケジューラ上で実行する
+     * @param deltaLink 前回のデルタリンク、またはnextLink（初回クエリはnull/空文字を渡す）
+     * @return ページ単位のFlux（最終ページのdeltaLinkが新しいデルタリンク）
+     */
+    public Flux<DeltaPage> userDeltaPages(String deltaLink) {
+        Supplier<UserDeltaCollectionPage> firstPage = () -> {
+            try {
+                return withThrottleRetry(() -> fetchFirstPage(deltaLink));
+            } catch (MalformedURLException e) {
+                throw new RuntimeException("デルタリンクの形式が不正です：" + deltaLink, e);
+            }
+        };
+        return Flux.<DeltaPage, PageCursor>generate(
+                        () -> new PageCursor(Optional.of(firstPage), 0),
+                        (cursor, sink) -> {
+                            if (cursor.next().isEmpty()) {
+                                sink.complete();
+                                return cursor;
+                            }
+                            UserDeltaCollectionPage deltaPage = cursor.next().get().get();
+                            sink.next(toDeltaPage(deltaPage, cursor.pageIndex()));
+                            UserDeltaCollectionRequestBuilder nextPageBuilder = deltaPage.getNextPage();
+                            Optional<Supplier<UserDeltaCollectionPage>> next = nextPageBuilder == null
+                                    ? Optional.empty()
+                                    : Optional.of(() -> retryNextPage(nextPageBuilder));
+                            return new PageCursor(next, cursor.pageIndex() + 1);
+                        })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * デルタで返却されたユーザー/グループが削除済み（@removed）かどうか
+     */
+    public static boolean isRemoved(Entity entity) {
+        return entity.additionalDataManager().get("@removed") != null;
+    }
+
+    private UserDeltaCollectionPage fetchFirstPage(String deltaLink) throws MalformedURLException {
+        if (deltaLink == null || deltaLink.isEmpty()) {
+            // 初回クエリ：デルタクエリを初期化
+            return graphClient.users()
+                    .delta()
+                    .buildRequest()
+                    .select(USER_SELECT)
+                    .get();
+        }
+        // 後続クエリ：5.xバージョンの正しいデルタリンク継続方式
+        URL deltaUrl = new URL(deltaLink);
+        UserDeltaCollectionRequestBuilder deltaRequestBuilder =
+                new UserDeltaCollectionRequestBuilder(
+                        deltaUrl.toString(),
+                        graphClient,
+                        null
+                );
+        return deltaRequestBuilder.buildRequest().get();
+    }
+
+    private UserDeltaCollectionPage retryNextPage(UserDeltaCollectionRequestBuilder nextPageBuilder) {
+        try {
+            return withThrottleRetry(() -> nextPageBuilder.buildRequest().get());
+        } catch (MalformedURLException e) {
+            throw new RuntimeException("デルタリンクの形式が不正です：" + nextPageBuilder.getRequestUrl(), e);
+        }
+    }
+
+    private GroupDeltaCollectionPage fetchFirstGroupPage(String deltaLink, String select) throws MalformedURLException {
+        if (deltaLink == null || deltaLink.isEmpty()) {
+            return graphClient.groups()
+                    .delta()
+                    .buildRequest()
+                    .select(select)
+                    .get();
+        }
+        return new GroupDeltaCollectionRequestBuilder(new URL(deltaLink).toString(), graphClient, null)
+                .buildRequest()
+                .get();
+    }
+
+    // members@delta：[{"@odata.type": "#microsoft.graph.user", "id": "...", "@removed": {...}}, ...]
+    private static void collectMemberChanges(Group group, List<MembershipChange> changes) {
+        JsonElement membersDelta = group.additionalDataManager().get("members@delta");
+        if (membersDelta == null || !membersDelta.isJsonArray()) {
+            return;
+        }
+        for (JsonElement element : membersDelta.getAsJsonArray()) {
+            JsonObject member = element.getAsJsonObject();
+            if (!member.has("id")) {
+                continue;
+            }
+            String type = member.has("@odata.type") ? member.get("@odata.type").getAsString() : null;
+            changes.add(new MembershipChange(group.id, member.get("id").getAsString(),
+                    type != null ? type.replace("#microsoft.graph.", "") : null, member.has("@removed")));
+        }
+    }
+
+    private DeltaPage toDeltaPage(UserDeltaCollectionPage deltaPage, int pageIndex) {
+        UserDeltaCollectionRequestBuilder nextPageBuilder = deltaPage.getNextPage();
+        return new DeltaPage(
+                pageIndex,
+                deltaPage.getCurrentPage(),
+                nextPageBuilder != null ? nextPageBuilder.getRequestUrl() : null,
+                deltaPage.deltaLink()
+        );
+    }
+
+    /**
+     * ページの取得処理（デルタリンクのURL解析で例外が発生しうる）
+     */
+    @FunctionalInterface
+    private interface PageRequest<P> {
+        P get() throws MalformedURLException;
+    }
+
+    /**
+     * 種類を問わないデルタクエリの1ページ（streamDelta内部用）
+     */
+    private record RawPage<T>(int pageIndex, List<T> items, String nextLink, String deltaLink) {
+    }
+
+    /**
+     * Flux.generateの状態（次ページの取得処理 + ページ番号）
+     */
+    private record PageCursor(Optional<Supplier<UserDeltaCollectionPage>> next, int pageIndex) {
+    }
+
+    /**
+     * デルタクエリの1ページ分
+     * @param pageIndex ページ番号（0始まり）
+     * @param users     このページの増分ユーザー
+     * @param nextLink  次ページのURL（最終ページはnull）
+     * @param deltaLink 新しいデルタリンク（最終ページのみ設定される）
+     */
+    public record DeltaPage(int pageIndex, List<User> users, String nextLink, String deltaLink) {
+    }
+
+    /**
+     * グループ属性のデルタクエリの1ページ
+     * @param pageIndex ページ番号（0始まり）
+     * @param groups    このページの増分グループ（削除済みは@removedを含む）
+     * @param nextLink  次ページのURL（最終ページはnull）
+     * @param deltaLink 新しいデルタリンク（最終ページのみ設定される）
+     */
+    public record GroupDeltaPage(int pageIndex, List<Group> groups, String nextLink, String deltaLink) {
+    }
+
+    /**
+     * メンバーシップのデルタクエリの1ページ
+     * @param pageIndex ページ番号（0始まり）
+     * @param changes   このページのメンバー追加/削除
+     * @param nextLink  次ページのURL（最終ページはnull）
+     * @param deltaLink 新しいデルタリンク（最終ページのみ設定される）
+     */
+    public record MembershipDeltaPage(int pageIndex, List<MembershipChange> changes, String nextLink, String deltaLink) {
+    }
+
+    /**
+     * グループメンバーの追加/削除
+     * @param groupId    グループのobjectId
+     * @param memberId   メンバーのobjectId
+     * @param memberType メンバーの種類（user/group/servicePrincipalなど、不明な場合はnull）
+     * @param removed    削除の場合true
+     */
+    public record MembershipChange(String groupId, String memberId, String memberType, boolean removed) {
+    }
+
+    /**
+     * ストリーミング方式のデルタクエリ結果（ユーザーデータは保持しない）
+     * @param pageCount    処理したページ数
+     * @param userCount    処理した件数（ユーザー数、グループ数またはメンバー変更数）
+     * @param newDeltaLink 次回クエリに使用するデルタリンク
+     */
+    public record DeltaStreamResult(int pageCount, long userCount, String newDeltaLink) {
+    }
+
+    /**
+     * デルタクエリの結果をカプセル化（ユーザーリスト + 新しいデルタリンク）
+     * （Lombokを使用する場合は@Dataアノテーションでgetter/setterを簡略化可）
+     */
+    public static class DeltaQueryResult {
+        private List<User> deltaUsers; // 全ての増分ユーザーデータ
+        private String newDeltaLink;   // 次回クエリに使用するデルタリンク
+
+        public DeltaQueryResult(List<User> deltaUsers, String newDeltaLink) {
+            this.deltaUsers = deltaUsers;
+            this.newDeltaLink = newDeltaLink;
+        }
+
+        // Getter（必須：上位層で結果を取得するため）
+        public List<User> getDeltaUsers() {
+            return deltaUsers;
+        }
+
+        public String getNewDeltaLink() {
+            return newDeltaLink;
+        }
+    }
+}
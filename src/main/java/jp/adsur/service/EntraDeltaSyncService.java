@@ -0,0 +1,548 @@
+package jp.adsur.service;
+
+import com.microsoft.graph.http.GraphServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Entra IDのバックグラウンド増分同期エンジン
+ * <p>
+ * ページ取得ごとにリスナー（{@link UserDeltaListener} / {@link GroupDeltaListener}）へ渡し、
+ * その後Redisへチェックポイント（nextLink/deltaLink）を保存する。
+ * プロセスが途中で停止しても次回は最後に保存したページから再開し、完了後は常にデルタリンクからの増分のみ取得する。
+ * <p>
+ * テナント同期（{@link #syncTenant}）はusers/groups/membershipsの3ストリームを専用スレッドプールで並行実行し、
+ * 所要時間は3ストリームの合計ではなく最も遅いストリームに揃う。
+ * 新しいデルタリンクは全ストリームの成功後にまとめて保存するため、チェックポイントは常に同じ時点のスナップショットを指す。
+ * <p>
+ * 複数インスタンス構成ではleader-election=trueとし、ストリームごとのRedisリース（delta-sync:{stream}）を取得した
+ * インスタンスだけが同期する。リースを取得できなかったインスタンスはスキップし、保持者の停止後はTTL経過後に引き継ぐ。
+ * チェックポイントはリースのフェンシングトークン付きで書き込み、失効後の旧保持者の書き込みは拒否される。
+ * sharded=trueの場合はストリームをインスタンス間で分担し（1インスタンスあたりmax-shards-per-nodeまで）、
+ * 各ストリームは完了時に自身のデルタリンクを保存する（ストリーム間のスナップショットの一致は保証しない）。
+ */
+@Slf4j
+@ConditionalOnProperty(prefix = "azure.entra", name = "tenant-id")
+@Service
+public class EntraDeltaSyncService {
+
+    // チェックポイントのストリーム名
+    static final String USERS_STREAM = "users";
+    static final String GROUPS_STREAM = "groups";
+    static final String MEMBERSHIPS_STREAM = "memberships";
+    private static final List<String> TENANT_STREAMS = List.of(USERS_STREAM, GROUPS_STREAM, MEMBERSHIPS_STREAM);
+    // ストリームごとのリース名の接頭辞
+    private static final String LEASE_PREFIX = "delta-sync:";
+
+    // Graphがデルタトークンの期限切れを通知するステータスコード（フル同期が必要）
+    private static final int HTTP_GONE = 410;
+
+    private final EntraDeltaQueryService deltaQueryService;
+    private final DeltaCheckpointStore checkpointStore;
+    private final RedisLeaseManager leaseManager;
+    private final List<UserDeltaListener> userListeners;
+    private final List<GroupDeltaListener> groupListeners;
+    private final boolean scheduleEnabled;
+    private final boolean includeGroups;
+    private final ExecutorService streamExecutor;
+    private final boolean leaderElection;
+    private final boolean sharded;
+    private final int maxShardsPerNode;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile SyncStatus lastStatus;
+    private volatile TenantSyncStatus lastTenantStatus;
+
+    // 同期の進捗メトリクス（ページ/秒はapp.entra.delta.pagesのrateで確認）
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AtomicLong> lastSuccessEpochSeconds = new LinkedHashMap<>();
+
+    public EntraDeltaSyncService(EntraDeltaQueryService deltaQueryService,
+                                 DeltaCheckpointStore checkpointStore,
+                                 RedisLeaseManager leaseManager,
+                                 ObjectProvider<UserDeltaListener> userListeners,
+                                 ObjectProvider<GroupDeltaListener> groupListeners,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.entra.delta-sync.enabled:false}") boolean scheduleEnabled,
+                                 @Value("${app.entra.delta-sync.include-groups:false}") boolean includeGroups,
+                                 @Value("${app.entra.delta-sync.max-concurrency:3}") int maxConcurrency,
+                                 @Value("${app.entra.delta-sync.leader-election:false}") boolean leaderElection,
+                                 @Value("${app.entra.delta-sync.sharded:false}") boolean sharded,
+                                 @Value("${app.entra.delta-sync.max-shards-per-node:3}") int maxShardsPerNode) {
+        this.deltaQueryService = deltaQueryService;
+        this.checkpointStore = checkpointStore;
+        this.leaseManager = leaseManager;
+        this.leaderElection = leaderElection;
+        this.sharded = sharded;
+        this.maxShardsPerNode = Math.max(1, maxShardsPerNode);
+        this.userListeners = userListeners.orderedStream().toList();
+        this.groupListeners = groupListeners.orderedStream().toList();
+        this.scheduleEnabled = scheduleEnabled;
+        this.includeGroups = includeGroups;
+        this.streamExecutor = Executors.newFixedThreadPool(Math.max(1, maxConcurrency),
+                new CustomizableThreadFactory("delta-sync-"));
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("app.entra.delta.running", running, flag -> flag.get() ? 1 : 0)
+                .description("同期実行中（1）").register(meterRegistry);
+        for (String stream : TENANT_STREAMS) {
+            AtomicLong lastSuccess = new AtomicLong();
+            lastSuccessEpochSeconds.put(stream, lastSuccess);
+            Gauge.builder("app.entra.delta.last_success", lastSuccess, AtomicLong::get)
+                    .description("最後に同期が成功した時刻（エポック秒）").tag("stream", stream).register(meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        streamExecutor.shutdownNow();
+    }
+
+    /**
+     * 定期実行（前回の完了から一定間隔）：app.entra.delta-sync.enabled=trueの場合のみ同期する
+     * include-groups=trueの場合はグループ・メンバーシップも含めたテナント同期を実行する
+     */
+    @Scheduled(fixedDelayString = "${app.entra.delta-sync.interval:PT5M}",
+            initialDelayString = "${app.entra.delta-sync.initial-delay:PT30S}")
+    public void scheduledSync() {
+        if (!scheduleEnabled) {
+            return;
+        }
+        try {
+            if (includeGroups) {
+                syncTenant();
+            } else {
+                syncUsers();
+            }
+        } catch (Exception e) {
+            log.error("定期デルタ同期に失敗しました（次回はチェックポイントから再開します）：", e);
+        }
+    }
+
+    /**
+     * ユーザーの増分同期を実行（チェックポイントから再開）
+     * @return 同期結果（既に実行中の場合はスキップ状態を返却）
+     */
+    public SyncStatus syncUsers() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("デルタ同期は既に実行中のため、スキップします");
+            return SyncStatus.skipped();
+        }
+        Instant startedAt = Instant.now();
+        RedisLeaseManager.Lease lease = null;
+        try {
+            if (leaderElection) {
+                Optional<RedisLeaseManager.Lease> acquired = leaseManager.tryAcquire(LEASE_PREFIX + USERS_STREAM);
+                if (acquired.isEmpty()) {
+                    log.info("他のインスタンスがユーザー同期のリースを保持しているため、スキップします");
+                    return SyncStatus.skipped();
+                }
+                lease = acquired.get();
+            }
+            StreamOutcome outcome = syncStream(USERS_STREAM, false, lease);
+            lastStatus = outcome.status();
+            lastSuccessEpochSeconds.get(USERS_STREAM).set(lastStatus.finishedAt().getEpochSecond());
+            return lastStatus;
+        } catch (RuntimeException e) {
+            lastStatus = SyncStatus.failed(startedAt, e);
+            throw e;
+        } finally {
+            if (lease != null) {
+                lease.close();
+            }
+            running.set(false);
+        }
+    }
+
+    /**
+     * テナント全体（users/groups/memberships）の増分同期を並行実行
+     * 1つのストリームが失敗しても他のストリームは最後まで実行し、ページ単位のチェックポイントを残す。
+     * その場合デルタリンクはどのストリームも更新せず、次回は各ストリームの最後に処理したページから再開する
+     * @return 同期結果（既に実行中の場合はスキップ状態を返却）
+     */
+    public TenantSyncStatus syncTenant() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("デルタ同期は既に実行中のため、スキップします");
+            return TenantSyncStatus.skipped();
+        }
+        Instant startedAt = Instant.now();
+        Map<String, RedisLeaseManager.Lease> leases = new LinkedHashMap<>();
+        try {
+            List<String> streams = leaderElection ? acquireTenantLeases(leases) : TENANT_STREAMS;
+            if (streams.isEmpty()) {
+                log.info("他のインスタンスがテナント同期のリースを保持しているため、スキップします");
+                return TenantSyncStatus.skipped();
+            }
+            // シャード分担時は各ストリームが完了時に自身のデルタリンクを保存する
+            boolean deferDeltaLinks = !(leaderElection && sharded);
+
+            Map<String, CompletableFuture<StreamOutcome>> futures = new LinkedHashMap<>();
+            for (String stream : streams) {
+                RedisLeaseManager.Lease lease = leases.get(stream);
+                futures.put(stream, CompletableFuture.supplyAsync(
+                        () -> syncStream(stream, deferDeltaLinks, lease), streamExecutor));
+            }
+
+            Map<String, SyncStatus> statuses = new LinkedHashMap<>();
+            Map<String, String> deltaLinks = new LinkedHashMap<>();
+            List<String> errors = new ArrayList<>();
+            for (String stream : TENANT_STREAMS) {
+                CompletableFuture<StreamOutcome> future = futures.get(stream);
+                if (future == null) {
+                    // 他のインスタンスが分担中のストリーム
+                    statuses.put(stream, SyncStatus.skipped());
+                    continue;
+                }
+                try {
+                    StreamOutcome outcome = future.join();
+                    statuses.put(stream, outcome.status());
+                    if (outcome.deltaLink() != null) {
+                        deltaLinks.put(stream, outcome.deltaLink());
+                    }
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statuses.put(stream, SyncStatus.failed(startedAt, cause));
+                    errors.add(stream + "：" + cause.getMessage());
+                }
+            }
+
+            if (!errors.isEmpty()) {
+                lastTenantStatus = new TenantSyncStatus("FAILED", startedAt, Instant.now(), statuses, String.join("; ", errors));
+                throw new RuntimeException("テナント同期に失敗しました（デルタリンクは更新していません）：" + errors);
+            }
+
+            // 全ストリームの成功後にデルタリンクをまとめて進める
+            try {
+                if (deferDeltaLinks) {
+                    Map<String, Long> fences = new LinkedHashMap<>();
+                    leases.forEach((stream, lease) -> {
+                        lease.checkValid();
+                        fences.put(stream, lease.token());
+                    });
+                    checkpointStore.saveDeltaLinks(deltaLinks, fences);
+                }
+            } catch (RuntimeException e) {
+                lastTenantStatus = new TenantSyncStatus("FAILED", startedAt, Instant.now(), statuses, e.getMessage());
+                throw e;
+            }
+            Instant finishedAt = Instant.now();
+            futures.keySet().forEach(stream ->
+                    lastSuccessEpochSeconds.get(stream).set(finishedAt.getEpochSecond()));
+            lastStatus = statuses.get(USERS_STREAM);
+            lastTenantStatus = new TenantSyncStatus("SUCCESS", startedAt, finishedAt, statuses, null);
+            log.info("テナント同期が完了しました：所要時間={}ms, {}",
+                    Duration.between(startedAt, finishedAt).toMillis(), statuses);
+            return lastTenantStatus;
+
+        } finally {
+            leases.values().forEach(RedisLeaseManager.Lease::close);
+            running.set(false);
+        }
+    }
+
+    /**
+     * テナント同期のリースを取得し、このインスタンスが同期するストリームを返却する
+     * 単一リーダー：全ストリームのリースを取得できた場合のみ全ストリーム（1つでも取得できなければ解放して空）
+     * シャード分担：インスタンスごとに開始位置をずらし、取得できたストリームをmax-shards-per-nodeまで
+     */
+    private List<String> acquireTenantLeases(Map<String, RedisLeaseManager.Lease> leases) {
+        int offset = sharded ? Math.floorMod(leaseManager.ownerId().hashCode(), TENANT_STREAMS.size()) : 0;
+        List<String> acquired = new ArrayList<>();
+        for (int i = 0; i < TENANT_STREAMS.size() && acquired.size() < maxShardsPerNode(); i++) {
+            String stream = TENANT_STREAMS.get((offset + i) % TENANT_STREAMS.size());
+            Optional<RedisLeaseManager.Lease> lease = leaseManager.tryAcquire(LEASE_PREFIX + stream);
+            if (lease.isPresent()) {
+                leases.put(stream, lease.get());
+                acquired.add(stream);
+            } else if (!sharded) {
+                leases.values().forEach(RedisLeaseManager.Lease::close);
+                leases.clear();
+                return List.of();
+            }
+        }
+        if (sharded && !acquired.isEmpty()) {
+            log.info("テナント同期のシャードを取得しました：保持者={}, ストリーム={}", leaseManager.ownerId(), acquired);
+        }
+        return acquired;
+    }
+
+    private int maxShardsPerNode() {
+        return sharded ? maxShardsPerNode : TENANT_STREAMS.size();
+    }
+
+    /**
+     * 最後のユーザー同期結果（未実行ならnull）
+     */
+    public SyncStatus lastStatus() {
+        return lastStatus;
+    }
+
+    /**
+     * 最後のテナント同期結果（未実行ならnull）
+     */
+    public TenantSyncStatus lastTenantStatus() {
+        return lastTenantStatus;
+    }
+
+    /**
+     * 現在のチェックポイント
+     */
+    public DeltaCheckpointStore.Checkpoint checkpoint() {
+        return checkpointStore.load(USERS_STREAM);
+    }
+
+    /**
+     * ストリームごとの現在のチェックポイント
+     */
+    public Map<String, DeltaCheckpointStore.Checkpoint> tenantCheckpoints() {
+        Map<String, DeltaCheckpointStore.Checkpoint> checkpoints = new LinkedHashMap<>();
+        for (String stream : TENANT_STREAMS) {
+            checkpoints.put(stream, checkpointStore.load(stream));
+        }
+        return checkpoints;
+    }
+
+    /**
+     * ストリームごとのリースの保持者（leader-election=falseの場合は空、保持者がいなければnull）
+     */
+    public Map<String, RedisLeaseManager.LeaseInfo> leaseHolders() {
+        Map<String, RedisLeaseManager.LeaseInfo> holders = new LinkedHashMap<>();
+        if (leaderElection) {
+            for (String stream : TENANT_STREAMS) {
+                holders.put(stream, leaseManager.holder(LEASE_PREFIX + stream).orElse(null));
+            }
+        }
+        return holders;
+    }
+
+    /**
+     * チェックポイントを削除（次回はフル同期）
+     */
+    public void resetCheckpoint() {
+        checkpointStore.reset(USERS_STREAM);
+    }
+
+    /**
+     * 全ストリームのチェックポイントを削除（次回のテナント同期はフル同期）
+     */
+    public void resetTenantCheckpoints() {
+        TENANT_STREAMS.forEach(checkpointStore::reset);
+    }
+
+    /**
+     * 1ストリーム分の同期（チェックポイントから再開、デルタトークン期限切れ時はフル同期）
+     * @param deferDeltaLink trueの場合は新しいデルタリンクを保存せず呼び出し元に返却する（テナント同期で一括保存）
+     * @param lease          ストリームのリース（leader-election=falseの場合はnull）
+     */
+    private StreamOutcome syncStream(String stream, boolean deferDeltaLink, RedisLeaseManager.Lease lease) {
+        Instant startedAt = Instant.now();
+        SyncMode mode = null;
+        try {
+            DeltaCheckpointStore.Checkpoint checkpoint = checkpointStore.load(stream);
+            String resumeLink = checkpoint.resumeLink();
+            mode = checkpoint.nextLink() != null ? SyncMode.RESUME
+                    : checkpoint.deltaLink() != null ? SyncMode.INCREMENTAL : SyncMode.FULL;
+            // デルタリンクがないままページング途中から再開する場合は、フル同期の続き
+            boolean fullSync = checkpoint.deltaLink() == null;
+            log.info("デルタ同期を開始します：ストリーム={}, モード={}", stream, mode);
+
+            EntraDeltaQueryService.DeltaStreamResult result;
+            try {
+                result = runFrom(stream, mode, fullSync, resumeLink, deferDeltaLink, lease);
+            } catch (RuntimeException e) {
+                if (mode == SyncMode.FULL || !isSyncStateExpired(e)) {
+                    throw e;
+                }
+                // デルタトークン期限切れ：チェックポイントを破棄してフル同期からやり直す
+                log.warn("デルタトークンが期限切れです。フル同期を実行します：ストリーム={}", stream);
+                checkpointStore.reset(stream, lease != null ? lease.token() : DeltaCheckpointStore.NO_FENCE);
+                mode = SyncMode.FULL;
+                result = runFrom(stream, mode, true, null, deferDeltaLink, lease);
+            }
+
+            SyncStatus status = new SyncStatus(mode.name(), startedAt, Instant.now(),
+                    result.pageCount(), result.userCount(), null);
+            recordSync(stream, mode.name(), "success", startedAt);
+            log.info("デルタ同期が完了しました：ストリーム={}, モード={}, ページ数={}, 件数={}",
+                    stream, mode, result.pageCount(), result.userCount());
+            return new StreamOutcome(status, result.newDeltaLink());
+
+        } catch (RuntimeException e) {
+            recordSync(stream, mode != null ? mode.name() : "UNKNOWN", "failure", startedAt);
+            throw e;
+        }
+    }
+
+    /**
+     * @param fullSync フル同期（再開を含む）の場合はtrue：最終ページの処理後、デルタリンクの保存前に
+     *                 リスナーのonFullSyncCompleteを呼び出し、フル同期で受信しなかったエントリを削除させる
+     */
+    private EntraDeltaQueryService.DeltaStreamResult runFrom(String stream, SyncMode mode, boolean fullSync, String link,
+                                                             boolean deferDeltaLink, RedisLeaseManager.Lease lease) {
+        if (mode == SyncMode.FULL) {
+            if (USERS_STREAM.equals(stream)) {
+                userListeners.forEach(UserDeltaListener::onFullSyncStart);
+            } else {
+                groupListeners.forEach(listener -> listener.onFullSyncStart(stream));
+            }
+        }
+        return switch (stream) {
+            case USERS_STREAM -> deltaQueryService.streamUserDelta(link, page -> {
+                if (fullSync) {
+                    dispatch(stream, userListeners, listener -> listener.onFullSyncPage(page));
+                } else {
+                    dispatch(stream, userListeners, listener -> listener.onPage(page));
+                }
+                if (fullSync && page.deltaLink() != null) {
+                    dispatch(stream, userListeners, UserDeltaListener::onFullSyncComplete);
+                }
+                afterPage(stream, page.users().size(), page.nextLink(), page.deltaLink(), deferDeltaLink, lease);
+            });
+            case GROUPS_STREAM -> deltaQueryService.streamGroupDelta(link, page -> {
+                dispatch(stream, groupListeners, listener -> listener.onGroupPage(page));
+                if (fullSync && page.deltaLink() != null) {
+                    dispatch(stream, groupListeners, listener -> listener.onFullSyncComplete(stream));
+                }
+                afterPage(stream, page.groups().size(), page.nextLink(), page.deltaLink(), deferDeltaLink, lease);
+            });
+            case MEMBERSHIPS_STREAM -> deltaQueryService.streamMembershipDelta(link, page -> {
+                dispatch(stream, groupListeners, listener -> listener.onMembershipPage(page));
+                if (fullSync && page.deltaLink() != null) {
+                    dispatch(stream, groupListeners, listener -> listener.onFullSyncComplete(stream));
+                }
+                afterPage(stream, page.changes().size(), page.nextLink(), page.deltaLink(), deferDeltaLink, lease);
+            });
+            default -> throw new IllegalArgumentException("未対応のストリームです：" + stream);
+        };
+    }
+
+    private <L> void dispatch(String stream, List<L> listeners, Consumer<L> call) {
+        for (L listener : listeners) {
+            Timer.builder("app.entra.delta.listener")
+                    .description("リスナーのページ処理時間")
+                    .tag("stream", stream)
+                    .tag("listener", listener.getClass().getSimpleName())
+                    .register(meterRegistry)
+                    .record(() -> call.accept(listener));
+        }
+    }
+
+    private void afterPage(String stream, int itemCount, String nextLink, String deltaLink, boolean deferDeltaLink,
+                           RedisLeaseManager.Lease lease) {
+        Counter.builder("app.entra.delta.pages")
+                .description("処理したデルタページ数").tag("stream", stream).register(meterRegistry)
+                .increment();
+        Counter.builder("app.entra.delta.items")
+                .description("処理した件数（ユーザー/グループ/メンバー変更）").tag("stream", stream).register(meterRegistry)
+                .increment(itemCount);
+        // 下流処理が完了したページの次からのみ再開する（リースを失っていれば中断）
+        long fence = DeltaCheckpointStore.NO_FENCE;
+        if (lease != null) {
+            lease.checkValid();
+            fence = lease.token();
+        }
+        if (nextLink != null) {
+            checkpointStore.saveNextLink(stream, nextLink, fence);
+        } else if (deltaLink != null && !deferDeltaLink) {
+            checkpointStore.saveDeltaLink(stream, deltaLink, fence);
+        }
+    }
+
+    private void recordSync(String stream, String mode, String outcome, Instant startedAt) {
+        Timer.builder("app.entra.delta.sync")
+                .description("デルタ同期1回の所要時間")
+                .tag("stream", stream)
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(Duration.between(startedAt, Instant.now()));
+    }
+
+    private static boolean isSyncStateExpired(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof GraphServiceException graphException
+                    && graphException.getResponseCode() == HTTP_GONE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private enum SyncMode {
+        // 初回（チェックポイントなし）
+        FULL,
+        // ページング途中から再開
+        RESUME,
+        // デルタリンクからの増分
+        INCREMENTAL
+    }
+
+    /**
+     * 1ストリーム分の同期結果と、保存を保留した新しいデルタリンク
+     */
+    private record StreamOutcome(SyncStatus status, String deltaLink) {
+    }
+
+    /**
+     * 同期結果
+     * @param mode       同期モード（FULL/RESUME/INCREMENTAL/FAILED/SKIPPED）
+     * @param startedAt  開始日時
+     * @param finishedAt 終了日時
+     * @param pageCount  処理したページ数
+     * @param userCount  処理した件数（groups/membershipsストリームではグループ数・メンバー変更数）
+     * @param error      エラーメッセージ（成功時はnull）
+     */
+    public record SyncStatus(String mode, Instant startedAt, Instant finishedAt,
+                             int pageCount, long userCount, String error) {
+
+        static SyncStatus skipped() {
+            Instant now = Instant.now();
+            return new SyncStatus("SKIPPED", now, now, 0, 0, null);
+        }
+
+        static SyncStatus failed(Instant startedAt, Throwable e) {
+            return new SyncStatus("FAILED", startedAt, Instant.now(), 0, 0, e.getMessage());
+        }
+    }
+
+    /**
+     * テナント同期の結果
+     * @param outcome    SUCCESS/FAILED/SKIPPED
+     * @param startedAt  開始日時
+     * @param finishedAt 終了日時
+     * @param streams    ストリーム名 → 同期結果
+     * @param error      エラーメッセージ（成功時はnull）
+     */
+    public record TenantSyncStatus(String outcome, Instant startedAt, Instant finishedAt,
+                                   Map<String, SyncStatus> streams, String error) {
+
+        static TenantSyncStatus skipped() {
+            Instant now = Instant.now();
+            return new TenantSyncStatus("SKIPPED", now, now, Map.of(), null);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package jp.adsur.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.microsoft.graph.models.Group;
+import com.microsoft.graph.models.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * グループIDとUPNの存在確認結果のローカルキャッシュ（Caffeine）
+ * <p>
+ * 存在する（肯定）結果と存在しない（否定）結果で有効期限を分け、否定結果は短時間だけ保持する。
+ * 同じグループへの連続した追加ではGraphの$filterによる存在確認を省略し、存在しないUPNの再検索も抑止する。
+ * デルタ同期で作成・削除・変更が通知されたエントリは即時に更新/破棄する
+ * （デルタ同期を実行していないインスタンスでは有効期限までの遅延がある）。
+ */
+@Slf4j
+@Service
+public class EntraExistenceCache implements UserDeltaListener, GroupDeltaListener, MeterBinder {
+
+    // groupId → 存在するか
+    private final Cache<String, Boolean> groups;
+    // UPN（小文字）→ ユーザー（userがnullの場合は存在しない）
+    private final Cache<String, CachedUser> users;
+    // objectId → キャッシュ中のUPN（小文字）：UPNを含まない変更・削除の通知を、キャッシュ全体を走査せずに破棄するため
+    private final Map<String, String> upnByObjectId = new ConcurrentHashMap<>();
+
+    public EntraExistenceCache(@Value("${app.entra.existence-cache.max-size:10000}") long maxSize,
+                               @Value("${app.entra.existence-cache.positive-ttl:10m}") Duration positiveTtl,
+                               @Value("${app.entra.existence-cache.negative-ttl:30s}") Duration negativeTtl) {
+        this.groups = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(ttl(Boolean::booleanValue, positiveTtl, negativeTtl))
+                .recordStats()
+                .build();
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(ttl(CachedUser::present, positiveTtl, negativeTtl))
+                .evictionListener((String upn, CachedUser cached, RemovalCause cause) -> forget(upn, cached))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * グループの存在確認（キャッシュになければprobeでGraphに問い合わせ、結果をキャッシュする）
+     * 同じグループの同時確認はCaffeineにより1回の問い合わせにまとめられる。probeの例外はキャッシュせずそのままスローする
+     */
+    public boolean groupExists(String groupId, Predicate<String> probe) {
+        return groups.get(groupId, probe::test);
+    }
+
+    /**
+     * グループの存在確認結果を登録（作成直後の同期確認で見つかった場合など）
+     */
+    public void putGroup(String groupId, boolean exists) {
+        groups.put(groupId, exists);
+    }
+
+    /**
+     * キャッシュされたユーザー（存在しない、または未キャッシュの場合は空）
+     */
+    public Optional<EntraUserDirectory.DirectoryUser> cachedUser(String userPrincipalName) {
+        CachedUser cached = users.getIfPresent(normalize(userPrincipalName));
+        return cached == null ? Optional.empty() : Optional.ofNullable(cached.user());
+    }
+
+    /**
+     * 存在しないことがキャッシュされているUPNか（否定結果の有効期限内）
+     */
+    public boolean isMissingUser(String userPrincipalName) {
+        CachedUser cached = users.getIfPresent(normalize(userPrincipalName));
+        return cached != null && !cached.present();
+    }
+
+    /**
+     * Graphで見つかったユーザーを登録
+     */
+    public void putUser(EntraUserDirectory.DirectoryUser user) {
+        if (user.userPrincipalName() != null) {
+            String upn = normalize(user.userPrincipalName());
+            forget(upn, users.asMap().put(upn, new CachedUser(user)));
+            if (user.id() != null) {
+                upnByObjectId.put(user.id(), upn);
+            }
+        }
+    }
+
+    /**
+     * Graphで見つからなかったUPNを登録
+     */
+    public void putMissingUser(String userPrincipalName) {
+        String upn = normalize(userPrincipalName);
+        forget(upn, users.asMap().put(upn, CachedUser.ABSENT));
+    }
+
+    /**
+     * ユーザーのデルタ：変更・削除されたユーザーのエントリと、作成・UPN変更後のUPNの否定結果を破棄する
+     */
+    @Override
+    public void onPage(EntraDeltaQueryService.DeltaPage page) {
+        for (User user : page.users()) {
+            if (user.id == null) {
+                continue;
+            }
+            if (user.userPrincipalName != null) {
+                String upn = normalize(user.userPrincipalName);
+                forget(upn, users.asMap().remove(upn));
+            }
+            // UPN変更・削除の通知にはUPNが含まれないことがあるため、objectIdからキャッシュ中のUPNを引いて破棄する
+            String cachedUpn = upnByObjectId.remove(user.id);
+            if (cachedUpn != null) {
+                users.asMap().computeIfPresent(cachedUpn, (upn, cached) -> cached.isUser(user.id) ? null : cached);
+            }
+        }
+    }
+
+    /**
+     * グループのデルタ：作成・変更されたグループは存在するものとして登録し、削除されたグループは破棄する
+     */
+    @Override
+    public void onGroupPage(EntraDeltaQueryService.GroupDeltaPage page) {
+        for (Group group : page.groups()) {
+            if (group.id == null) {
+                continue;
+            }
+            if (EntraDeltaQueryService.isRemoved(group)) {
+                groups.invalidate(group.id);
+            } else {
+                groups.put(group.id, true);
+            }
+        }
+    }
+
+    /**
+     * ヒット率・件数をMicrometer指標として公開（cache.gets{cache=entra.groups|entra.users, result=hit|miss}など）
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, groups, "entra.groups");
+        CaffeineCacheMetrics.monitor(registry, users, "entra.users");
+    }
+
+    private static <V> Expiry<String, V> ttl(Predicate<V> positive, Duration positiveTtl, Duration negativeTtl) {
+        long positiveNanos = positiveTtl.toNanos();
+        long negativeNanos = negativeTtl.toNanos();
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(String key, V value, long currentTime) {
+                return positive.test(value) ? positiveNanos : negativeNanos;
+            }
+
+            @Override
+            public long expireAfterUpdate(String key, V value, long currentTime, long currentDuration) {
+                return expireAfterCreate(key, value, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(String key, V value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+
+    // UPNのエントリが破棄・置換された場合に、そのUPNを指すobjectIdの対応を削除する
+    private void forget(String upn, CachedUser previous) {
+        if (previous != null && previous.present() && previous.user().id() != null) {
+            upnByObjectId.remove(previous.user().id(), upn);
+        }
+    }
+
+    // UPNは大文字小文字を区別しない
+    private static String normalize(String userPrincipalName) {
+        return userPrincipalName.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * UPNのキャッシュ値（userがnullの場合は存在しない）
+     */
+    private record CachedUser(EntraUserDirectory.DirectoryUser user) {
+        static final CachedUser ABSENT = new CachedUser(null);
+
+        boolean present() {
+            return user != null;
+        }
+
+        boolean isUser(String objectId) {
+            return user != null && objectId.equals(user.id());
+        }
+    }
+}
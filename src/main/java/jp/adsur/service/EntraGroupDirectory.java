@@ -0,0 +1,418 @@
+package jp.adsur.service;
+
+import com.microsoft.graph.models.Group;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Entra IDグループのローカルディレクトリ投影（Redis）
+ * <ul>
+ *     <li>{prefix}{groupId}：グループ属性のハッシュ（id, displayName, description, mailNickname）</li>
+ *     <li>{prefix}{groupId}:members：メンバーのobjectIdのセット（正引き：グループ → メンバー）</li>
+ *     <li>{prefix}member-of:{memberId}：所属グループのobjectIdのセット（逆引き：メンバー → グループ）</li>
+ *     <li>{prefix}full-sync:unseen-groups：groupsのフル同期でまだ受信していないグループIDのセット（フル同期中のみ存在）</li>
+ *     <li>{prefix}full-sync:unseen-members:{groupId}：membershipsのフル同期でまだ受信していないメンバーのセット（同上）</li>
+ * </ul>
+ * テナント同期のgroups/membershipsストリームのページごとに更新し、@removedのグループは属性・メンバーともに削除する。
+ * フル同期では開始時に投影のグループ（groups）/メンバーのセットの写し（memberships）を削除候補とし、
+ * 受信したものを候補から外して、完了時に残ったもの（同期していない間に削除されたグループ・外れたメンバー）を
+ * 正引き・逆引きの両方から削除する。削除候補はRedisに保持するため、別のインスタンスが途中から再開しても引き継がれる。
+ * 正引き・逆引きのセットは同じパイプラインで更新し、所属確認・積集合・和集合はRedis側（SISMEMBER/SMISMEMBER/SINTER/SUNION）の
+ * 1コマンドで計算するため、リクエスト処理中の認可チェックでGraphを呼び出す必要はない。
+ * 積集合・和集合は複数キーのコマンドのため、Redisクラスタ構成では使用できない（単一ノード/レプリカ構成を前提とする）。
+ */
+@Slf4j
+@Service
+public class EntraGroupDirectory implements GroupDeltaListener {
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_DISPLAY_NAME = "displayName";
+    private static final String FIELD_DESCRIPTION = "description";
+    private static final String FIELD_MAIL_NICKNAME = "mailNickname";
+
+    private static final String GROUPS_STREAM = "groups";
+    private static final String MEMBERSHIPS_STREAM = "memberships";
+    private static final String MEMBERS_SUFFIX = ":members";
+    // フル同期の開始・完了時に、SCANの1回あたりの件数・1パイプラインあたりのグループ数
+    private static final int FULL_SYNC_BATCH = 1000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String keyPrefix;
+    private final String unseenGroupsKey;
+    private final String unseenMembersPrefix;
+
+    public EntraGroupDirectory(StringRedisTemplate stringRedisTemplate,
+                               @Value("${app.entra.group-directory.key-prefix:entra:group:}") String keyPrefix) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.keyPrefix = keyPrefix;
+        this.unseenGroupsKey = keyPrefix + "full-sync:unseen-groups";
+        this.unseenMembersPrefix = keyPrefix + "full-sync:unseen-members:";
+    }
+
+    /**
+     * グループ属性の1ページを投影に反映（削除グループのメンバー取得と書き込みをそれぞれパイプラインで一括実行）
+     */
+    @Override
+    public void onGroupPage(EntraDeltaQueryService.GroupDeltaPage page) {
+        if (page.groups().isEmpty()) {
+            return;
+        }
+        // 1. 削除されたグループのメンバーを一括取得（各メンバーの逆引きセットからグループを外すため）
+        List<String> removedIds = page.groups().stream()
+                .filter(group -> group.id != null && EntraDeltaQueryService.isRemoved(group))
+                .map(group -> group.id)
+                .toList();
+        Map<String, Set<String>> removedMembers = readMembers(removedIds);
+        String[] receivedIds = page.groups().stream()
+                .map(group -> group.id)
+                .filter(Objects::nonNull)
+                .toArray(String[]::new);
+
+        // 2. 属性ハッシュ・正引き/逆引きセットを一括更新
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Group group : page.groups()) {
+                if (group.id == null) {
+                    continue;
+                }
+                if (EntraDeltaQueryService.isRemoved(group)) {
+                    removeGroup(conn, group.id, removedMembers.getOrDefault(group.id, Set.of()));
+                    continue;
+                }
+                // デルタの更新イベントは変更された属性のみを含むため、null以外の属性のみ上書きする
+                conn.hMSet(groupKey(group.id), toFields(group));
+            }
+            // 受信したグループを削除候補から外す（フル同期中でなければ候補のセットが存在しないため何もしない）
+            if (receivedIds.length > 0) {
+                conn.sRem(unseenGroupsKey, receivedIds);
+            }
+            return null;
+        });
+        log.debug("グループ投影を更新しました：ページ={}, 件数={}", page.pageIndex(), page.groups().size());
+    }
+
+    /**
+     * メンバー追加/削除の1ページを投影に反映（パイプラインで一括実行）
+     */
+    @Override
+    public void onMembershipPage(EntraDeltaQueryService.MembershipDeltaPage page) {
+        if (page.changes().isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (EntraDeltaQueryService.MembershipChange change : page.changes()) {
+                if (change.removed()) {
+                    conn.sRem(membersKey(change.groupId()), change.memberId());
+                    conn.sRem(memberOfKey(change.memberId()), change.groupId());
+                } else {
+                    conn.sAdd(membersKey(change.groupId()), change.memberId());
+                    conn.sAdd(memberOfKey(change.memberId()), change.groupId());
+                }
+                // 受信したメンバーを削除候補から外す（フル同期中でなければ候補のセットが存在しないため何もしない）
+                conn.sRem(unseenMembersKey(change.groupId()), change.memberId());
+            }
+            return null;
+        });
+        log.debug("メンバー投影を更新しました：ページ={}, 件数={}", page.pageIndex(), page.changes().size());
+    }
+
+    /**
+     * フル同期の開始：groupsは投影の全グループID、membershipsはグループごとのメンバーのセットの写しを削除候補に登録
+     * （前回の途中の候補は破棄）
+     */
+    @Override
+    public void onFullSyncStart(String stream) {
+        switch (stream) {
+            case GROUPS_STREAM -> {
+                stringRedisTemplate.delete(unseenGroupsKey);
+                List<String> groupIds = scanGroupIds(keyPrefix + "*", "");
+                for (List<String> batch : batches(groupIds)) {
+                    stringRedisTemplate.opsForSet().add(unseenGroupsKey, batch.toArray(String[]::new));
+                }
+                log.info("フル同期の削除候補を登録しました：ストリーム={}, グループ数={}", stream, groupIds.size());
+            }
+            case MEMBERSHIPS_STREAM -> {
+                List<String> previous = scanGroupIds(unseenMembersPrefix + "*", "");
+                for (List<String> batch : batches(previous)) {
+                    stringRedisTemplate.delete(batch.stream().map(this::unseenMembersKey).toList());
+                }
+                List<String> groupIds = scanGroupIds(keyPrefix + "*" + MEMBERS_SUFFIX, MEMBERS_SUFFIX);
+                for (List<String> batch : batches(groupIds)) {
+                    // メンバーのセットをサーバー側で写す（SUNIONSTORE、メンバーを転送しない）
+                    stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        StringRedisConnection conn = (StringRedisConnection) connection;
+                        for (String groupId : batch) {
+                            conn.sUnionStore(unseenMembersKey(groupId), membersKey(groupId));
+                        }
+                        return null;
+                    });
+                }
+                log.info("フル同期の削除候補を登録しました：ストリーム={}, グループ数={}", stream, groupIds.size());
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * フル同期の完了：受信しなかったグループ（groups）/メンバー（memberships）を正引き・逆引きの両方から削除
+     */
+    @Override
+    public void onFullSyncComplete(String stream) {
+        switch (stream) {
+            case GROUPS_STREAM -> {
+                Set<String> unseen = stringRedisTemplate.opsForSet().members(unseenGroupsKey);
+                List<String> groupIds = unseen != null ? new ArrayList<>(unseen) : List.of();
+                for (List<String> batch : batches(groupIds)) {
+                    Map<String, Set<String>> members = readMembers(batch);
+                    stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        StringRedisConnection conn = (StringRedisConnection) connection;
+                        members.forEach((groupId, memberIds) -> removeGroup(conn, groupId, memberIds));
+                        return null;
+                    });
+                }
+                stringRedisTemplate.delete(unseenGroupsKey);
+                log.info("フル同期で受信しなかったグループを投影から削除しました：件数={}", groupIds.size());
+            }
+            case MEMBERSHIPS_STREAM -> {
+                List<String> groupIds = scanGroupIds(unseenMembersPrefix + "*", "");
+                long removed = 0;
+                for (List<String> batch : batches(groupIds)) {
+                    List<Object> unseen = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        StringRedisConnection conn = (StringRedisConnection) connection;
+                        for (String groupId : batch) {
+                            conn.sMembers(unseenMembersKey(groupId));
+                        }
+                        return null;
+                    });
+                    stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        StringRedisConnection conn = (StringRedisConnection) connection;
+                        for (int i = 0; i < batch.size(); i++) {
+                            String groupId = batch.get(i);
+                            @SuppressWarnings("unchecked")
+                            Set<String> memberIds = (Set<String>) unseen.get(i);
+                            for (String memberId : memberIds != null ? memberIds : Set.<String>of()) {
+                                conn.sRem(membersKey(groupId), memberId);
+                                conn.sRem(memberOfKey(memberId), groupId);
+                            }
+                            conn.del(unseenMembersKey(groupId));
+                        }
+                        return null;
+                    });
+                    for (Object memberIds : unseen) {
+                        removed += memberIds != null ? ((Set<?>) memberIds).size() : 0;
+                    }
+                }
+                log.info("フル同期で受信しなかったメンバーを投影から削除しました：件数={}", removed);
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * グループIDからグループ属性を取得
+     */
+    public Optional<DirectoryGroup> findById(String groupId) {
+        try {
+            Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(groupKey(groupId));
+            if (fields.isEmpty()) {
+                return Optional.empty();
+            }
+            return Optional.of(new DirectoryGroup(
+                    groupId,
+                    (String) fields.get(FIELD_DISPLAY_NAME),
+                    (String) fields.get(FIELD_DESCRIPTION),
+                    (String) fields.get(FIELD_MAIL_NICKNAME)
+            ));
+        } catch (Exception e) {
+            log.warn("グループ投影の参照に失敗しました：ID={}, {}", groupId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * グループのメンバー（objectId）を取得
+     */
+    public Set<String> memberIds(String groupId) {
+        return stringRedisTemplate.opsForSet().members(membersKey(groupId));
+    }
+
+    /**
+     * メンバーがグループに直接所属しているか（SISMEMBER）
+     */
+    public boolean isMember(String groupId, String memberId) {
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(membersKey(groupId), memberId));
+    }
+
+    /**
+     * メンバーが指定したグループそれぞれに直接所属しているか（逆引きセットへのSMISMEMBER、1往復）
+     * @return グループID → 所属有無（指定順）
+     */
+    public Map<String, Boolean> memberships(String memberId, Collection<String> groupIds) {
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        if (groupIds.isEmpty()) {
+            return result;
+        }
+        List<String> ids = new ArrayList<>(groupIds);
+        Map<Object, Boolean> found = stringRedisTemplate.opsForSet().isMember(memberOfKey(memberId), ids.toArray());
+        for (String groupId : ids) {
+            result.put(groupId, found != null && Boolean.TRUE.equals(found.get(groupId)));
+        }
+        return result;
+    }
+
+    /**
+     * メンバーが直接所属しているグループ（逆引き）
+     */
+    public Set<String> groupsOf(String memberId) {
+        return stringRedisTemplate.opsForSet().members(memberOfKey(memberId));
+    }
+
+    /**
+     * 指定したすべてのグループに所属しているメンバー（SINTER）
+     */
+    public Set<String> commonMembers(Collection<String> groupIds) {
+        if (groupIds.isEmpty()) {
+            return Set.of();
+        }
+        return stringRedisTemplate.opsForSet().intersect(groupIds.stream().map(this::membersKey).toList());
+    }
+
+    /**
+     * 指定したいずれかのグループに所属しているメンバー（SUNION）
+     */
+    public Set<String> anyMembers(Collection<String> groupIds) {
+        if (groupIds.isEmpty()) {
+            return Set.of();
+        }
+        return stringRedisTemplate.opsForSet().union(groupIds.stream().map(this::membersKey).toList());
+    }
+
+    /**
+     * 指定したすべてのメンバーが所属しているグループ（逆引きセットへのSINTER）
+     */
+    public Set<String> commonGroups(Collection<String> memberIds) {
+        if (memberIds.isEmpty()) {
+            return Set.of();
+        }
+        return stringRedisTemplate.opsForSet().intersect(memberIds.stream().map(this::memberOfKey).toList());
+    }
+
+    // グループごとのメンバー（削除するグループの各メンバーの逆引きセットからグループを外すため、パイプラインで一括取得）
+    private Map<String, Set<String>> readMembers(List<String> groupIds) {
+        Map<String, Set<String>> result = new HashMap<>();
+        if (groupIds.isEmpty()) {
+            return result;
+        }
+        List<Object> members = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String groupId : groupIds) {
+                conn.sMembers(membersKey(groupId));
+            }
+            return null;
+        });
+        for (int i = 0; i < groupIds.size(); i++) {
+            @SuppressWarnings("unchecked")
+            Set<String> memberIds = (Set<String>) members.get(i);
+            result.put(groupIds.get(i), memberIds != null ? memberIds : Set.of());
+        }
+        return result;
+    }
+
+    // 属性・メンバーのセットを削除し、各メンバーの逆引きセットからグループを外す
+    private void removeGroup(StringRedisConnection conn, String groupId, Set<String> memberIds) {
+        for (String memberId : memberIds) {
+            conn.sRem(memberOfKey(memberId), groupId);
+        }
+        conn.del(groupKey(groupId), membersKey(groupId));
+    }
+
+    // パターンに一致するキーからグループIDを取り出す（キーの接頭辞・接尾辞を除き、:を含むもの＝管理用キーは除く）
+    private List<String> scanGroupIds(String pattern, String suffix) {
+        String prefix = pattern.substring(0, pattern.indexOf('*'));
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(FULL_SYNC_BATCH).build();
+        return stringRedisTemplate.execute((RedisCallback<List<String>>) connection -> {
+            List<String> groupIds = new ArrayList<>();
+            try (Cursor<byte[]> cursor = connection.keyCommands().scan(options)) {
+                while (cursor.hasNext()) {
+                    String key = new String(cursor.next(), StandardCharsets.UTF_8);
+                    String groupId = key.substring(prefix.length(), key.length() - suffix.length());
+                    if (groupId.indexOf(':') < 0) {
+                        groupIds.add(groupId);
+                    }
+                }
+            }
+            return groupIds;
+        });
+    }
+
+    private static List<List<String>> batches(List<String> ids) {
+        List<List<String>> batches = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += FULL_SYNC_BATCH) {
+            batches.add(ids.subList(from, Math.min(ids.size(), from + FULL_SYNC_BATCH)));
+        }
+        return batches;
+    }
+
+    private static Map<String, String> toFields(Group group) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(FIELD_ID, group.id);
+        if (group.displayName != null) {
+            fields.put(FIELD_DISPLAY_NAME, group.displayName);
+        }
+        if (group.description != null) {
+            fields.put(FIELD_DESCRIPTION, group.description);
+        }
+        if (group.mailNickname != null) {
+            fields.put(FIELD_MAIL_NICKNAME, group.mailNickname);
+        }
+        return fields;
+    }
+
+    private String groupKey(String groupId) {
+        return keyPrefix + groupId;
+    }
+
+    private String membersKey(String groupId) {
+        return keyPrefix + groupId + MEMBERS_SUFFIX;
+    }
+
+    private String memberOfKey(String memberId) {
+        return keyPrefix + "member-of:" + memberId;
+    }
+
+    private String unseenMembersKey(String groupId) {
+        return unseenMembersPrefix + groupId;
+    }
+
+    /**
+     * ディレクトリ投影のグループ
+     */
+    public record DirectoryGroup(String id, String displayName, String description, String mailNickname) {
+    }
+
+    /**
+     * グループへの所属確認の結果
+     */
+    public record MembershipCheck(String groupId, String memberId, boolean member) {
+    }
+}
@@ -1,194 +1,701 @@
-//package jp.adsur.service;
-//
-//import com.azure.core.credential.TokenRequestContext;
-//import com.azure.identity.ClientSecretCredential;
-//import com.microsoft.graph.models.Group;
-//import com.microsoft.graph.models.User;
-//import com.microsoft.graph.requests.GraphServiceClient;
-//import com.microsoft.graph.requests.GroupCollectionPage;
-//import com.microsoft.graph.requests.UserCollectionPage;
-//import lombok.extern.slf4j.Slf4j;
-//import org.springframework.beans.factory.annotation.Autowired;
-//import org.springframework.http.*;
-//import org.springframework.stereotype.Service;
-//import org.springframework.web.client.RestTemplate;
-//
-//import javax.annotation.Resource;
-//import java.util.Collections;
-//import java.util.HashMap;
-//import java.util.Map;
-//import java.util.Optional;
-//import java.util.concurrent.TimeUnit;
-//
-//@Slf4j
-//@Service
-//public class EntraGroupUserService {
-//
-//    @Resource
-//    private GraphServiceClient<?> graphClient;
-//
-//    @Autowired
-//    private RestTemplate restTemplate;
-//
-//    @Autowired
-//    private ClientSecretCredential clientSecretCredential;
-//
-//    // グループ作成後の同期待機時間（Azure ADの同期遅延対策：最低5秒推奨）
-//    private static final int GROUP_SYNC_DELAY_SECONDS = 5;
-//
-//    /**
-//     * ユーザーをグループに追加（SDKのバグ回避：直接/$refエンドポイントを呼び出し）
-//     */
-//    public void addUserToGroup(String groupId, String userEmail) {
-//        try {
-//            // 1. ユーザーを検索（ユーザー存在確認：404エラーの事前回避）
-//            UserCollectionPage userPage = graphClient.users()
-//                    .buildRequest()
-//                    .filter(String.format("userPrincipalName eq '%s'", userEmail))
-//                    .select("id,userPrincipalName")
-//                    .get();
-//
-//            Optional<User> userOptional = userPage.getCurrentPage().stream().findFirst();
-//            if (userOptional.isEmpty()) {
-//                throw new RuntimeException("ユーザー" + userEmail + "が存在しません。正しいUPNを確認してください");
-//            }
-//
-//            // 2. ユーザー情報の取得
-//            User targetUser = userOptional.get();
-//            String userObjectId = targetUser.id;
-//            String realUPN = targetUser.userPrincipalName;
-//            log.info("✅ ユーザーを検索しました：UPN={}, ObjectID={}", realUPN, userObjectId);
-//
-//            // 3. グループ存在確認（コア処理：無効なグループIDによる404を回避）
-//            if (!isGroupExists(groupId)) {
-//                throw new RuntimeException("グループID " + groupId + " が存在しません。ユーザー追加処理を中断します");
-//            }
-//
-//            // 4. アクセストークンの取得（TokenRequestContextを使用：型互換性確保）
-//            TokenRequestContext tokenRequestContext = new TokenRequestContext();
-//            tokenRequestContext.setScopes(Collections.singletonList("https://graph.microsoft.com/.default"));
-//            String accessToken = clientSecretCredential.getToken(tokenRequestContext)
-//                    .block()
-//                    .getToken();
-//
-//            // 5. /$refエンドポイントのURL構築（Graph APIの正規エンドポイント）
-//            String refEndpointUrl = String.format(
-//                    "https://graph.microsoft.com/v1.0/groups/%s/members/$ref",
-//                    groupId
-//            );
-//
-//            // 6. リクエストボディの構築（@odata.idは必須：directoryObjects/{userObjectId}形式）
-//            Map<String, String> requestBody = new HashMap<>();
-//            requestBody.put("@odata.id", String.format(
-//                    "https://graph.microsoft.com/v1.0/directoryObjects/%s",
-//                    userObjectId
-//            ));
-//
-//            // 7. HTTPリクエストの送信（RestTemplateで直接呼び出し：SDKのバグ回避）
-//            HttpHeaders headers = new HttpHeaders();
-//            headers.setContentType(MediaType.APPLICATION_JSON);
-//            headers.setBearerAuth(accessToken);
-//            HttpEntity<Map<String, String>> requestEntity = new HttpEntity<>(requestBody, headers);
-//            ResponseEntity<Void> response = restTemplate.exchange(
-//                    refEndpointUrl,
-//                    HttpMethod.POST,
-//                    requestEntity,
-//                    Void.class
-//            );
-//
-//            if (response.getStatusCode() == HttpStatus.NO_CONTENT) {
-//                log.info("✅ ユーザー{}（UPN：{}）をグループ{}に追加しました", userObjectId, realUPN, groupId);
-//            } else {
-//                throw new RuntimeException("ユーザー追加失敗：Graph APIがステータスコード " + response.getStatusCode() + " を返却しました");
-//            }
-//
-//        } catch (Exception e) {
-//            log.error("ユーザーをグループに追加する際にエラーが発生しました：", e);
-//            throw new RuntimeException("ユーザーをグループに追加失敗：" + e.getMessage(), e);
-//        }
-//    }
-//
-//    /**
-//     * 新しいグループを作成してユーザーを追加（同期遅延対策+存在確認付き）
-//     */
-//    public String createNewGroupAndAddUser(String userEmail, String newGroupName, String newGroupDescription) {
-//        try {
-//            // 1. セキュリティグループの作成（必須項目の設定：400エラー回避）
-//            Group newGroup = new Group();
-//            newGroup.displayName = newGroupName;
-//            newGroup.description = newGroupDescription;
-//            newGroup.mailNickname = newGroupName.replaceAll("[^a-zA-Z0-9]", "").toLowerCase();
-//            newGroup.groupTypes = Collections.emptyList();
-//            newGroup.securityEnabled = true;
-//            newGroup.mailEnabled = false;
-//
-//            // 2. グループの作成実行
-//            Group createdGroup = graphClient.groups()
-//                    .buildRequest()
-//                    .post(newGroup);
-//            String newGroupId = createdGroup.id;
-//            log.info("✅ 新しいグループを作成しました：グループ名={}, ID={}", newGroupName, newGroupId);
-//
-//            // 3. コア処理：グループ同期待機（作成直後の404エラー対策）
-//            log.info("⏳ グループ同期のため{}秒待機します...", GROUP_SYNC_DELAY_SECONDS);
-//            TimeUnit.SECONDS.sleep(GROUP_SYNC_DELAY_SECONDS);
-//
-//            // 4. グループ同期の二次確認（遅延が大きい場合の追加待機）
-//            if (!isGroupExists(newGroupId)) {
-//                log.warn("⚠️ グループ{}の同期が遅延しています。さらに2秒待機します...", newGroupId);
-//                TimeUnit.SECONDS.sleep(2);
-//                // 同期が完了しない場合、例外をスロー
-//                if (!isGroupExists(newGroupId)) {
-//                    throw new RuntimeException("新しいグループの作成に成功しましたが、同期がタイムアウトしました。グループID " + newGroupId + " は一時的に使用できません");
-//                }
-//            }
-//
-//            // 5. 作成したグループにユーザーを追加
-//            addUserToGroup(newGroupId, userEmail);
-//            return newGroupId;
-//
-//        } catch (InterruptedException e) {
-//            Thread.currentThread().interrupt();
-//            throw new RuntimeException("グループ同期待機中に処理が中断されました：" + e.getMessage(), e);
-//        } catch (Exception e) {
-//            log.error("新しいグループの作成とユーザー追加に失敗しました：", e);
-//            throw new RuntimeException("新しいグループの作成に失敗しました：" + e.getMessage(), e);
-//        }
-//    }
-//
-//    /**
-//     * グループの存在確認（プライベートメソッド：404エラーの事前検知）
-//     */
-//    private boolean isGroupExists(String groupId) {
-//        try {
-//            // Graph APIで指定IDのグループを検索
-//            GroupCollectionPage groupPage = graphClient.groups()
-//                    .buildRequest()
-//                    .filter(String.format("id eq '%s'", groupId))
-//                    .select("id")
-//                    .get();
-//
-//            // グループが存在する場合はtrueを返却
-//            return groupPage.getCurrentPage().stream().findFirst().isPresent();
-//        } catch (Exception e) {
-//            log.error("グループ{}の存在確認に失敗しました：", groupId, e);
-//            return false;
-//        }
-//    }
-//
-//    /**
-//     * ユーザーIDを取得する補助メソッド（User::getIdの代替：フィールドに直接アクセス）
-//     */
-//    public String getUserIdByEmail(String userEmail) {
-//        UserCollectionPage userPage = graphClient.users()
-//                .buildRequest()
-//                .filter(String.format("userPrincipalName eq '%s'", userEmail))
-//                .select("id")
-//                .get();
-//
-//        return userPage.getCurrentPage().stream()
-//                .findFirst()
-//                .map(user -> user.id)
-//                .orElseThrow(() -> new RuntimeException("ユーザー" + userEmail + "が存在しません"));
-//    }
-//}
\ No newline at end of file
+package jp.adsur.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.gson.JsonArray;
+import com.microsoft.graph.models.Group;
+import com.microsoft.graph.requests.GraphServiceClient;
+import com.microsoft.graph.requests.GroupCollectionPage;
+import com.microsoft.graph.requests.UserCollectionPage;
+import jp.adsur.config.EntraGraphClientConfig;
+import jp.adsur.config.GraphCallGate;
+import jp.adsur.config.RetryAfter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.*;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@ConditionalOnProperty(prefix = "azure.entra", name = "tenant-id")
+@Slf4j
+@Service
+public class EntraGroupUserService {
+
+    @Resource
+    private GraphServiceClient<?> graphClient;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private AccessTokenManager accessTokenManager;
+
+    @Autowired
+    private EntraUserDirectory userDirectory;
+
+    @Autowired
+    private EntraExistenceCache existenceCache;
+
+    // Graph呼び出しの送信ゲート（$batchのサブリクエストの429を通知する）
+    @Autowired
+    private ObjectProvider<GraphCallGate> graphCallGate;
+
+    // $batchの1リクエストあたりの最大サブリクエスト数（Graph APIの上限）
+    private static final int GRAPH_BATCH_LIMIT = 20;
+    // members@odata.bindの1回のPATCHで追加できる最大メンバー数（Graph APIの上限）
+    private static final int MEMBERS_BIND_LIMIT = 20;
+    // userPrincipalName in (...) フィルタに指定できる最大値数（Graph APIの上限）
+    private static final int FILTER_IN_LIMIT = 15;
+    // 429/503で返却されたサブリクエストの最大再試行回数
+    private static final int BATCH_MAX_ATTEMPTS = 3;
+    // Retry-Afterが返却されなかった（解釈できなかった）場合の待機秒数
+    private static final int DEFAULT_RETRY_AFTER_SECONDS = 2;
+    // Retry-Afterの待機秒数の上限（ゲートなしで待機する場合に、異常に長い値でジョブが止まらないように）
+    private static final int MAX_RETRY_AFTER_SECONDS = 120;
+
+    // Graph APIのベースURL（SDKのサービスルートと共通、ローカルのGraphモックに向ける場合に変更）
+    @Value("${app.entra.graph-base-url:https://graph.microsoft.com/v1.0}")
+    private String graphBaseUrl;
+
+    // 一括追加の方式（batch：$batchで/members/$refを20件ずつ、bind：members@odata.bindのPATCHで20件ずつ）
+    @Value("${app.entra.membership.mode:batch}")
+    private String membershipMode;
+
+    // 一括追加のバッチ同時実行数
+    @Value("${app.entra.membership.max-concurrency:4}")
+    private int membershipConcurrency;
+
+    // グループ作成後の同期確認：初回待機時間（以降は2倍ずつ延長）
+    @Value("${app.entra.group-provisioning.initial-delay:1s}")
+    private Duration groupSyncInitialDelay;
+
+    // グループ作成後の同期確認：待機時間の上限
+    @Value("${app.entra.group-provisioning.max-delay:16s}")
+    private Duration groupSyncMaxDelay;
+
+    // グループ作成後の同期確認：タイムアウト（作成開始からの経過時間）
+    @Value("${app.entra.group-provisioning.timeout:60s}")
+    private Duration groupSyncTimeout;
+
+    private ExecutorService membershipExecutor;
+
+    private ScheduledExecutorService groupProvisioningScheduler;
+
+    // グループ作成操作の進捗（完了後も一定時間は照会可能）
+    private final Cache<String, GroupOperation> groupOperations = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofHours(1))
+            .maximumSize(10_000)
+            .build();
+
+    @PostConstruct
+    void initExecutors() {
+        membershipExecutor = Executors.newFixedThreadPool(membershipConcurrency,
+                new CustomizableThreadFactory("graph-membership-"));
+        groupProvisioningScheduler = Executors.newScheduledThreadPool(2,
+                new CustomizableThreadFactory("group-provisioning-"));
+    }
+
+    @PreDestroy
+    void shutdownExecutors() {
+        membershipExecutor.shutdown();
+        groupProvisioningScheduler.shutdown();
+    }
+
+    /**
+     * ユーザーをグループに追加（SDKのバグ回避：直接/$refエンドポイントを呼び出し）
+     */
+    public void addUserToGroup(String groupId, String userEmail) {
+        try {
+            // 1. ユーザーを検索（ディレクトリ投影 → Graphの順：404エラーの事前回避）
+            EntraUserDirectory.DirectoryUser targetUser = resolveUser(userEmail)
+                    .orElseThrow(() -> new RuntimeException("ユーザー" + userEmail + "が存在しません。正しいUPNを確認してください"));
+
+            // 2. ユーザー情報の取得
+            String userObjectId = targetUser.id();
+            String realUPN = targetUser.userPrincipalName();
+            log.info("✅ ユーザーを検索しました：UPN={}, ObjectID={}", realUPN, userObjectId);
+
+            // 3. グループ存在確認（コア処理：無効なグループIDによる404を回避）
+            if (!isGroupExists(groupId)) {
+                throw new RuntimeException("グループID " + groupId + " が存在しません。ユーザー追加処理を中断します");
+            }
+
+            // 4. アクセストークンの取得（AccessTokenManagerのキャッシュから取得：MSAL呼び出しでブロックしない）
+            String accessToken = getGraphAccessToken();
+
+            // 5. /$refエンドポイントのURL構築（Graph APIの正規エンドポイント）
+            String refEndpointUrl = String.format(
+                    "%s/groups/%s/members/$ref",
+                    graphBaseUrl, groupId
+            );
+
+            // 6. リクエストボディの構築（@odata.idは必須：directoryObjects/{userObjectId}形式）
+            Map<String, String> requestBody = new HashMap<>();
+            requestBody.put("@odata.id", String.format(
+                    "%s/directoryObjects/%s",
+                    graphBaseUrl, userObjectId
+            ));
+
+            // 7. HTTPリクエストの送信（RestTemplateで直接呼び出し：SDKのバグ回避）
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setBearerAuth(accessToken);
+            HttpEntity<Map<String, String>> requestEntity = new HttpEntity<>(requestBody, headers);
+            ResponseEntity<Void> response = restTemplate.exchange(
+                    refEndpointUrl,
+                    HttpMethod.POST,
+                    requestEntity,
+                    Void.class
+            );
+
+            if (response.getStatusCode() == HttpStatus.NO_CONTENT) {
+                log.info("✅ ユーザー{}（UPN：{}）をグループ{}に追加しました", userObjectId, realUPN, groupId);
+            } else {
+                throw new RuntimeException("ユーザー追加失敗：Graph APIがステータスコード " + response.getStatusCode() + " を返却しました");
+            }
+
+        } catch (Exception e) {
+            log.error("ユーザーをグループに追加する際にエラーが発生しました：", e);
+            throw new RuntimeException("ユーザーをグループに追加失敗：" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 複数ユーザーをグループに一括追加
+     * <p>
+     * グループ存在確認は1回のみ、UPNはディレクトリ投影（HMGET）→ Graphの in フィルタ（15件ずつ）で一括解決し、
+     * メンバー追加は20件単位のバッチを最大app.entra.membership.max-concurrencyの並列度で実行する。
+     * アクセストークンは$batchの送信ごとに取得する（キャッシュ済みのため、長時間の再試行中も更新後のトークンを使う）。
+     * @param groupId    追加先グループID
+     * @param userEmails 追加するユーザーのUPN一覧
+     * @return ユーザーごとの追加結果（入力順、大文字小文字のみ異なるUPNを含め重複は除外）
+     */
+    public List<MemberAddResult> addUsersToGroup(String groupId, List<String> userEmails) {
+        // 1. グループ存在確認（1回のみ）
+        if (!isGroupExists(groupId)) {
+            throw new RuntimeException("グループID " + groupId + " が存在しません。ユーザー追加処理を中断します");
+        }
+
+        // 2. UPNの一括解決
+        // UPNは大文字小文字を区別しないため、小文字で重複を除外（最初に現れた表記を使う）
+        Map<String, String> emailsByLowerCase = new LinkedHashMap<>();
+        userEmails.forEach(email -> emailsByLowerCase.putIfAbsent(email.toLowerCase(Locale.ROOT), email));
+        List<String> distinctEmails = List.copyOf(emailsByLowerCase.values());
+        Map<String, String> objectIds = resolveObjectIds(distinctEmails);
+
+        Map<String, MemberAddResult> results = new LinkedHashMap<>();
+        List<Member> members = new ArrayList<>();
+        for (String userEmail : distinctEmails) {
+            String objectId = objectIds.get(userEmail);
+            if (objectId == null) {
+                results.put(userEmail, new MemberAddResult(userEmail, null, MemberAddStatus.NOT_FOUND,
+                        "ユーザー" + userEmail + "が存在しません"));
+            } else {
+                results.put(userEmail, null);
+                members.add(new Member(userEmail, objectId));
+            }
+        }
+
+        // 3. 20件単位のバッチを並列実行
+        boolean bindMode = "bind".equalsIgnoreCase(membershipMode);
+        int chunkSize = bindMode ? MEMBERS_BIND_LIMIT : GRAPH_BATCH_LIMIT;
+        List<CompletableFuture<List<MemberAddResult>>> futures = new ArrayList<>();
+        for (int from = 0; from < members.size(); from += chunkSize) {
+            List<Member> chunk = members.subList(from, Math.min(from + chunkSize, members.size()));
+            // 1チャンクの失敗（$batch自体の429/5xx・通信エラーなど）は、そのチャンクのユーザーのみFAILEDとする
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> bindMode ? addChunkByBind(groupId, chunk) : addChunkByBatch(groupId, chunk),
+                    membershipExecutor).exceptionally(e -> failedChunk(groupId, chunk, e)));
+        }
+        for (CompletableFuture<List<MemberAddResult>> future : futures) {
+            future.join().forEach(result -> results.put(result.userPrincipalName(), result));
+        }
+
+        long added = results.values().stream().filter(r -> r.status() == MemberAddStatus.ADDED).count();
+        log.info("✅ グループ{}への一括追加が完了しました：対象={}件, 追加={}件", groupId, results.size(), added);
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * 新しいグループの作成とユーザー追加を非同期で開始し、操作IDを即時返却する
+     * <p>
+     * グループ作成後のAzure ADの同期遅延は、スケジューラ上で指数バックオフのポーリングにより待機する
+     * （リクエストスレッドをsleepで占有しない）。進捗は{@link #getGroupOperation}で取得する。
+     */
+    public GroupOperationStatus startCreateNewGroupAndAddUser(String userEmail, String newGroupName, String newGroupDescription) {
+        return submitGroupOperation(userEmail, newGroupName, newGroupDescription).status();
+    }
+
+    /**
+     * 新しいグループを作成してユーザーを追加（同期遅延対策+存在確認付き）
+     * @return 完了時に新規グループIDを返すFuture（Spring MVCの非同期応答としてそのまま返却可能）
+     */
+    public CompletableFuture<String> createNewGroupAndAddUser(String userEmail, String newGroupName, String newGroupDescription) {
+        return submitGroupOperation(userEmail, newGroupName, newGroupDescription).completion;
+    }
+
+    /**
+     * グループ作成操作の進捗を取得
+     */
+    public Optional<GroupOperationStatus> getGroupOperation(String operationId) {
+        return Optional.ofNullable(groupOperations.getIfPresent(operationId)).map(GroupOperation::status);
+    }
+
+    private GroupOperation submitGroupOperation(String userEmail, String newGroupName, String newGroupDescription) {
+        GroupOperation operation = new GroupOperation(UUID.randomUUID().toString(), userEmail);
+        groupOperations.put(operation.operationId, operation);
+        groupProvisioningScheduler.execute(() -> createGroup(operation, newGroupName, newGroupDescription));
+        return operation;
+    }
+
+    private void createGroup(GroupOperation operation, String newGroupName, String newGroupDescription) {
+        try {
+            // 1. セキュリティグループの作成（必須項目の設定：400エラー回避）
+            Group newGroup = new Group();
+            newGroup.displayName = newGroupName;
+            newGroup.description = newGroupDescription;
+            newGroup.mailNickname = newGroupName.replaceAll("[^a-zA-Z0-9]", "").toLowerCase();
+            newGroup.groupTypes = Collections.emptyList();
+            newGroup.securityEnabled = true;
+            newGroup.mailEnabled = false;
+
+            // 2. グループの作成実行
+            Group createdGroup = graphClient.groups()
+                    .buildRequest()
+                    .post(newGroup);
+            operation.groupId = createdGroup.id;
+            log.info("✅ 新しいグループを作成しました：グループ名={}, ID={}", newGroupName, createdGroup.id);
+
+            // 3. コア処理：グループ同期待機（作成直後の404エラー対策）→ 指数バックオフでポーリング
+            operation.update(GroupOperationState.WAITING_FOR_REPLICATION, null);
+            scheduleReplicationCheck(operation, groupSyncInitialDelay);
+        } catch (Exception e) {
+            log.error("新しいグループの作成とユーザー追加に失敗しました：", e);
+            operation.fail("新しいグループの作成に失敗しました：" + e.getMessage(), e);
+        }
+    }
+
+    private void scheduleReplicationCheck(GroupOperation operation, Duration delay) {
+        groupProvisioningScheduler.schedule(() -> checkReplication(operation, delay),
+                delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void checkReplication(GroupOperation operation, Duration lastDelay) {
+        try {
+            operation.attempts++;
+            if (!isGroupReplicated(operation.groupId)) {
+                if (Duration.between(operation.createdAt, Instant.now()).compareTo(groupSyncTimeout) >= 0) {
+                    // 同期が完了しない場合、失敗として終了
+                    operation.fail("新しいグループの作成に成功しましたが、同期がタイムアウトしました。グループID "
+                            + operation.groupId + " は一時的に使用できません", null);
+                    return;
+                }
+                Duration nextDelay = lastDelay.multipliedBy(2);
+                if (nextDelay.compareTo(groupSyncMaxDelay) > 0) {
+                    nextDelay = groupSyncMaxDelay;
+                }
+                log.info("⏳ グループ{}の同期待ち：{}回目の確認、{}ms後に再確認します", operation.groupId, operation.attempts, nextDelay.toMillis());
+                scheduleReplicationCheck(operation, nextDelay);
+                return;
+            }
+
+            // 4. 作成したグループにユーザーを追加
+            operation.update(GroupOperationState.ADDING_MEMBER, null);
+            addUserToGroup(operation.groupId, operation.userEmail);
+            operation.complete();
+        } catch (Exception e) {
+            log.error("新しいグループの作成とユーザー追加に失敗しました：", e);
+            operation.fail("新しいグループの作成に失敗しました：" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * グループの存在確認（プライベートメソッド：404エラーの事前検知）
+     * 存在確認キャッシュにあればGraphには問い合わせない（問い合わせ失敗時の結果はキャッシュしない）
+     */
+    private boolean isGroupExists(String groupId) {
+        try {
+            return existenceCache.groupExists(groupId, this::probeGroup);
+        } catch (Exception e) {
+            log.error("グループ{}の存在確認に失敗しました：", groupId, e);
+            return false;
+        }
+    }
+
+    /**
+     * 作成直後のグループの同期確認：否定結果がキャッシュされてポーリングが止まらないよう、
+     * キャッシュを通さずにGraphへ問い合わせ、見つかった時点で肯定結果を登録する
+     */
+    private boolean isGroupReplicated(String groupId) {
+        try {
+            boolean exists = probeGroup(groupId);
+            if (exists) {
+                existenceCache.putGroup(groupId, true);
+            }
+            return exists;
+        } catch (Exception e) {
+            log.error("グループ{}の存在確認に失敗しました：", groupId, e);
+            return false;
+        }
+    }
+
+    private boolean probeGroup(String groupId) {
+        // Graph APIで指定IDのグループを検索
+        GroupCollectionPage groupPage = graphClient.groups()
+                .buildRequest()
+                .filter(String.format("id eq '%s'", groupId))
+                .select("id")
+                .get();
+
+        // グループが存在する場合はtrueを返却
+        return groupPage.getCurrentPage().stream().findFirst().isPresent();
+    }
+
+    /**
+     * ユーザーIDを取得する補助メソッド（User::getIdの代替：フィールドに直接アクセス）
+     */
+    public String getUserIdByEmail(String userEmail) {
+        return resolveUser(userEmail)
+                .map(EntraUserDirectory.DirectoryUser::id)
+                .orElseThrow(() -> new RuntimeException("ユーザー" + userEmail + "が存在しません"));
+    }
+
+    /**
+     * UPNからユーザーを解決（存在確認キャッシュ → ディレクトリ投影 → Graphの$filterの順、Graphの結果はキャッシュと投影に登録）
+     */
+    private Optional<EntraUserDirectory.DirectoryUser> resolveUser(String userEmail) {
+        Optional<EntraUserDirectory.DirectoryUser> cached = existenceCache.cachedUser(userEmail);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        if (existenceCache.isMissingUser(userEmail)) {
+            // 直前に存在しないことを確認済み（否定結果の有効期限内はGraphに再問い合わせしない）
+            return Optional.empty();
+        }
+        Optional<EntraUserDirectory.DirectoryUser> projected = userDirectory.findByUpn(userEmail);
+        if (projected.isPresent()) {
+            existenceCache.putUser(projected.get());
+            return projected;
+        }
+
+        UserCollectionPage userPage = graphClient.users()
+                .buildRequest()
+                .filter(String.format("userPrincipalName eq '%s'", userEmail))
+                .select(EntraDeltaQueryService.USER_SELECT)
+                .get();
+
+        Optional<EntraUserDirectory.DirectoryUser> found = userPage.getCurrentPage().stream()
+                .findFirst()
+                .map(user -> new EntraUserDirectory.DirectoryUser(
+                        user.id, user.displayName, user.userPrincipalName, user.mail));
+        if (found.isPresent()) {
+            userDirectory.put(found.get());
+            existenceCache.putUser(found.get());
+        } else {
+            existenceCache.putMissingUser(userEmail);
+        }
+        return found;
+    }
+
+    /**
+     * 複数UPNのobjectIdを一括解決（存在確認キャッシュ → ディレクトリ投影 → Graphの userPrincipalName in (...) フィルタ）
+     * 存在しないことがキャッシュされているUPNはGraphに問い合わせず、Graphでも見つからなかったUPNは否定結果として登録する
+     */
+    private Map<String, String> resolveObjectIds(List<String> userEmails) {
+        Map<String, String> objectIds = new HashMap<>();
+        List<String> unresolved = new ArrayList<>();
+        for (String email : userEmails) {
+            Optional<EntraUserDirectory.DirectoryUser> cached = existenceCache.cachedUser(email);
+            if (cached.isPresent()) {
+                objectIds.put(email, cached.get().id());
+            } else if (!existenceCache.isMissingUser(email)) {
+                unresolved.add(email);
+            }
+        }
+        objectIds.putAll(userDirectory.findObjectIdsByUpns(unresolved));
+        List<String> misses = unresolved.stream().filter(email -> !objectIds.containsKey(email)).toList();
+
+        // Graphの返却するUPNは大文字小文字が異なる場合があるため、小文字で突き合わせる
+        Map<String, String> missesByLowerCase = new HashMap<>();
+        misses.forEach(email -> missesByLowerCase.put(email.toLowerCase(Locale.ROOT), email));
+
+        for (int from = 0; from < misses.size(); from += FILTER_IN_LIMIT) {
+            List<String> chunk = misses.subList(from, Math.min(from + FILTER_IN_LIMIT, misses.size()));
+            String filter = "userPrincipalName in (" + String.join(",",
+                    chunk.stream().map(email -> "'" + email.replace("'", "''") + "'").toList()) + ")";
+            UserCollectionPage userPage = graphClient.users()
+                    .buildRequest()
+                    .filter(filter)
+                    .select(EntraDeltaQueryService.USER_SELECT)
+                    .get();
+            userPage.getCurrentPage().forEach(user -> {
+                String requested = missesByLowerCase.get(user.userPrincipalName.toLowerCase(Locale.ROOT));
+                if (requested != null) {
+                    objectIds.put(requested, user.id);
+                    EntraUserDirectory.DirectoryUser found = new EntraUserDirectory.DirectoryUser(
+                            user.id, user.displayName, user.userPrincipalName, user.mail);
+                    userDirectory.put(found);
+                    existenceCache.putUser(found);
+                }
+            });
+        }
+        misses.stream().filter(email -> !objectIds.containsKey(email)).forEach(existenceCache::putMissingUser);
+        return objectIds;
+    }
+
+    private static List<MemberAddResult> failedChunk(String groupId, List<Member> chunk, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        log.warn("⚠️ グループ{}への{}件の追加に失敗しました：{}", groupId, chunk.size(), cause.getMessage());
+        return failed(chunk, "メンバー追加の呼び出しに失敗しました：" + cause.getMessage());
+    }
+
+    private static List<MemberAddResult> failed(List<Member> members, String message) {
+        return members.stream()
+                .map(member -> new MemberAddResult(member.userPrincipalName(), member.objectId(), MemberAddStatus.FAILED, message))
+                .toList();
+    }
+
+    /**
+     * $batchで/members/$refのPOSTを最大20件まとめて送信（サブリクエストごとの結果を取得、429/503は再試行）
+     */
+    private List<MemberAddResult> addChunkByBatch(String groupId, List<Member> chunk) {
+        List<MemberAddResult> results = new ArrayList<>();
+        List<Member> pending = chunk;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            List<Map<String, Object>> requests = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                Map<String, Object> request = new LinkedHashMap<>();
+                request.put("id", String.valueOf(i));
+                request.put("method", "POST");
+                request.put("url", "/groups/" + groupId + "/members/$ref");
+                request.put("headers", Map.of("Content-Type", "application/json"));
+                request.put("body", Map.of("@odata.id", graphBaseUrl + "/directoryObjects/" + pending.get(i).objectId()));
+                requests.add(request);
+            }
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            // 再試行の間にトークンが期限切れになり得るため、送信ごとに取得（AccessTokenManagerのキャッシュを参照するのみ）
+            headers.setBearerAuth(getGraphAccessToken());
+            // $batchはサブリクエストごとにGraphのスロットリングの対象になるため、件数分の共有レートを消費する
+            headers.set(GraphCallGate.COST_HEADER, String.valueOf(requests.size()));
+            ResponseEntity<JsonNode> response;
+            try {
+                response = restTemplate.exchange(
+                        graphBaseUrl + "/$batch",
+                        HttpMethod.POST,
+                        new HttpEntity<>(Map.of("requests", requests), headers),
+                        JsonNode.class
+                );
+            } catch (RestClientException e) {
+                // 前回までの試行の結果は残し、未確定のユーザーのみFAILEDとする
+                log.warn("⚠️ グループ{}への$batchの送信に失敗しました（{}件）：{}", groupId, pending.size(), e.getMessage());
+                results.addAll(failed(pending, "$batchの送信に失敗しました：" + e.getMessage()));
+                break;
+            }
+            if (response.getBody() == null) {
+                results.addAll(failed(pending, "$batchの応答が空です（HTTP " + response.getStatusCodeValue() + "）"));
+                break;
+            }
+
+            List<Member> throttled = new ArrayList<>();
+            Map<String, Member> unanswered = new LinkedHashMap<>();
+            for (int i = 0; i < pending.size(); i++) {
+                unanswered.put(String.valueOf(i), pending.get(i));
+            }
+            int retryAfterSeconds = 0;
+            for (JsonNode subResponse : response.getBody().path("responses")) {
+                Member member = unanswered.remove(subResponse.path("id").asText());
+                if (member == null) {
+                    continue;
+                }
+                int status = subResponse.path("status").asInt();
+                String message = subResponse.path("body").path("error").path("message").asText("");
+                if (status == HttpStatus.NO_CONTENT.value()) {
+                    results.add(new MemberAddResult(member.userPrincipalName(), member.objectId(), MemberAddStatus.ADDED, null));
+                } else if (status == HttpStatus.BAD_REQUEST.value() && message.contains("already exist")) {
+                    results.add(new MemberAddResult(member.userPrincipalName(), member.objectId(), MemberAddStatus.ALREADY_MEMBER, message));
+                } else if ((status == HttpStatus.TOO_MANY_REQUESTS.value() || status == HttpStatus.SERVICE_UNAVAILABLE.value())
+                        && attempt < BATCH_MAX_ATTEMPTS) {
+                    throttled.add(member);
+                    retryAfterSeconds = Math.max(retryAfterSeconds, retryAfterSeconds(subResponse));
+                } else {
+                    results.add(new MemberAddResult(member.userPrincipalName(), member.objectId(), MemberAddStatus.FAILED,
+                            "Graph APIがステータスコード " + status + " を返却しました：" + message));
+                }
+            }
+
+            // 応答に含まれなかったサブリクエストは結果不明のためFAILEDとする
+            results.addAll(failed(List.copyOf(unanswered.values()), "$batchの応答にサブリクエストの結果が含まれていません"));
+
+            if (!throttled.isEmpty()) {
+                log.warn("⚠️ グループ{}への追加がスロットリングされました。{}秒後に{}件を再試行します", groupId, retryAfterSeconds, throttled.size());
+                GraphCallGate gate = graphCallGate.getIfAvailable();
+                if (gate != null) {
+                    // 次の$batchの送信がゲートの一時停止（全インスタンス共有）で待機するため、ここでは待機しない
+                    gate.onThrottled(Duration.ofSeconds(retryAfterSeconds));
+                } else {
+                    try {
+                        TimeUnit.SECONDS.sleep(retryAfterSeconds);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("スロットリング待機中に処理が中断されました：" + e.getMessage(), e);
+                    }
+                }
+            }
+            pending = throttled;
+        }
+        return results;
+    }
+
+    // サブリクエストのRetry-After（GraphCallGate・デルタ同期と同じ解釈：秒数またはHTTP日付）
+    private static int retryAfterSeconds(JsonNode subResponse) {
+        Duration wait = RetryAfter.parse(subResponse.path("headers").path("Retry-After").asText(null), Instant.now());
+        if (wait == null) {
+            return DEFAULT_RETRY_AFTER_SECONDS;
+        }
+        return (int) Math.min(MAX_RETRY_AFTER_SECONDS, wait.toSeconds());
+    }
+
+    /**
+     * members@odata.bindのPATCHで最大20件を1回で追加（全件成功/全件失敗のため、失敗時は$batchで個別に再実行して結果を特定）
+     */
+    private List<MemberAddResult> addChunkByBind(String groupId, List<Member> chunk) {
+        try {
+            JsonArray memberRefs = new JsonArray();
+            chunk.forEach(member -> memberRefs.add(graphBaseUrl + "/directoryObjects/" + member.objectId()));
+            Group patch = new Group();
+            patch.additionalDataManager().put("members@odata.bind", memberRefs);
+            // SDK経由で送信（RetryHandlerによる429/503の再試行をそのまま利用するため）
+            graphClient.groups(groupId).buildRequest().patch(patch);
+            return chunk.stream()
+                    .map(member -> new MemberAddResult(member.userPrincipalName(), member.objectId(), MemberAddStatus.ADDED, null))
+                    .toList();
+        } catch (Exception e) {
+            log.warn("⚠️ グループ{}へのPATCH一括追加に失敗しました。$batchで個別に再実行します：{}", groupId, e.getMessage());
+            return addChunkByBatch(groupId, chunk);
+        }
+    }
+
+    private String getGraphAccessToken() {
+        return accessTokenManager.getToken(EntraGraphClientConfig.GRAPH_SCOPE);
+    }
+
+    private record Member(String userPrincipalName, String objectId) {
+    }
+
+    /**
+     * グループ作成操作の状態
+     */
+    public enum GroupOperationState {
+        // グループ作成中
+        CREATING,
+        // Azure ADの同期待ち（指数バックオフでポーリング中）
+        WAITING_FOR_REPLICATION,
+        // ユーザー追加中
+        ADDING_MEMBER,
+        COMPLETED,
+        FAILED
+    }
+
+    /**
+     * グループ作成操作の進捗
+     * @param operationId 操作ID
+     * @param state       状態
+     * @param groupId     作成したグループID（作成前はnull）
+     * @param attempts    同期確認の回数
+     * @param message     失敗時のメッセージ
+     * @param createdAt   開始日時
+     * @param updatedAt   最終更新日時
+     */
+    public record GroupOperationStatus(String operationId, GroupOperationState state, String groupId,
+                                       int attempts, String message, Instant createdAt, Instant updatedAt) {
+    }
+
+    /**
+     * グループ作成操作（スケジューラのスレッドからのみ更新する）
+     */
+    private static final class GroupOperation {
+        private final String operationId;
+        private final String userEmail;
+        private final Instant createdAt = Instant.now();
+        private final CompletableFuture<String> completion = new CompletableFuture<>();
+        private volatile GroupOperationState state = GroupOperationState.CREATING;
+        private volatile String groupId;
+        private volatile int attempts;
+        private volatile String message;
+        private volatile Instant updatedAt = createdAt;
+
+        private GroupOperation(String operationId, String userEmail) {
+            this.operationId = operationId;
+            this.userEmail = userEmail;
+        }
+
+        private void update(GroupOperationState state, String message) {
+            this.state = state;
+            this.message = message;
+            this.updatedAt = Instant.now();
+        }
+
+        private void complete() {
+            update(GroupOperationState.COMPLETED, null);
+            completion.complete(groupId);
+        }
+
+        private void fail(String message, Exception cause) {
+            update(GroupOperationState.FAILED, message);
+            completion.completeExceptionally(new RuntimeException(message, cause));
+        }
+
+        private GroupOperationStatus status() {
+            return new GroupOperationStatus(operationId, state, groupId, attempts, message, createdAt, updatedAt);
+        }
+    }
+
+    /**
+     * 一括追加の結果ステータス
+     */
+    public enum MemberAddStatus {
+        ADDED,
+        ALREADY_MEMBER,
+        NOT_FOUND,
+        FAILED
+    }
+
+    /**
+     * 一括追加のユーザーごとの結果
+     * @param userPrincipalName 入力されたUPN
+     * @param objectId          解決したobjectId（未解決ならnull）
+     * @param status            追加結果
+     * @param message           失敗時のメッセージ
+     */
+    public record MemberAddResult(String userPrincipalName, String objectId, MemberAddStatus status, String message) {
+    }
+}
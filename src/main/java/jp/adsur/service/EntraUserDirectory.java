@@ -0,0 +1,414 @@
+package jp.adsur.service;
+
+import com.microsoft.graph.models.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Entra IDユーザーのローカルディレクトリ投影（Redis）
+ * <ul>
+ *     <li>{prefix}{objectId}：ユーザー属性（id, displayName, userPrincipalName, mail）。value-formatにより
+ *         hash（属性ごとのハッシュ）/ json（JSON文字列）/ compact（{@link CompactEntitySerializer}のバイナリ）</li>
+ *     <li>{prefix}upn-index：UPN（小文字）→ objectId のハッシュ（二次インデックス）</li>
+ *     <li>{prefix}full-sync:unseen：フル同期でまだ受信していないobjectIdのセット（フル同期中のみ存在）</li>
+ * </ul>
+ * デルタ同期のページごとに更新し、@removedのユーザーは投影から削除する。
+ * フル同期では開始時に投影の全ユーザーを削除候補とし、受信したユーザーを候補から外して、
+ * 完了時に残ったユーザー（同期していない間に削除されたユーザー）を削除する。
+ * 削除候補はRedisに保持するため、フル同期を別のインスタンスが途中から再開しても引き継がれる。
+ * UPN解決はRedisの1回のHGETで完結し、Graphはキャッシュミス時のフォールバックとしてのみ使用する。
+ */
+@Slf4j
+@Service
+public class EntraUserDirectory implements UserDeltaListener {
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_DISPLAY_NAME = "displayName";
+    private static final String FIELD_UPN = "userPrincipalName";
+    private static final String FIELD_MAIL = "mail";
+
+    // フル同期の開始・完了時に、SCANの1回あたりの件数・削除候補の登録/削除の1パイプラインあたりの件数
+    private static final int FULL_SYNC_BATCH = 1000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String keyPrefix;
+    private final String upnIndexKey;
+    private final String unseenKey;
+    // hashの場合はnull（属性ごとのハッシュに格納）、それ以外は1つの値にシリアライズして格納
+    private final RedisSerializer<DirectoryUser> valueSerializer;
+
+    public EntraUserDirectory(StringRedisTemplate stringRedisTemplate,
+                              @Value("${app.entra.directory.key-prefix:entra:user:}") String keyPrefix,
+                              @Value("${app.entra.directory.value-format:hash}") String valueFormat,
+                              @Value("${app.entra.directory.compression-threshold:64}") int compressionThreshold) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.keyPrefix = keyPrefix;
+        this.upnIndexKey = keyPrefix + "upn-index";
+        this.unseenKey = keyPrefix + "full-sync:unseen";
+        this.valueSerializer = switch (valueFormat) {
+            case "hash" -> null;
+            case "json" -> new Jackson2JsonRedisSerializer<>(DirectoryUser.class);
+            case "compact" -> CompactEntitySerializer.directoryUsers(compressionThreshold);
+            default -> throw new IllegalArgumentException("未対応のvalue-formatです：" + valueFormat);
+        };
+    }
+
+    /**
+     * デルタの1ページを投影に反映（旧UPNの取得と書き込みをそれぞれパイプラインで一括実行）
+     * 増分の更新イベントは変更された属性のみを含むため、nullの属性は変更前の値を引き継ぐ
+     * （属性が削除された場合もnullになり区別できないため、削除された属性は次のフル同期まで残る）
+     */
+    @Override
+    public void onPage(EntraDeltaQueryService.DeltaPage page) {
+        applyPage(page, false);
+    }
+
+    /**
+     * フル同期の1ページを投影に反映（全属性を含むため、nullの属性は削除して値ごと上書きする）
+     */
+    @Override
+    public void onFullSyncPage(EntraDeltaQueryService.DeltaPage page) {
+        applyPage(page, true);
+    }
+
+    /**
+     * @param overwrite trueの場合はnullの属性も反映して上書きし、falseの場合はnull以外の属性のみマージする
+     */
+    private void applyPage(EntraDeltaQueryService.DeltaPage page, boolean overwrite) {
+        List<User> users = page.users().stream().filter(user -> user.id != null).toList();
+        if (users.isEmpty()) {
+            return;
+        }
+
+        if (valueSerializer != null) {
+            applyPageSerialized(page, users, overwrite);
+            return;
+        }
+
+        // 1. 変更前のUPNを一括取得（UPN変更・削除時に古いインデックスを消すため）
+        List<Object> oldUpns = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (User user : users) {
+                conn.hGet(userKey(user.id), FIELD_UPN);
+            }
+            return null;
+        });
+
+        // 2. 属性ハッシュとUPNインデックスを一括更新
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < users.size(); i++) {
+                User user = users.get(i);
+                String oldUpn = (String) oldUpns.get(i);
+                if (EntraDeltaQueryService.isRemoved(user)) {
+                    conn.del(userKey(user.id));
+                    if (oldUpn != null) {
+                        conn.hDel(upnIndexKey, normalize(oldUpn));
+                    }
+                    continue;
+                }
+                Map<String, String> fields = toFields(user.id, user.displayName, user.userPrincipalName, user.mail);
+                conn.hMSet(userKey(user.id), fields);
+                if (overwrite) {
+                    String[] cleared = Stream.of(FIELD_DISPLAY_NAME, FIELD_UPN, FIELD_MAIL)
+                            .filter(field -> !fields.containsKey(field))
+                            .toArray(String[]::new);
+                    if (cleared.length > 0) {
+                        conn.hDel(userKey(user.id), cleared);
+                    }
+                }
+                updateUpnIndex(conn, user.id, oldUpn,
+                        overwrite || user.userPrincipalName != null ? user.userPrincipalName : oldUpn);
+            }
+            markSeen(conn, users);
+            return null;
+        });
+        log.debug("ディレクトリ投影を更新しました：ページ={}, 件数={}", page.pageIndex(), users.size());
+    }
+
+    // value-formatがhash以外の場合：変更前の値を一括取得し、null以外の属性をマージして（上書き時はそのまま）値ごと書き換える
+    private void applyPageSerialized(EntraDeltaQueryService.DeltaPage page, List<User> users, boolean overwrite) {
+        List<Object> olds = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (User user : users) {
+                connection.get(rawKey(userKey(user.id)));
+            }
+            return null;
+        }, valueSerializer);
+
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < users.size(); i++) {
+                User user = users.get(i);
+                DirectoryUser old = (DirectoryUser) olds.get(i);
+                String oldUpn = old != null ? old.userPrincipalName() : null;
+                if (EntraDeltaQueryService.isRemoved(user)) {
+                    conn.del(userKey(user.id));
+                    if (oldUpn != null) {
+                        conn.hDel(upnIndexKey, normalize(oldUpn));
+                    }
+                    continue;
+                }
+                DirectoryUser base = overwrite ? null : old;
+                DirectoryUser merged = new DirectoryUser(user.id,
+                        user.displayName != null ? user.displayName : base != null ? base.displayName() : null,
+                        user.userPrincipalName != null ? user.userPrincipalName : base != null ? oldUpn : null,
+                        user.mail != null ? user.mail : base != null ? base.mail() : null);
+                conn.set(rawKey(userKey(user.id)), valueSerializer.serialize(merged));
+                updateUpnIndex(conn, user.id, oldUpn, merged.userPrincipalName());
+            }
+            markSeen(conn, users);
+            return null;
+        });
+        log.debug("ディレクトリ投影を更新しました：ページ={}, 件数={}", page.pageIndex(), users.size());
+    }
+
+    /**
+     * フル同期の開始：投影の全ユーザー（{prefix}{objectId}のキー）を削除候補に登録（前回の途中の候補は破棄）
+     */
+    @Override
+    public void onFullSyncStart() {
+        stringRedisTemplate.delete(unseenKey);
+        List<String> objectIds = scanObjectIds();
+        for (int from = 0; from < objectIds.size(); from += FULL_SYNC_BATCH) {
+            List<String> batch = objectIds.subList(from, Math.min(objectIds.size(), from + FULL_SYNC_BATCH));
+            stringRedisTemplate.opsForSet().add(unseenKey, batch.toArray(String[]::new));
+        }
+        log.info("フル同期の削除候補を登録しました：件数={}", objectIds.size());
+    }
+
+    /**
+     * フル同期の完了：受信しなかったユーザーを属性・UPNインデックスともに削除
+     */
+    @Override
+    public void onFullSyncComplete() {
+        Set<String> unseen = stringRedisTemplate.opsForSet().members(unseenKey);
+        List<String> objectIds = unseen != null ? new ArrayList<>(unseen) : List.of();
+        for (int from = 0; from < objectIds.size(); from += FULL_SYNC_BATCH) {
+            removeUsers(objectIds.subList(from, Math.min(objectIds.size(), from + FULL_SYNC_BATCH)));
+        }
+        stringRedisTemplate.delete(unseenKey);
+        log.info("フル同期で受信しなかったユーザーを投影から削除しました：件数={}", objectIds.size());
+    }
+
+    /**
+     * UPNからobjectIdを解決（Redis障害時は空を返却し、呼び出し元でGraphにフォールバックする）
+     */
+    public Optional<String> findObjectIdByUpn(String userPrincipalName) {
+        try {
+            Object objectId = stringRedisTemplate.opsForHash().get(upnIndexKey, normalize(userPrincipalName));
+            return Optional.ofNullable((String) objectId);
+        } catch (Exception e) {
+            log.warn("ディレクトリ投影の参照に失敗しました：UPN={}, {}", userPrincipalName, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 複数UPNのobjectIdを一括解決（HMGETの1往復、未登録のUPNは結果に含まれない）
+     * @return 引数のUPN → objectId
+     */
+    public Map<String, String> findObjectIdsByUpns(List<String> userPrincipalNames) {
+        Map<String, String> result = new HashMap<>();
+        if (userPrincipalNames.isEmpty()) {
+            return result;
+        }
+        try {
+            List<Object> fields = userPrincipalNames.stream().map(upn -> (Object) normalize(upn)).toList();
+            List<Object> objectIds = stringRedisTemplate.opsForHash().multiGet(upnIndexKey, fields);
+            for (int i = 0; i < userPrincipalNames.size(); i++) {
+                if (objectIds.get(i) != null) {
+                    result.put(userPrincipalNames.get(i), (String) objectIds.get(i));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("ディレクトリ投影の一括参照に失敗しました：件数={}, {}", userPrincipalNames.size(), e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * UPNからユーザーを取得
+     */
+    public Optional<DirectoryUser> findByUpn(String userPrincipalName) {
+        return findObjectIdByUpn(userPrincipalName).flatMap(this::findById);
+    }
+
+    /**
+     * objectIdからユーザーを取得
+     */
+    public Optional<DirectoryUser> findById(String objectId) {
+        try {
+            if (valueSerializer != null) {
+                byte[] value = stringRedisTemplate.execute(
+                        (RedisCallback<byte[]>) connection -> connection.get(rawKey(userKey(objectId))));
+                return Optional.ofNullable(valueSerializer.deserialize(value));
+            }
+            Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(userKey(objectId));
+            if (fields.isEmpty()) {
+                return Optional.empty();
+            }
+            return Optional.of(new DirectoryUser(
+                    objectId,
+                    (String) fields.get(FIELD_DISPLAY_NAME),
+                    (String) fields.get(FIELD_UPN),
+                    (String) fields.get(FIELD_MAIL)
+            ));
+        } catch (Exception e) {
+            log.warn("ディレクトリ投影の参照に失敗しました：ID={}, {}", objectId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Graphから取得したユーザーを投影に登録（キャッシュミス時の読み込み補完）
+     */
+    public void put(DirectoryUser user) {
+        try {
+            if (valueSerializer != null) {
+                byte[] value = valueSerializer.serialize(user);
+                stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                        connection.set(rawKey(userKey(user.id())), value));
+            } else {
+                stringRedisTemplate.opsForHash().putAll(userKey(user.id()),
+                        toFields(user.id(), user.displayName(), user.userPrincipalName(), user.mail()));
+            }
+            if (user.userPrincipalName() != null) {
+                stringRedisTemplate.opsForHash().put(upnIndexKey, normalize(user.userPrincipalName()), user.id());
+            }
+        } catch (Exception e) {
+            log.warn("ディレクトリ投影の登録に失敗しました：ID={}, {}", user.id(), e.getMessage());
+        }
+    }
+
+    /**
+     * 投影に登録されているユーザー数（UPNインデックスの件数）
+     */
+    public long size() {
+        return stringRedisTemplate.opsForHash().size(upnIndexKey);
+    }
+
+    // UPNインデックスを更新後のUPNに合わせる（UPNが変更・削除された場合は旧UPNのインデックスを削除）
+    private void updateUpnIndex(StringRedisConnection conn, String objectId, String oldUpn, String upn) {
+        if (oldUpn != null && (upn == null || !oldUpn.equalsIgnoreCase(upn))) {
+            conn.hDel(upnIndexKey, normalize(oldUpn));
+        }
+        if (upn != null) {
+            conn.hSet(upnIndexKey, normalize(upn), objectId);
+        }
+    }
+
+    // 受信したユーザーを削除候補から外す（フル同期中でなければ候補のセットが存在しないため何もしない）
+    private void markSeen(StringRedisConnection conn, List<User> users) {
+        conn.sRem(unseenKey, users.stream().map(user -> user.id).toArray(String[]::new));
+    }
+
+    // 投影のユーザーキーのobjectId（UPNインデックス・削除候補などの管理用キーを除く）
+    private List<String> scanObjectIds() {
+        ScanOptions options = ScanOptions.scanOptions().match(keyPrefix + "*").count(FULL_SYNC_BATCH).build();
+        return stringRedisTemplate.execute((RedisCallback<List<String>>) connection -> {
+            List<String> objectIds = new ArrayList<>();
+            try (Cursor<byte[]> cursor = connection.keyCommands().scan(options)) {
+                while (cursor.hasNext()) {
+                    String key = new String(cursor.next(), StandardCharsets.UTF_8);
+                    String objectId = key.substring(keyPrefix.length());
+                    if (!key.equals(upnIndexKey) && objectId.indexOf(':') < 0) {
+                        objectIds.add(objectId);
+                    }
+                }
+            }
+            return objectIds;
+        });
+    }
+
+    // 属性とUPNインデックスを削除（UPNが別のユーザーに割り当て直されている場合、そのユーザーのインデックスは残す）
+    private void removeUsers(List<String> objectIds) {
+        List<String> upns = currentUpns(objectIds);
+        Map<String, String> indexed = findObjectIdsByUpns(upns.stream().filter(Objects::nonNull).toList());
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < objectIds.size(); i++) {
+                String objectId = objectIds.get(i);
+                String upn = upns.get(i);
+                conn.del(userKey(objectId));
+                if (upn != null && objectId.equals(indexed.get(upn))) {
+                    conn.hDel(upnIndexKey, normalize(upn));
+                }
+            }
+            return null;
+        });
+    }
+
+    // 投影に格納されているUPN（未登録・UPNなしはnull）
+    private List<String> currentUpns(List<String> objectIds) {
+        if (valueSerializer != null) {
+            List<Object> olds = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String objectId : objectIds) {
+                    connection.get(rawKey(userKey(objectId)));
+                }
+                return null;
+            }, valueSerializer);
+            return olds.stream().map(old -> old != null ? ((DirectoryUser) old).userPrincipalName() : null).toList();
+        }
+        List<Object> upns = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String objectId : objectIds) {
+                conn.hGet(userKey(objectId), FIELD_UPN);
+            }
+            return null;
+        });
+        return upns.stream().map(upn -> (String) upn).toList();
+    }
+
+    private static Map<String, String> toFields(String id, String displayName, String upn, String mail) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(FIELD_ID, id);
+        if (displayName != null) {
+            fields.put(FIELD_DISPLAY_NAME, displayName);
+        }
+        if (upn != null) {
+            fields.put(FIELD_UPN, upn);
+        }
+        if (mail != null) {
+            fields.put(FIELD_MAIL, mail);
+        }
+        return fields;
+    }
+
+    private String userKey(String objectId) {
+        return keyPrefix + objectId;
+    }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // UPNは大文字小文字を区別しないため、インデックスは小文字で保持する
+    private static String normalize(String userPrincipalName) {
+        return userPrincipalName.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * ディレクトリ投影のユーザー
+     */
+    public record DirectoryUser(String id, String displayName, String userPrincipalName, String mail) {
+    }
+}
@@ -0,0 +1,38 @@
+package jp.adsur.service;
+
+/**
+ * グループ/メンバーシップのデルタ同期のページ受信リスナー（テナント同期で使用）
+ * 同期エンジンがページ取得ごとに呼び出し、全リスナーの処理完了後にチェックポイントを保存する
+ * グループ属性とメンバーシップは別スレッドで並行して同期されるため、実装はスレッドセーフであること
+ */
+public interface GroupDeltaListener {
+
+    /**
+     * グループ属性の1ページ分を処理する（例外をスローすると同期は中断され、次回は同じページから再開する）
+     */
+    default void onGroupPage(EntraDeltaQueryService.GroupDeltaPage page) {
+    }
+
+    /**
+     * メンバー追加/削除の1ページ分を処理する（例外をスローすると同期は中断され、次回は同じページから再開する）
+     */
+    default void onMembershipPage(EntraDeltaQueryService.MembershipDeltaPage page) {
+    }
+
+    /**
+     * フル同期（チェックポイントなし）を開始する前に呼び出される
+     * （投影に残っているエントリを削除候補として記録する。途中で停止して再開した場合は呼び出されない）
+     * @param stream 対象のストリーム（groups/memberships）
+     */
+    default void onFullSyncStart(String stream) {
+    }
+
+    /**
+     * フル同期の最終ページの処理後、デルタリンクを保存する前に呼び出される（途中から再開したフル同期を含む）
+     * フル同期で受信しなかったエントリ（同期していない間に削除されたグループ・メンバー）を投影から削除する。
+     * 例外をスローすると同期は中断され、次回は最終ページから再開して再度呼び出される。
+     * @param stream 対象のストリーム（groups/memberships）
+     */
+    default void onFullSyncComplete(String stream) {
+    }
+}
@@ -0,0 +1,138 @@
+package jp.adsur.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jp.adsur.db.ReactiveUserInfoRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * user_info查询的两级读穿透缓存（reactive Profile版）：Caffeine本地缓存 + 响应式Redis + R2DBC
+ * <p>
+ * 与UserInfoCacheService使用相同的配置项和Redis key，两种运行模式可共享Redis中的缓存。
+ * 本地缓存保存加载中的Future，同一key的并发请求只订阅一次Redis/PostgreSQL（single-flight），
+ * 整个加载过程不占用事件循环线程。
+ */
+@Slf4j
+@Profile("reactive")
+@Service
+public class ReactiveUserInfoCacheService {
+
+    // Redis中表示「用户不存在」的空值标记（与UserInfoCacheService相同）
+    private static final String NULL_MARKER = "\u0000";
+
+    private final ReactiveUserInfoRepository userInfoRepository;
+    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+    private final AsyncCache<Long, CachedName> localCache;
+
+    private final String keyPrefix;
+    private final Duration redisTtl;
+    private final Duration negativeTtl;
+    private final boolean redisEnabled;
+
+    public ReactiveUserInfoCacheService(ReactiveUserInfoRepository userInfoRepository,
+                                        ReactiveStringRedisTemplate reactiveStringRedisTemplate,
+                                        @Value("${app.cache.user-info.local-max-size:10000}") long localMaxSize,
+                                        @Value("${app.cache.user-info.local-ttl:30s}") Duration localTtl,
+                                        @Value("${app.cache.user-info.redis-ttl:10m}") Duration redisTtl,
+                                        @Value("${app.cache.user-info.negative-ttl:30s}") Duration negativeTtl,
+                                        @Value("${app.cache.user-info.key-prefix:user_info:username:}") String keyPrefix,
+                                        @Value("${app.cache.user-info.redis-enabled:true}") boolean redisEnabled) {
+        this.userInfoRepository = userInfoRepository;
+        this.reactiveStringRedisTemplate = reactiveStringRedisTemplate;
+        this.keyPrefix = keyPrefix;
+        this.redisTtl = redisTtl;
+        this.negativeTtl = negativeTtl;
+        this.redisEnabled = redisEnabled;
+        // 空值的本地TTL不超过negativeTtl，有值的使用localTtl
+        long positiveNanos = localTtl.toNanos();
+        long negativeNanos = Math.min(localTtl.toNanos(), negativeTtl.toNanos());
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfter(new Expiry<Long, CachedName>() {
+                    @Override
+                    public long expireAfterCreate(Long key, CachedName value, long currentTime) {
+                        return value.present() ? positiveNanos : negativeNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long key, CachedName value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long key, CachedName value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .buildAsync();
+    }
+
+    /**
+     * 按ID查询用户名（读穿透：本地缓存 → Redis → PostgreSQL）
+     * @param id 用户ID
+     * @return 用户名，不存在时为空的Mono（PostgreSQL异常以error信号传递，且不会被缓存）
+     */
+    public Mono<String> findUserName(long id) {
+        // 加载失败时Caffeine会自动移除该Future，下一次请求重新加载
+        return Mono.defer(() -> Mono.fromFuture(localCache.get(id, (key, executor) -> load(key).toFuture())))
+                .flatMap(cached -> Mono.justOrEmpty(cached.value()));
+    }
+
+    private Mono<CachedName> load(long id) {
+        // 1. 二级缓存：Redis → 2. 数据源：PostgreSQL
+        return readRedis(id)
+                .map(value -> NULL_MARKER.equals(value) ? CachedName.ABSENT : new CachedName(value))
+                .switchIfEmpty(Mono.defer(() -> userInfoRepository.findUserNameById(id)
+                        .map(CachedName::new)
+                        .defaultIfEmpty(CachedName.ABSENT)
+                        .flatMap(cached -> writeRedis(id, cached).thenReturn(cached))));
+    }
+
+    private Mono<String> readRedis(long id) {
+        if (!redisEnabled) {
+            return Mono.empty();
+        }
+        return reactiveStringRedisTemplate.opsForValue().get(redisKey(id))
+                .onErrorResume(e -> {
+                    // Redis不可用时降级为直接查询PostgreSQL
+                    log.warn("Redis缓存读取失败，降级查询DB：id={}, {}", id, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Boolean> writeRedis(long id, CachedName cached) {
+        if (!redisEnabled) {
+            return Mono.just(false);
+        }
+        Mono<Boolean> write = cached.present()
+                ? reactiveStringRedisTemplate.opsForValue().set(redisKey(id), cached.value(), redisTtl)
+                : reactiveStringRedisTemplate.opsForValue().set(redisKey(id), NULL_MARKER, negativeTtl);
+        return write.onErrorResume(e -> {
+            log.warn("Redis缓存写入失败：id={}, {}", id, e.getMessage());
+            return Mono.just(false);
+        });
+    }
+
+    private String redisKey(long id) {
+        return keyPrefix + id;
+    }
+
+    /**
+     * 本地缓存的值（value为null表示用户不存在）
+     */
+    private record CachedName(String value) {
+        static final CachedName ABSENT = new CachedName(null);
+
+        boolean present() {
+            return value != null;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package jp.adsur.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redisによる分散リース（複数インスタンス間のリーダー選出・排他実行）
+ * <p>
+ * リースは {prefix}{name} のハッシュ（owner, token）で、有効期限（TTL）付き。
+ * 取得時に {prefix}{name}:fence をINCRしたフェンシングトークンを払い出し、保持中はバックグラウンドで期限を延長する。
+ * 保持していたインスタンスが停止・応答不能になった場合はTTL経過後に他のインスタンスが取得できる。
+ * 期限切れ後に処理を続けた旧保持者の書き込みは、書き込み先でトークンを比較して拒否する（{@link DeltaCheckpointStore}）。
+ */
+@Slf4j
+@Service
+public class RedisLeaseManager {
+
+    // 未保持または自分が保持中の場合のみ取得（自分が保持中なら同じトークンのまま延長）、取得できなければ0
+    private static final RedisScript<Long> ACQUIRE = new DefaultRedisScript<>("""
+            local owner = redis.call('HGET', KEYS[1], 'owner')
+            if owner and owner ~= ARGV[1] then
+                return 0
+            end
+            local token
+            if owner then
+                token = tonumber(redis.call('HGET', KEYS[1], 'token'))
+            else
+                token = redis.call('INCR', KEYS[2])
+                redis.call('HSET', KEYS[1], 'owner', ARGV[1], 'token', token)
+            end
+            redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            return token""", Long.class);
+
+    // 保持者とトークンが一致する場合のみ期限を延長（1：延長、0：既に失効・他者が取得済み）
+    private static final RedisScript<Long> RENEW = new DefaultRedisScript<>("""
+            if redis.call('HGET', KEYS[1], 'owner') == ARGV[1] and redis.call('HGET', KEYS[1], 'token') == ARGV[2] then
+                return redis.call('PEXPIRE', KEYS[1], ARGV[3])
+            end
+            return 0""", Long.class);
+
+    // 保持者とトークンが一致する場合のみ削除
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>("""
+            if redis.call('HGET', KEYS[1], 'owner') == ARGV[1] and redis.call('HGET', KEYS[1], 'token') == ARGV[2] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0""", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String keyPrefix;
+    private final String ownerId;
+    private final Duration ttl;
+    private final Duration renewInterval;
+    private final ScheduledExecutorService renewer;
+    private final Set<Lease> heldLeases = ConcurrentHashMap.newKeySet();
+
+    public RedisLeaseManager(StringRedisTemplate stringRedisTemplate,
+                             ObjectProvider<MeterRegistry> meterRegistry,
+                             @Value("${app.lease.key-prefix:lease:}") String keyPrefix,
+                             @Value("${app.lease.owner-id:}") String ownerId,
+                             @Value("${app.lease.ttl:60s}") Duration ttl) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.keyPrefix = keyPrefix;
+        this.ownerId = ownerId.isBlank() ? defaultOwnerId() : ownerId;
+        this.ttl = ttl;
+        // TTLの1/3ごとに延長（延長が2回続けて失敗しても期限内に回復できる）
+        this.renewInterval = ttl.dividedBy(3);
+        this.renewer = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("lease-renewer-"));
+        meterRegistry.ifAvailable(registry -> Gauge.builder("app.lease.held", heldLeases, Set::size)
+                .description("このインスタンスが保持中のリース数").register(registry));
+        log.info("分散リースを初期化しました：保持者ID={}, TTL={}s", this.ownerId, ttl.toSeconds());
+    }
+
+    /**
+     * リースの取得を試みる（待機しない）
+     * @param name リース名（例：delta-sync:users）
+     * @return 取得できた場合はリース（close()で解放）、他のインスタンスが保持中の場合は空
+     */
+    public Optional<Lease> tryAcquire(String name) {
+        Long token = stringRedisTemplate.execute(ACQUIRE, List.of(leaseKey(name), fenceKey(name)),
+                ownerId, String.valueOf(ttl.toMillis()));
+        if (token == null || token == 0) {
+            return Optional.empty();
+        }
+        Lease lease = new Lease(name, token);
+        lease.renewal = renewer.scheduleAtFixedRate(() -> renew(lease),
+                renewInterval.toMillis(), renewInterval.toMillis(), TimeUnit.MILLISECONDS);
+        heldLeases.add(lease);
+        log.debug("リースを取得しました：名前={}, トークン={}", name, token);
+        return Optional.of(lease);
+    }
+
+    /**
+     * リースの現在の保持者（誰も保持していなければ空）
+     */
+    public Optional<LeaseInfo> holder(String name) {
+        Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(leaseKey(name));
+        if (fields.isEmpty()) {
+            return Optional.empty();
+        }
+        Long ttlMillis = stringRedisTemplate.getExpire(leaseKey(name), TimeUnit.MILLISECONDS);
+        return Optional.of(new LeaseInfo(name, (String) fields.get("owner"),
+                Long.parseLong((String) fields.get("token")), ttlMillis != null ? ttlMillis : -1));
+    }
+
+    /**
+     * このインスタンスの保持者ID
+     */
+    public String ownerId() {
+        return ownerId;
+    }
+
+    /**
+     * 停止時は保持中のリースを解放し、他のインスタンスがTTLを待たずに引き継げるようにする
+     */
+    @PreDestroy
+    void shutdown() {
+        heldLeases.forEach(Lease::close);
+        renewer.shutdownNow();
+    }
+
+    private void renew(Lease lease) {
+        try {
+            Long renewed = stringRedisTemplate.execute(RENEW, List.of(leaseKey(lease.name)),
+                    ownerId, String.valueOf(lease.token), String.valueOf(ttl.toMillis()));
+            if (renewed == null || renewed == 0) {
+                log.warn("リースを失いました（期限切れまたは他のインスタンスが取得済み）：名前={}, トークン={}",
+                        lease.name, lease.token);
+                lease.lost();
+            }
+        } catch (Exception e) {
+            // 一時的な接続エラーは次回の延長で再試行（TTL内に回復しなければ失効する）
+            log.warn("リースの延長に失敗しました：名前={}, {}", lease.name, e.getMessage());
+        }
+    }
+
+    private void release(Lease lease) {
+        try {
+            stringRedisTemplate.execute(RELEASE, List.of(leaseKey(lease.name)), ownerId, String.valueOf(lease.token));
+            log.debug("リースを解放しました：名前={}, トークン={}", lease.name, lease.token);
+        } catch (Exception e) {
+            // 解放できなくてもTTL経過後に失効する
+            log.warn("リースの解放に失敗しました：名前={}, {}", lease.name, e.getMessage());
+        }
+    }
+
+    private String leaseKey(String name) {
+        return keyPrefix + name;
+    }
+
+    private String fenceKey(String name) {
+        return keyPrefix + name + ":fence";
+    }
+
+    private static String defaultOwnerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        return host + ":" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * 取得したリース（保持中は自動延長、close()で解放）
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final String name;
+        private final long token;
+        private volatile boolean valid = true;
+        private volatile ScheduledFuture<?> renewal;
+
+        private Lease(String name, long token) {
+            this.name = name;
+            this.token = token;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * フェンシングトークン（リースを取得するたびに単調増加）
+         */
+        public long token() {
+            return token;
+        }
+
+        /**
+         * 延長に失敗していなければtrue（Redis上の失効は延長時に検知するため、最大で延長間隔だけ遅れる）
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * リースを失っていれば例外をスローする（書き込み前の確認用）
+         */
+        public void checkValid() {
+            if (!valid) {
+                throw new RuntimeException("リースを失ったため処理を中断します：" + name + "（トークン=" + token + "）");
+            }
+        }
+
+        private void lost() {
+            valid = false;
+            cancelRenewal();
+        }
+
+        private void cancelRenewal() {
+            if (renewal != null) {
+                renewal.cancel(false);
+            }
+            heldLeases.remove(this);
+        }
+
+        @Override
+        public void close() {
+            cancelRenewal();
+            if (valid) {
+                valid = false;
+                release(this);
+            }
+        }
+    }
+
+    /**
+     * リースの保持状況
+     * @param name      リース名
+     * @param owner     保持者ID
+     * @param token     フェンシングトークン
+     * @param ttlMillis 残り有効期間（ミリ秒）
+     */
+    public record LeaseInfo(String name, String owner, long token, long ttlMillis) {
+    }
+}
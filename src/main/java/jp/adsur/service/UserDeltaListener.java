@@ -0,0 +1,39 @@
+package jp.adsur.service;
+
+/**
+ * ユーザーデルタ同期のページ受信リスナー（ディレクトリ投影、DB反映などの下流処理を実装する）
+ * 同期エンジンがページ取得ごとに呼び出し、全リスナーの処理完了後にチェックポイントを保存する
+ */
+public interface UserDeltaListener {
+
+    /**
+     * 1ページ分の増分ユーザーを処理する（例外をスローすると同期は中断され、次回は同じページから再開する）
+     * @param page デルタクエリの1ページ
+     */
+    void onPage(EntraDeltaQueryService.DeltaPage page);
+
+    /**
+     * フル同期（途中からの再開を含む）の1ページ分を処理する
+     * フル同期のユーザーは全属性を含むため、nullの属性は未設定（削除された属性）を表す。
+     * 増分の更新イベントは変更された属性のみを含み、属性の削除とnullを区別できないため、
+     * 属性の削除を反映する実装はこちらで上書きする（既定は{@link #onPage}と同じ）。
+     */
+    default void onFullSyncPage(EntraDeltaQueryService.DeltaPage page) {
+        onPage(page);
+    }
+
+    /**
+     * フル同期（チェックポイントなし）を開始する前に呼び出される
+     * （投影に残っているエントリを削除候補として記録する。途中で停止して再開した場合は呼び出されない）
+     */
+    default void onFullSyncStart() {
+    }
+
+    /**
+     * フル同期の最終ページの処理後、デルタリンクを保存する前に呼び出される（途中から再開したフル同期を含む）
+     * フル同期で受信しなかったエントリ（同期していない間に削除されたユーザー）を投影から削除する。
+     * 例外をスローすると同期は中断され、次回は最終ページから再開して再度呼び出される。
+     */
+    default void onFullSyncComplete() {
+    }
+}
@@ -0,0 +1,255 @@
+package jp.adsur.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jp.adsur.db.UserInfoBatchLoader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * user_info查询的两级读穿透缓存：Caffeine本地缓存（一级） + Redis（二级） + PostgreSQL（数据源）
+ * <p>
+ * 同一JVM内同一key的加载由Caffeine保证只执行一次（single-flight），
+ * 冷key在并发下只会访问一次Redis/PostgreSQL，避免连接池被打满。
+ * 查询无结果也会以空值标记缓存（较短TTL），防止缓存穿透。
+ * 不同key的DB加载经由UserInfoBatchLoader合并为批量查询。
+ */
+@Slf4j
+@Profile("!reactive")
+@Service
+public class UserInfoCacheService {
+
+    // Redis中表示「用户不存在」的空值标记
+    private static final String NULL_MARKER = "\u0000";
+
+    private final UserInfoBatchLoader userInfoBatchLoader;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Cache<Long, CachedName> localCache;
+
+    private final String keyPrefix;
+    private final Duration redisTtl;
+    private final Duration negativeTtl;
+    private final boolean redisEnabled;
+
+    // 命中/未命中/加载耗时统计
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder dbLoads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAccumulator maxLoadNanos = new LongAccumulator(Math::max, 0L);
+
+    public UserInfoCacheService(UserInfoBatchLoader userInfoBatchLoader,
+                                StringRedisTemplate stringRedisTemplate,
+                                ObjectProvider<MeterRegistry> meterRegistry,
+                                @Value("${app.cache.user-info.local-max-size:10000}") long localMaxSize,
+                                @Value("${app.cache.user-info.local-ttl:30s}") Duration localTtl,
+                                @Value("${app.cache.user-info.redis-ttl:10m}") Duration redisTtl,
+                                @Value("${app.cache.user-info.negative-ttl:30s}") Duration negativeTtl,
+                                @Value("${app.cache.user-info.key-prefix:user_info:username:}") String keyPrefix,
+                                @Value("${app.cache.user-info.redis-enabled:true}") boolean redisEnabled) {
+        this.userInfoBatchLoader = userInfoBatchLoader;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.keyPrefix = keyPrefix;
+        this.redisTtl = redisTtl;
+        this.negativeTtl = negativeTtl;
+        this.redisEnabled = redisEnabled;
+        // 空值的本地TTL不超过negativeTtl，有值的使用localTtl
+        long positiveNanos = localTtl.toNanos();
+        long negativeNanos = Math.min(localTtl.toNanos(), negativeTtl.toNanos());
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfter(new Expiry<Long, CachedName>() {
+                    @Override
+                    public long expireAfterCreate(Long key, CachedName value, long currentTime) {
+                        return value.present() ? positiveNanos : negativeNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long key, CachedName value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long key, CachedName value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        meterRegistry.ifAvailable(this::bindMetrics);
+    }
+
+    /**
+     * 按ID查询用户名（读穿透：本地缓存 → Redis → PostgreSQL）
+     * @param id 用户ID
+     * @return 用户名，不存在时返回Optional.empty()（PostgreSQL异常直接抛出，且不会被缓存）
+     */
+    public Optional<String> findUserName(long id) {
+        CachedName cached = localCache.getIfPresent(id);
+        if (cached != null) {
+            localHits.increment();
+            return cached.toOptional();
+        }
+        // Caffeine保证同一key并发时只有一个线程执行load，其余线程等待结果
+        return localCache.get(id, this::load).toOptional();
+    }
+
+    /**
+     * 使指定ID的缓存失效（本地 + Redis），user_info更新后调用
+     */
+    public void evict(long id) {
+        localCache.invalidate(id);
+        if (redisEnabled) {
+            try {
+                stringRedisTemplate.delete(redisKey(id));
+            } catch (Exception e) {
+                log.warn("Redis缓存删除失败：id={}, {}", id, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 当前缓存统计（命中率、加载次数、加载耗时）
+     */
+    public Stats stats() {
+        long local = localHits.sum();
+        long redis = redisHits.sum();
+        long db = dbLoads.sum();
+        long loads = redis + db;
+        return new Stats(
+                local,
+                redis,
+                db,
+                loadFailures.sum(),
+                local + loads == 0 ? 0.0 : (double) (local + redis) / (local + loads),
+                loads == 0 ? 0.0 : loadNanos.sum() / 1_000_000.0 / loads,
+                maxLoadNanos.get() / 1_000_000.0,
+                localCache.estimatedSize()
+        );
+    }
+
+    /**
+     * 命中/加载统计以Micrometer指标公开（app.cache.user_info.*）
+     * <p>
+     * 不作为MeterBinder Bean注册：MeterBinder在MeterRegistry创建时绑定，而本服务依赖的Redis连接工厂
+     * 又依赖MeterRegistry（Lettuce指标），会形成循环依赖。因此在构造完成时自行注册。
+     */
+    private void bindMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("app.cache.user_info.requests", localHits, LongAdder::sum)
+                .description("user_info缓存的查询次数").tag("result", "local_hit").register(registry);
+        FunctionCounter.builder("app.cache.user_info.requests", redisHits, LongAdder::sum)
+                .description("user_info缓存的查询次数").tag("result", "redis_hit").register(registry);
+        FunctionCounter.builder("app.cache.user_info.requests", dbLoads, LongAdder::sum)
+                .description("user_info缓存的查询次数").tag("result", "db_load").register(registry);
+        FunctionCounter.builder("app.cache.user_info.load.failures", loadFailures, LongAdder::sum)
+                .description("user_info缓存的加载失败次数").register(registry);
+        FunctionTimer.builder("app.cache.user_info.load", this,
+                        service -> service.redisHits.sum() + service.dbLoads.sum(),
+                        service -> service.loadNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("本地缓存未命中时的加载耗时（Redis + DB）").register(registry);
+        Gauge.builder("app.cache.user_info.size", localCache, Cache::estimatedSize)
+                .description("本地缓存条目数（估算值）").register(registry);
+    }
+
+    private CachedName load(Long id) {
+        long start = System.nanoTime();
+        try {
+            // 1. 二级缓存：Redis
+            String redisValue = readRedis(id);
+            if (redisValue != null) {
+                redisHits.increment();
+                return NULL_MARKER.equals(redisValue) ? CachedName.ABSENT : new CachedName(redisValue);
+            }
+
+            // 2. 数据源：PostgreSQL（与其他key的并发加载合并为一条查询）
+            dbLoads.increment();
+            Optional<String> userName = userInfoBatchLoader.load(id);
+            writeRedis(id, userName);
+            return userName.map(CachedName::new).orElse(CachedName.ABSENT);
+        } catch (RuntimeException e) {
+            loadFailures.increment();
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            loadNanos.add(elapsed);
+            maxLoadNanos.accumulate(elapsed);
+        }
+    }
+
+    private String readRedis(long id) {
+        if (!redisEnabled) {
+            return null;
+        }
+        try {
+            return stringRedisTemplate.opsForValue().get(redisKey(id));
+        } catch (Exception e) {
+            // Redis不可用时降级为直接查询PostgreSQL
+            log.warn("Redis缓存读取失败，降级查询DB：id={}, {}", id, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRedis(long id, Optional<String> userName) {
+        if (!redisEnabled) {
+            return;
+        }
+        try {
+            if (userName.isPresent()) {
+                stringRedisTemplate.opsForValue().set(redisKey(id), userName.get(), redisTtl);
+            } else {
+                stringRedisTemplate.opsForValue().set(redisKey(id), NULL_MARKER, negativeTtl);
+            }
+        } catch (Exception e) {
+            log.warn("Redis缓存写入失败：id={}, {}", id, e.getMessage());
+        }
+    }
+
+    private String redisKey(long id) {
+        return keyPrefix + id;
+    }
+
+    /**
+     * 本地缓存的值（value为null表示用户不存在）
+     */
+    private record CachedName(String value) {
+        static final CachedName ABSENT = new CachedName(null);
+
+        boolean present() {
+            return value != null;
+        }
+
+        Optional<String> toOptional() {
+            return Optional.ofNullable(value);
+        }
+    }
+
+    /**
+     * 缓存统计快照
+     * @param localHits     本地缓存命中次数
+     * @param redisHits     Redis命中次数
+     * @param dbLoads       PostgreSQL加载次数（= 两级缓存均未命中）
+     * @param loadFailures  加载失败次数
+     * @param hitRate       总命中率（本地 + Redis）
+     * @param avgLoadMillis 平均加载耗时（毫秒，Redis + DB）
+     * @param maxLoadMillis 最大加载耗时（毫秒）
+     * @param localSize     本地缓存条目数（估算值）
+     */
+    public record Stats(long localHits, long redisHits, long dbLoads, long loadFailures,
+                        double hitRate, double avgLoadMillis, double maxLoadMillis, long localSize) {
+    }
+}
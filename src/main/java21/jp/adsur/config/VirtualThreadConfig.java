@@ -0,0 +1,37 @@
+package jp.adsur.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程执行模式（仅在 -Pjava21 构建且 app.virtual-threads.enabled=true 时有效）
+ * <ul>
+ *     <li>Tomcat的请求处理线程池替换为虚拟线程（每个请求一个虚拟线程）</li>
+ *     <li>Spring MVC异步处理（StreamingResponseBody等）使用的applicationTaskExecutor也替换为虚拟线程</li>
+ * </ul>
+ * JDBC/Lettuce/Graph SDK的阻塞调用都在虚拟线程上执行，PostgreSQL的并发数由JdbcConcurrencyGuardConfig限制。
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "app.virtual-threads", name = "enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        log.info("Tomcatのリクエスト処理を仮想スレッドで実行します");
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("vt-task-", 0).factory()));
+    }
+}
@@ -0,0 +1,377 @@
+package jp.adsur.testsupport;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microsoft.graph.requests.GraphServiceClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.Request;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Microsoft Graph的进程内替身（JDK HttpServer，HTTP）
+ * <ul>
+ *     <li>GET /users/delta：按page-size分页返回user0..user{N-1}（@odata.nextLink），最后一页返回@odata.deltaLink；
+ *         以deltaLink再次查询时返回incremental-changes件的更新</li>
+ *     <li>GET /users?$filter=userPrincipalName eq/in (...)、GET /groups?$filter=id eq '...'：存在确认</li>
+ *     <li>POST /groups/{id}/members/$ref、POST /$batch（members/$ref的子请求）：记录组成员</li>
+ * </ul>
+ * 可注入固定延迟（latency）、限流（每throttle-every个请求返回1次429 + Retry-After，$batch按子请求计数）
+ * 和$batch整体的500，
+ * 用于在离线环境中测试/压测增量同步循环、SDK与自定义的重试逻辑、成员追加路径。
+ * 用户ID为 00000000-0000-0000-0000-{序号12位}，UPN为 user{序号}@example.com。
+ */
+public final class GraphMockServer implements AutoCloseable {
+
+    private static final Pattern QUOTED = Pattern.compile("'([^']*)'");
+    private static final Pattern UPN = Pattern.compile("user(\\d+)@example\\.com");
+    private static final Pattern MEMBER_REF = Pattern.compile("/groups/([^/]+)/members/\\$ref");
+
+    static {
+        // JDK HttpServer分别写出响应头和响应体，不关闭Nagle时与客户端的延迟ACK叠加，每个请求多出约40ms
+        // （必须在HttpServer的ServerConfig加载前设置）
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile int userCount = 1_000;
+    private volatile int pageSize = 100;
+    private volatile int incrementalChanges = 0;
+    private volatile Duration latency = Duration.ZERO;
+    private volatile int throttleEvery = 0;
+    private volatile int retryAfterSeconds = 1;
+
+    private final AtomicInteger batchFailures = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong deltaRounds = new AtomicLong();
+    private final Set<String> groups = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<String>> members = new ConcurrentHashMap<>();
+
+    public GraphMockServer() {
+        try {
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Graph替身启动失败", e);
+        }
+        server.createContext("/v1.0/", this::handle);
+        this.executor = Executors.newFixedThreadPool(32);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * 租户中的用户数
+     */
+    public GraphMockServer users(int userCount) {
+        this.userCount = userCount;
+        return this;
+    }
+
+    /**
+     * delta查询每页的用户数
+     */
+    public GraphMockServer pageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * 以deltaLink查询时返回的更新件数（从user0开始）
+     */
+    public GraphMockServer incrementalChanges(int incrementalChanges) {
+        this.incrementalChanges = incrementalChanges;
+        return this;
+    }
+
+    /**
+     * 每个请求的固定延迟（模拟到graph.microsoft.com的往返时间）
+     */
+    public GraphMockServer latency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * 每every个请求返回1次429（0为不限流）
+     */
+    public GraphMockServer throttleEvery(int every, int retryAfterSeconds) {
+        this.throttleEvery = every;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * 接下来的count个$batch请求整体返回500（不处理子请求，模拟顶层失败）
+     */
+    public GraphMockServer failNextBatches(int count) {
+        batchFailures.set(count);
+        return this;
+    }
+
+    /**
+     * 注册存在的组
+     */
+    public GraphMockServer group(String groupId) {
+        groups.add(groupId);
+        return this;
+    }
+
+    /**
+     * 替身的Graph基础URL（例：http://127.0.0.1:12345/v1.0），设置为app.entra.graph-base-url
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1.0";
+    }
+
+    /**
+     * 指向替身的GraphServiceClient（SDK默认的中间件，包括429的重试）
+     */
+    public GraphServiceClient<Request> graphClient() {
+        GraphServiceClient<Request> graphClient = GraphServiceClient.builder()
+                .authenticationProvider(requestUrl -> CompletableFuture.completedFuture("mock-token"))
+                .buildClient();
+        graphClient.setServiceRoot(baseUrl());
+        return graphClient;
+    }
+
+    public long requestCount() {
+        return requests.get();
+    }
+
+    public long throttledCount() {
+        return throttled.get();
+    }
+
+    /**
+     * 组的当前成员（用户ID）
+     */
+    public Set<String> members(String groupId) {
+        return Set.copyOf(members.getOrDefault(groupId, Set.of()));
+    }
+
+    public static String userId(int index) {
+        return String.format("00000000-0000-0000-0000-%012d", index);
+    }
+
+    public static String upn(int index) {
+        return "user" + index + "@example.com";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!latency.isZero()) {
+                Thread.sleep(latency.toMillis());
+            }
+            String path = exchange.getRequestURI().getPath().substring("/v1.0".length())
+                    .replace("microsoft.graph.", "").replace("()", "");
+            // $batch与Graph相同，按子请求限流（见batch）
+            if (!path.equals("/$batch") && throttle()) {
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryAfterSeconds));
+                send(exchange, 429, error("TooManyRequests", "Too many requests"));
+                return;
+            }
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+
+            if ("GET".equals(method) && path.equals("/users/delta")) {
+                send(exchange, 200, userDelta(query));
+            } else if ("GET".equals(method) && path.equals("/users")) {
+                send(exchange, 200, usersByFilter(query.getOrDefault("$filter", "")));
+            } else if ("GET".equals(method) && path.equals("/groups")) {
+                send(exchange, 200, groupsByFilter(query.getOrDefault("$filter", "")));
+            } else if ("POST".equals(method) && path.equals("/$batch")) {
+                if (batchFailures.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+                    send(exchange, 500, error("InternalServerError", "Batch failed"));
+                } else {
+                    send(exchange, 200, batch(readJson(exchange)));
+                }
+            } else if ("POST".equals(method) && MEMBER_REF.matcher(path).matches()) {
+                Matcher matcher = MEMBER_REF.matcher(path);
+                matcher.matches();
+                int status = addMember(matcher.group(1), readJson(exchange));
+                send(exchange, status, status == 204 ? null : memberRefError(status));
+            } else {
+                send(exchange, 404, error("Request_ResourceNotFound", "unsupported: " + method + " " + path));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private ObjectNode userDelta(Map<String, String> query) {
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode value = response.putArray("value");
+        String deltaLink = baseUrl() + "/users/delta?$deltatoken=" + deltaRounds.incrementAndGet();
+        if (query.containsKey("$deltatoken")) {
+            for (int i = 0; i < Math.min(incrementalChanges, userCount); i++) {
+                value.add(user(i).put("displayName", "更新ユーザー" + i));
+            }
+            response.put("@odata.deltaLink", deltaLink);
+            return response;
+        }
+        int page = Integer.parseInt(query.getOrDefault("$skiptoken", "0"));
+        int from = page * pageSize;
+        int to = Math.min(from + pageSize, userCount);
+        for (int i = from; i < to; i++) {
+            value.add(user(i));
+        }
+        if (to < userCount) {
+            response.put("@odata.nextLink", baseUrl() + "/users/delta?$skiptoken=" + (page + 1));
+        } else {
+            response.put("@odata.deltaLink", deltaLink);
+        }
+        return response;
+    }
+
+    private ObjectNode usersByFilter(String filter) {
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode value = response.putArray("value");
+        Matcher quoted = QUOTED.matcher(filter);
+        while (quoted.find()) {
+            Matcher upn = UPN.matcher(quoted.group(1).toLowerCase());
+            if (upn.matches() && Integer.parseInt(upn.group(1)) < userCount) {
+                value.add(user(Integer.parseInt(upn.group(1))));
+            }
+        }
+        return response;
+    }
+
+    private ObjectNode groupsByFilter(String filter) {
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode value = response.putArray("value");
+        Matcher quoted = QUOTED.matcher(filter);
+        if (quoted.find() && groups.contains(quoted.group(1))) {
+            value.addObject().put("id", quoted.group(1));
+        }
+        return response;
+    }
+
+    private ObjectNode batch(JsonNode request) {
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode responses = response.putArray("responses");
+        for (JsonNode subRequest : request.path("requests")) {
+            ObjectNode subResponse = responses.addObject().put("id", subRequest.path("id").asText());
+            if (throttle()) {
+                subResponse.put("status", 429);
+                subResponse.putObject("headers").put("Retry-After", String.valueOf(retryAfterSeconds));
+                subResponse.set("body", error("TooManyRequests", "Too many requests"));
+                continue;
+            }
+            Matcher matcher = MEMBER_REF.matcher(subRequest.path("url").asText());
+            int status = matcher.matches() ? addMember(matcher.group(1), subRequest.path("body")) : 404;
+            subResponse.put("status", status);
+            if (status != 204) {
+                subResponse.set("body", memberRefError(status));
+            }
+        }
+        return response;
+    }
+
+    // 组不存在：404，已是成员：400（与Graph相同）
+    private int addMember(String groupId, JsonNode body) {
+        if (!groups.contains(groupId)) {
+            return 404;
+        }
+        String ref = body.path("@odata.id").asText();
+        String memberId = ref.substring(ref.lastIndexOf('/') + 1);
+        boolean added = members.computeIfAbsent(groupId, id -> ConcurrentHashMap.newKeySet()).add(memberId);
+        return added ? 204 : 400;
+    }
+
+    // 请求计数，每throttleEvery个返回1次429
+    private boolean throttle() {
+        long count = requests.incrementAndGet();
+        if (throttleEvery > 0 && count % throttleEvery == 0) {
+            throttled.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private ObjectNode memberRefError(int status) {
+        return status == 400
+                ? error("Request_BadRequest",
+                "One or more added object references already exist for the following modified properties: 'members'.")
+                : error("Request_ResourceNotFound", "Resource does not exist or one of its queried reference-property objects are not present.");
+    }
+
+    private ObjectNode user(int index) {
+        return objectMapper.createObjectNode()
+                .put("id", userId(index))
+                .put("displayName", "ユーザー" + index)
+                .put("userPrincipalName", upn(index))
+                .put("mail", upn(index));
+    }
+
+    private ObjectNode error(String code, String message) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.putObject("error").put("code", code).put("message", message);
+        return body;
+    }
+
+    private JsonNode readJson(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            return objectMapper.readTree(body.readAllBytes());
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            query.put(key, value);
+        }
+        return query;
+    }
+}
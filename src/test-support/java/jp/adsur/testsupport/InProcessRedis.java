@@ -0,0 +1,78 @@
+package jp.adsur.testsupport;
+
+import com.github.fppt.jedismock.RedisServer;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.protocol.ProtocolVersion;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Redis协议的进程内替身（jedis-mock）+ 与应用相同的Lettuce/StringRedisTemplate客户端栈
+ * <p>
+ * 测得的是客户端编解码 + 本地回环网络的开销，不代表跨区域Azure Cache的网络延迟。
+ */
+public final class InProcessRedis implements AutoCloseable {
+
+    private final RedisServer server;
+    private final LettuceConnectionFactory connectionFactory;
+    private final StringRedisTemplate stringRedisTemplate;
+    private boolean serverStopped;
+
+    public InProcessRedis() {
+        try {
+            this.server = RedisServer.newRedisServer(0);
+            server.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Redis替身启动失败", e);
+        }
+        // jedis-mockはRESP3（HELLO）に未対応のため、RESP2で接続する
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
+                .clientOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP2).build())
+                .build();
+        this.connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(server.getHost(), server.getBindPort()), clientConfiguration);
+        connectionFactory.afterPropertiesSet();
+        this.stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    public StringRedisTemplate stringRedisTemplate() {
+        return stringRedisTemplate;
+    }
+
+    public LettuceConnectionFactory connectionFactory() {
+        return connectionFactory;
+    }
+
+    public String host() {
+        return server.getHost();
+    }
+
+    public int port() {
+        return server.getBindPort();
+    }
+
+    /**
+     * 只停止Redis替身（客户端保持连接设置，用于模拟Redis不可达）
+     */
+    public void stopServer() {
+        if (!serverStopped) {
+            serverStopped = true;
+            try {
+                server.stop();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        connectionFactory.destroy();
+        stopServer();
+    }
+}
@@ -0,0 +1,68 @@
+package jp.adsur.config;
+
+import jp.adsur.testsupport.GraphMockServer;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * GraphCallGateのテスト（Graph：GraphMockServer、共有レートなし）
+ */
+class GraphCallGateTest {
+
+    /**
+     * 上限近くまで使われている間は上限が増え、429を受けると半減してRetry-Afterの間は送信しない
+     */
+    @Test
+    void intercept_GrowsUnderLoadAndBacksOffOnThrottling() throws Exception {
+        GraphCallGate gate = new GraphCallGate(2, 1, 16, 0.5, Duration.ofSeconds(10),
+                Duration.ofSeconds(2), Duration.ofSeconds(30), null);
+        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(gate).build();
+
+        try (GraphMockServer graph = new GraphMockServer().users(10).latency(Duration.ofMillis(5))) {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<Integer>> futures = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    futures.add(executor.submit(() -> get(client, graph.baseUrl() + "/users")));
+                }
+                for (Future<Integer> future : futures) {
+                    assertThat(future.get()).isEqualTo(200);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            assertThat(gate.inFlight()).isZero();
+            assertThat(gate.limit()).isGreaterThan(2);
+        }
+
+        int grown = gate.limit();
+        try (GraphMockServer graph = new GraphMockServer().users(10).throttleEvery(2, 1)) {
+            // 2回に1回429（Retry-After：1秒）
+            assertThat(get(client, graph.baseUrl() + "/users")).isEqualTo(200);
+            assertThat(get(client, graph.baseUrl() + "/users")).isEqualTo(429);
+            assertThat(gate.limit()).isEqualTo(Math.max(1, grown / 2));
+
+            long start = System.nanoTime();
+            assertThat(get(client, graph.baseUrl() + "/users")).isEqualTo(200);
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThan(Duration.ofMillis(900));
+        }
+    }
+
+    private static int get(OkHttpClient client, String url) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(url).build()).execute()) {
+            return response.code();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package jp.adsur.config;
+
+import io.lettuce.core.resource.ClientResources;
+import io.micrometer.core.instrument.MeterRegistry;
+import jp.adsur.testsupport.InProcessRedis;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * RedisNearCacheのテスト
+ * InProcessRedis（jedis-mock）はRESP3・CLIENT TRACKINGに未対応のため、ニアキャッシュを無効化して
+ * Redisへ直接読み込む動作（Redis 6未満のサーバーと同じ）を確認する。
+ */
+class RedisNearCacheTest {
+
+    private InProcessRedis redis;
+    private ClientResources clientResources;
+    private RedisNearCache nearCache;
+
+    @BeforeEach
+    void setUp() {
+        redis = new InProcessRedis();
+        clientResources = ClientResources.create();
+        ObjectProvider<MeterRegistry> noMetrics = new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class);
+        nearCache = new RedisNearCache(redis.connectionFactory(), clientResources, redis.stringRedisTemplate(),
+                noMetrics, 100, Duration.ofMinutes(1));
+        nearCache.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        nearCache.shutdown();
+        clientResources.shutdown();
+        redis.close();
+    }
+
+    /**
+     * TRACKINGを有効にできないサーバーでは、読み込みをすべてRedisへ直接行い、古い値を返さない
+     */
+    @Test
+    void get_BypassesWhenTrackingUnsupported() {
+        nearCache.set("near:key", "v1", null);
+        assertThat(nearCache.get("near:key")).isEqualTo("v1");
+
+        redis.stringRedisTemplate().opsForValue().set("near:key", "v2");
+        assertThat(nearCache.get("near:key")).isEqualTo("v2");
+
+        nearCache.delete("near:key");
+        assertThat(nearCache.get("near:key")).isNull();
+
+        RedisNearCache.Stats stats = nearCache.stats();
+        assertThat(stats.tracking()).isFalse();
+        assertThat(stats.bypassed()).isEqualTo(3);
+        assertThat(stats.hits()).isZero();
+        assertThat(stats.size()).isZero();
+    }
+}
@@ -0,0 +1,58 @@
+package jp.adsur.config;
+
+import jp.adsur.testsupport.InProcessRedis;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * RedisTokenBucketのテスト（2インスタンスが同じRedis（InProcessRedis）のバケットを共有）
+ */
+class RedisTokenBucketTest {
+
+    private InProcessRedis redis;
+    private RedisTokenBucket node1;
+    private RedisTokenBucket node2;
+
+    @BeforeEach
+    void setUp() {
+        redis = new InProcessRedis();
+        node1 = new RedisTokenBucket(redis.stringRedisTemplate(), "graph:gate:", 1, 5);
+        node2 = new RedisTokenBucket(redis.stringRedisTemplate(), "graph:gate:", 1, 5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        redis.close();
+    }
+
+    /**
+     * burst分のトークンを全インスタンスで共有し、使い切った後は補充までの待機時間を返す
+     */
+    @Test
+    void tryAcquire_SharesBurstAcrossInstances() {
+        assertThat(node1.tryAcquire(3)).isZero();
+        assertThat(node2.tryAcquire(1)).isZero();
+        assertThat(node2.tryAcquire(1)).isZero();
+
+        // 残り0トークン：1トークンの補充（1/秒）まで最大1秒
+        assertThat(node1.tryAcquire(1)).isBetween(1L, 1_000L);
+        // burstを超えるコストはburstとして扱う（永久に取得できなくならない）
+        assertThat(node1.tryAcquire(50)).isBetween(1L, 5_000L);
+    }
+
+    /**
+     * 一時停止中は全インスタンスで払い出さず、残り時間を返す（短い一時停止で上書きしない）
+     */
+    @Test
+    void pause_BlocksAllInstancesUntilExpiry() {
+        node1.pause(Duration.ofSeconds(5));
+        node1.pause(Duration.ofSeconds(1));
+
+        assertThat(node2.tryAcquire(1)).isBetween(4_000L, 5_000L);
+    }
+}
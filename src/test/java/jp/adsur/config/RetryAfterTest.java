@@ -0,0 +1,31 @@
+package jp.adsur.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * RetryAfter（Retry-Afterヘッダーの共通の解釈）のテスト
+ */
+class RetryAfterTest {
+
+    /**
+     * 秒数・HTTP日付を解釈し、解釈できない値はnull（呼び出し元の既定の待機時間）になる
+     */
+    @Test
+    void parse_SecondsOrHttpDate() {
+        Instant now = Instant.parse("2024-06-03T09:00:00Z");
+
+        assertThat(RetryAfter.parse(" 10 ", now)).isEqualTo(Duration.ofSeconds(10));
+        assertThat(RetryAfter.parse("Mon, 03 Jun 2024 09:00:30 GMT", now)).isEqualTo(Duration.ofSeconds(30));
+        assertThat(RetryAfter.parse("Mon, 03 Jun 2024 08:59:00 GMT", now)).isZero();
+        assertThat(RetryAfter.parse("99999999999999999999", now)).isGreaterThan(Duration.ofDays(365));
+        assertThat(RetryAfter.parse("-5", now)).isNull();
+        assertThat(RetryAfter.parse("soon", now)).isNull();
+        assertThat(RetryAfter.parse("", now)).isNull();
+        assertThat(RetryAfter.parse(null, now)).isNull();
+    }
+}
@@ -0,0 +1,182 @@
+package jp.adsur.config;
+
+import io.lettuce.core.api.push.PushMessage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * TrackedLocalCache（ニアキャッシュのローカル側）のテスト
+ * RESP3のサーバーなしで、無効化のプッシュと読み込みの競合・全削除・一時停止と再開を確認する。
+ */
+class TrackedLocalCacheTest {
+
+    private final TrackedLocalCache local = new TrackedLocalCache(100, Duration.ofMinutes(1));
+
+    /**
+     * 読み込み中に無効化が届いた場合は、読み込んだ（古い可能性のある）値を保持しない
+     */
+    @Test
+    void completeLoad_SkipsValueInvalidatedDuringLoad() {
+        local.resume();
+
+        Object marker = local.beginLoad("k");
+        local.onPushMessage(invalidate("k"));
+        local.completeLoad("k", marker, "old");
+
+        assertThat(local.getIfPresent("k")).isNull();
+        assertThat(local.invalidations()).isEqualTo(1);
+
+        Object retry = local.beginLoad("k");
+        local.completeLoad("k", retry, "new");
+        assertThat(local.getIfPresent("k")).contains("new");
+    }
+
+    /**
+     * 無効化の後に始まった読み込みが先に完了した場合、無効化の前に始まった読み込みの値で上書きしない
+     */
+    @Test
+    void completeLoad_LateStaleLoadDoesNotOverwrite() {
+        local.resume();
+
+        Object stale = local.beginLoad("k");
+        local.invalidate("k");
+        Object fresh = local.beginLoad("k");
+        local.completeLoad("k", fresh, "new");
+        local.completeLoad("k", stale, "old");
+
+        assertThat(local.getIfPresent("k")).contains("new");
+    }
+
+    /**
+     * 存在しないキーも保持し、対象のキーのみ無効化される
+     */
+    @Test
+    void onPushMessage_InvalidatesListedKeysOnly() {
+        local.resume();
+        local.completeLoad("a", local.beginLoad("a"), "1");
+        local.completeLoad("b", local.beginLoad("b"), null);
+        local.completeLoad("c", local.beginLoad("c"), "3");
+
+        local.onPushMessage(invalidate("a", "b"));
+
+        assertThat(local.getIfPresent("a")).isNull();
+        assertThat(local.getIfPresent("b")).isNull();
+        assertThat(local.getIfPresent("c")).contains("3");
+        assertThat(local.invalidations()).isEqualTo(2);
+    }
+
+    /**
+     * FLUSHALL等（キーがnullの無効化）は保持中の値と読み込み中の目印をすべて破棄する
+     */
+    @Test
+    void onPushMessage_FlushAllClearsValuesAndInFlightLoads() {
+        local.resume();
+        local.completeLoad("a", local.beginLoad("a"), "1");
+        Object inFlight = local.beginLoad("b");
+
+        local.onPushMessage(invalidate((String[]) null));
+        local.completeLoad("b", inFlight, "2");
+
+        assertThat(local.getIfPresent("a")).isNull();
+        assertThat(local.getIfPresent("b")).isNull();
+        assertThat(local.size()).isZero();
+    }
+
+    /**
+     * invalidate以外のプッシュは無視する
+     */
+    @Test
+    void onPushMessage_IgnoresOtherTypes() {
+        local.resume();
+        local.completeLoad("a", local.beginLoad("a"), "1");
+
+        local.onPushMessage(new StubPushMessage("message", List.of(buffer("message"), buffer("channel"))));
+
+        assertThat(local.getIfPresent("a")).contains("1");
+        assertThat(local.invalidations()).isZero();
+    }
+
+    /**
+     * 切断による一時停止で値を破棄し、停止中の読み込みは保持しない。再開後は空の状態から保持を再開する
+     */
+    @Test
+    void suspendAndResume_DropValuesAcrossReconnect() {
+        local.resume();
+        local.completeLoad("a", local.beginLoad("a"), "1");
+        Object beforeDisconnect = local.beginLoad("b");
+
+        assertThat(local.suspend()).isTrue();
+        assertThat(local.suspend()).isFalse();
+        assertThat(local.isActive()).isFalse();
+        assertThat(local.getIfPresent("a")).isNull();
+
+        local.completeLoad("c", local.beginLoad("c"), "3");
+        assertThat(local.getIfPresent("c")).isNull();
+
+        local.resume();
+        local.completeLoad("b", beforeDisconnect, "2");
+        assertThat(local.isActive()).isTrue();
+        assertThat(local.getIfPresent("b")).isNull();
+        assertThat(local.size()).isZero();
+
+        local.completeLoad("a", local.beginLoad("a"), "1");
+        assertThat(local.getIfPresent("a")).isEqualTo(Optional.of("1"));
+    }
+
+    // Redisのinvalidateプッシュ：[invalidate, [キー...]]、keysがnullの場合は[invalidate, null]
+    private static PushMessage invalidate(String... keys) {
+        List<Object> content = new ArrayList<>();
+        content.add(buffer("invalidate"));
+        content.add(keys == null ? null : new ArrayList<>(Arrays.stream(keys).map(TrackedLocalCacheTest::buffer).toList()));
+        return new StubPushMessage("invalidate", content);
+    }
+
+    private static ByteBuffer buffer(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Lettuceのプッシュメッセージと同じく、要素（ネストしたリストを含む）をデコード関数で変換して返す
+     */
+    private record StubPushMessage(String type, List<Object> content) implements PushMessage {
+
+        @Override
+        public String getType() {
+            return type;
+        }
+
+        @Override
+        public List<Object> getContent() {
+            return getContent(buffer -> buffer);
+        }
+
+        @Override
+        public List<Object> getContent(Function<ByteBuffer, Object> decodeFunction) {
+            return decode(content, decodeFunction);
+        }
+
+        private static List<Object> decode(List<?> values, Function<ByteBuffer, Object> decodeFunction) {
+            List<Object> decoded = new ArrayList<>();
+            for (Object value : values) {
+                if (value instanceof ByteBuffer buffer) {
+                    decoded.add(decodeFunction.apply(buffer.duplicate()));
+                } else if (value instanceof List<?> list) {
+                    decoded.add(decode(list, decodeFunction));
+                } else {
+                    decoded.add(value);
+                }
+            }
+            return decoded;
+        }
+    }
+}
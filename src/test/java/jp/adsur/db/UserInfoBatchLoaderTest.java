@@ -0,0 +1,196 @@
+package jp.adsur.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * UserInfoBatchLoader的测试（user_info：记录批量查询的替身Repository，不连接数据库）
+ */
+class UserInfoBatchLoaderTest {
+
+    private final StubUserInfoRepository repository = new StubUserInfoRepository();
+    private UserInfoBatchLoader loader;
+
+    @AfterEach
+    void tearDown() {
+        repository.release();
+        if (loader != null) {
+            loader.shutdown();
+        }
+    }
+
+    /**
+     * 窗口期内的并发查询合并为一条 ANY(?) 查询（重复ID只查一次），每个调用方拿到自己的结果
+     */
+    @Test
+    void load_ConcurrentLookupsCoalesceIntoOneQuery() throws Exception {
+        loader = new UserInfoBatchLoader(repository, true, Duration.ofMillis(500), 100, 4, Duration.ofSeconds(5));
+        long[] ids = {1, 2, 3, 4, 5, 6, 7, 3};
+        ExecutorService callers = Executors.newFixedThreadPool(ids.length);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Optional<String>>> results = new ArrayList<>();
+            for (long id : ids) {
+                results.add(callers.submit(() -> {
+                    start.await();
+                    return loader.load(id);
+                }));
+            }
+            start.countDown();
+
+            for (int i = 0; i < ids.length; i++) {
+                Optional<String> userName = results.get(i).get(5, TimeUnit.SECONDS);
+                if (ids[i] == StubUserInfoRepository.MISSING_ID) {
+                    assertThat(userName).isEmpty();
+                } else {
+                    assertThat(userName).contains("user-" + ids[i]);
+                }
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertThat(repository.batches).hasSize(1);
+        assertThat(repository.batches.get(0)).hasSize(7);
+        assertThat(loader.stats().batches()).isEqualTo(1);
+        assertThat(loader.stats().requests()).isEqualTo(ids.length);
+    }
+
+    /**
+     * 凑满max-batch-size后不等窗口期结束，超出部分进入下一个批次
+     */
+    @Test
+    void submit_MaxBatchSizeSplitsBatches() throws Exception {
+        loader = new UserInfoBatchLoader(repository, true, Duration.ofMillis(200), 5, 4, Duration.ofSeconds(5));
+
+        List<CompletableFuture<Optional<String>>> futures = new ArrayList<>();
+        for (long id = 10; id < 22; id++) {
+            futures.add(loader.submit(id));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertThat(futures.get(i).get(5, TimeUnit.SECONDS)).contains("user-" + (10 + i));
+        }
+
+        assertThat(repository.batches).hasSize(3);
+        assertThat(repository.batches.stream().map(Collection::size).sorted().toList()).containsExactly(2, 5, 5);
+        assertThat(loader.stats().largestBatch()).isEqualTo(5);
+    }
+
+    /**
+     * 关闭时：调度线程已取出但未执行的批次、队列中的请求都以异常结束，不会一直等待；关闭后的请求立即失败
+     */
+    @Test
+    void shutdown_FailsPendingLookupsInsteadOfHanging() throws Exception {
+        // 并行批次上限1：第一个批次阻塞在查询中，之后的请求停在调度线程（等待并行许可）或队列中
+        loader = new UserInfoBatchLoader(repository, true, Duration.ofMillis(1), 100, 1, Duration.ofSeconds(30));
+        repository.block();
+        CompletableFuture<Optional<String>> running = loader.submit(1);
+        assertThat(repository.awaitBlocked()).isTrue();
+        List<CompletableFuture<Optional<String>>> pending = new ArrayList<>();
+        for (long id = 2; id <= 5; id++) {
+            pending.add(loader.submit(id));
+        }
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        loader.shutdown();
+
+        for (CompletableFuture<Optional<String>> future : pending) {
+            assertThatThrownBy(() -> future.get(2, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IllegalStateException.class);
+        }
+        assertThat(loader.submit(6)).isCompletedExceptionally();
+
+        // 执行中的批次不中断，查询完成后正常返回
+        repository.release();
+        assertThat(running.get(5, TimeUnit.SECONDS)).contains("user-1");
+    }
+
+    /**
+     * 超过load-timeout仍未完成的查询抛出QueryTimeoutException（不无限等待）
+     */
+    @Test
+    void load_TimesOutWhenQueryDoesNotFinish() {
+        loader = new UserInfoBatchLoader(repository, true, Duration.ofMillis(1), 100, 4, Duration.ofMillis(200));
+        repository.block();
+
+        assertThatThrownBy(() -> loader.load(1)).isInstanceOf(QueryTimeoutException.class);
+    }
+
+    /**
+     * user_info的替身：ID n 的用户名为 user-n（MISSING_ID不存在），记录每次批量查询的ID，可让查询阻塞
+     */
+    private static final class StubUserInfoRepository extends UserInfoRepository {
+
+        static final long MISSING_ID = 7;
+
+        final List<List<Long>> batches = new CopyOnWriteArrayList<>();
+        private volatile CountDownLatch gate;
+        private final CountDownLatch blocked = new CountDownLatch(1);
+
+        StubUserInfoRepository() {
+            super(null);
+        }
+
+        void block() {
+            gate = new CountDownLatch(1);
+        }
+
+        boolean awaitBlocked() throws InterruptedException {
+            return blocked.await(5, TimeUnit.SECONDS);
+        }
+
+        void release() {
+            CountDownLatch current = gate;
+            if (current != null) {
+                current.countDown();
+            }
+        }
+
+        @Override
+        public Optional<String> findUserNameById(long id) {
+            return Optional.ofNullable(findUserNamesByIds(List.of(id)).get(id));
+        }
+
+        @Override
+        public Map<Long, String> findUserNamesByIds(Collection<Long> ids) {
+            batches.add(List.copyOf(ids));
+            CountDownLatch current = gate;
+            if (current != null) {
+                blocked.countDown();
+                try {
+                    current.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+            Map<Long, String> result = new HashMap<>();
+            for (long id : ids) {
+                if (id != MISSING_ID) {
+                    result.put(id, "user-" + id);
+                }
+            }
+            return result;
+        }
+    }
+}
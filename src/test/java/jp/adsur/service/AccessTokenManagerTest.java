@@ -0,0 +1,152 @@
+package jp.adsur.service;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.credential.TokenRequestContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * AccessTokenManagerのテスト（有効期限の短いトークンを払い出す資格情報の替身を使用）
+ */
+class AccessTokenManagerTest {
+
+    private static final String SCOPE = "https://graph.microsoft.com/.default";
+
+    private AccessTokenManager manager;
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) {
+            manager.shutdown();
+        }
+    }
+
+    /**
+     * 有効期限のrefresh-ahead前にバックグラウンドで更新し、getTokenは資格情報を呼び出さずに新しいトークンを返す
+     */
+    @Test
+    void register_RefreshesAheadOfExpiryInBackground() throws Exception {
+        FakeCredential credential = new FakeCredential(Duration.ofSeconds(2));
+        // 更新後のトークンは長期間有効とし、以降の更新を発生させない
+        credential.renewedLifetime = Duration.ofHours(1);
+        manager = new AccessTokenManager(Duration.ofMillis(1_700), Duration.ofMillis(50), Duration.ofSeconds(30));
+
+        manager.register(SCOPE, credential);
+        assertThat(manager.getToken(SCOPE)).isEqualTo("token-1");
+        assertThat(credential.calls).hasValue(1);
+
+        // 有効期限（2秒後）の1.7秒前 = 約0.3秒後に更新される
+        assertThat(await(() -> credential.calls.get() >= 2)).isTrue();
+        assertThat(manager.getToken(SCOPE)).isEqualTo("token-2");
+        assertThat(credential.calls).hasValue(2);
+        assertThat(manager.expirations().get(SCOPE)).isAfter(OffsetDateTime.now());
+    }
+
+    /**
+     * バックグラウンド更新より先に期限切れとなった場合、getTokenが同期で再取得する
+     */
+    @Test
+    void getToken_FetchesSynchronouslyWhenExpired() throws Exception {
+        FakeCredential credential = new FakeCredential(Duration.ofMillis(200));
+        // 更新スケジュールを期限より十分後にし、バックグラウンド更新が間に合わない状況にする
+        manager = new AccessTokenManager(Duration.ZERO, Duration.ofHours(1), Duration.ofHours(1));
+
+        manager.register(SCOPE, credential);
+        assertThat(manager.getToken(SCOPE)).isEqualTo("token-1");
+        TimeUnit.MILLISECONDS.sleep(300);
+
+        assertThat(manager.getToken(SCOPE)).isEqualTo("token-2");
+        assertThat(credential.calls).hasValue(2);
+    }
+
+    /**
+     * 更新のたびにリスナーへ新しいトークンを通知する（登録時点のトークンは通知しない・例外を投げるリスナーがあっても他へ通知する）
+     */
+    @Test
+    void addRefreshListener_NotifiesRefreshedTokens() throws Exception {
+        FakeCredential credential = new FakeCredential(Duration.ofMillis(200));
+        manager = new AccessTokenManager(Duration.ZERO, Duration.ofHours(1), Duration.ofHours(1));
+        manager.register(SCOPE, credential);
+
+        List<String> notified = new CopyOnWriteArrayList<>();
+        manager.addRefreshListener(SCOPE, token -> {
+            throw new IllegalStateException("再認証に失敗しました");
+        });
+        manager.addRefreshListener(SCOPE, token -> notified.add(token.getToken()));
+        assertThat(notified).isEmpty();
+
+        TimeUnit.MILLISECONDS.sleep(300);
+        manager.getToken(SCOPE);
+
+        assertThat(notified).containsExactly("token-2");
+    }
+
+    /**
+     * バックグラウンド更新が失敗した場合、retry-delay後に再試行する
+     */
+    @Test
+    void register_RetriesFailedRefresh() throws Exception {
+        FakeCredential credential = new FakeCredential(Duration.ofSeconds(1));
+        credential.failOnCall = 2;
+        manager = new AccessTokenManager(Duration.ofMillis(800), Duration.ofMillis(50), Duration.ofMillis(100));
+        List<String> notified = new CopyOnWriteArrayList<>();
+
+        manager.register(SCOPE, credential);
+        manager.addRefreshListener(SCOPE, token -> notified.add(token.getToken()));
+
+        assertThat(await(() -> notified.contains("token-3"))).isTrue();
+        assertThat(notified).doesNotContain("token-2");
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        return condition.getAsBoolean();
+    }
+
+    /**
+     * 呼び出しごとに token-n（有効期限は呼び出し時点からlifetime後）を払い出す資格情報の替身
+     */
+    private static final class FakeCredential implements TokenCredential {
+
+        private final Duration lifetime;
+        // 2回目以降に払い出すトークンの有効期間
+        private volatile Duration renewedLifetime;
+        private final AtomicInteger calls = new AtomicInteger();
+        // この回数目の呼び出しを失敗させる（0は失敗なし）
+        private volatile int failOnCall;
+
+        private FakeCredential(Duration lifetime) {
+            this.lifetime = lifetime;
+            this.renewedLifetime = lifetime;
+        }
+
+        @Override
+        public Mono<AccessToken> getToken(TokenRequestContext request) {
+            return Mono.fromCallable(() -> {
+                int call = calls.incrementAndGet();
+                if (call == failOnCall) {
+                    throw new IllegalStateException("トークンエンドポイントに接続できません");
+                }
+                return new AccessToken("token-" + call, OffsetDateTime.now().plus(call == 1 ? lifetime : renewedLifetime));
+            });
+        }
+    }
+}
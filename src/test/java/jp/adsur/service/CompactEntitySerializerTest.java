@@ -0,0 +1,65 @@
+package jp.adsur.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * CompactEntitySerializerのテスト（非圧縮/LZ4圧縮の往復、未設定の属性、不正な値）
+ */
+class CompactEntitySerializerTest {
+
+    private final CompactEntitySerializer<EntraUserDirectory.DirectoryUser> serializer =
+            CompactEntitySerializer.directoryUsers(256);
+
+    /**
+     * 短い値は非圧縮で格納し、属性名・未設定の属性は値に含まれない
+     */
+    @Test
+    void serialize_ShortValueIsStoredUncompressed() {
+        EntraUserDirectory.DirectoryUser user = new EntraUserDirectory.DirectoryUser(
+                "5f1c0a6e-3b2d-4c8e-9a7f-1e2d3c4b5a69", "山田 太郎", "taro.yamada@adsur.jp", null);
+
+        byte[] value = serializer.serialize(user);
+
+        assertThat(value[0]).isEqualTo((byte) 1);
+        assertThat(serializer.deserialize(value)).isEqualTo(user);
+        // 形式(1) + ビットマップ(1) + 各属性の長さ(1) + UTF-8（36 + 13 + 20）
+        assertThat(value.length).isEqualTo(2 + 3 + 36 + 13 + 20);
+    }
+
+    /**
+     * 閾値以上で圧縮により小さくなる値はLZ4で圧縮し、復元すると同じ値になる
+     */
+    @Test
+    void serialize_LargeValueIsCompressed() {
+        String displayName = "開発部 ".repeat(100);
+        EntraUserDirectory.DirectoryUser user = new EntraUserDirectory.DirectoryUser(
+                "id-1", displayName, "dev@adsur.jp", "dev@adsur.jp");
+
+        byte[] value = serializer.serialize(user);
+
+        assertThat(value[0]).isEqualTo((byte) 2);
+        assertThat(value.length).isLessThan(displayName.getBytes(StandardCharsets.UTF_8).length / 4);
+        assertThat(serializer.deserialize(value)).isEqualTo(user);
+    }
+
+    /**
+     * 未対応の形式・途中で切れた値は例外（古い値を誤って読み込まない）
+     */
+    @Test
+    void deserialize_RejectsMalformedValues() {
+        byte[] value = serializer.serialize(new EntraUserDirectory.DirectoryUser("id-1", "名前", null, null));
+
+        assertThat(serializer.deserialize(null)).isNull();
+        assertThatThrownBy(() -> serializer.deserialize(new byte[]{9, 0}))
+                .isInstanceOf(SerializationException.class);
+        assertThatThrownBy(() -> serializer.deserialize(Arrays.copyOf(value, value.length - 2)))
+                .isInstanceOf(SerializationException.class);
+    }
+}
@@ -0,0 +1,150 @@
+package jp.adsur.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jp.adsur.testsupport.InProcessRedis;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * DistributedCounterServiceのテスト（2インスタンスが同じRedis（InProcessRedis）を共有）
+ */
+class DistributedCounterServiceTest {
+
+    private InProcessRedis redis;
+    private DistributedCounterService node1;
+    private DistributedCounterService node2;
+
+    @BeforeEach
+    void setUp() {
+        redis = new InProcessRedis();
+        ObjectProvider<MeterRegistry> noMetrics = new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class);
+        // フラッシュはテストから明示的に呼び出す
+        node1 = new DistributedCounterService(redis.stringRedisTemplate(), noMetrics, "counter:", 100, 4, Duration.ofHours(1),
+                Duration.ofSeconds(5));
+        node2 = new DistributedCounterService(redis.stringRedisTemplate(), noMetrics, "counter:", 100, 4, Duration.ofHours(1),
+                Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        node1.shutdown();
+        node2.shutdown();
+        redis.close();
+    }
+
+    /**
+     * 複数インスタンス・複数スレッドから払い出したIDが重複しない（範囲の切り替え・先読みを跨ぐ件数）
+     */
+    @Test
+    void nextId_UniqueAcrossNodesAndThreads() throws Exception {
+        int threads = 8;
+        int perThread = 2_000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                DistributedCounterService node = t % 2 == 0 ? node1 : node2;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        ids.add(node.nextId("greeting"));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(ids).hasSize(threads * perThread);
+        assertThat(ids).allMatch(id -> id > 0);
+    }
+
+    /**
+     * Redisに接続できない場合、範囲を使い切ったスレッドはallocate-timeoutで例外となり、
+     * 同じストライプの他のスレッドもRedisのタイムアウトまで待たされない
+     */
+    @Test
+    void nextId_FailsFastWhenRedisUnavailable() throws Exception {
+        ObjectProvider<MeterRegistry> noMetrics = new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class);
+        DistributedCounterService node = new DistributedCounterService(redis.stringRedisTemplate(), noMetrics, "counter:",
+                10, 1, Duration.ofHours(1), Duration.ofMillis(300));
+        try {
+            // 接続の確立を待たないよう、停止前にRedisへの接続を済ませておく
+            redis.stringRedisTemplate().hasKey("counter:seq:greeting");
+            assertThat(node.nextId("greeting")).isPositive();
+            redis.stopServer();
+            // 先読み済みの範囲を含めて使い切る
+            for (int i = 0; i < 19; i++) {
+                try {
+                    node.nextId("greeting");
+                } catch (RuntimeException e) {
+                    break;
+                }
+            }
+
+            int threads = 4;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            long start = System.nanoTime();
+            try {
+                List<Future<Throwable>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    futures.add(executor.submit(() -> {
+                        try {
+                            node.nextId("greeting");
+                            return null;
+                        } catch (RuntimeException e) {
+                            return e;
+                        }
+                    }));
+                }
+                for (Future<Throwable> future : futures) {
+                    assertThat(future.get(5, TimeUnit.SECONDS)).hasMessageContaining("IDブロックを取得できません");
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(3));
+        } finally {
+            node.shutdown();
+        }
+    }
+
+    /**
+     * 件数はフラッシュ前はローカルの未反映分、フラッシュ後は全インスタンスの合計として取得できる
+     */
+    @Test
+    void increment_FlushedToClusterTotal() {
+        for (int i = 0; i < 30; i++) {
+            node1.increment("greeting");
+        }
+        node2.add("greeting", 12);
+
+        assertThat(node1.stats("greeting").clusterTotal()).isEqualTo(30);
+        assertThat(node1.stats("greeting").pendingLocal()).isEqualTo(30);
+
+        node1.flush();
+        node2.flush();
+
+        DistributedCounterService.CounterStats stats = node2.stats("greeting");
+        assertThat(stats.clusterTotal()).isEqualTo(42);
+        assertThat(stats.pendingLocal()).isZero();
+    }
+}
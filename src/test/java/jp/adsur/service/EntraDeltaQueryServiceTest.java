@@ -0,0 +1,93 @@
+package jp.adsur.service;
+
+import com.microsoft.graph.requests.GraphServiceClient;
+import jp.adsur.testsupport.GraphMockServer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * EntraDeltaQueryServiceのテスト（GraphMockServerに対してSDKの実際のリクエスト・ページングを実行）
+ */
+@SpringBootTest(classes = {EntraDeltaQueryService.class, EntraDeltaQueryServiceTest.GraphMockConfig.class},
+        properties = {"azure.entra.tenant-id=test", "app.entra.throttle.default-retry-after=1s"})
+class EntraDeltaQueryServiceTest {
+
+    @Autowired
+    private EntraDeltaQueryService entraDeltaQueryService;
+
+    @Autowired
+    private GraphMockServer graphMockServer;
+
+    @TestConfiguration
+    static class GraphMockConfig {
+
+        @Bean(destroyMethod = "close")
+        GraphMockServer graphMockServer() {
+            return new GraphMockServer();
+        }
+
+        @Bean
+        GraphServiceClient<?> graphClient(GraphMockServer graphMockServer) {
+            return graphMockServer.graphClient();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        graphMockServer.users(250).pageSize(100).incrementalChanges(0).throttleEvery(0, 1);
+    }
+
+    /**
+     * 初回同期：nextLinkを辿って全ページを取得し、最終ページのデルタリンクを返す
+     */
+    @Test
+    void streamUserDelta_FullSync() {
+        List<Integer> pageSizes = new ArrayList<>();
+        EntraDeltaQueryService.DeltaStreamResult result =
+                entraDeltaQueryService.streamUserDelta(null, page -> pageSizes.add(page.users().size()));
+
+        assertThat(pageSizes).containsExactly(100, 100, 50);
+        assertThat(result.pageCount()).isEqualTo(3);
+        assertThat(result.userCount()).isEqualTo(250);
+        assertThat(result.newDeltaLink()).startsWith(graphMockServer.baseUrl()).contains("$deltatoken=");
+    }
+
+    /**
+     * 増分同期：デルタリンクで再クエリすると変更分のみ返却される
+     */
+    @Test
+    void streamUserDelta_Incremental() {
+        String deltaLink = entraDeltaQueryService.streamUserDelta(null, page -> { }).newDeltaLink();
+        graphMockServer.incrementalChanges(5);
+
+        List<String> upns = new ArrayList<>();
+        EntraDeltaQueryService.DeltaStreamResult result = entraDeltaQueryService.streamUserDelta(deltaLink,
+                page -> page.users().forEach(user -> upns.add(user.userPrincipalName)));
+
+        assertThat(result.userCount()).isEqualTo(5);
+        assertThat(upns).contains(GraphMockServer.upn(0), GraphMockServer.upn(4));
+        assertThat(result.newDeltaLink()).isNotEqualTo(deltaLink);
+    }
+
+    /**
+     * スロットリング：429が返却されてもRetry-After待機後に再試行し、全ページを取得できる
+     */
+    @Test
+    void streamUserDelta_Throttled() {
+        graphMockServer.throttleEvery(2, 1);
+
+        EntraDeltaQueryService.DeltaStreamResult result = entraDeltaQueryService.streamUserDelta(null, page -> { });
+
+        assertThat(result.userCount()).isEqualTo(250);
+        assertThat(graphMockServer.throttledCount()).isPositive();
+    }
+}
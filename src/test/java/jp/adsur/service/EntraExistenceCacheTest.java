@@ -0,0 +1,61 @@
+package jp.adsur.service;
+
+import com.google.gson.JsonObject;
+import com.microsoft.graph.models.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * EntraExistenceCacheのテスト（デルタ通知によるユーザーのエントリの破棄）
+ */
+class EntraExistenceCacheTest {
+
+    private final EntraExistenceCache cache = new EntraExistenceCache(100, Duration.ofMinutes(10), Duration.ofSeconds(30));
+
+    /**
+     * UPNを含まない変更・削除の通知でも、objectIdからキャッシュ中のUPNのエントリを破棄する
+     */
+    @Test
+    void onPage_InvalidatesByObjectIdWithoutUpn() {
+        cache.putUser(new EntraUserDirectory.DirectoryUser("user-1", "山田 太郎", "Taro.Yamada@adsur.jp", null));
+        cache.putUser(new EntraUserDirectory.DirectoryUser("user-2", "佐藤 花子", "hanako.sato@adsur.jp", null));
+
+        User removed = user("user-1", null);
+        removed.additionalDataManager().put("@removed", new JsonObject());
+        cache.onPage(page(removed));
+
+        assertThat(cache.cachedUser("taro.yamada@adsur.jp")).isEmpty();
+        assertThat(cache.cachedUser("hanako.sato@adsur.jp")).isPresent();
+    }
+
+    /**
+     * 作成・UPN変更の通知は、新しいUPNの否定結果を破棄する。同じUPNを別のユーザーが使う場合は元のobjectIdで破棄しない
+     */
+    @Test
+    void onPage_InvalidatesNegativeResultAndKeepsReassignedUpn() {
+        cache.putMissingUser("new.user@adsur.jp");
+        cache.onPage(page(user("user-3", "New.User@adsur.jp")));
+        assertThat(cache.isMissingUser("new.user@adsur.jp")).isFalse();
+
+        cache.putUser(new EntraUserDirectory.DirectoryUser("user-1", "山田 太郎", "taro@adsur.jp", null));
+        cache.putUser(new EntraUserDirectory.DirectoryUser("user-4", "山田 太郎", "taro@adsur.jp", null));
+        cache.onPage(page(user("user-1", null)));
+
+        assertThat(cache.cachedUser("taro@adsur.jp")).map(EntraUserDirectory.DirectoryUser::id).contains("user-4");
+    }
+
+    private static User user(String id, String upn) {
+        User user = new User();
+        user.id = id;
+        user.userPrincipalName = upn;
+        return user;
+    }
+
+    private static EntraDeltaQueryService.DeltaPage page(User... users) {
+        return new EntraDeltaQueryService.DeltaPage(0, List.of(users), null, "delta");
+    }
+}
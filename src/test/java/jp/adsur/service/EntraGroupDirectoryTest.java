@@ -0,0 +1,130 @@
+package jp.adsur.service;
+
+import com.google.gson.JsonObject;
+import com.microsoft.graph.models.Group;
+import jp.adsur.testsupport.InProcessRedis;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * EntraGroupDirectoryのテスト（正引き・逆引きセットの更新と集合演算）
+ */
+class EntraGroupDirectoryTest {
+
+    private InProcessRedis redis;
+    private EntraGroupDirectory directory;
+
+    @BeforeEach
+    void setUp() {
+        redis = new InProcessRedis();
+        directory = new EntraGroupDirectory(redis.stringRedisTemplate(), "entra:group:");
+    }
+
+    @AfterEach
+    void tearDown() {
+        redis.close();
+    }
+
+    /**
+     * メンバー追加/削除が正引き・逆引きの両方に反映され、所属確認・積集合・和集合をRedis側で計算できる
+     */
+    @Test
+    void onMembershipPage_MaintainsForwardAndReverseSets() {
+        directory.onMembershipPage(membershipPage(
+                add("group-a", "user-1"), add("group-a", "user-2"),
+                add("group-b", "user-2"), add("group-b", "user-3")));
+
+        assertThat(directory.isMember("group-a", "user-1")).isTrue();
+        assertThat(directory.isMember("group-b", "user-1")).isFalse();
+        assertThat(directory.groupsOf("user-2")).containsExactlyInAnyOrder("group-a", "group-b");
+        assertThat(directory.memberships("user-1", List.of("group-a", "group-b", "group-x")))
+                .containsExactly(
+                        Map.entry("group-a", true),
+                        Map.entry("group-b", false),
+                        Map.entry("group-x", false));
+        assertThat(directory.commonMembers(List.of("group-a", "group-b"))).containsExactly("user-2");
+        assertThat(directory.anyMembers(List.of("group-a", "group-b")))
+                .containsExactlyInAnyOrder("user-1", "user-2", "user-3");
+        assertThat(directory.commonGroups(List.of("user-1", "user-2"))).containsExactly("group-a");
+
+        directory.onMembershipPage(membershipPage(
+                new EntraDeltaQueryService.MembershipChange("group-a", "user-2", "user", true)));
+
+        assertThat(directory.isMember("group-a", "user-2")).isFalse();
+        assertThat(directory.groupsOf("user-2")).containsExactly("group-b");
+        assertThat(directory.commonMembers(List.of("group-a", "group-b"))).isEmpty();
+    }
+
+    /**
+     * グループが削除されると、属性・メンバーのセットに加えて各メンバーの逆引きセットからも外れる
+     */
+    @Test
+    void onGroupPage_RemovedGroupIsDroppedFromReverseSets() {
+        directory.onGroupPage(groupPage(group("group-a", "営業部"), group("group-b", "開発部")));
+        directory.onMembershipPage(membershipPage(
+                add("group-a", "user-1"), add("group-b", "user-1")));
+
+        Group removed = new Group();
+        removed.id = "group-a";
+        removed.additionalDataManager().put("@removed", new JsonObject());
+        directory.onGroupPage(groupPage(removed));
+
+        assertThat(directory.findById("group-a")).isEmpty();
+        assertThat(directory.memberIds("group-a")).isEmpty();
+        assertThat(directory.groupsOf("user-1")).containsExactly("group-b");
+        assertThat(directory.findById("group-b")).map(EntraGroupDirectory.DirectoryGroup::displayName)
+                .contains("開発部");
+    }
+
+    /**
+     * フル同期で受信しなかったグループ・メンバーは完了時に正引き・逆引きの両方から削除される
+     */
+    @Test
+    void onFullSyncComplete_PrunesGroupsAndMembersNotReceived() {
+        directory.onGroupPage(groupPage(group("group-a", "営業部"), group("group-b", "開発部")));
+        directory.onMembershipPage(membershipPage(
+                add("group-a", "user-1"), add("group-b", "user-1"), add("group-b", "user-2")));
+
+        directory.onFullSyncStart("groups");
+        directory.onFullSyncStart("memberships");
+        directory.onGroupPage(groupPage(group("group-b", "開発部")));
+        directory.onMembershipPage(membershipPage(add("group-b", "user-1"), add("group-c", "user-3")));
+        directory.onFullSyncComplete("groups");
+        directory.onFullSyncComplete("memberships");
+
+        assertThat(directory.findById("group-a")).isEmpty();
+        assertThat(directory.memberIds("group-a")).isEmpty();
+        assertThat(directory.findById("group-b")).isPresent();
+        assertThat(directory.memberIds("group-b")).containsExactly("user-1");
+        assertThat(directory.memberIds("group-c")).containsExactly("user-3");
+        assertThat(directory.groupsOf("user-1")).containsExactly("group-b");
+        assertThat(directory.groupsOf("user-2")).isEmpty();
+        assertThat(redis.stringRedisTemplate().keys("entra:group:full-sync:*")).isEmpty();
+    }
+
+    private static Group group(String id, String displayName) {
+        Group group = new Group();
+        group.id = id;
+        group.displayName = displayName;
+        return group;
+    }
+
+    private static EntraDeltaQueryService.MembershipChange add(String groupId, String memberId) {
+        return new EntraDeltaQueryService.MembershipChange(groupId, memberId, "user", false);
+    }
+
+    private static EntraDeltaQueryService.GroupDeltaPage groupPage(Group... groups) {
+        return new EntraDeltaQueryService.GroupDeltaPage(0, List.of(groups), null, "delta");
+    }
+
+    private static EntraDeltaQueryService.MembershipDeltaPage membershipPage(
+            EntraDeltaQueryService.MembershipChange... changes) {
+        return new EntraDeltaQueryService.MembershipDeltaPage(0, List.of(changes), null, "delta");
+    }
+}
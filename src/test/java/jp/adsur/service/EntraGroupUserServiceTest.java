@@ -0,0 +1,175 @@
+package jp.adsur.service;
+
+import com.microsoft.graph.requests.GraphServiceClient;
+import jp.adsur.testsupport.GraphMockServer;
+import jp.adsur.testsupport.InProcessRedis;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * EntraGroupUserServiceの一括追加のテスト（Graph：GraphMockServer、ディレクトリ投影：InProcessRedis）
+ */
+@SpringBootTest(classes = {EntraGroupUserService.class, EntraUserDirectory.class, EntraExistenceCache.class,
+        EntraGroupUserServiceTest.GraphMockConfig.class},
+        properties = "azure.entra.tenant-id=test")
+class EntraGroupUserServiceTest {
+
+    // app.entra.graph-base-urlにポートを設定するため、コンテキストより先に起動する
+    private static final GraphMockServer GRAPH = new GraphMockServer().users(100);
+
+    @Autowired
+    private EntraGroupUserService entraGroupUserService;
+
+    @MockBean
+    private AccessTokenManager accessTokenManager;
+
+    @TestConfiguration
+    static class GraphMockConfig {
+
+        @Bean
+        GraphServiceClient<?> graphClient() {
+            return GRAPH.graphClient();
+        }
+
+        @Bean
+        RestTemplate restTemplate() {
+            return new RestTemplate();
+        }
+
+        @Bean(destroyMethod = "close")
+        InProcessRedis inProcessRedis() {
+            return new InProcessRedis();
+        }
+
+        @Bean
+        StringRedisTemplate stringRedisTemplate(InProcessRedis inProcessRedis) {
+            return inProcessRedis.stringRedisTemplate();
+        }
+    }
+
+    @DynamicPropertySource
+    static void graphProperties(DynamicPropertyRegistry registry) {
+        registry.add("app.entra.graph-base-url", GRAPH::baseUrl);
+    }
+
+    @AfterAll
+    static void stopGraph() {
+        GRAPH.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        GRAPH.throttleEvery(0, 1).failNextBatches(0);
+        when(accessTokenManager.getToken(anyString())).thenReturn("mock-token");
+    }
+
+    /**
+     * 一括追加：存在するユーザーはADDED、存在しないUPNはNOT_FOUND、再実行するとALREADY_MEMBER
+     */
+    @Test
+    void addUsersToGroup_AddedThenAlreadyMember() {
+        String groupId = "group-added";
+        GRAPH.group(groupId);
+        List<String> upns = new ArrayList<>(IntStream.range(0, 25).mapToObj(GraphMockServer::upn).toList());
+        upns.add("nobody@example.com");
+
+        List<EntraGroupUserService.MemberAddResult> first = entraGroupUserService.addUsersToGroup(groupId, upns);
+
+        assertThat(first).hasSize(26);
+        assertThat(first).filteredOn(r -> r.status() == EntraGroupUserService.MemberAddStatus.ADDED).hasSize(25);
+        assertThat(first.get(25).status()).isEqualTo(EntraGroupUserService.MemberAddStatus.NOT_FOUND);
+        assertThat(GRAPH.members(groupId)).hasSize(25).contains(GraphMockServer.userId(0), GraphMockServer.userId(24));
+
+        List<EntraGroupUserService.MemberAddResult> second = entraGroupUserService.addUsersToGroup(groupId, upns.subList(0, 25));
+
+        assertThat(second).allMatch(r -> r.status() == EntraGroupUserService.MemberAddStatus.ALREADY_MEMBER);
+    }
+
+    /**
+     * 大文字小文字のみ異なるUPNは1件として追加し、アクセストークンは$batchの送信ごとに取得する
+     */
+    @Test
+    void addUsersToGroup_DedupesUpnsIgnoringCaseAndFetchesTokenPerBatch() {
+        String groupId = "group-dedupe";
+        GRAPH.group(groupId);
+        List<String> upns = new ArrayList<>(IntStream.range(0, 30).mapToObj(GraphMockServer::upn).toList());
+        upns.add(GraphMockServer.upn(0).toUpperCase(Locale.ROOT));
+        clearInvocations(accessTokenManager);
+
+        List<EntraGroupUserService.MemberAddResult> results = entraGroupUserService.addUsersToGroup(groupId, upns);
+
+        assertThat(results).hasSize(30).allMatch(r -> r.status() == EntraGroupUserService.MemberAddStatus.ADDED);
+        assertThat(results.get(0).userPrincipalName()).isEqualTo(GraphMockServer.upn(0));
+        assertThat(GRAPH.members(groupId)).hasSize(30);
+        verify(accessTokenManager, times(2)).getToken(anyString());
+    }
+
+    /**
+     * スロットリング：$batchのサブリクエストが429を返却してもRetry-After後に再試行し、全件追加される
+     */
+    @Test
+    void addUsersToGroup_ThrottledSubRequests() {
+        String groupId = "group-throttled";
+        GRAPH.group(groupId);
+        long throttledBefore = GRAPH.throttledCount();
+        GRAPH.throttleEvery(10, 1);
+        List<String> upns = IntStream.range(50, 90).mapToObj(GraphMockServer::upn).toList();
+
+        List<EntraGroupUserService.MemberAddResult> results = entraGroupUserService.addUsersToGroup(groupId, upns);
+
+        assertThat(results).allMatch(r -> r.status() == EntraGroupUserService.MemberAddStatus.ADDED);
+        assertThat(GRAPH.members(groupId)).hasSize(40);
+        assertThat(GRAPH.throttledCount()).isGreaterThan(throttledBefore);
+    }
+
+    /**
+     * $batch自体の失敗（HTTP 500）は、そのチャンクのユーザーのみFAILEDとし、他のチャンクの結果は返却する
+     */
+    @Test
+    void addUsersToGroup_FailedBatchMarksOnlyItsChunk() {
+        String groupId = "group-batch-failed";
+        GRAPH.group(groupId);
+        GRAPH.failNextBatches(1);
+        List<String> upns = IntStream.range(10, 50).mapToObj(GraphMockServer::upn).toList();
+
+        List<EntraGroupUserService.MemberAddResult> results = entraGroupUserService.addUsersToGroup(groupId, upns);
+
+        assertThat(results).hasSize(40).doesNotContainNull();
+        assertThat(results).filteredOn(r -> r.status() == EntraGroupUserService.MemberAddStatus.FAILED).hasSize(20);
+        assertThat(results).filteredOn(r -> r.status() == EntraGroupUserService.MemberAddStatus.ADDED).hasSize(20);
+        assertThat(GRAPH.members(groupId)).hasSize(20);
+    }
+
+    /**
+     * 存在しないグループは追加処理を行わずに例外をスローする
+     */
+    @Test
+    void addUsersToGroup_GroupNotFound() {
+        assertThatThrownBy(() -> entraGroupUserService.addUsersToGroup("missing-group", List.of(GraphMockServer.upn(0))))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("missing-group");
+    }
+}
@@ -0,0 +1,124 @@
+package jp.adsur.service;
+
+import com.google.gson.JsonObject;
+import com.microsoft.graph.models.User;
+import jp.adsur.testsupport.InProcessRedis;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * EntraUserDirectoryのテスト（格納形式ごとに同じ動作になること）
+ */
+class EntraUserDirectoryTest {
+
+    private InProcessRedis redis;
+
+    @BeforeEach
+    void setUp() {
+        redis = new InProcessRedis();
+    }
+
+    @AfterEach
+    void tearDown() {
+        redis.close();
+    }
+
+    /**
+     * 更新イベント（変更された属性のみ）は既存の属性を引き継ぎ、UPN変更・削除でインデックスも更新される
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"hash", "json", "compact"})
+    void onPage_MergesPartialUpdatesAndMaintainsUpnIndex(String valueFormat) {
+        EntraUserDirectory directory = new EntraUserDirectory(redis.stringRedisTemplate(), "entra:user:",
+                valueFormat, 256);
+
+        directory.onPage(page(user("user-1", "山田 太郎", "Taro.Yamada@adsur.jp", "taro@adsur.jp")));
+        directory.onPage(page(user("user-1", null, "taro.y@adsur.jp", null)));
+
+        assertThat(directory.findByUpn("TARO.Y@adsur.jp")).contains(
+                new EntraUserDirectory.DirectoryUser("user-1", "山田 太郎", "taro.y@adsur.jp", "taro@adsur.jp"));
+        assertThat(directory.findObjectIdByUpn("taro.yamada@adsur.jp")).isEmpty();
+
+        User removed = user("user-1", null, null, null);
+        removed.additionalDataManager().put("@removed", new JsonObject());
+        directory.onPage(page(removed));
+
+        assertThat(directory.findById("user-1")).isEmpty();
+        assertThat(directory.size()).isZero();
+    }
+
+    /**
+     * 増分のnullの属性は変更前の値を引き継ぎ、フル同期のnullの属性は削除された属性として上書きする
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"hash", "json", "compact"})
+    void onFullSyncPage_ClearsAttributesMissingFromFullSync(String valueFormat) {
+        EntraUserDirectory directory = new EntraUserDirectory(redis.stringRedisTemplate(), "entra:user:",
+                valueFormat, 256);
+        directory.onPage(page(user("user-1", "山田 太郎", "taro@adsur.jp", "taro@adsur.jp")));
+
+        directory.onPage(page(user("user-1", "山田 太郎（営業部）", null, null)));
+        assertThat(directory.findById("user-1")).contains(
+                new EntraUserDirectory.DirectoryUser("user-1", "山田 太郎（営業部）", "taro@adsur.jp", "taro@adsur.jp"));
+
+        directory.onFullSyncPage(page(user("user-1", "山田 太郎", "taro.y@adsur.jp", null)));
+        assertThat(directory.findById("user-1")).contains(
+                new EntraUserDirectory.DirectoryUser("user-1", "山田 太郎", "taro.y@adsur.jp", null));
+        assertThat(directory.findObjectIdByUpn("taro@adsur.jp")).isEmpty();
+        assertThat(directory.findObjectIdByUpn("taro.y@adsur.jp")).contains("user-1");
+    }
+
+    /**
+     * フル同期で受信しなかったユーザーは完了時に削除され、別のユーザーに割り当て直されたUPNのインデックスは残る
+     * （削除候補はRedisに保持されるため、開始と完了が別のインスタンスでもよい）
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"hash", "json", "compact"})
+    void onFullSyncComplete_PrunesUsersNotReceived(String valueFormat) {
+        EntraUserDirectory directory = new EntraUserDirectory(redis.stringRedisTemplate(), "entra:user:",
+                valueFormat, 256);
+        directory.onPage(page(
+                user("user-1", "山田 太郎", "taro@adsur.jp", null),
+                user("user-2", "佐藤 花子", "hanako@adsur.jp", null),
+                user("user-3", "鈴木 健一", "kenichi@adsur.jp", null)));
+
+        directory.onFullSyncStart();
+        EntraUserDirectory resumed = new EntraUserDirectory(redis.stringRedisTemplate(), "entra:user:",
+                valueFormat, 256);
+        resumed.onFullSyncPage(page(
+                user("user-1", "山田 太郎", "taro@adsur.jp", null),
+                user("user-4", "鈴木 健一", "kenichi@adsur.jp", null)));
+        resumed.onFullSyncComplete();
+
+        assertThat(resumed.findById("user-2")).isEmpty();
+        assertThat(resumed.findById("user-3")).isEmpty();
+        assertThat(resumed.findObjectIdByUpn("hanako@adsur.jp")).isEmpty();
+        assertThat(resumed.findObjectIdByUpn("kenichi@adsur.jp")).contains("user-4");
+        assertThat(resumed.findByUpn("taro@adsur.jp")).map(EntraUserDirectory.DirectoryUser::id).contains("user-1");
+        assertThat(resumed.size()).isEqualTo(2);
+        assertThat(redis.stringRedisTemplate().hasKey("entra:user:full-sync:unseen")).isFalse();
+
+        // フル同期中でなければ削除候補は作られない
+        resumed.onPage(page(user("user-5", null, "aya@adsur.jp", null)));
+        assertThat(redis.stringRedisTemplate().hasKey("entra:user:full-sync:unseen")).isFalse();
+    }
+
+    private static User user(String id, String displayName, String upn, String mail) {
+        User user = new User();
+        user.id = id;
+        user.displayName = displayName;
+        user.userPrincipalName = upn;
+        user.mail = mail;
+        return user;
+    }
+
+    private static EntraDeltaQueryService.DeltaPage page(User... users) {
+        return new EntraDeltaQueryService.DeltaPage(0, List.of(users), null, "delta");
+    }
+}
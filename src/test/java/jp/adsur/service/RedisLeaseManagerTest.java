@@ -0,0 +1,135 @@
+package jp.adsur.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jp.adsur.testsupport.InProcessRedis;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * RedisLeaseManagerとフェンシングトークンによるチェックポイントの書き込みのテスト（InProcessRedis）
+ */
+class RedisLeaseManagerTest {
+
+    private static final String LEASE = "delta-sync:users";
+    private static final String STREAM = "users";
+
+    private InProcessRedis redis;
+    private RedisLeaseManager nodeA;
+    private RedisLeaseManager nodeB;
+    private DeltaCheckpointStore checkpointStore;
+
+    @BeforeEach
+    void setUp() {
+        redis = new InProcessRedis();
+        checkpointStore = new DeltaCheckpointStore(redis.stringRedisTemplate(), "test:checkpoint:");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (nodeA != null) {
+            nodeA.shutdown();
+        }
+        if (nodeB != null) {
+            nodeB.shutdown();
+        }
+        redis.close();
+    }
+
+    /**
+     * 取得・競合・解放：保持中は他のインスタンスが取得できず、解放後は新しいトークンで取得できる
+     */
+    @Test
+    void tryAcquire_ExclusiveUntilReleased() {
+        nodeA = leaseManager("node-a", Duration.ofSeconds(60));
+        nodeB = leaseManager("node-b", Duration.ofSeconds(60));
+
+        RedisLeaseManager.Lease leaseA = nodeA.tryAcquire(LEASE).orElseThrow();
+        assertThat(leaseA.token()).isEqualTo(1);
+        assertThat(nodeA.holder(LEASE)).map(RedisLeaseManager.LeaseInfo::owner).contains("node-a");
+        assertThat(nodeB.tryAcquire(LEASE)).isEmpty();
+
+        leaseA.close();
+        assertThat(leaseA.isValid()).isFalse();
+        assertThat(nodeA.holder(LEASE)).isEmpty();
+
+        RedisLeaseManager.Lease leaseB = nodeB.tryAcquire(LEASE).orElseThrow();
+        assertThat(leaseB.token()).isEqualTo(2);
+        assertThat(nodeA.tryAcquire(LEASE)).isEmpty();
+    }
+
+    /**
+     * 延長：保持中はTTLを過ぎても延長され続け、他のインスタンスは取得できない
+     */
+    @Test
+    void renew_KeepsLeaseBeyondTtl() throws InterruptedException {
+        nodeA = leaseManager("node-a", Duration.ofMillis(600));
+        nodeB = leaseManager("node-b", Duration.ofMillis(600));
+
+        RedisLeaseManager.Lease leaseA = nodeA.tryAcquire(LEASE).orElseThrow();
+        TimeUnit.MILLISECONDS.sleep(1_500);
+
+        assertThat(leaseA.isValid()).isTrue();
+        assertThat(nodeB.tryAcquire(LEASE)).isEmpty();
+    }
+
+    /**
+     * 失効と引き継ぎ：延長されずにTTLが過ぎたリースは他のインスタンスが新しいトークンで取得し、
+     * 旧保持者は延長時に失ったことを検知する。旧保持者のチェックポイントの書き込みは、
+     * 410によるリセットの後も含めて拒否される
+     */
+    @Test
+    void expiredLease_StaleHolderIsFencedOut() throws InterruptedException {
+        nodeA = leaseManager("node-a", Duration.ofMillis(600));
+        nodeB = leaseManager("node-b", Duration.ofMillis(600));
+
+        RedisLeaseManager.Lease leaseA = nodeA.tryAcquire(LEASE).orElseThrow();
+        checkpointStore.saveNextLink(STREAM, "next-a", leaseA.token());
+        // node-aの延長が止まりTTLが過ぎた状態（GCの停止など）を、リースのキーの削除で再現する
+        redis.stringRedisTemplate().delete("test:lease:" + LEASE);
+
+        RedisLeaseManager.Lease leaseB = nodeB.tryAcquire(LEASE).orElseThrow();
+        assertThat(leaseB.token()).isGreaterThan(leaseA.token());
+        checkpointStore.saveNextLink(STREAM, "next-b", leaseB.token());
+        awaitInvalid(leaseA);
+
+        assertThatThrownBy(() -> checkpointStore.saveDeltaLink(STREAM, "delta-a", leaseA.token()))
+                .hasMessageContaining("拒否");
+        assertThat(checkpointStore.load(STREAM).nextLink()).isEqualTo("next-b");
+
+        // デルタトークン期限切れ（410）によるリセット後も、fenceは残り旧保持者の書き込みを拒否する
+        checkpointStore.reset(STREAM, leaseB.token());
+        assertThat(checkpointStore.load(STREAM).resumeLink()).isNull();
+        assertThatThrownBy(() -> checkpointStore.saveNextLink(STREAM, "next-a", leaseA.token()))
+                .hasMessageContaining("拒否");
+        assertThatThrownBy(() -> checkpointStore.reset(STREAM, leaseA.token()))
+                .hasMessageContaining("拒否");
+
+        checkpointStore.reset(STREAM);
+        assertThatThrownBy(() -> checkpointStore.saveNextLink(STREAM, "next-a", leaseA.token()))
+                .hasMessageContaining("拒否");
+        checkpointStore.saveDeltaLink(STREAM, "delta-b", leaseB.token());
+        assertThat(checkpointStore.load(STREAM).deltaLink()).isEqualTo("delta-b");
+    }
+
+    private RedisLeaseManager leaseManager(String ownerId, Duration ttl) {
+        ObjectProvider<MeterRegistry> noMetrics = new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class);
+        return new RedisLeaseManager(redis.stringRedisTemplate(), noMetrics, "test:lease:", ownerId, ttl);
+    }
+
+    private static void awaitInvalid(RedisLeaseManager.Lease lease) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (lease.isValid() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        assertThat(lease.isValid()).isFalse();
+    }
+}
@@ -0,0 +1,172 @@
+package jp.adsur.service;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.micrometer.core.instrument.MeterRegistry;
+import jp.adsur.db.UserInfoBatchLoader;
+import jp.adsur.db.UserInfoRepository;
+import jp.adsur.testsupport.InProcessRedis;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * UserInfoCacheService的测试（Redis使用InProcessRedis，user_info使用记录查询次数的替身Repository）
+ */
+class UserInfoCacheServiceTest {
+
+    private static final String KEY_PREFIX = "user_info:username:";
+
+    private final CountingUserInfoRepository repository = new CountingUserInfoRepository();
+    // 关闭请求合并：load直接调用Repository的单条查询，便于统计DB访问次数
+    private final UserInfoBatchLoader batchLoader = new UserInfoBatchLoader(repository, false, Duration.ofMillis(2), 100, 4,
+            Duration.ofSeconds(5));
+    private InProcessRedis redis;
+
+    @BeforeEach
+    void setUp() {
+        redis = new InProcessRedis();
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchLoader.shutdown();
+        redis.close();
+    }
+
+    /**
+     * 同一冷key的并发查询只加载一次（single-flight），所有调用方拿到同一结果
+     */
+    @Test
+    void findUserName_ConcurrentMissesLoadOnce() throws Exception {
+        UserInfoCacheService service = newService(redis.stringRedisTemplate());
+        repository.delay = Duration.ofMillis(200);
+        int threads = 16;
+        ExecutorService callers = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Optional<String>>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(callers.submit(() -> {
+                    start.await();
+                    return service.findUserName(42);
+                }));
+            }
+            start.countDown();
+            for (Future<Optional<String>> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).contains("user-42");
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        assertThat(repository.calls).hasValue(1);
+        assertThat(service.stats().dbLoads()).isEqualTo(1);
+        assertThat(redis.stringRedisTemplate().opsForValue().get(KEY_PREFIX + 42)).isEqualTo("user-42");
+    }
+
+    /**
+     * 不存在的用户以空值标记写入Redis（negative-ttl），本地和其他实例的再次查询都不访问DB
+     */
+    @Test
+    void findUserName_CachesMissingUserAsNullMarker() {
+        UserInfoCacheService service = newService(redis.stringRedisTemplate());
+
+        assertThat(service.findUserName(CountingUserInfoRepository.MISSING_ID)).isEmpty();
+        assertThat(service.findUserName(CountingUserInfoRepository.MISSING_ID)).isEmpty();
+
+        String key = KEY_PREFIX + CountingUserInfoRepository.MISSING_ID;
+        assertThat(redis.stringRedisTemplate().opsForValue().get(key)).isEqualTo("\u0000");
+        assertThat(redis.stringRedisTemplate().getExpire(key, TimeUnit.SECONDS)).isBetween(1L, 30L);
+
+        // 本地缓存为空的另一实例：命中Redis的空值标记
+        UserInfoCacheService other = newService(redis.stringRedisTemplate());
+        assertThat(other.findUserName(CountingUserInfoRepository.MISSING_ID)).isEmpty();
+
+        assertThat(repository.calls).hasValue(1);
+        assertThat(service.stats().localHits()).isEqualTo(1);
+        assertThat(other.stats().redisHits()).isEqualTo(1);
+    }
+
+    /**
+     * Redis不可达时降级为直接查询DB，结果仍进入本地缓存
+     */
+    @Test
+    void findUserName_FallsBackToDatabaseWhenRedisUnavailable() {
+        // 缩短命令超时：Redis停止后不等待Lettuce默认的60秒
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
+                .clientOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP2).build())
+                .commandTimeout(Duration.ofMillis(500))
+                .build();
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redis.host(), redis.port()), clientConfiguration);
+        connectionFactory.afterPropertiesSet();
+        try {
+            UserInfoCacheService service = newService(new StringRedisTemplate(connectionFactory));
+            assertThat(service.findUserName(1)).contains("user-1");
+            redis.stopServer();
+
+            assertThat(service.findUserName(2)).contains("user-2");
+            assertThat(service.findUserName(2)).contains("user-2");
+
+            assertThat(repository.calls).hasValue(2);
+            assertThat(service.stats().dbLoads()).isEqualTo(2);
+            assertThat(service.stats().localHits()).isEqualTo(1);
+            assertThat(service.stats().loadFailures()).isZero();
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    private UserInfoCacheService newService(StringRedisTemplate stringRedisTemplate) {
+        ObjectProvider<MeterRegistry> noMetrics = new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class);
+        return new UserInfoCacheService(batchLoader, stringRedisTemplate, noMetrics, 1_000, Duration.ofSeconds(30),
+                Duration.ofMinutes(10), Duration.ofSeconds(30), KEY_PREFIX, true);
+    }
+
+    /**
+     * user_info的替身：ID n 的用户名为 user-n（MISSING_ID不存在），记录单条查询次数
+     */
+    private static final class CountingUserInfoRepository extends UserInfoRepository {
+
+        static final long MISSING_ID = 404;
+
+        final AtomicInteger calls = new AtomicInteger();
+        volatile Duration delay = Duration.ZERO;
+
+        CountingUserInfoRepository() {
+            super(null);
+        }
+
+        @Override
+        public Optional<String> findUserNameById(long id) {
+            calls.incrementAndGet();
+            try {
+                // 模拟查询耗时，让并发请求在加载完成前到达
+                TimeUnit.MILLISECONDS.sleep(delay.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return id == MISSING_ID ? Optional.empty() : Optional.of("user-" + id);
+        }
+    }
+}